@@ -0,0 +1,65 @@
+package engine;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures checking cooldowns, done by every entity each frame.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CooldownBenchmark {
+
+	/** Cooldown that never finishes during the benchmark. */
+	private Cooldown running;
+	/** Cooldown already finished. */
+	private Cooldown finished;
+
+	/**
+	 * Creates the cooldowns.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		this.running = Core.getVariableCooldown(Integer.MAX_VALUE / 2, 1000,
+				new GameRandom(0));
+		this.running.reset();
+		this.finished = Core.getCooldown(0);
+		this.finished.reset();
+	}
+
+	/**
+	 * Checks a running cooldown.
+	 *
+	 * @return Cooldown state.
+	 */
+	@Benchmark
+	public boolean checkRunning() {
+		return this.running.checkFinished();
+	}
+
+	/**
+	 * Checks a finished cooldown.
+	 *
+	 * @return Cooldown state.
+	 */
+	@Benchmark
+	public boolean checkFinished() {
+		return this.finished.checkFinished();
+	}
+}
@@ -0,0 +1,111 @@
+package engine;
+
+import java.awt.Color;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import screen.Screen;
+import engine.DrawManager.SpriteType;
+import entity.Entity;
+
+/**
+ * Measures the drawing primitives of the draw manager on an offscreen
+ * image.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class DrawManagerBenchmark {
+
+	/** Width of the screen, as in the game. */
+	private static final int WIDTH = 448;
+	/** Height of the screen, as in the game. */
+	private static final int HEIGHT = 520;
+	/** Frames per second of the screen, as in the game. */
+	private static final int FPS = 60;
+
+	/** Draw manager drawing on an offscreen image. */
+	private DrawManager drawManager;
+	/** Screen being drawn. */
+	private Screen screen;
+
+	/**
+	 * Creates the offscreen draw manager and waits for its resources.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		this.drawManager = Core.getOffscreenDrawManager(WIDTH, HEIGHT);
+		this.screen = new Screen(WIDTH, HEIGHT, FPS,
+				GameContext.headless(this.drawManager));
+
+		// First drawing loads the sprites and the font.
+		this.drawManager.initDrawing(this.screen);
+		this.drawManager.completeDrawing(this.screen);
+	}
+
+	/**
+	 * Entity showing each of the sprites.
+	 */
+	@State(Scope.Thread)
+	public static class SpriteState {
+
+		/** Sprite drawn. */
+		@Param({ "Ship", "ShipDestroyed", "Bullet", "EnemyBullet",
+				"EnemyShipA1", "EnemyShipA2", "EnemyShipB1", "EnemyShipB2",
+				"EnemyShipC1", "EnemyShipC2", "EnemyShipSpecial",
+				"Explosion" })
+		public String spriteType;
+
+		/** Entity showing the sprite. */
+		private Entity entity;
+
+		/**
+		 * Creates the entity.
+		 */
+		@Setup(Level.Trial)
+		public void setUp() {
+			final SpriteType sprite = SpriteType.valueOf(this.spriteType);
+			this.entity = new Entity(0, 0, 0, 0, Color.GREEN) {
+				{
+					this.spriteType = sprite;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Draws one entity on the back buffer.
+	 *
+	 * @param sprite
+	 *            Entity to draw.
+	 */
+	@Benchmark
+	public void drawEntity(final SpriteState sprite) {
+		this.drawManager.drawEntity(sprite.entity, WIDTH / 2, HEIGHT / 2);
+	}
+
+	/**
+	 * Prepares an empty back buffer and copies it to the offscreen image.
+	 */
+	@Benchmark
+	public void initAndCompleteDrawing() {
+		this.drawManager.initDrawing(this.screen);
+		this.drawManager.completeDrawing(this.screen);
+	}
+}
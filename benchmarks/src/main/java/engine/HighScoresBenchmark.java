@@ -0,0 +1,139 @@
+package engine;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures reading and writing the high scores file, with growing numbers
+ * of records. Uses temporary files, the user high scores are not touched.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HighScoresBenchmark {
+
+	/** Charset of the high scores file. */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	/** Number of game modes the records are spread over. */
+	private static final int MODES = Leaderboard.NUM_DIFFICULTIES
+			* Leaderboard.NUM_PLAYER_CODES;
+
+	/** Records in the high scores file. */
+	@Param({ "7", "10000", "1000000" })
+	public int entries;
+
+	/** File read by the load benchmark. */
+	private File scoresFile;
+	/** File written by the save benchmark. */
+	private File savedFile;
+	/** High scores big enough to keep every record. */
+	private Leaderboard highScores;
+
+	/**
+	 * Creates high scores holding every record and writes them to a file.
+	 *
+	 * @throws IOException
+	 *             In case of writing problems.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		this.highScores = new Leaderboard(this.entries);
+		long now = System.currentTimeMillis();
+		// Best scores first, so each one goes to the end of its board.
+		for (int i = 0; i < this.entries; i++) {
+			int mode = i % MODES;
+			this.highScores.submit(mode / Leaderboard.NUM_PLAYER_CODES + 1,
+					mode % Leaderboard.NUM_PLAYER_CODES + 1, new Score(
+							String.format("%03d", i % 1000),
+							this.entries - i, now));
+		}
+
+		this.scoresFile = File.createTempFile("scores", null);
+		this.scoresFile.deleteOnExit();
+		this.savedFile = File.createTempFile("scores", null);
+		this.savedFile.deleteOnExit();
+		save(this.scoresFile);
+	}
+
+	/**
+	 * Deletes the temporary files.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.scoresFile.delete();
+		this.savedFile.delete();
+	}
+
+	/**
+	 * Writes the high scores to a file, as FileManager does.
+	 *
+	 * @param file
+	 *            File to write.
+	 * @throws IOException
+	 *             In case of writing problems.
+	 */
+	private void save(final File file) throws IOException {
+		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(file), UTF_8));
+		try {
+			FileManager.writeLeaderboard(this.highScores, writer);
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Reads the high scores file into the boards used by the game.
+	 *
+	 * @return High scores read.
+	 * @throws IOException
+	 *             In case of reading problems.
+	 */
+	@Benchmark
+	public Leaderboard loadHighScores() throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(this.scoresFile), UTF_8));
+		try {
+			return FileManager.readLeaderboard(reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Writes every record to the high scores file.
+	 *
+	 * @throws IOException
+	 *             In case of writing problems.
+	 */
+	@Benchmark
+	public void saveHighScores() throws IOException {
+		save(this.savedFile);
+	}
+}
@@ -0,0 +1,82 @@
+package engine;
+
+import java.awt.Font;
+import java.awt.FontFormatException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import engine.DrawManager.SpriteType;
+
+/**
+ * Measures loading the startup resources from the classpath. The font
+ * benchmark needs res/font.ttf to be present when building.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ResourceLoadBenchmark {
+
+	/**
+	 * Loads the sprites from the compiled atlas.
+	 *
+	 * @return Sprites loaded.
+	 * @throws IOException
+	 *             In case of loading problems.
+	 */
+	@Benchmark
+	public Map<SpriteType, boolean[][]> loadSprite() throws IOException {
+		return Core.getFileManager().loadSprite();
+	}
+
+	/**
+	 * Compiles the sprite sources, as done when there is no atlas.
+	 *
+	 * @return Sprites compiled.
+	 * @throws IOException
+	 *             In case of loading problems.
+	 */
+	@Benchmark
+	public Map<SpriteType, boolean[][]> parseSpriteSources()
+			throws IOException {
+		InputStream inputStream = ResourceLoadBenchmark.class
+				.getClassLoader().getResourceAsStream("graphics");
+		try {
+			return SpriteAtlas.parse(new InputStreamReader(inputStream,
+					Charset.forName("UTF-8")));
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	/**
+	 * Loads the font.
+	 *
+	 * @return Font loaded.
+	 * @throws IOException
+	 *             In case of loading problems.
+	 * @throws FontFormatException
+	 *             In case of incorrect font format.
+	 */
+	@Benchmark
+	public Font loadFont() throws IOException, FontFormatException {
+		return Core.getFileManager().loadFont();
+	}
+}
@@ -0,0 +1,107 @@
+package engine;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the whole startup of the game, from launching a new JVM until
+ * the title screen is interactive. Every call starts a fresh game process,
+ * so it needs a display, and kills it once it logs its time to
+ * interactive. The game jar is read from the invaders.jar system property,
+ * game/target/invaders.jar by default.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(3)
+public class StartupBenchmark {
+
+	/** Game jar launched. */
+	private File gameJar;
+	/** Directory the game runs in, receives its log. */
+	private File workingDirectory;
+
+	/**
+	 * Finds the game jar.
+	 *
+	 * @throws IOException
+	 *             In case the working directory can't be created.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		this.gameJar = new File(System.getProperty("invaders.jar",
+				"game/target/invaders.jar")).getAbsoluteFile();
+		if (!this.gameJar.isFile())
+			throw new IllegalStateException("No game jar at " + this.gameJar
+					+ ", build it or set -Dinvaders.jar.");
+		this.workingDirectory = File.createTempFile("invaders", null);
+		this.workingDirectory.delete();
+		this.workingDirectory.mkdir();
+		this.workingDirectory.deleteOnExit();
+	}
+
+	/**
+	 * Launches the game, waits until it is interactive and kills it.
+	 *
+	 * @return Startup times logged by the game.
+	 * @throws IOException
+	 *             In case of launching problems.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting.
+	 */
+	@Benchmark
+	public String launch() throws IOException, InterruptedException {
+		String java = System.getProperty("java.home") + File.separator
+				+ "bin" + File.separator + "java";
+		Process process = new ProcessBuilder(java, "-jar",
+				this.gameJar.getPath())
+				.directory(this.workingDirectory).redirectErrorStream(true)
+				.start();
+
+		StringBuilder output = new StringBuilder();
+		StringBuilder startupTimes = new StringBuilder();
+		boolean interactive = false;
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				process.getInputStream(), Charset.defaultCharset()));
+		try {
+			String line;
+			while (!interactive && (line = reader.readLine()) != null) {
+				output.append(line).append('\n');
+				if (line.contains("Time to"))
+					startupTimes.append(line).append(' ');
+				interactive = line.contains("Time to interactive");
+			}
+		} finally {
+			process.destroy();
+			reader.close();
+		}
+
+		process.waitFor();
+		if (!interactive)
+			throw new IllegalStateException("Game exited with code "
+					+ process.exitValue() + " before it was interactive:\n"
+					+ output);
+		// Times measured inside the game, shown with the fork output.
+		System.out.println(startupTimes);
+		return startupTimes.toString();
+	}
+}
@@ -0,0 +1,64 @@
+package entity;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures taking bullets from the pool and giving them back, with growing
+ * numbers of bullets in the pool.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BulletPoolBenchmark {
+
+	/** Bullets waiting in the pool. */
+	@Param({ "0", "100", "1000" })
+	public int pooled;
+
+	/** Pool measured. */
+	private BulletPool bulletPool;
+
+	/**
+	 * Fills the pool.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		Set<Bullet> bullets = new HashSet<Bullet>();
+		for (int i = 0; i < this.pooled; i++)
+			bullets.add(new Bullet(0, 0, -1, "ship1"));
+		this.bulletPool = new BulletPool();
+		this.bulletPool.recycle(bullets);
+	}
+
+	/**
+	 * Takes a bullet and puts it back, as a bullet leaving the screen does.
+	 *
+	 * @return Bullet taken.
+	 */
+	@Benchmark
+	public Bullet getBulletAndRecycle() {
+		Bullet bullet = this.bulletPool.getBullet(100, 100, -1, "ship1");
+		this.bulletPool.recycle(Collections.singleton(bullet));
+		return bullet;
+	}
+}
@@ -0,0 +1,194 @@
+package entity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import screen.Screen;
+import engine.Core;
+import engine.DrawManager;
+import engine.GameContext;
+import engine.GameRandom;
+import engine.GameSettings;
+
+/**
+ * Measures the per frame work of the enemy formation, with growing
+ * formations.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class EnemyShipFormationBenchmark {
+
+	/** Width of the screen, as in the game. */
+	private static final int WIDTH = 448;
+	/** Height of the screen, as in the game. */
+	private static final int HEIGHT = 520;
+	/** Frames per second of the screen, as in the game. */
+	private static final int FPS = 60;
+	/** Seed of the order ships are destroyed in. */
+	private static final long SEED = 42;
+
+	/**
+	 * Formation on a screen without a frame.
+	 */
+	@State(Scope.Thread)
+	public static class Formation {
+
+		/** Enemy formation, columns x rows. */
+		@Param({ "3x3", "10x10", "30x20", "100x50" })
+		public String formation;
+
+		/** Settings creating the formation. */
+		private GameSettings gameSettings;
+		/** Draw manager of the formation, drawing offscreen. */
+		private DrawManager drawManager;
+		/** Managers of the formation, logging nothing. */
+		private GameContext context;
+		/** Screen the formation moves in. */
+		private Screen screen;
+		/** Formation being measured. */
+		private EnemyShipFormation enemyShipFormation;
+		/** Bullets shot by the formation. */
+		private Set<Bullet> bullets;
+
+		/**
+		 * Creates the formation on a screen without a frame.
+		 */
+		@Setup(Level.Trial)
+		public void setUp() {
+			String[] size = this.formation.split("x");
+			this.gameSettings = new GameSettings(Integer.parseInt(size[0]),
+					Integer.parseInt(size[1]), 60, 2000);
+			this.drawManager = Core.getOffscreenDrawManager(WIDTH, HEIGHT);
+			this.context = GameContext.headless(this.drawManager);
+			this.screen = new Screen(WIDTH, HEIGHT, FPS, this.context);
+			this.bullets = new HashSet<Bullet>();
+			newFormation();
+		}
+
+		/**
+		 * Replaces the formation with a complete one.
+		 */
+		private void newFormation() {
+			this.enemyShipFormation = new EnemyShipFormation(
+					this.gameSettings, new GameRandom(0), this.drawManager,
+					this.context.getLogger());
+			this.enemyShipFormation.attach(this.screen);
+			// Starts the shooting cooldown.
+			this.enemyShipFormation.update();
+		}
+	}
+
+	/**
+	 * Picks the next ship to destroy, in a fixed random order. Starts over
+	 * with a complete formation once every ship is destroyed.
+	 */
+	@State(Scope.Thread)
+	public static class Target {
+
+		/** Ships left to destroy, in order. */
+		private List<EnemyShip> remaining = new ArrayList<EnemyShip>();
+		/** Formation the ship belongs to. */
+		private Formation formation;
+		/** Ship destroyed by the next call. */
+		private EnemyShip ship;
+
+		/**
+		 * Picks the next ship.
+		 *
+		 * @param targetFormation
+		 *            Formation the ship belongs to.
+		 */
+		@Setup(Level.Invocation)
+		public void setUp(final Formation targetFormation) {
+			this.formation = targetFormation;
+			if (this.remaining.isEmpty()) {
+				this.formation.newFormation();
+				for (EnemyShip enemyShip : this.formation.enemyShipFormation)
+					this.remaining.add(enemyShip);
+				// Set order varies between runs, sorts before shuffling.
+				Collections.sort(this.remaining, new Comparator<EnemyShip>() {
+					@Override
+					public int compare(final EnemyShip a, final EnemyShip b) {
+						if (a.getPositionX() != b.getPositionX())
+							return a.getPositionX() - b.getPositionX();
+						return a.getPositionY() - b.getPositionY();
+					}
+				});
+				Collections.shuffle(this.remaining, new Random(SEED));
+			}
+			this.ship = this.remaining.remove(this.remaining.size() - 1);
+		}
+	}
+
+	/**
+	 * Moves the formation one frame.
+	 *
+	 * @param formation
+	 *            Formation measured.
+	 */
+	@Benchmark
+	public void update(final Formation formation) {
+		formation.enemyShipFormation.update();
+	}
+
+	/**
+	 * Recomputes the bounds of the formation.
+	 *
+	 * @param formation
+	 *            Formation measured.
+	 */
+	@Benchmark
+	public void cleanUp(final Formation formation) {
+		formation.enemyShipFormation.cleanUp();
+	}
+
+	/**
+	 * Destroys one ship.
+	 *
+	 * @param target
+	 *            Ship to destroy and its formation.
+	 */
+	@Benchmark
+	public void destroy(final Target target) {
+		target.formation.enemyShipFormation.destroy(target.ship);
+	}
+
+	/**
+	 * Lets the formation shoot, as every frame does.
+	 *
+	 * @param formation
+	 *            Formation measured.
+	 */
+	@Benchmark
+	public void shoot(final Formation formation) {
+		BulletPool bulletPool = formation.context.getBulletPool();
+		formation.enemyShipFormation.shoot(formation.bullets, bulletPool);
+		if (!formation.bullets.isEmpty()) {
+			bulletPool.recycle(formation.bullets);
+			formation.bullets.clear();
+		}
+	}
+}
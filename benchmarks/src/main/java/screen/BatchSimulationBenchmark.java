@@ -0,0 +1,109 @@
+package screen;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import engine.Core;
+import engine.GameRandom;
+import engine.GameSettings;
+
+/**
+ * Measures how batched simulation steps scale with the workers of the
+ * pool, from one to every core. Scores are simulation steps per second,
+ * with the screens written to the batch buffer.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class BatchSimulationBenchmark {
+
+	/** Simulations in the batch. */
+	private static final int SIZE = 256;
+	/** Steps the bot keeps the same keys for. */
+	private static final int ACTION_STEPS = 16;
+	/** Input masks there are, every combination of the six keys. */
+	private static final int ACTIONS = 64;
+
+	/** Workers of the pool, "all" for one per core. */
+	@Param({ "1", "2", "4", "all" })
+	public String workers;
+
+	/** Pool the batch runs in. */
+	private ForkJoinPool pool;
+	/** Batch being stepped. */
+	private BatchSimulation batch;
+	/** Picks the bot's keys. */
+	private GameRandom random;
+	/** Keys held in each simulation. */
+	private int[] actions;
+	/** Rewards of the last step. */
+	private int[] rewards;
+	/** Levels over after the last step. */
+	private boolean[] dones;
+	/** Screens after the last step. */
+	private byte[] observations;
+	/** Steps played. */
+	private int steps;
+
+	/**
+	 * Starts the pool and the first levels.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		int parallelism = "all".equals(this.workers) ? Runtime.getRuntime()
+				.availableProcessors() : Integer.parseInt(this.workers);
+		this.pool = new ForkJoinPool(parallelism);
+		this.batch = new BatchSimulation(SIZE, 2, this.pool);
+		this.random = new GameRandom(0);
+		this.actions = new int[SIZE];
+		this.rewards = new int[SIZE];
+		this.dones = new boolean[SIZE];
+		this.observations = new byte[SIZE * Simulation.GRID_SIZE];
+		GameSettings settings = Core.getLevelSettings(2).get(
+				Core.NUM_LEVELS - 1);
+		this.batch.reset(settings, 0, this.observations);
+	}
+
+	/**
+	 * Stops the pool.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.pool.shutdown();
+	}
+
+	/**
+	 * Plays a step of every simulation.
+	 *
+	 * @return Rewards of the step.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public int[] step() {
+		if (this.steps++ % ACTION_STEPS == 0)
+			for (int i = 0; i < SIZE; i++)
+				this.actions[i] = this.random.nextInt(ACTIONS);
+		this.batch.step(this.actions, this.rewards, this.dones,
+				this.observations);
+		return this.rewards;
+	}
+}
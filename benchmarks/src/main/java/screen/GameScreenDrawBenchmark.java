@@ -0,0 +1,102 @@
+package screen;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import engine.Core;
+import engine.GameContext;
+import engine.GameSettings;
+import engine.GameState;
+import entity.Bullet;
+import entity.BulletPool;
+import entity.Pair;
+
+/**
+ * Measures drawing a whole game frame, with growing numbers of enemy ships
+ * and bullets on screen.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class GameScreenDrawBenchmark {
+
+	/** Width of the screen, as in the game. */
+	private static final int WIDTH = 448;
+	/** Height of the screen, as in the game. */
+	private static final int HEIGHT = 520;
+	/** Frames per second of the screen, as in the game. */
+	private static final int FPS = 60;
+	/** Horizontal distance between bullets. */
+	private static final int BULLET_SPACING = 7;
+	/** Vertical distance between rows of bullets. */
+	private static final int BULLET_ROW_HEIGHT = 12;
+
+	/** Enemy formation, columns x rows. */
+	@Param({ "5x4", "10x10", "30x20" })
+	public String formation;
+
+	/** Bullets on screen. */
+	@Param({ "0", "100", "1000" })
+	public int bullets;
+
+	/** Game screen being drawn. */
+	private GameScreen gameScreen;
+
+	/**
+	 * Creates a two player game on an offscreen image, filled with bullets.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		String[] size = this.formation.split("x");
+		GameSettings gameSettings = new GameSettings(
+				Integer.parseInt(size[0]), Integer.parseInt(size[1]), 60,
+				2000);
+		GameState gameState = new GameState(1, new Pair(0, 0),
+				new Pair(3, 3), new Pair(0, 0), new Pair(0, 0), 2, 2,
+				0);
+		GameContext context = GameContext.headless(
+				Core.getOffscreenDrawManager(WIDTH, HEIGHT));
+
+		this.gameScreen = new GameScreen(gameState, gameSettings, false,
+				WIDTH, HEIGHT, FPS, context);
+		this.gameScreen.initialize();
+
+		Set<Bullet> onScreen = this.gameScreen.getBullets();
+		BulletPool bulletPool = context.getBulletPool();
+		int perRow = WIDTH / BULLET_SPACING;
+		for (int i = 0; i < this.bullets; i++)
+			if (i % 2 == 0)
+				onScreen.add(bulletPool.getBullet((i % perRow)
+						* BULLET_SPACING, (i / perRow) * BULLET_ROW_HEIGHT
+						% HEIGHT, -1, "ship1"));
+			else
+				onScreen.add(bulletPool.getBullet((i % perRow)
+						* BULLET_SPACING, (i / perRow) * BULLET_ROW_HEIGHT
+						% HEIGHT, 1, "EnemyShipFormation"));
+	}
+
+	/**
+	 * Draws a whole frame.
+	 */
+	@Benchmark
+	public void draw() {
+		this.gameScreen.draw();
+	}
+}
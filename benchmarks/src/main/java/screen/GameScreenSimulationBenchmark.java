@@ -0,0 +1,165 @@
+package screen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import engine.Core;
+import engine.GameContext;
+import engine.GameSettings;
+import engine.GameState;
+import entity.Bullet;
+import entity.BulletPool;
+import entity.Pair;
+
+/**
+ * Measures the per frame simulation of the game screen, with growing
+ * formations and numbers of bullets on screen. Bullets fly between the
+ * formation and the top of the screen, so they miss every ship.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class GameScreenSimulationBenchmark {
+
+	/** Width of the screen, as in the game. */
+	private static final int WIDTH = 448;
+	/** Height of the screen, as in the game. */
+	private static final int HEIGHT = 520;
+	/** Frames per second of the screen, as in the game. */
+	private static final int FPS = 60;
+	/** Horizontal distance between bullets. */
+	private static final int BULLET_SPACING = 7;
+	/** Highest bullet position, below the interface separation line. */
+	private static final int BULLETS_TOP = 50;
+	/** Height of the band the bullets fly in, above the formation. */
+	private static final int BULLETS_BAND = 40;
+
+	/**
+	 * Two player game without a frame, filled with bullets.
+	 */
+	@State(Scope.Thread)
+	public static class Game {
+
+		/** Enemy formation, columns x rows. */
+		@Param({ "3x3", "10x10", "30x20", "100x50" })
+		public String formation;
+
+		/** Bullets on screen, half from the players and half from enemies. */
+		@Param({ "0", "100", "1000" })
+		public int bullets;
+
+		/** Game screen being simulated. */
+		private GameScreen gameScreen;
+		/** Every bullet put on screen. */
+		private List<Bullet> allBullets;
+
+		/**
+		 * Creates the game.
+		 */
+		@Setup(Level.Trial)
+		public void setUp() {
+			String[] size = this.formation.split("x");
+			GameSettings gameSettings = new GameSettings(
+					Integer.parseInt(size[0]), Integer.parseInt(size[1]), 60,
+					2000);
+			GameState gameState = new GameState(1, new Pair(0, 0),
+					new Pair(3, 3), new Pair(0, 0), new Pair(0, 0), 2, 2,
+					0);
+			GameContext context = GameContext.headless(
+					Core.getOffscreenDrawManager(WIDTH, HEIGHT));
+
+			this.gameScreen = new GameScreen(gameState, gameSettings, false,
+					WIDTH, HEIGHT, FPS, context);
+			this.gameScreen.initialize();
+
+			BulletPool bulletPool = context.getBulletPool();
+			this.allBullets = new ArrayList<Bullet>();
+			for (int i = 0; i < this.bullets; i++)
+				if (i % 2 == 0)
+					this.allBullets.add(bulletPool.getBullet(0, 0, -1,
+							"ship1"));
+				else
+					this.allBullets.add(bulletPool.getBullet(0, 0, 1,
+							"EnemyShipFormation"));
+			placeBullets();
+		}
+
+		/**
+		 * Puts every bullet back on screen, at its starting position.
+		 */
+		private void placeBullets() {
+			Set<Bullet> onScreen = this.gameScreen.getBullets();
+			onScreen.clear();
+			int perRow = WIDTH / BULLET_SPACING;
+			for (int i = 0; i < this.allBullets.size(); i++) {
+				Bullet bullet = this.allBullets.get(i);
+				bullet.setPositionX((i % perRow) * BULLET_SPACING);
+				bullet.setPositionY(BULLETS_TOP + (i / perRow)
+						% BULLETS_BAND);
+				onScreen.add(bullet);
+			}
+		}
+	}
+
+	/**
+	 * Brings the bullets back before each call, cleaning moves them.
+	 */
+	@State(Scope.Thread)
+	public static class BulletReset {
+
+		/** Game whose bullets are reset. */
+		private Game game;
+
+		/**
+		 * Puts the bullets back at their starting position.
+		 *
+		 * @param resetGame
+		 *            Game whose bullets are reset.
+		 */
+		@Setup(Level.Invocation)
+		public void setUp(final Game resetGame) {
+			this.game = resetGame;
+			this.game.placeBullets();
+		}
+	}
+
+	/**
+	 * Checks every bullet against every ship.
+	 *
+	 * @param game
+	 *            Game simulated.
+	 */
+	@Benchmark
+	public void manageCollisions(final Game game) {
+		game.gameScreen.manageCollisions();
+	}
+
+	/**
+	 * Moves every bullet and recycles those off screen.
+	 *
+	 * @param bulletReset
+	 *            Game simulated, with its bullets reset before each call.
+	 */
+	@Benchmark
+	public void cleanBullets(final BulletReset bulletReset) {
+		bulletReset.game.gameScreen.cleanBullets();
+	}
+}
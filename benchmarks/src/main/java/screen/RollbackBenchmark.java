@@ -0,0 +1,136 @@
+package screen;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import engine.Core;
+import engine.GameClock;
+import engine.GameContext;
+import engine.GameRandom;
+import engine.GameSettings;
+import engine.GameState;
+import engine.SnapshotRing;
+import entity.Pair;
+
+/**
+ * Measures saving the state of a level into a snapshot ring and restoring
+ * it, as a rollback does, a number of frames into a two player level.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RollbackBenchmark {
+
+	/** Game time of a frame, in milliseconds. */
+	private static final int FRAME_TIME = 1000 / GameServer.FPS;
+	/** Frames a bot keeps the same keys for. */
+	private static final int INPUT_FRAMES = 10;
+	/** Input masks there are, every combination of the six keys. */
+	private static final int ACTIONS = 64;
+
+	/**
+	 * Level played for some frames, with a ring to save it to.
+	 */
+	@State(Scope.Thread)
+	public static class Game {
+
+		/** Frames played before measuring. */
+		@Param({ "0", "600", "1800" })
+		public int frames;
+
+		/** Screen of the level. */
+		private GameScreen gameScreen;
+		/** Ring the states are saved to. */
+		private SnapshotRing snapshots;
+		/** Update saved next. */
+		private int tick;
+
+		/**
+		 * Plays the level up to the frame measured.
+		 */
+		@Setup(Level.Trial)
+		public void setUp() {
+			GameState gameState = new GameState(1, new Pair(0, 0),
+					new Pair(Core.MAX_LIVES, Core.MAX_LIVES), new Pair(0, 0),
+					new Pair(0, 0), 2, 2, 1);
+			GameSettings settings = Core.getLevelSettings(2).get(0);
+			GameClock clock = GameClock.simulate(0);
+			this.gameScreen = new GameScreen(gameState, settings, false,
+					GameServer.WIDTH, GameServer.HEIGHT, GameServer.FPS,
+					GameContext.headless(null));
+			this.gameScreen.initialize();
+			this.gameScreen.isRunning = true;
+			GameRandom random = new GameRandom(1);
+			int input = 0;
+			for (int i = 0; i < this.frames && this.gameScreen.isRunning;
+					i++) {
+				if (i % INPUT_FRAMES == 0)
+					input = random.nextInt(ACTIONS);
+				clock.advance(FRAME_TIME);
+				this.gameScreen.tick(input);
+			}
+			this.snapshots = new SnapshotRing(
+					RollbackSession.MAX_PREDICTION + 1);
+			save();
+		}
+
+		/**
+		 * Saves the state of the level as the next update.
+		 */
+		private void save() {
+			this.gameScreen.writeState(this.snapshots.startSave(this.tick));
+			this.snapshots.save(this.tick, 0);
+			this.tick++;
+		}
+	}
+
+	/**
+	 * Saves the state of the level.
+	 *
+	 * @param game
+	 *            Level saved.
+	 */
+	@Benchmark
+	public void save(final Game game) {
+		game.save();
+	}
+
+	/**
+	 * Restores the last state saved.
+	 *
+	 * @param game
+	 *            Level restored.
+	 */
+	@Benchmark
+	public void restore(final Game game) {
+		game.gameScreen.readState(game.snapshots.load(game.tick - 1));
+	}
+
+	/**
+	 * Saves the state of the level and restores it, as a rollback of one
+	 * update does.
+	 *
+	 * @param game
+	 *            Level saved and restored.
+	 */
+	@Benchmark
+	public void saveAndRestore(final Game game) {
+		game.save();
+		game.gameScreen.readState(game.snapshots.load(game.tick - 1));
+	}
+}
@@ -0,0 +1,103 @@
+package screen;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import engine.Core;
+import engine.GameRandom;
+import engine.GameSettings;
+
+/**
+ * Measures headless simulation steps, with a bot changing keys every few
+ * steps and a new level started whenever one ends.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SimulationBenchmark {
+
+	/** Steps the bot keeps the same keys for. */
+	private static final int ACTION_STEPS = 16;
+	/** Input masks there are, every combination of the six keys. */
+	private static final int ACTIONS = 64;
+
+	/** Number of players. */
+	@Param({ "1", "2" })
+	public int playerCode;
+
+	/** Simulation being stepped. */
+	private Simulation simulation;
+	/** Settings of the levels, the last one of medium difficulty. */
+	private GameSettings settings;
+	/** Picks the bot's keys. */
+	private GameRandom random;
+	/** Grid the screen is written to. */
+	private byte[] observation;
+	/** Seed of the next level. */
+	private long seed;
+	/** Keys held by the bot. */
+	private int action;
+
+	/**
+	 * Starts the first level.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		this.simulation = new Simulation(this.playerCode);
+		this.settings = Core.getLevelSettings(2).get(Core.NUM_LEVELS - 1);
+		this.random = new GameRandom(0);
+		this.observation = new byte[Simulation.GRID_SIZE];
+		this.simulation.reset(this.settings, this.seed++);
+	}
+
+	/**
+	 * Plays a step without observing the screen.
+	 *
+	 * @return Reward of the step.
+	 */
+	@Benchmark
+	public int step() {
+		return nextStep(null);
+	}
+
+	/**
+	 * Plays a step and writes the screen to the grid.
+	 *
+	 * @return Reward of the step.
+	 */
+	@Benchmark
+	public int stepAndObserve() {
+		return nextStep(this.observation);
+	}
+
+	/**
+	 * Plays the next step, starting a new level if the last one ended.
+	 *
+	 * @param grid
+	 *            Grid to write the screen to, may be null.
+	 * @return Reward of the step.
+	 */
+	private int nextStep(final byte[] grid) {
+		if (this.simulation.isDone())
+			this.simulation.reset(this.settings, this.seed++);
+		if (this.simulation.getSteps() % ACTION_STEPS == 0)
+			this.action = this.random.nextInt(ACTIONS);
+		return this.simulation.step(this.action, grid);
+	}
+}
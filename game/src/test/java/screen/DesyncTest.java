@@ -0,0 +1,195 @@
+package screen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+import engine.Core;
+import engine.GameClock;
+import engine.GameContext;
+import engine.GameRandom;
+import engine.GameSettings;
+import engine.GameState;
+import engine.ReplayRecorder;
+import entity.Pair;
+
+/**
+ * Checks the state hash of the levels, without a display. A one and a two
+ * player level are played by bots with a desync check, which must find
+ * nothing, and a state saved early on must hash the same once restored.
+ * A level whose ship is moved behind the game's back must be reported at
+ * that update, with the field and the ship. The desync.ticks system
+ * property sets the updates played.
+ *
+ */
+public final class DesyncTest {
+
+	/** Updates played by default, one minute. */
+	private static final int DEFAULT_TICKS = 3600;
+	/** Seed of the games and the bots. */
+	private static final long SEED = 1;
+	/** Game time the levels start at. */
+	private static final long START_TIME = 0;
+	/** Game time of an update, in milliseconds. */
+	private static final int FRAME_TIME = 1000 / GameServer.FPS;
+	/** Frames a bot keeps the same keys for. */
+	private static final int INPUT_FRAMES = 10;
+	/** Input masks there are, every combination of the six keys. */
+	private static final int ACTIONS = 64;
+	/**
+	 * Update the ship is moved on, or the state saved on, once the keys
+	 * are read.
+	 */
+	private static final int NUDGE_TICK = GameScreen.INPUT_DELAY
+			/ FRAME_TIME + 100;
+
+	/** Updates played, more than NUDGE_TICK. */
+	private final int ticks;
+	/** Logger to report desyncs to. */
+	private final Logger logger;
+
+	/**
+	 * Constructor, reads the updates to play.
+	 */
+	public DesyncTest() {
+		this.ticks = Math.max(NUDGE_TICK + 1, Integer.getInteger(
+				"desync.ticks", DEFAULT_TICKS));
+		this.logger = Logger.getLogger(DesyncTest.class.getSimpleName());
+	}
+
+	/**
+	 * Plays a one and a two player level, which must find no desync and
+	 * hash the state saved early on the same once restored.
+	 */
+	@Test
+	public void findsNoDesync() {
+		for (int playerCode = 1; playerCode <= 2; playerCode++) {
+			Level level = new Level(playerCode, this.logger);
+			long start = System.nanoTime();
+			level.play(this.ticks, -1);
+			long elapsed = System.nanoTime() - start;
+			System.out.println(String.format(Locale.ROOT, "%d player "
+					+ "level: %d updates checked in %d ms, hash %016x.",
+					playerCode, level.check.getTicks(), elapsed / 1000000,
+					level.gameScreen.getStateHash().getValue()));
+			assertNull(playerCode + " player level desynced.",
+					level.check.getDesync());
+			assertTrue(playerCode + " player level hashes differently "
+					+ "once restored.", level.restoresHash());
+		}
+	}
+
+	/**
+	 * Moves a ship behind the game's back, which must be reported on that
+	 * update, with the field and the ship.
+	 */
+	@Test
+	public void reportsMovedShip() {
+		Level nudged = new Level(2, this.logger);
+		nudged.play(this.ticks, NUDGE_TICK);
+		String desync = nudged.check.getDesync();
+		System.out.println("Ship moved on update " + NUDGE_TICK + ": "
+				+ (desync == null ? "no desync" : "desync at update "
+						+ nudged.check.getTicks() + ", " + desync) + ".");
+		assertNotNull("Ship moved, no desync.", desync);
+		assertEquals("Update of the desync.", NUDGE_TICK,
+				nudged.check.getTicks());
+		assertTrue("Desync not of ship 1's position: " + desync + ".",
+				desync.startsWith("POSITION_X of ship 1 "));
+	}
+
+	/**
+	 * Level played by a bot, checked against a shadow level.
+	 */
+	private static final class Level {
+
+		/** Clock of the level. */
+		private final GameClock clock;
+		/** Screen of the level. */
+		private final GameScreen gameScreen;
+		/** Desync check of the level. */
+		private final DesyncCheck check;
+		/** State saved early on. */
+		private final ByteBuffer saved;
+		/** Hash of the state saved. */
+		private long savedHash;
+
+		/**
+		 * Constructor, starts the level.
+		 *
+		 * @param playerCode
+		 *            Players of the level.
+		 * @param logger
+		 *            Logger to report desyncs to.
+		 */
+		Level(final int playerCode, final Logger logger) {
+			GameSettings settings = Core.getLevelSettings(2).get(0);
+			GameState gameState = new GameState(1, new Pair(0, 0),
+					new Pair(Core.MAX_LIVES, Core.MAX_LIVES), new Pair(0, 0),
+					new Pair(0, 0), playerCode, 2, SEED);
+			this.clock = GameClock.simulate(START_TIME);
+			this.gameScreen = new GameScreen(gameState, settings, false,
+					GameServer.WIDTH, GameServer.HEIGHT, GameServer.FPS,
+					GameContext.headless(null));
+			this.gameScreen.initialize();
+			this.gameScreen.isRunning = true;
+			this.check = new DesyncCheck(this.gameScreen, this.clock,
+					logger);
+			this.saved = ByteBuffer.allocate(ReplayRecorder.MAX_STATE_SIZE);
+		}
+
+		/**
+		 * Plays the level with random keys, checking each update, and
+		 * saves its state on NUDGE_TICK.
+		 *
+		 * @param ticks
+		 *            Updates to play, fewer if the level ends.
+		 * @param nudgeTick
+		 *            Update after which player 1's ship is moved a pixel
+		 *            right, -1 for none.
+		 */
+		void play(final int ticks, final int nudgeTick) {
+			GameRandom random = new GameRandom(SEED);
+			int input = 0;
+			for (int tick = 1; tick <= ticks
+					&& this.gameScreen.isRunning; tick++) {
+				if (tick % INPUT_FRAMES == 1)
+					input = random.nextInt(ACTIONS);
+				this.clock.advance(FRAME_TIME);
+				this.gameScreen.tick(input);
+				if (tick == nudgeTick)
+					this.gameScreen.getShip1().setPositionX(this.gameScreen
+							.getShip1().getPositionX() + 1);
+				if (!this.check.check(input, this.clock.getTime()))
+					return;
+				if (tick == NUDGE_TICK) {
+					this.gameScreen.writeState(this.saved);
+					this.saved.flip();
+					this.savedHash = this.gameScreen.getStateHash()
+							.getValue();
+				}
+			}
+		}
+
+		/**
+		 * Restores the state saved early on.
+		 *
+		 * @return True if it hashes as it did when saved, false if none
+		 *         was.
+		 */
+		boolean restoresHash() {
+			if (this.saved.limit() == this.saved.capacity())
+				return false;
+			this.gameScreen.readState(this.saved);
+			return this.gameScreen.getStateHash().getValue()
+					== this.savedHash;
+		}
+	}
+}
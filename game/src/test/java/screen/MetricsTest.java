@@ -0,0 +1,280 @@
+package screen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import engine.Metrics;
+import engine.MetricsServer;
+
+/**
+ * Checks the metrics served for Prometheus, without a display. A metrics
+ * server is bound to a free loopback port and scraped over HTTP, before
+ * and after a screen is shown. The scrapes must be in the text format,
+ * have every sample under a TYPE line and every TYPE line with a sample,
+ * give the counters and gauges as set, and have histogram buckets that
+ * never decrease and end at the count.
+ *
+ */
+public final class MetricsTest {
+
+	/** Content type of the Prometheus text format. */
+	private static final String CONTENT_TYPE =
+			"text/plain; version=0.0.4; charset=utf-8";
+	/** Prefix of every metric name. */
+	private static final String PREFIX = "invaders_";
+	/** Frames counted. */
+	private static final int FRAMES = 3;
+	/** Bullets counted. */
+	private static final int BULLETS = 5;
+	/** Value of the file queue gauge. */
+	private static final int QUEUE_DEPTH = 4;
+	/** Tick times recorded, in nanoseconds, from under the first bound. */
+	private static final long[] TICK_TIMES = { 500000L, 3000000L, 3000000L,
+			20000000L, 2000000000L, 10000000000L };
+	/** Tick times under the first bound, a millisecond. */
+	private static final int FAST_TICKS = 1;
+	/** Screen shown before the second scrape. */
+	private static final String SCREEN = "GameScreen";
+	/** Milliseconds to wait for the server. */
+	private static final int TIMEOUT = 5000;
+
+	/**
+	 * Serves metrics and checks two scrapes, before and after a screen is
+	 * shown.
+	 *
+	 * @throws IOException
+	 *             If the server can't be bound or scraped.
+	 */
+	@Test
+	public void servesTextFormat() throws IOException {
+		Metrics metrics = new Metrics();
+		metrics.counter(Metrics.FRAMES_RENDERED).add(FRAMES);
+		metrics.counter(Metrics.BULLETS_FIRED).add(BULLETS);
+		metrics.gauge(Metrics.FILE_QUEUE_DEPTH, new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return QUEUE_DEPTH;
+			}
+		});
+		for (long tickTime : TICK_TIMES)
+			metrics.histogram(Metrics.TICK_TIME).record(tickTime);
+
+		MetricsServer server = new MetricsServer(metrics, 0);
+		server.start();
+		try {
+			check(scrape(server.getPort()), null);
+			metrics.setScreen(SCREEN);
+			check(scrape(server.getPort()), SCREEN);
+		} finally {
+			server.stop();
+		}
+	}
+
+	/**
+	 * Fetches the metrics and checks the response is in the text format.
+	 *
+	 * @param port
+	 *            Port of the server, on the loopback address.
+	 * @return Text of the scrape.
+	 * @throws IOException
+	 *             If the server can't be reached.
+	 */
+	private static String scrape(final int port) throws IOException {
+		URL url = new URL("http", "127.0.0.1", port, MetricsServer.PATH);
+		HttpURLConnection connection = (HttpURLConnection) url
+				.openConnection();
+		connection.setConnectTimeout(TIMEOUT);
+		connection.setReadTimeout(TIMEOUT);
+		try {
+			assertEquals("Scrape answer.", HttpURLConnection.HTTP_OK,
+					connection.getResponseCode());
+			assertEquals("Content type.", CONTENT_TYPE,
+					connection.getContentType());
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			InputStream inputStream = connection.getInputStream();
+			try {
+				byte[] buffer = new byte[4096];
+				int read;
+				while ((read = inputStream.read(buffer)) >= 0)
+					body.write(buffer, 0, read);
+			} finally {
+				inputStream.close();
+			}
+			return new String(body.toByteArray(), Charset.forName("UTF-8"));
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * Checks the text of a scrape.
+	 *
+	 * @param text
+	 *            Text of the scrape.
+	 * @param screen
+	 *            Screen shown, null if none has been.
+	 */
+	private static void check(final String text, final String screen) {
+		Map<String, String> types = new LinkedHashMap<String, String>();
+		Map<String, List<String>> samples =
+				new LinkedHashMap<String, List<String>>();
+		for (String line : text.split("\n")) {
+			if (line.startsWith("# TYPE ")) {
+				String[] fields = line.split(" ");
+				types.put(fields[2], fields[3]);
+				samples.put(fields[2], new ArrayList<String>());
+				continue;
+			}
+			if (line.isEmpty() || line.startsWith("#"))
+				continue;
+			String family = familyOf(line, types);
+			assertNotNull("Sample without a TYPE line: " + line + ".",
+					family);
+			samples.get(family).add(line);
+		}
+
+		for (Map.Entry<String, List<String>> family : samples.entrySet()) {
+			assertFalse("TYPE line without a sample: " + family.getKey()
+					+ ".", family.getValue().isEmpty());
+			if ("histogram".equals(types.get(family.getKey())))
+				checkHistogram(family.getKey(), family.getValue());
+		}
+
+		checkValue(samples, PREFIX + "frames_rendered_total", FRAMES);
+		checkValue(samples, PREFIX + "bullets_fired_total", BULLETS);
+		checkValue(samples, PREFIX + "file_queue_depth", QUEUE_DEPTH);
+		checkValue(samples, PREFIX
+				+ "tick_time_seconds_bucket{le=\"0.001\"}", FAST_TICKS);
+		checkValue(samples, PREFIX + "tick_time_seconds_count",
+				TICK_TIMES.length);
+
+		String screenMetric = PREFIX + "screen";
+		if (screen == null) {
+			assertFalse(screenMetric + " listed before any screen.",
+					types.containsKey(screenMetric));
+		} else {
+			assertEquals(screenMetric + " type.", "gauge",
+					types.get(screenMetric));
+			checkValue(samples, screenMetric + "{screen=\"" + screen
+					+ "\"}", 1);
+		}
+	}
+
+	/**
+	 * Finds the metric a sample belongs to, among the ones typed so far.
+	 *
+	 * @param line
+	 *            Sample line.
+	 * @param types
+	 *            Types of the metrics, by name.
+	 * @return Name of the metric, null if it has no type.
+	 */
+	private static String familyOf(final String line,
+			final Map<String, String> types) {
+		String name = nameOf(line);
+		int labels = name.indexOf('{');
+		if (labels >= 0)
+			name = name.substring(0, labels);
+		if (types.containsKey(name))
+			return name;
+		for (String suffix : new String[] { "_bucket", "_sum", "_count" })
+			if (name.endsWith(suffix)) {
+				String family = name.substring(0,
+						name.length() - suffix.length());
+				if ("histogram".equals(types.get(family)))
+					return family;
+			}
+		return null;
+	}
+
+	/**
+	 * Checks that the buckets of a histogram never decrease and that the
+	 * last one, +Inf, is its count.
+	 *
+	 * @param metric
+	 *            Name of the histogram.
+	 * @param lines
+	 *            Sample lines of the histogram.
+	 */
+	private static void checkHistogram(final String metric,
+			final List<String> lines) {
+		double last = 0;
+		double infinite = -1;
+		double count = -1;
+		for (String line : lines) {
+			String name = nameOf(line);
+			double value = valueOf(line);
+			if (name.startsWith(metric + "_bucket{")) {
+				assertTrue(metric + " bucket decreases: " + line + ".",
+						value >= last);
+				last = value;
+				if (name.equals(metric + "_bucket{le=\"+Inf\"}"))
+					infinite = value;
+			} else if (name.equals(metric + "_count")) {
+				count = value;
+			}
+		}
+		assertTrue(metric + " has no +Inf bucket.", infinite >= 0);
+		assertEquals(metric + " +Inf bucket and count.", count, infinite,
+				0);
+	}
+
+	/**
+	 * Checks the value of a sample.
+	 *
+	 * @param samples
+	 *            Sample lines, by metric.
+	 * @param name
+	 *            Name of the sample, with its labels.
+	 * @param expected
+	 *            Value it must have.
+	 */
+	private static void checkValue(final Map<String, List<String>> samples,
+			final String name, final double expected) {
+		for (List<String> lines : samples.values())
+			for (String line : lines)
+				if (nameOf(line).equals(name)) {
+					assertEquals(name + ".", expected, valueOf(line), 0);
+					return;
+				}
+		fail(name + " missing.");
+	}
+
+	/**
+	 * Reads the name of a sample, with its labels.
+	 *
+	 * @param line
+	 *            Sample line.
+	 * @return Everything before the value.
+	 */
+	private static String nameOf(final String line) {
+		return line.substring(0, line.lastIndexOf(' '));
+	}
+
+	/**
+	 * Reads the value of a sample.
+	 *
+	 * @param line
+	 *            Sample line.
+	 * @return Value after the last space.
+	 */
+	private static double valueOf(final String line) {
+		return Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+	}
+}
@@ -0,0 +1,152 @@
+package screen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+import engine.Core;
+import engine.GameRandom;
+import engine.LatencyHistogram;
+import engine.ReplayRecorder;
+
+/**
+ * Plays a two player network game over the loopback interface, without a
+ * display: a host on a free port and two clients driven by bots on this
+ * thread. It reports the bandwidth used, the snapshot sizes and the input
+ * latency, and checks that each state the clients rebuild from the deltas
+ * is one their screens hold exactly. The net.seconds system property sets
+ * the time played.
+ *
+ */
+public final class NetTest {
+
+	/** Seconds played by default. */
+	private static final int DEFAULT_SECONDS = 10;
+	/** Seed of the game and the bots. */
+	private static final long SEED = 1;
+	/** Difficulty played, normal. */
+	private static final int DIFFICULTY = 2;
+	/** Frames a bot keeps the same keys for. */
+	private static final int INPUT_FRAMES = 15;
+	/** Input masks there are, every combination of the six keys. */
+	private static final int ACTIONS = 64;
+	/** Real time of a frame, in nanoseconds. */
+	private static final long FRAME_NANOS = TimeUnit.SECONDS.toNanos(1)
+			/ GameServer.FPS;
+	/** Bytes in a kilobyte. */
+	private static final double KILOBYTE = 1024;
+
+	/**
+	 * Plays the game, checking every snapshot, and prints the figures.
+	 *
+	 * @throws IOException
+	 *             If the loopback connection fails.
+	 * @throws InterruptedException
+	 *             If interrupted while playing.
+	 */
+	@Test
+	public void playsOverLoopback() throws IOException,
+			InterruptedException {
+		int seconds = Integer.getInteger("net.seconds", DEFAULT_SECONDS);
+		Logger logger = Core.getLogger();
+		logger.setLevel(Level.WARNING);
+		final NetHost host = new NetHost(0, 2, DIFFICULTY, SEED, logger);
+		int port = host.bind();
+		Thread hostThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					host.run();
+				} catch (IOException e) {
+					Core.getLogger().log(Level.SEVERE, "Host failed.", e);
+				}
+			}
+		}, "NetHost");
+		hostThread.start();
+
+		NetClient[] clients = new NetClient[2];
+		GameRandom random = new GameRandom(SEED);
+		int[] inputs = new int[clients.length];
+		long[] checked = new long[clients.length];
+		ByteBuffer written = ByteBuffer.allocate(
+				ReplayRecorder.MAX_STATE_SIZE);
+		long start = System.nanoTime();
+		boolean over = false;
+		try {
+			for (int i = 0; i < clients.length; i++) {
+				clients[i] = new NetClient(null);
+				clients[i].connect("127.0.0.1", port);
+			}
+			long end = start + TimeUnit.SECONDS.toNanos(seconds);
+			long nextFrame = start;
+			for (int frame = 0; !over && System.nanoTime() < end; frame++) {
+				for (int i = 0; i < clients.length; i++) {
+					NetClient client = clients[i];
+					if (frame % INPUT_FRAMES == 0)
+						inputs[i] = random.nextInt(ACTIONS);
+					client.sendInput(inputs[i]);
+					if (!client.update())
+						over = true;
+					// The screen must hold exactly the state it was given,
+					// once the new level, if one started, has its first
+					// snapshot.
+					if (client.getSnapshots() > checked[i]
+							&& client.getTick() > 0) {
+						checked[i] = client.getSnapshots();
+						written.clear();
+						client.getGameScreen().writeState(written);
+						written.flip();
+						assertEquals("Client " + (i + 1) + " state differs "
+								+ "at update " + client.getTick() + ".",
+								client.getState(), written);
+					}
+				}
+				nextFrame += FRAME_NANOS;
+				long wait = nextFrame - System.nanoTime();
+				if (wait > 0)
+					TimeUnit.NANOSECONDS.sleep(wait);
+			}
+		} finally {
+			host.stop();
+			hostThread.join();
+			for (NetClient client : clients)
+				if (client != null)
+					client.close();
+		}
+		double elapsed = (System.nanoTime() - start) / 1e9;
+
+		System.out.println(String.format(Locale.ROOT, "Played %.1f s%s, "
+				+ "%d snapshots: state %.0f bytes, first of a level %.0f "
+				+ "bytes, others %.1f bytes on average.", elapsed,
+				over ? " to the end of the game" : "", host.getSnapshots(),
+				host.getAverageStateSize(), host.getAverageFullSize(),
+				host.getAverageDeltaSize()));
+		for (int i = 0; i < clients.length; i++) {
+			NetClient client = clients[i];
+			LatencyHistogram latency = client.getLatency();
+			double deltaShare = client.getStateBytes() == 0 ? 0.0 : 100.0
+					* client.getDeltaBytes() / client.getStateBytes();
+			System.out.println(String.format(Locale.ROOT, "Client %d: %d "
+					+ "snapshots, %.2f KB/s in, %.2f KB/s out, %.1f%% of "
+					+ "whole states; input latency %.2f ms on average, "
+					+ "%.2f ms p50, %.2f ms p99, %.2f ms max.", i + 1,
+					client.getSnapshots(), client.getBytesReceived()
+							/ KILOBYTE / elapsed, client.getBytesSent()
+							/ KILOBYTE / elapsed, deltaShare,
+					latency.getMean(), latency.getPercentile(50),
+					latency.getPercentile(99), latency.getMax()));
+			assertTrue("Client " + (i + 1) + " got no snapshots.",
+					client.getSnapshots() > 0);
+			assertTrue("Client " + (i + 1) + " inputs never applied.",
+					latency.getCount() > 0);
+		}
+	}
+}
@@ -0,0 +1,342 @@
+package screen;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+import org.junit.Test;
+
+import engine.Core;
+import engine.GameClock;
+import engine.GameContext;
+import engine.GameRandom;
+import engine.GameSettings;
+import engine.GameState;
+import engine.LatencyHistogram;
+import engine.ReplayRecorder;
+import engine.SnapshotRing;
+import entity.Pair;
+
+/**
+ * Plays a two player level with rollback over a simulated link, without a
+ * display. Both sides run on this thread, driven by bots, and the keys of
+ * each update reach the other side some frames later, with jitter but in
+ * order. Once every key has arrived, both sides must hold the state a game
+ * played with all the keys on time reaches. It also times saving and
+ * restoring the state, and checks that they allocate nothing. The
+ * rollback.ticks, rollback.delay and rollback.jitter system properties set
+ * the updates played and the link.
+ *
+ */
+public final class RollbackTest {
+
+	/** Updates played by default, one minute. */
+	private static final int DEFAULT_TICKS = 3600;
+	/** One way delay of the link by default, in frames. */
+	private static final int DEFAULT_LATENCY = 5;
+	/** Most frames added to the delay by default. */
+	private static final int DEFAULT_JITTER = 3;
+	/** Seed of the game, the bots and the link. */
+	private static final long SEED = 1;
+	/** Game time the level starts at, the same on both sides. */
+	private static final long START_TIME = 0;
+	/** Game time of an update, in milliseconds. */
+	private static final int FRAME_TIME = 1000 / GameServer.FPS;
+	/** Frames a bot keeps the same keys for. */
+	private static final int INPUT_FRAMES = 10;
+	/** Input masks there are, every combination of the six keys. */
+	private static final int ACTIONS = 64;
+	/** Saves and restores timed, after as many to warm up. */
+	private static final int ROUND_TRIPS = 100000;
+	/** Times the saves and restores are timed, the best is kept. */
+	private static final int PASSES = 3;
+	/** Nanoseconds in a microsecond. */
+	private static final double NANOS_PER_MICRO = 1000.0;
+	/** Microseconds in a millisecond. */
+	private static final double MICROS_PER_MILLI = 1000.0;
+
+	/**
+	 * Plays the level on both sides, checks they end in the state of the
+	 * game with every key on time, and prints the figures.
+	 */
+	@Test
+	public void convergesWithKeysOnTime() {
+		int ticks = Integer.getInteger("rollback.ticks", DEFAULT_TICKS);
+		int latency = Integer.getInteger("rollback.delay", DEFAULT_LATENCY);
+		int jitter = Integer.getInteger("rollback.jitter", DEFAULT_JITTER);
+		GameSettings settings = Core.getLevelSettings(2).get(0);
+		RollbackSession[] sides = new RollbackSession[2];
+		Link[] links = new Link[2];
+		int[][] played = new int[2][ticks];
+		GameRandom random = new GameRandom(SEED);
+		for (int i = 0; i < sides.length; i++) {
+			sides[i] = new RollbackSession(newGameState(), settings, false,
+					i + 1, START_TIME, null);
+			links[i] = new Link(latency, jitter, random.split());
+		}
+
+		// Each side plays until the last update or the end of the level,
+		// then waits for the other side's keys.
+		int[] inputs = new int[2];
+		long stalls = 0;
+		int frame = 0;
+		while (!done(sides, ticks)) {
+			for (int i = 0; i < sides.length; i++) {
+				links[i].deliver(frame, sides[i]);
+				if (frame % INPUT_FRAMES == 0)
+					inputs[i] = random.nextInt(ACTIONS);
+				if (sides[i].getTick() >= ticks)
+					continue;
+				int tick = sides[i].advance(inputs[i]);
+				if (tick >= 0) {
+					played[i][tick] = inputs[i];
+					links[1 - i].send(frame, tick, inputs[i]);
+				} else if (!sides[i].isOver()) {
+					stalls++;
+				}
+			}
+			frame++;
+		}
+
+		int tick = sides[0].getTick();
+		System.out.println(String.format(Locale.ROOT, "Played %d updates "
+				+ "in %d frames, delay %d frames, jitter %d, %d stalls.",
+				tick, frame, latency, jitter, stalls));
+		for (int i = 0; i < sides.length; i++) {
+			RollbackSession side = sides[i];
+			System.out.println(String.format(Locale.ROOT, "Side %d: %d "
+					+ "rollbacks, %d updates played again, %d at most; "
+					+ "save %.2f us, restore %.2f us on average.", i + 1,
+					side.getRollbacks(), side.getReplayedTicks(),
+					side.getMaxRollback(), micros(side.getSaveTimes()),
+					micros(side.getRestoreTimes())));
+		}
+
+		assertEquals("Sides stopped at different updates.", tick,
+				sides[1].getTick());
+		ByteBuffer expected = reference(settings, played, tick);
+		for (int i = 0; i < sides.length; i++) {
+			ByteBuffer state = ByteBuffer.allocate(
+					ReplayRecorder.MAX_STATE_SIZE);
+			sides[i].getGameScreen().writeState(state);
+			state.flip();
+			assertEquals("Side " + (i + 1) + " differs from the game with "
+					+ "keys on time at update " + tick + ".", expected,
+					state);
+		}
+
+		assertEquals("Bytes allocated by saves and restores.", 0,
+				timeRoundTrips(sides[0].getGameScreen()));
+	}
+
+	/**
+	 * Checks if both sides are done.
+	 *
+	 * @param sides
+	 *            Both sides.
+	 * @param ticks
+	 *            Updates to play.
+	 * @return True if both played every update, or the level is over, and
+	 *         have every key of the other side.
+	 */
+	private static boolean done(final RollbackSession[] sides,
+			final int ticks) {
+		for (RollbackSession side : sides)
+			if (!side.isOver() && (side.getTick() < ticks
+					|| side.getConfirmedTicks() < side.getTick()))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Creates the state the level starts with. Each screen needs its own, as
+	 * it keeps the scores in it.
+	 *
+	 * @return State of a new two player game.
+	 */
+	private static GameState newGameState() {
+		return new GameState(1, new Pair(0, 0), new Pair(Core.MAX_LIVES,
+				Core.MAX_LIVES), new Pair(0, 0), new Pair(0, 0), 2, 2, SEED);
+	}
+
+	/**
+	 * Plays the level with every key on time.
+	 *
+	 * @param settings
+	 *            Settings of the level.
+	 * @param played
+	 *            Keys each side played each update with.
+	 * @param ticks
+	 *            Updates to play.
+	 * @return State after the last update.
+	 */
+	private static ByteBuffer reference(final GameSettings settings,
+			final int[][] played, final int ticks) {
+		GameClock clock = GameClock.simulate(START_TIME);
+		GameScreen gameScreen = new GameScreen(newGameState(), settings,
+				false, GameServer.WIDTH, GameServer.HEIGHT, GameServer.FPS,
+				GameContext.headless(null));
+		gameScreen.initialize();
+		gameScreen.isRunning = true;
+		for (int t = 0; t < ticks; t++) {
+			clock.advance(FRAME_TIME);
+			gameScreen.tick(NetProtocol.playerInput(played[0][t], 1)
+					| NetProtocol.playerInput(played[1][t], 2));
+		}
+		ByteBuffer state = ByteBuffer.allocate(ReplayRecorder.MAX_STATE_SIZE);
+		gameScreen.writeState(state);
+		state.flip();
+		return state;
+	}
+
+	/**
+	 * Saves and restores the state of a screen many times, prints how long
+	 * that takes and returns what it allocated. It is done a few times, as
+	 * the code may still be compiled at first, and the best one is kept.
+	 *
+	 * @param gameScreen
+	 *            Screen whose state is saved.
+	 * @return Bytes allocated once warmed up, 0 if the JVM doesn't count
+	 *         them.
+	 */
+	private static long timeRoundTrips(final GameScreen gameScreen) {
+		SnapshotRing ring = new SnapshotRing(RollbackSession.MAX_PREDICTION
+				+ 1);
+		roundTrips(gameScreen, ring);
+		// Asking for the count allocates too, that much is taken off.
+		long overhead = GameServer.allocatedBytes();
+		overhead = GameServer.allocatedBytes() - overhead;
+		long best = Long.MAX_VALUE;
+		long allocated = Long.MAX_VALUE;
+		for (int i = 0; i < PASSES; i++) {
+			long before = GameServer.allocatedBytes();
+			long start = System.nanoTime();
+			roundTrips(gameScreen, ring);
+			best = Math.min(best, System.nanoTime() - start);
+			allocated = Math.min(allocated, GameServer.allocatedBytes() - before
+					- overhead);
+		}
+		allocated = Math.max(0, allocated);
+		System.out.println(String.format(Locale.ROOT, "Save and restore: "
+				+ "%.2f us, %d bytes allocated for %d of them.", best
+				/ NANOS_PER_MICRO / ROUND_TRIPS, allocated, ROUND_TRIPS));
+		return allocated;
+	}
+
+	/**
+	 * Saves the state of a screen and restores it, ROUND_TRIPS times.
+	 *
+	 * @param gameScreen
+	 *            Screen whose state is saved.
+	 * @param ring
+	 *            Ring to save to.
+	 */
+	private static void roundTrips(final GameScreen gameScreen,
+			final SnapshotRing ring) {
+		for (int i = 0; i < ROUND_TRIPS; i++) {
+			gameScreen.writeState(ring.startSave(i));
+			ring.save(i, 0);
+			gameScreen.readState(ring.load(i));
+		}
+	}
+
+	/**
+	 * Average of a histogram of times, in microseconds.
+	 *
+	 * @param times
+	 *            Times recorded.
+	 * @return Mean time, in microseconds.
+	 */
+	private static double micros(final LatencyHistogram times) {
+		return times.getMean() * MICROS_PER_MILLI;
+	}
+
+	/**
+	 * One way link between the sides, delivering the keys sent a few frames
+	 * later, in order.
+	 */
+	private static final class Link {
+
+		/** Keys in flight at most. */
+		private static final int CAPACITY = 1024;
+
+		/** Frames the keys take. */
+		private final int latency;
+		/** Most frames added at random. */
+		private final int jitter;
+		/** Picks the frames added. */
+		private final GameRandom random;
+		/** Frame each key in flight arrives on. */
+		private final int[] arrivals;
+		/** Update of each key in flight. */
+		private final int[] ticks;
+		/** Each key in flight. */
+		private final int[] inputs;
+		/** Oldest key in flight. */
+		private int head;
+		/** Keys in flight. */
+		private int size;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param latency
+		 *            Frames the keys take.
+		 * @param jitter
+		 *            Most frames added at random.
+		 * @param random
+		 *            Picks the frames added.
+		 */
+		Link(final int latency, final int jitter, final GameRandom random) {
+			this.latency = latency;
+			this.jitter = jitter;
+			this.random = random;
+			this.arrivals = new int[CAPACITY];
+			this.ticks = new int[CAPACITY];
+			this.inputs = new int[CAPACITY];
+		}
+
+		/**
+		 * Sends the keys of an update. They don't overtake earlier ones.
+		 *
+		 * @param frame
+		 *            Frame they are sent on.
+		 * @param tick
+		 *            Update they were played on.
+		 * @param input
+		 *            Keys held.
+		 */
+		void send(final int frame, final int tick, final int input) {
+			if (this.size == CAPACITY)
+				throw new IllegalStateException("Link is full.");
+			int arrival = frame + this.latency
+					+ this.random.nextInt(this.jitter + 1);
+			if (this.size > 0)
+				arrival = Math.max(arrival, this.arrivals[(this.head
+						+ this.size - 1) % CAPACITY]);
+			int slot = (this.head + this.size) % CAPACITY;
+			this.arrivals[slot] = arrival;
+			this.ticks[slot] = tick;
+			this.inputs[slot] = input;
+			this.size++;
+		}
+
+		/**
+		 * Gives a side the keys arrived by a frame.
+		 *
+		 * @param frame
+		 *            Current frame.
+		 * @param side
+		 *            Side at the end of the link.
+		 */
+		void deliver(final int frame, final RollbackSession side) {
+			while (this.size > 0 && this.arrivals[this.head] <= frame) {
+				side.addRemoteInput(this.ticks[this.head],
+						this.inputs[this.head]);
+				this.head = (this.head + 1) % CAPACITY;
+				this.size--;
+			}
+		}
+	}
+}
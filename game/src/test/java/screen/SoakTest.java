@@ -0,0 +1,442 @@
+package screen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.event.KeyEvent;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.logging.Level;
+
+import org.junit.Test;
+
+import engine.Core;
+import engine.GameClock;
+import engine.GameSettings;
+import engine.GameState;
+import engine.InputManager;
+import engine.LevelProgression;
+
+/**
+ * Plays full games without a display, from player select to the score
+ * screens, driven by a scripted bot. Time is simulated, so frames don't
+ * wait for each other. Reports heap growth, garbage collection, update
+ * times per level and threads left behind, and fails if something looks
+ * wrong.
+ *
+ * The test phase plays a few games. The soak.games and soak.seed system
+ * properties set the games played and the seed of the bot, and
+ * soak.maxHeapGrowth the heap growth allowed, in megabytes. High scores
+ * are written to a temporary file unless invaders.scores is set.
+ *
+ */
+public final class SoakTest {
+
+	/** Width of the screens. */
+	private static final int WIDTH = 448;
+	/** Height of the screens. */
+	private static final int HEIGHT = 520;
+	/** Frames per second, sets the simulated time of each update. */
+	private static final int FPS = 60;
+	/** Games played by default, enough to check the heap and threads. */
+	private static final int DEFAULT_GAMES = 4;
+	/** Seed of the bot by default. */
+	private static final long DEFAULT_SEED = 1;
+	/** Updates after which a screen is considered stuck, 10 minutes. */
+	private static final int MAX_SCREEN_TICKS = FPS * 60 * 10;
+	/** Games played before taking the heap and threads baseline. */
+	private static final int WARMUP_GAMES = 10;
+	/** Heap growth allowed by default, in megabytes. */
+	private static final int DEFAULT_MAX_HEAP_GROWTH = 16;
+	/** Bytes in a megabyte. */
+	private static final double MEGABYTE = 1024 * 1024;
+	/** Shortest time the bot keeps moving in the same direction. */
+	private static final int MIN_MOVE_TICKS = 20;
+	/** Variation of the time the bot keeps moving in the same direction. */
+	private static final int MOVE_TICKS_VARIANCE = 60;
+	/** Keys the bot may press. */
+	private static final int[] KEYS = { KeyEvent.VK_UP, KeyEvent.VK_DOWN,
+			KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT, KeyEvent.VK_A,
+			KeyEvent.VK_D, KeyEvent.VK_SPACE, KeyEvent.VK_ENTER };
+
+	/** Seed of the bot. */
+	private final long seed;
+	/** Simulated clock of the game thread. */
+	private final GameClock clock;
+	/** Input manager the bot presses keys on. */
+	private final InputManager inputManager;
+	/** Update times of each level. */
+	private final TickHistogram[] levelTicks;
+
+	/** Games started. */
+	private int games;
+	/** Games in two player mode. */
+	private int twoPlayerGames;
+	/** Levels played. */
+	private int levels;
+	/** Screen updates run. */
+	private long ticks;
+
+	/**
+	 * Constructor, prepares the bot with the seed of the soak.seed system
+	 * property.
+	 */
+	public SoakTest() {
+		this.seed = Long.getLong("soak.seed", DEFAULT_SEED);
+		this.clock = GameClock.simulate();
+		this.inputManager = Core.getInputManager();
+		this.levelTicks = new TickHistogram[Core.NUM_LEVELS];
+		for (int i = 0; i < this.levelTicks.length; i++)
+			this.levelTicks[i] = new TickHistogram();
+	}
+
+	/**
+	 * Plays the games and checks the heap and threads left afterwards.
+	 *
+	 * @throws IOException
+	 *             In case the temporary high scores can't be created.
+	 */
+	@Test
+	public void playsGamesWithoutLeaking() throws IOException {
+		int totalGames = Integer.getInteger("soak.games", DEFAULT_GAMES);
+		if (System.getProperty("invaders.scores") == null) {
+			File scores = File.createTempFile("scores", null);
+			scores.deleteOnExit();
+			System.setProperty("invaders.scores", scores.getPath());
+		}
+		Core.getLogger().setLevel(Level.WARNING);
+		Core.getDrawManager().setOffscreen(WIDTH, HEIGHT);
+
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		int baselineGame = Math.min(WARMUP_GAMES, totalGames / 2);
+		assertTrue("Too few games to check heap and threads.",
+				baselineGame > 0);
+		long baselineHeap = 0;
+		int baselinePool = 0;
+		long baselineGcCount = 0;
+		long baselineGcTime = 0;
+		Set<Thread> baselineThreads = new HashSet<Thread>();
+		long start = System.nanoTime();
+
+		for (int game = 0; game < totalGames; game++) {
+			if (game == baselineGame) {
+				baselineHeap = usedHeapAfterGc(memory);
+				baselinePool = Core.getBulletPool().getPoolSize();
+				baselineGcCount = gcCount();
+				baselineGcTime = gcTime();
+				baselineThreads.addAll(Thread.getAllStackTraces().keySet());
+			}
+			playGame(game);
+		}
+
+		long elapsed = (System.nanoTime() - start) / 1000000;
+		System.out.println("Played " + this.games + " games ("
+				+ this.twoPlayerGames + " two player), " + this.levels
+				+ " levels and " + this.ticks + " updates in " + elapsed
+				+ " ms.");
+		for (int level = 0; level < this.levelTicks.length; level++)
+			if (this.levelTicks[level].getCount() > 0)
+				System.out.println("Level " + (level + 1) + " updates: "
+						+ this.levelTicks[level].summary());
+
+		long heap = usedHeapAfterGc(memory);
+		double growth = (heap - baselineHeap) / MEGABYTE;
+		int maxGrowth = Integer.getInteger("soak.maxHeapGrowth",
+				DEFAULT_MAX_HEAP_GROWTH);
+		System.out.println(String.format("Heap after GC: %.1f MB after "
+				+ "game %d, %.1f MB at the end, %+.1f MB.",
+				baselineHeap / MEGABYTE, baselineGame, heap / MEGABYTE,
+				growth));
+		System.out.println("Bullet pool: " + baselinePool
+				+ " bullets after game " + baselineGame + ", "
+				+ Core.getBulletPool().getPoolSize() + " at the end.");
+		long collections = gcCount() - baselineGcCount;
+		long collectionTime = gcTime() - baselineGcTime;
+		System.out.println("Garbage collections: " + collections
+				+ ", " + collectionTime + " ms in total"
+				+ (collections > 0 ? ", " + collectionTime / collections
+						+ " ms on average." : "."));
+
+		List<String> leaked = new ArrayList<String>();
+		for (Thread thread : Thread.getAllStackTraces().keySet())
+			if (!baselineThreads.contains(thread) && thread.isAlive())
+				leaked.add(thread.getName());
+		System.out.println("Threads started and still running: "
+				+ leaked);
+
+		assertTrue(String.format("Heap grew %.1f MB, more than %d MB.",
+				growth, maxGrowth), growth <= maxGrowth);
+		assertEquals("Threads left running.",
+				Collections.<String> emptyList(), leaked);
+	}
+
+	/**
+	 * Plays one game, alternating one and two players and cycling through
+	 * the difficulties.
+	 *
+	 * @param game
+	 *            Number of the game.
+	 */
+	private void playGame(final int game) {
+		final int playerCode = game % 2 + 1;
+		final int difficultyCode = game / 2 % 3 + 1;
+		final Random random = new Random(this.seed * 31 + game);
+		this.games++;
+		if (playerCode == 2)
+			this.twoPlayerGames++;
+
+		play(new PlayerSelectScreen(WIDTH, HEIGHT, FPS), new Bot() {
+			@Override
+			public void press(final Screen screen) {
+				pressKey(screen.playerCode == playerCode ? KeyEvent.VK_SPACE
+						: KeyEvent.VK_DOWN);
+			}
+		}, null);
+		play(new DifficultySelectScreen(WIDTH, HEIGHT, FPS), new Bot() {
+			@Override
+			public void press(final Screen screen) {
+				pressKey(screen.difficultyCode == difficultyCode
+						? KeyEvent.VK_SPACE : KeyEvent.VK_DOWN);
+			}
+		}, null);
+
+		Bot shooter = new Bot() {
+			/** Direction of player 1. */
+			private boolean movingRight;
+			/** Updates until the direction changes. */
+			private int moveTicks;
+
+			@Override
+			public void press(final Screen screen) {
+				if (--this.moveTicks <= 0) {
+					this.movingRight = random.nextBoolean();
+					this.moveTicks = MIN_MOVE_TICKS
+							+ random.nextInt(MOVE_TICKS_VARIANCE);
+				}
+				if (playerCode == 1) {
+					pressKey(this.movingRight ? KeyEvent.VK_RIGHT
+							: KeyEvent.VK_LEFT);
+				} else {
+					// Player 2 mirrors player 1.
+					pressKey(this.movingRight ? KeyEvent.VK_D
+							: KeyEvent.VK_A);
+					pressKey(this.movingRight ? KeyEvent.VK_LEFT
+							: KeyEvent.VK_RIGHT);
+					pressKey(KeyEvent.VK_ENTER);
+				}
+				pressKey(KeyEvent.VK_SPACE);
+			}
+		};
+
+		List<GameSettings> levelSettings = Core
+				.getLevelSettings(difficultyCode);
+		// The game is seeded by the bot, so that a seed replays the same.
+		GameState gameState = LevelProgression.newGame(playerCode,
+				difficultyCode, random.nextLong());
+		do {
+			GameScreen gameScreen = new GameScreen(gameState,
+					levelSettings.get(gameState.getLevel() - 1),
+					LevelProgression.hasBonusLife(gameState), WIDTH, HEIGHT,
+					FPS);
+			play(gameScreen, shooter,
+					this.levelTicks[gameState.getLevel() - 1]);
+			// The screen was updated, not run, so the score run adds is
+			// added here.
+			gameScreen.addEndOfLevelScore();
+			this.levels++;
+
+			gameState = LevelProgression.nextLevel(gameScreen
+					.getGameState());
+		} while (!LevelProgression.isGameOver(gameState));
+
+		Bot next = new Bot() {
+			@Override
+			public void press(final Screen screen) {
+				pressKey(KeyEvent.VK_SPACE);
+			}
+		};
+		play(new ScoreScreen(WIDTH, HEIGHT, FPS, gameState), next, null);
+		if (playerCode == 2)
+			play(new Player2ScoreScreen(WIDTH, HEIGHT, FPS, gameState), next,
+					null);
+	}
+
+	/**
+	 * Runs a screen until it closes, advancing the simulated clock one
+	 * frame per update.
+	 *
+	 * @param screen
+	 *            Screen to run.
+	 * @param bot
+	 *            Presses the keys before each update.
+	 * @param updateTimes
+	 *            Records the update times, may be null.
+	 */
+	private void play(final Screen screen, final Bot bot,
+			final TickHistogram updateTimes) {
+		screen.initialize();
+		screen.isRunning = true;
+		int screenTicks = 0;
+		while (screen.isRunning) {
+			if (++screenTicks > MAX_SCREEN_TICKS)
+				throw new IllegalStateException(screen.getClass()
+						.getSimpleName() + " still running after "
+						+ MAX_SCREEN_TICKS + " updates.");
+			for (int key : KEYS)
+				this.inputManager.setKeyDown(key, false);
+			bot.press(screen);
+
+			long start = System.nanoTime();
+			screen.update();
+			if (updateTimes != null)
+				updateTimes.record(System.nanoTime() - start);
+			this.clock.advance(1000 / FPS);
+		}
+		this.ticks += screenTicks;
+	}
+
+	/**
+	 * Presses a key until the next update.
+	 *
+	 * @param keyCode
+	 *            Key to press.
+	 */
+	private void pressKey(final int keyCode) {
+		this.inputManager.setKeyDown(keyCode, true);
+	}
+
+	/**
+	 * Collects garbage and measures the heap left.
+	 *
+	 * @param memory
+	 *            Memory bean of the JVM.
+	 * @return Heap in use, in bytes.
+	 */
+	private static long usedHeapAfterGc(final MemoryMXBean memory) {
+		memory.gc();
+		memory.gc();
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+
+	/**
+	 * Counts the garbage collections so far.
+	 *
+	 * @return Collections of every collector.
+	 */
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory
+				.getGarbageCollectorMXBeans())
+			count += Math.max(0, collector.getCollectionCount());
+		return count;
+	}
+
+	/**
+	 * Adds the time spent collecting garbage so far.
+	 *
+	 * @return Time of every collector, in milliseconds.
+	 */
+	private static long gcTime() {
+		long time = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory
+				.getGarbageCollectorMXBeans())
+			time += Math.max(0, collector.getCollectionTime());
+		return time;
+	}
+
+	/**
+	 * Scripted player, presses keys before each update.
+	 */
+	private interface Bot {
+
+		/**
+		 * Presses the keys for the next update.
+		 *
+		 * @param screen
+		 *            Screen about to be updated.
+		 */
+		void press(Screen screen);
+	}
+
+	/**
+	 * Fixed size histogram of update times, so that recording doesn't grow
+	 * the heap being measured.
+	 */
+	private static final class TickHistogram {
+
+		/** Width of each bucket, 10 microseconds. */
+		private static final long BUCKET_NANOS = 10000;
+		/** Number of buckets, up to 50 milliseconds. */
+		private static final int BUCKETS = 5000;
+		/** Nanoseconds in a millisecond. */
+		private static final double NANOS_PER_MILLI = 1000000.0;
+
+		/** Updates in each bucket, the last one also counts longer ones. */
+		private final long[] counts = new long[BUCKETS];
+		/** Updates recorded. */
+		private long count;
+		/** Longest update, in nanoseconds. */
+		private long max;
+
+		/**
+		 * Records an update.
+		 *
+		 * @param nanos
+		 *            Duration of the update, in nanoseconds.
+		 */
+		private void record(final long nanos) {
+			this.counts[(int) Math.min(BUCKETS - 1, nanos / BUCKET_NANOS)]++;
+			this.count++;
+			this.max = Math.max(this.max, nanos);
+		}
+
+		/**
+		 * Getter for the number of updates recorded.
+		 *
+		 * @return Updates recorded.
+		 */
+		private long getCount() {
+			return this.count;
+		}
+
+		/**
+		 * Returns the upper bound of the bucket holding a percentile.
+		 *
+		 * @param percentile
+		 *            Percentile, from 0 to 100.
+		 * @return Duration in milliseconds.
+		 */
+		private double getPercentile(final double percentile) {
+			long rank = (long) Math.ceil(percentile / 100 * this.count);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += this.counts[i];
+				if (seen >= rank)
+					return Math.min((i + 1) * BUCKET_NANOS, this.max)
+							/ NANOS_PER_MILLI;
+			}
+			return this.max / NANOS_PER_MILLI;
+		}
+
+		/**
+		 * Summarizes the updates recorded.
+		 *
+		 * @return Percentiles of the update times, in milliseconds.
+		 */
+		private String summary() {
+			return String.format("p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, "
+					+ "max %.2f ms over %d updates", getPercentile(50),
+					getPercentile(90), getPercentile(99),
+					this.max / NANOS_PER_MILLI, this.count);
+		}
+	}
+}
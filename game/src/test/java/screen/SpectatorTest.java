@@ -0,0 +1,641 @@
+package screen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.DataBufferInt;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import org.junit.Test;
+
+import engine.Core;
+import engine.DrawManager;
+import engine.GameClock;
+import engine.GameContext;
+import engine.GameRandom;
+import engine.GameSettings;
+import engine.GameState;
+import engine.LatencyHistogram;
+import entity.Pair;
+
+/**
+ * Streams a two player game to many spectators over the loopback
+ * interface, without a display. Bots play the game on this thread, in real
+ * time, and the spectators are read on another. Every tenth spectator only
+ * reads five times per second, so it skips updates. A few more spectators
+ * decode every update they get, and each is checked against the update
+ * published. It reports the encoding time, the updates sent and skipped,
+ * the bandwidth, the time from publishing an update to a spectator having
+ * it, and how late the game's updates were. The game is streamed in each
+ * mode; the spectator.count and spectator.seconds system properties set
+ * the light spectators and the time streamed.
+ *
+ */
+public final class SpectatorTest {
+
+	/** Spectators by default, not counting those checked. */
+	private static final int DEFAULT_SPECTATORS = 200;
+	/** Seconds streamed by default, in each mode. */
+	private static final int DEFAULT_SECONDS = 5;
+	/** Spectators that decode and check every update they get. */
+	private static final int CHECKED_SPECTATORS = 2;
+	/** One spectator in this many reads slowly. */
+	private static final int SLOW_SHARE = 10;
+	/** Time between the reads of a slow spectator, in nanoseconds. */
+	private static final long SLOW_READ_NANOS = TimeUnit.MILLISECONDS
+			.toNanos(200);
+	/** Seed of the game and the bots. */
+	private static final long SEED = 1;
+	/** Difficulty played, normal. */
+	private static final int DIFFICULTY = 2;
+	/** Game time of an update, in milliseconds. */
+	private static final int FRAME_TIME = 1000 / GameServer.FPS;
+	/** Real time of an update, in nanoseconds. */
+	private static final long FRAME_NANOS = TimeUnit.SECONDS.toNanos(1)
+			/ GameServer.FPS;
+	/** Frames a bot keeps the same keys for. */
+	private static final int INPUT_FRAMES = 15;
+	/** Input masks there are, every combination of the six keys. */
+	private static final int ACTIONS = 64;
+	/** Updates the game may fall behind before it skips them. */
+	private static final int MAX_LATE_FRAMES = 5;
+	/** Updates played before their lateness is counted, one second. */
+	private static final int WARM_UP_TICKS = GameServer.FPS;
+	/** Publishing times kept, a power of two. */
+	private static final int PUBLISH_TIMES = 4096;
+	/** Bytes in a megabyte. */
+	private static final double MEGABYTE = 1024 * 1024;
+
+	/**
+	 * Streams the game state.
+	 *
+	 * @throws IOException
+	 *             If the loopback connections fail.
+	 * @throws InterruptedException
+	 *             If interrupted while streaming.
+	 */
+	@Test
+	public void streamsStates() throws IOException, InterruptedException {
+		stream(SpectatorServer.Mode.STATE);
+	}
+
+	/**
+	 * Streams the screen drawn.
+	 *
+	 * @throws IOException
+	 *             If the loopback connections fail.
+	 * @throws InterruptedException
+	 *             If interrupted while streaming.
+	 */
+	@Test
+	public void streamsFrames() throws IOException, InterruptedException {
+		stream(SpectatorServer.Mode.FRAME);
+	}
+
+	/**
+	 * Streams the game, prints the figures and checks what the spectators
+	 * got.
+	 *
+	 * @param mode
+	 *            What the spectators are sent.
+	 * @throws IOException
+	 *             If the loopback connections fail.
+	 * @throws InterruptedException
+	 *             If interrupted while streaming.
+	 */
+	private static void stream(final SpectatorServer.Mode mode)
+			throws IOException, InterruptedException {
+		int spectators = Integer.getInteger("spectator.count",
+				DEFAULT_SPECTATORS);
+		int seconds = Integer.getInteger("spectator.seconds",
+				DEFAULT_SECONDS);
+		Logger logger = Core.getLogger();
+		logger.setLevel(Level.WARNING);
+		SpectatorServer server = new SpectatorServer(0, mode, logger);
+		int port = server.bind();
+		AtomicLongArray publishTimes = new AtomicLongArray(PUBLISH_TIMES);
+		Watchers watchers = new Watchers(port, spectators, seconds
+				* GameServer.FPS, publishTimes);
+		Thread watching = new Thread(watchers, "Spectators");
+		watching.start();
+
+		Game game = new Game(mode);
+		LatencyHistogram lateness = new LatencyHistogram();
+		long start = System.nanoTime();
+		long nextTick = start;
+		for (int tick = 0; tick < seconds * GameServer.FPS; tick++) {
+			long wait = nextTick - System.nanoTime();
+			if (wait > 0)
+				TimeUnit.NANOSECONDS.sleep(wait);
+			if (tick >= WARM_UP_TICKS)
+				lateness.record(Math.max(0, System.nanoTime() - nextTick));
+			game.tick();
+			publishTimes.set((server.getPublished() + 1)
+					& (PUBLISH_TIMES - 1), System.nanoTime());
+			server.publish(game.gameScreen);
+			game.record(server.getPublished());
+			nextTick += FRAME_NANOS;
+			if (System.nanoTime() - nextTick > FRAME_NANOS * MAX_LATE_FRAMES)
+				nextTick = System.nanoTime();
+		}
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		server.close();
+		watchers.stop();
+		watching.join();
+		GameClock.useSystemClock();
+
+		LatencyHistogram encode = server.getEncodeTimes();
+		long sent = server.getUpdatesSent();
+		long skipped = server.getUpdatesSkipped();
+		System.out.println(String.format(Locale.ROOT, "%d spectators, %s "
+				+ "mode, %.1f s: %d updates published, %d keyframes, %.1f "
+				+ "bytes on average, encoded in %.3f ms on average, %.3f "
+				+ "ms p99, in %d buffers.", spectators + CHECKED_SPECTATORS,
+				mode, elapsed, server.getPublished(), server.getKeyframes(),
+				server.getAverageUpdateSize(), encode.getMean(),
+				encode.getPercentile(99), server.getBuffersAllocated()));
+		System.out.println(String.format(Locale.ROOT, "Sent %d updates, "
+				+ "skipped %d (%.1f%%), %d keyframes again; %.2f MB/s to "
+				+ "spectators.", sent, skipped, sent + skipped == 0 ? 0.0
+				: 100.0 * skipped / (sent + skipped),
+				server.getKeyframesResent(), server.getBytesSent()
+						/ MEGABYTE / elapsed));
+		LatencyHistogram delivery = watchers.delivery;
+		System.out.println(String.format(Locale.ROOT, "Spectators got "
+				+ "updates %.2f ms after publishing on average, %.2f ms "
+				+ "p50, %.2f ms p99, %.2f ms max; %d of them, at least %d "
+				+ "each.", delivery.getMean(), delivery.getPercentile(50),
+				delivery.getPercentile(99), delivery.getMax(),
+				delivery.getCount(), watchers.fewestUpdates()));
+		System.out.println(String.format(Locale.ROOT, "Game updates "
+				+ "after the first second started %.2f ms late on average, "
+				+ "%.2f ms p99, %.2f ms max.", lateness.getMean(),
+				lateness.getPercentile(99), lateness.getMax()));
+
+		assertEquals("Spectators accepted.", spectators
+				+ CHECKED_SPECTATORS, server.getAccepted());
+		assertTrue("A spectator got no updates.", spectators == 0
+				|| watchers.fewestUpdates() > 0);
+		assertTrue("Message buffers not reused.",
+				server.getBuffersAllocated() < server.getPublished());
+		for (int i = 0; i < CHECKED_SPECTATORS; i++) {
+			SpectatorClient client = watchers.checked[i];
+			long[] crcs = watchers.crcs[i];
+			int checks = 0;
+			int wrong = 0;
+			for (int serial = 1; serial < crcs.length
+					&& serial < game.crcs.length; serial++) {
+				if (crcs[serial] < 0)
+					continue;
+				checks++;
+				if (crcs[serial] != game.crcs[serial])
+					wrong++;
+			}
+			System.out.println(String.format(Locale.ROOT, "Checked "
+					+ "spectator %d: %d updates, %d keyframes, %d skipped, "
+					+ "%d differ from the game.", i + 1, checks,
+					client.getKeyframes(), client.getSkipped(), wrong));
+			String spectator = "Checked spectator " + (i + 1);
+			assertNull(spectator + " failed.", watchers.errors[i]);
+			assertTrue(spectator + " got no updates.", checks > 0);
+			assertEquals(spectator + " updates wrong.", 0, wrong);
+			assertEquals(spectator + " screen differs from its state.", 0,
+					watchers.screenMismatches[i]);
+		}
+	}
+
+	/**
+	 * Checksum of the start of a buffer.
+	 *
+	 * @param crc
+	 *            Checksum to reuse.
+	 * @param buffer
+	 *            Buffer, from 0 to its limit.
+	 * @return CRC32 of the bytes.
+	 */
+	private static long checksum(final CRC32 crc, final ByteBuffer buffer) {
+		crc.reset();
+		buffer.position(0);
+		crc.update(buffer);
+		return crc.getValue();
+	}
+
+	/**
+	 * Game streamed, two players driven by bots on a simulated clock. A
+	 * level over is followed by the next, from the start of the game.
+	 */
+	private static final class Game {
+
+		/** What the spectators are sent. */
+		private final SpectatorServer.Mode mode;
+		/** Managers of the game, drawing offscreen in FRAME mode. */
+		private final GameContext context;
+		/** Simulated clock of the game. */
+		private final GameClock clock;
+		/** Picks the keys of the bots. */
+		private final GameRandom random;
+		/** Update published, written again to check it. */
+		private final ByteBuffer written;
+		/** Checksums the updates. */
+		private final CRC32 crc;
+		/** Keys held by the bots. */
+		private int input;
+		/** Updates played. */
+		private int ticks;
+		/** Screen of the level played. */
+		private GameScreen gameScreen;
+		/** Checksum of each update published, by its number. */
+		private long[] crcs;
+
+		/**
+		 * Constructor, starts the first level.
+		 *
+		 * @param mode
+		 *            What the spectators are sent.
+		 */
+		Game(final SpectatorServer.Mode mode) {
+			this.mode = mode;
+			DrawManager drawManager = mode == SpectatorServer.Mode.FRAME
+					? Core.getOffscreenDrawManager(GameServer.WIDTH,
+							GameServer.HEIGHT) : null;
+			this.context = GameContext.headless(drawManager);
+			this.clock = GameClock.simulate(System.currentTimeMillis());
+			this.random = new GameRandom(SEED);
+			this.written = ByteBuffer.allocate(NetProtocol.MAX_FRAME_SIZE);
+			this.crc = new CRC32();
+			this.crcs = new long[GameServer.FPS];
+			startLevel(1);
+		}
+
+		/**
+		 * Starts a level with a new game state.
+		 *
+		 * @param level
+		 *            Level to play, from 1.
+		 */
+		private void startLevel(final int level) {
+			GameState gameState = new GameState(level, new Pair(0, 0),
+					new Pair(Core.MAX_LIVES, Core.MAX_LIVES), new Pair(0, 0),
+					new Pair(0, 0), 2, DIFFICULTY, SEED);
+			GameSettings settings = Core.getLevelSettings(DIFFICULTY).get(
+					level - 1);
+			this.gameScreen = new GameScreen(gameState, settings, false,
+					GameServer.WIDTH, GameServer.HEIGHT, GameServer.FPS,
+					this.context);
+			this.gameScreen.initialize();
+			this.gameScreen.isRunning = true;
+		}
+
+		/**
+		 * Plays an update, after moving to the next level if the last one
+		 * is over.
+		 */
+		void tick() {
+			this.clock.use();
+			if (!this.gameScreen.isRunning)
+				startLevel(this.gameScreen.getLevel() % Core.NUM_LEVELS + 1);
+			if (this.ticks % INPUT_FRAMES == 0)
+				this.input = this.random.nextInt(ACTIONS);
+			this.clock.advance(FRAME_TIME);
+			this.gameScreen.tick(this.input);
+			this.ticks++;
+		}
+
+		/**
+		 * Keeps the checksum of the update just published.
+		 *
+		 * @param serial
+		 *            Number of the update.
+		 */
+		void record(final int serial) {
+			this.written.clear();
+			if (this.mode == SpectatorServer.Mode.STATE) {
+				this.gameScreen.writeState(this.written);
+			} else {
+				int[] pixels = ((DataBufferInt) this.context
+						.getDrawManager().getOffscreenImage().getRaster()
+						.getDataBuffer()).getData();
+				for (int pixel : pixels)
+					this.written.putInt(pixel & 0xFFFFFF);
+			}
+			this.written.flip();
+			if (serial >= this.crcs.length)
+				this.crcs = Arrays.copyOf(this.crcs, Math.max(serial + 1,
+						this.crcs.length * 2));
+			this.crcs[serial] = checksum(this.crc, this.written);
+		}
+	}
+
+	/**
+	 * Spectators, read on a thread of their own. Most only split what they
+	 * get into messages, the checked ones decode it.
+	 */
+	private static final class Watchers implements Runnable {
+
+		/** Bytes of a message read by the light spectators. */
+		private static final int HEAD_SIZE = 13;
+		/** Bytes read at once. */
+		private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+		/** Time each update was published, by number. */
+		private final AtomicLongArray publishTimes;
+		/** Waits on the light spectators. */
+		private final Selector selector;
+		/** Sockets of the light spectators. */
+		private final SocketChannel[] channels;
+		/** Keys of the light spectators. */
+		private final SelectionKey[] keys;
+		/** Start of the message each light spectator is reading. */
+		private final byte[][] heads;
+		/** Bytes of the start read. */
+		private final int[] headLengths;
+		/** Bytes left of the message after its length. */
+		private final int[] needed;
+		/** Updates each light spectator got. */
+		private final long[] updates;
+		/** Next time each slow spectator reads, 0 for fast ones. */
+		private final long[] nextReads;
+		/** Takes what is read. */
+		private final ByteBuffer readBuffer;
+		/** Spectators that decode every update. */
+		private final SpectatorClient[] checked;
+		/** Checksum of each update the checked spectators got, -1 if none. */
+		private final long[][] crcs;
+		/** Times each checked spectator's screen differed from its state. */
+		private final int[] screenMismatches;
+		/** What made each checked spectator fail, null if nothing. */
+		private final String[] errors;
+		/** Time from publishing an update to a spectator having it. */
+		private final LatencyHistogram delivery;
+		/** If the spectators go on reading, cleared to stop them. */
+		private volatile boolean running;
+
+		/**
+		 * Constructor, connects every spectator.
+		 *
+		 * @param port
+		 *            Port of the server, on the loopback interface.
+		 * @param spectators
+		 *            Light spectators.
+		 * @param updates
+		 *            Updates to be published.
+		 * @param publishTimes
+		 *            Time each update was published, by number.
+		 * @throws IOException
+		 *             If a spectator can't connect.
+		 */
+		Watchers(final int port, final int spectators, final int updates,
+				final AtomicLongArray publishTimes) throws IOException {
+			this.publishTimes = publishTimes;
+			this.selector = Selector.open();
+			this.channels = new SocketChannel[spectators];
+			this.keys = new SelectionKey[spectators];
+			this.heads = new byte[spectators][HEAD_SIZE];
+			this.headLengths = new int[spectators];
+			this.needed = new int[spectators];
+			this.updates = new long[spectators];
+			this.nextReads = new long[spectators];
+			this.readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+			InetSocketAddress address = new InetSocketAddress("127.0.0.1",
+					port);
+			for (int i = 0; i < spectators; i++) {
+				this.channels[i] = SocketChannel.open(address);
+				this.channels[i].configureBlocking(false);
+				this.keys[i] = this.channels[i].register(this.selector,
+						SelectionKey.OP_READ, Integer.valueOf(i));
+				if (i % SLOW_SHARE == SLOW_SHARE - 1)
+					this.nextReads[i] = System.nanoTime();
+			}
+			this.checked = new SpectatorClient[CHECKED_SPECTATORS];
+			this.crcs = new long[CHECKED_SPECTATORS][updates + 2];
+			this.screenMismatches = new int[CHECKED_SPECTATORS];
+			this.errors = new String[CHECKED_SPECTATORS];
+			for (int i = 0; i < CHECKED_SPECTATORS; i++) {
+				this.checked[i] = new SpectatorClient(null);
+				this.checked[i].connect("127.0.0.1", port);
+				Arrays.fill(this.crcs[i], -1);
+			}
+			this.delivery = new LatencyHistogram();
+			this.running = true;
+		}
+
+		/**
+		 * Reads the spectators until stopped.
+		 */
+		@Override
+		public void run() {
+			ByteBuffer state = ByteBuffer.allocate(NetProtocol
+					.MAX_FRAME_SIZE);
+			CRC32 crc = new CRC32();
+			int[] checkedSerials = new int[CHECKED_SPECTATORS];
+			try {
+				while (this.running) {
+					this.selector.select(1);
+					readSelected();
+					wakeSlow();
+					for (int i = 0; i < CHECKED_SPECTATORS; i++)
+						check(i, state, crc, checkedSerials);
+				}
+			} catch (IOException e) {
+				Core.getLogger().log(Level.SEVERE, "Spectators failed.", e);
+			} finally {
+				for (SocketChannel channel : this.channels)
+					close(channel);
+				for (SpectatorClient client : this.checked)
+					client.close();
+				close(this.selector);
+			}
+		}
+
+		/**
+		 * Reads the light spectators selected.
+		 *
+		 * @throws IOException
+		 *             If a socket fails.
+		 */
+		private void readSelected() throws IOException {
+			Iterator<SelectionKey> selected = this.selector.selectedKeys()
+					.iterator();
+			long now = System.nanoTime();
+			while (selected.hasNext()) {
+				SelectionKey key = selected.next();
+				selected.remove();
+				if (!key.isValid() || !key.isReadable())
+					continue;
+				int i = (Integer) key.attachment();
+				int read;
+				do {
+					this.readBuffer.clear();
+					read = this.channels[i].read(this.readBuffer);
+					this.readBuffer.flip();
+					consume(i, now);
+				} while (read == READ_BUFFER_SIZE);
+				if (read < 0) {
+					key.cancel();
+				} else if (this.nextReads[i] != 0) {
+					// A slow spectator waits before reading again.
+					key.interestOps(0);
+					this.nextReads[i] = now + SLOW_READ_NANOS;
+				}
+			}
+		}
+
+		/**
+		 * Lets the slow spectators whose wait is over read again.
+		 */
+		private void wakeSlow() {
+			long now = System.nanoTime();
+			for (int i = SLOW_SHARE - 1; i < this.channels.length;
+					i += SLOW_SHARE)
+				if (this.keys[i].isValid() && this.keys[i].interestOps() == 0
+						&& now - this.nextReads[i] >= 0)
+					this.keys[i].interestOps(SelectionKey.OP_READ);
+		}
+
+		/**
+		 * Splits what a light spectator read into messages.
+		 *
+		 * @param i
+		 *            Index of the spectator.
+		 * @param now
+		 *            Time it was read, in nanoseconds.
+		 */
+		private void consume(final int i, final long now) {
+			ByteBuffer data = this.readBuffer;
+			byte[] head = this.heads[i];
+			while (data.hasRemaining()) {
+				if (this.headLengths[i] < 4) {
+					head[this.headLengths[i]++] = data.get();
+					if (this.headLengths[i] == 4)
+						this.needed[i] = ByteBuffer.wrap(head).getInt(0);
+					continue;
+				}
+				if (this.headLengths[i] < HEAD_SIZE) {
+					head[this.headLengths[i]++] = data.get();
+					this.needed[i]--;
+				} else {
+					int skip = Math.min(this.needed[i], data.remaining());
+					data.position(data.position() + skip);
+					this.needed[i] -= skip;
+				}
+				if (this.needed[i] == 0) {
+					if (received(head, now))
+						this.updates[i]++;
+					this.headLengths[i] = 0;
+				}
+			}
+		}
+
+		/**
+		 * Takes note of a message a light spectator got whole.
+		 *
+		 * @param head
+		 *            Start of the message.
+		 * @param now
+		 *            Time it was read, in nanoseconds.
+		 * @return True if it was an update.
+		 */
+		private boolean received(final byte[] head, final long now) {
+			ByteBuffer message = ByteBuffer.wrap(head);
+			byte type = message.get(4);
+			int serial;
+			if (type == NetProtocol.KEYFRAME)
+				serial = message.getInt(7);
+			else if (type == NetProtocol.FRAME)
+				serial = message.getInt(9);
+			else
+				return false;
+			this.delivery.record(now - this.publishTimes.get(serial
+					& (PUBLISH_TIMES - 1)));
+			return true;
+		}
+
+		/**
+		 * Applies what a checked spectator got, and checks its screen
+		 * holds the update it decoded.
+		 *
+		 * @param i
+		 *            Index of the checked spectator.
+		 * @param state
+		 *            Buffer to write the screen's state to.
+		 * @param crc
+		 *            Checksum to reuse.
+		 * @param serials
+		 *            Last update each checked spectator got.
+		 */
+		private void check(final int i, final ByteBuffer state,
+				final CRC32 crc, final int[] serials) {
+			SpectatorClient client = this.checked[i];
+			if (this.errors[i] != null)
+				return;
+			try {
+				client.update();
+			} catch (IOException e) {
+				this.errors[i] = e.getMessage();
+				return;
+			}
+			int serial = client.getSerial();
+			if (serial == serials[i] || serial >= this.crcs[i].length)
+				return;
+			serials[i] = serial;
+			ByteBuffer decoded = client.getState();
+			this.crcs[i][serial] = checksum(crc, decoded);
+			if (client.getGameScreen() != null) {
+				state.clear();
+				client.getGameScreen().writeState(state);
+				state.flip();
+				if (!state.equals(client.getState()))
+					this.screenMismatches[i]++;
+			}
+		}
+
+		/**
+		 * Fewest updates a light spectator got.
+		 *
+		 * @return Updates, 0 if there are no light spectators.
+		 */
+		long fewestUpdates() {
+			long fewest = this.updates.length == 0 ? 0 : Long.MAX_VALUE;
+			for (long count : this.updates)
+				fewest = Math.min(fewest, count);
+			return fewest;
+		}
+
+		/**
+		 * Stops reading, from any thread.
+		 */
+		void stop() {
+			this.running = false;
+			this.selector.wakeup();
+		}
+
+		/**
+		 * Closes a socket or selector, ignoring failures.
+		 *
+		 * @param closeable
+		 *            What to close.
+		 */
+		private static void close(final Closeable closeable) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				// Nothing left to do with it.
+			}
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package engine;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Implements a pool of direct byte buffers of one size, for the messages of
+ * network games. Direct buffers are written to sockets without a copy, but
+ * are slow to allocate and are freed late, so they are reused instead. A
+ * pool is not thread safe.
+ *
+ */
+public final class BufferPool {
+
+	/** Capacity of the buffers, in bytes. */
+	private final int bufferSize;
+	/** Buffers waiting to be reused. */
+	private final ArrayDeque<ByteBuffer> pool;
+	/** Buffers allocated by the pool. */
+	private int allocated;
+
+	/**
+	 * Constructor, creates an empty pool.
+	 *
+	 * @param bufferSize
+	 *            Capacity of the buffers, in bytes.
+	 */
+	public BufferPool(final int bufferSize) {
+		this.bufferSize = bufferSize;
+		this.pool = new ArrayDeque<ByteBuffer>();
+	}
+
+	/**
+	 * Returns a buffer from the pool if one is available, a new one if there
+	 * isn't.
+	 *
+	 * @return Cleared buffer.
+	 */
+	public ByteBuffer getBuffer() {
+		ByteBuffer buffer = this.pool.poll();
+		if (buffer == null) {
+			buffer = ByteBuffer.allocateDirect(this.bufferSize);
+			this.allocated++;
+		}
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Adds a buffer to the available ones.
+	 *
+	 * @param buffer
+	 *            Buffer to recycle, got from this pool.
+	 */
+	public void recycle(final ByteBuffer buffer) {
+		this.pool.push(buffer);
+	}
+
+	/**
+	 * Getter for the capacity of the buffers.
+	 *
+	 * @return Capacity, in bytes.
+	 */
+	public int getBufferSize() {
+		return this.bufferSize;
+	}
+
+	/**
+	 * Getter for the number of buffers waiting to be reused.
+	 *
+	 * @return Buffers in the pool.
+	 */
+	public int getPoolSize() {
+		return this.pool.size();
+	}
+
+	/**
+	 * Getter for the number of buffers the pool has allocated.
+	 *
+	 * @return Buffers allocated, in the pool or in use.
+	 */
+	public int getAllocated() {
+		return this.allocated;
+	}
+}
@@ -0,0 +1,83 @@
+package engine;
+
+/**
+ * Flight recorder event of a collision pass, every bullet checked against
+ * the ships it can hit.
+ *
+ */
+public final class CollisionEvent extends FlightEvent {
+
+	/** Type of the events. */
+	private static final Type TYPE = new Type("invaders.Collisions",
+			"Collision Pass", new String[] { "Invaders", "Game Loop" },
+			"Bullets checked against the ships", false,
+			new Field(int.class, "bullets", "Bullets", false),
+			new Field(int.class, "enemies", "Enemies", false),
+			new Field(int.class, "hits", "Hits", false));
+
+	/** Bullets on screen at the start of the pass. */
+	private int bullets;
+
+	/** Enemy ships left in the formation at the start of the pass. */
+	private int enemies;
+
+	/** Bullets that hit a ship. */
+	private int hits;
+
+	/**
+	 * Constructor, creates an event that isn't started.
+	 */
+	public CollisionEvent() {
+		super(TYPE);
+	}
+
+	/**
+	 * Checks if a recording takes the events, so that collision passes can skip
+	 * creating one when none does.
+	 *
+	 * @return True if the events may be recorded.
+	 */
+	public static boolean isEnabled() {
+		return TYPE.isEnabled();
+	}
+
+	/**
+	 * Setter for the bullets checked.
+	 *
+	 * @param bullets
+	 *            Bullets on screen.
+	 */
+	public void setBullets(final int bullets) {
+		this.bullets = bullets;
+	}
+
+	/**
+	 * Setter for the enemy ships checked.
+	 *
+	 * @param enemies
+	 *            Enemy ships in the formation.
+	 */
+	public void setEnemies(final int enemies) {
+		this.enemies = enemies;
+	}
+
+	/**
+	 * Setter for the hits.
+	 *
+	 * @param hits
+	 *            Bullets that hit a ship.
+	 */
+	public void setHits(final int hits) {
+		this.hits = hits;
+	}
+
+	/**
+	 * Returns the values of the fields.
+	 *
+	 * @return Bullets, enemies, hits.
+	 */
+	@Override
+	protected Object[] getValues() {
+		return new Object[] { this.bullets, this.enemies, this.hits };
+	}
+}
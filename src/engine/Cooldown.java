@@ -1,5 +1,7 @@
 package engine;
 
+import java.nio.ByteBuffer;
+
 /**
  * Imposes a cooldown period between two actions.
  * 
@@ -16,6 +18,8 @@ public class Cooldown {
 	private int duration;
 	/** Beginning time. */
 	private long time;
+	/** Source of the duration variations, null if variance is 0. */
+	private final GameRandom random;
 
 	/**
 	 * Constructor, established the time until the action can be performed
@@ -29,6 +33,7 @@ public class Cooldown {
 		this.variance = 0;
 		this.duration = milliseconds;
 		this.time = 0;
+		this.random = null;
 	}
 
 	/**
@@ -39,11 +44,15 @@ public class Cooldown {
 	 *            Time until cooldown period is finished.
 	 * @param variance
 	 *            Variance in the cooldown period.
+	 * @param random
+	 *            Source of the variations.
 	 */
-	protected Cooldown(final int milliseconds, final int variance) {
+	protected Cooldown(final int milliseconds, final int variance,
+			final GameRandom random) {
 		this.milliseconds = milliseconds;
 		this.variance = variance;
 		this.time = 0;
+		this.random = random;
 	}
 
 	/**
@@ -53,7 +62,7 @@ public class Cooldown {
 	 */
 	public final boolean checkFinished() {
 		if ((this.time == 0)
-				|| this.time + this.duration < System.currentTimeMillis())
+				|| this.time + this.duration < GameClock.currentTimeMillis())
 			return true;
 		return false;
 	}
@@ -62,10 +71,32 @@ public class Cooldown {
 	 * Restarts the cooldown.
 	 */
 	public final void reset() {
-		this.time = System.currentTimeMillis();
+		this.time = GameClock.currentTimeMillis();
 		if (this.variance != 0)
 			this.duration = (this.milliseconds - this.variance)
-					+ (int) (Math.random()
+					+ (int) (this.random.nextDouble()
 							* (this.milliseconds + this.variance));
 	}
+
+	/**
+	 * Writes the state of the cooldown, for it to be restored later.
+	 * 
+	 * @param buffer
+	 *            Buffer to write to.
+	 */
+	public final void writeState(final ByteBuffer buffer) {
+		buffer.putLong(this.time);
+		buffer.putInt(this.duration);
+	}
+
+	/**
+	 * Restores the state written by writeState.
+	 * 
+	 * @param buffer
+	 *            Buffer to read from.
+	 */
+	public final void readState(final ByteBuffer buffer) {
+		this.time = buffer.getLong();
+		this.duration = buffer.getInt();
+	}
 }
@@ -3,7 +3,11 @@ package engine;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.FileHandler;
 import java.util.logging.Handler;
@@ -12,7 +16,7 @@ import java.util.logging.Logger;
 
 import screen.*;
 
-import entity.Pair;
+import entity.BulletPool;
 
 /**
  * Implements core game logic.
@@ -30,11 +34,13 @@ public final class Core {
 	private static final int FPS = 60;
 
 	/** Max lives. */
-	private static final int MAX_LIVES = 3;
+	public static final int MAX_LIVES = 3;
 	/** Levels between extra life. */
-	private static final int EXTRA_LIFE_FRECUENCY = 3;
+	public static final int EXTRA_LIFE_FRECUENCY = 3;
 	/** Total number of levels. */
-	private static final int NUM_LEVELS = 7;
+	public static final int NUM_LEVELS = 7;
+	/** Threads loading resources at startup. */
+	private static final int LOADER_THREADS = 2;
 	
 	/** Difficulty settings for easy level 1. */
 	private static final GameSettings SETTINGS_EASY_LEVEL_1 =
@@ -115,6 +121,10 @@ public final class Core {
 	private static Handler fileHandler;
 	/** Logger handler for printing to console. */
 	private static ConsoleHandler consoleHandler;
+	/** Background warm-up of the game loop, null if disabled. */
+	private static WarmUp warmUp;
+	/** Bullets of the game played in the window. */
+	private static final BulletPool BULLET_POOL = new BulletPool();
 
 
 	/**
@@ -142,11 +152,104 @@ public final class Core {
 			e.printStackTrace();
 		}
 
+		getMetrics().publish(LOGGER);
+		MetricsServer.startIfEnabled(getMetrics(), LOGGER);
+		// The last game events are kept for crashes, and written on exit.
+		getEventRecorder();
+		Thread.setDefaultUncaughtExceptionHandler(
+				new Thread.UncaughtExceptionHandler() {
+					@Override
+					public void uncaughtException(final Thread thread,
+							final Throwable exception) {
+						LOGGER.log(Level.SEVERE, "Uncaught exception on "
+								+ thread.getName() + ".", exception);
+						dumpEvents(new File("crash_events"));
+					}
+				});
+		// Reports are written next to the log, however the game ends.
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					getHitchDetector().writeReport(new File("hitches"));
+				} catch (IOException e) {
+					LOGGER.warning("Couldn't write the hitch report!");
+				}
+				dumpEvents(new File("events"));
+			}
+		}, "ExitReports"));
+
+		// Resources are loaded in the background while the window opens.
+		getFileManager().preloadLeaderboard();
+		ExecutorService loader = Executors.newFixedThreadPool(
+				LOADER_THREADS, new ThreadFactory() {
+					@Override
+					public Thread newThread(final Runnable runnable) {
+						Thread thread = new Thread(runnable, "Loader");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		getDrawManager().loadResources(loader);
+		loader.shutdown();
+
 		frame = new Frame(WIDTH, HEIGHT);
 		DrawManager.getInstance().setFrame(frame);
 		int width = frame.getWidth();
 		int height = frame.getHeight();
-		
+
+		String replayPath = System.getProperty("invaders.replay");
+		if (replayPath != null) {
+			// Playback mode, the replay is shown instead of the menu.
+			try {
+				Replay replay = getFileManager().loadReplay(
+						new File(replayPath));
+				if (!replay.getLevels().isEmpty()) {
+					currentScreen = new ReplayScreen(replay, width, height,
+							FPS);
+					LOGGER.info("Starting replay of " + replayPath + ".");
+					frame.setScreen(currentScreen);
+				}
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Couldn't load the replay!", e);
+			}
+			fileHandler.flush();
+			fileHandler.close();
+			System.exit(0);
+		}
+
+		String hostAddress = System.getProperty("invaders.connect");
+		if (hostAddress != null) {
+			// Network mode, the game played on a host instead of the menu.
+			int colon = hostAddress.lastIndexOf(':');
+			String host = colon < 0 ? hostAddress : hostAddress.substring(0,
+					colon);
+			int port = colon < 0 ? NetHost.DEFAULT_PORT : Integer
+					.parseInt(hostAddress.substring(colon + 1));
+			currentScreen = new NetScreen(host, port, width, height, FPS);
+			LOGGER.info("Connecting to " + host + ":" + port + ".");
+			frame.setScreen(currentScreen);
+			fileHandler.flush();
+			fileHandler.close();
+			System.exit(0);
+		}
+
+		String spectateAddress = System.getProperty("invaders.spectate");
+		if (spectateAddress != null) {
+			// Spectator mode, a game streamed by a server is watched.
+			int colon = spectateAddress.lastIndexOf(':');
+			String host = colon < 0 ? spectateAddress : spectateAddress
+					.substring(0, colon);
+			int port = colon < 0 ? SpectatorServer.DEFAULT_PORT : Integer
+					.parseInt(spectateAddress.substring(colon + 1));
+			currentScreen = new SpectatorScreen(host, port, width, height,
+					FPS);
+			frame.setScreen(currentScreen);
+			fileHandler.flush();
+			fileHandler.close();
+			System.exit(0);
+		}
+
 		GameState gameState;
 
 		int returnCode = 1;
@@ -156,7 +259,13 @@ public final class Core {
 		do {
 			switch (returnCode) {
 				case 1:
-					// Main menu.
+					// Main menu, the game loop warms up meanwhile.
+					if (warmUp == null && Boolean.parseBoolean(
+							System.getProperty("invaders.warmup", "true"))) {
+						warmUp = new WarmUp(SETTINGS_MEDIUM_LEVEL_1, width,
+								height, FPS);
+						warmUp.start();
+					}
 					currentScreen = new TitleScreen(width, height, FPS);
 					LOGGER.info("Starting " + WIDTH + "x" + HEIGHT
 							+ " title screen at " + FPS + " fps.");
@@ -165,6 +274,8 @@ public final class Core {
 					break;
 				case 2:
 					// Game & score.
+					if (warmUp != null)
+						warmUp.stop();
 					gameSettings = new ArrayList<GameSettings>();
 					currentScreen = new PlayerSelectScreen(width, height, FPS);
 					LOGGER.info("Starting " + WIDTH + "x" + HEIGHT
@@ -178,291 +289,38 @@ public final class Core {
 					difficultyCode = frame.setScreen(currentScreen);
 					LOGGER.info("Closing difficulty select screen.");
 
-					gameState = new GameState(1, new Pair(0, 0),
-							new Pair(MAX_LIVES, MAX_LIVES),
-							new Pair(0, 0),
-							new Pair(0, 0),
-							playerCode);
-
-					if (playerCode == 1) {
-						if (difficultyCode == 1) {
-							gameSettings.add(SETTINGS_EASY_LEVEL_1);
-							gameSettings.add(SETTINGS_EASY_LEVEL_2);
-							gameSettings.add(SETTINGS_EASY_LEVEL_3);
-							gameSettings.add(SETTINGS_EASY_LEVEL_4);
-							gameSettings.add(SETTINGS_EASY_LEVEL_5);
-							gameSettings.add(SETTINGS_EASY_LEVEL_6);
-							gameSettings.add(SETTINGS_EASY_LEVEL_7);
-							do {
-								// One extra live every few levels.
-								boolean bonusLife = gameState.getLevel()
-										% EXTRA_LIFE_FRECUENCY == 0
-										&& gameState.getLivesRemaining().getPlayer1Value() < MAX_LIVES;
-
-								currentScreen = new GameScreen(gameState,
-										gameSettings.get(gameState.getLevel() - 1),
-										bonusLife, width, height, FPS);
-								LOGGER.info("Starting " + WIDTH + "x" + HEIGHT
-										+ " game screen at " + FPS + " fps.");
-								frame.setScreen(currentScreen);
-								LOGGER.info("Closing game screen.");
-
-								gameState = ((GameScreen) currentScreen).getGameState();
-
-								gameState = new GameState(gameState.getLevel() + 1,
-										gameState.getScore(),
-										gameState.getLivesRemaining(),
-										gameState.getBulletsShot(),
-										gameState.getShipsDestroyed(),
-                    					playerCode);
-
-							} while (gameState.getLivesRemaining().getPlayer1Value() > 0
-									&& gameState.getLevel() <= NUM_LEVELS);
-
-							LOGGER.info("Starting " + WIDTH + "x" + HEIGHT
-									+ " score screen at " + FPS + " fps, with a score of "
-									+ gameState.getScore() + ", "
-									+ gameState.getLivesRemaining() + " lives remaining, "
-									+ gameState.getBulletsShot() + " bullets shot and "
-									+ gameState.getShipsDestroyed() + " ships destroyed.");
-							currentScreen = new ScoreScreen(width, height, FPS, gameState);
-							returnCode = frame.setScreen(currentScreen);
-							break;
-						} else if (difficultyCode == 2) {
-							gameSettings.add(SETTINGS_MEDIUM_LEVEL_1);
-							gameSettings.add(SETTINGS_MEDIUM_LEVEL_2);
-							gameSettings.add(SETTINGS_MEDIUM_LEVEL_3);
-							gameSettings.add(SETTINGS_MEDIUM_LEVEL_4);
-							gameSettings.add(SETTINGS_MEDIUM_LEVEL_5);
-							gameSettings.add(SETTINGS_MEDIUM_LEVEL_6);
-							gameSettings.add(SETTINGS_MEDIUM_LEVEL_7);
-							do {
-								// One extra live every few levels.
-								boolean bonusLife = gameState.getLevel()
-										% EXTRA_LIFE_FRECUENCY == 0
-										&& gameState.getLivesRemaining().getPlayer1Value() < MAX_LIVES;
-
-								currentScreen = new GameScreen(gameState,
-										gameSettings.get(gameState.getLevel() - 1),
-										bonusLife, width, height, FPS);
-								LOGGER.info("Starting " + WIDTH + "x" + HEIGHT
-										+ " game screen at " + FPS + " fps.");
-								frame.setScreen(currentScreen);
-								LOGGER.info("Closing game screen.");
-
-								gameState = ((GameScreen) currentScreen).getGameState();
-
-								gameState = new GameState(gameState.getLevel() + 1,
-										gameState.getScore(),
-										gameState.getLivesRemaining(),
-										gameState.getBulletsShot(),
-										gameState.getShipsDestroyed(),
-										playerCode);
-
-							} while (gameState.getLivesRemaining().getPlayer1Value() > 0
-									&& gameState.getLevel() <= NUM_LEVELS);
-
-							LOGGER.info("Starting " + WIDTH + "x" + HEIGHT
-									+ " score screen at " + FPS + " fps, with a score of "
-									+ gameState.getScore() + ", "
-									+ gameState.getLivesRemaining() + " lives remaining, "
-									+ gameState.getBulletsShot() + " bullets shot and "
-									+ gameState.getShipsDestroyed() + " ships destroyed.");
-							currentScreen = new ScoreScreen(width, height, FPS, gameState);
-							returnCode = frame.setScreen(currentScreen);
-							break;
-						} else if (difficultyCode == 3) {
-							gameSettings.add(SETTINGS_DIFFICULT_LEVEL_1);
-							gameSettings.add(SETTINGS_DIFFICULT_LEVEL_2);
-							gameSettings.add(SETTINGS_DIFFICULT_LEVEL_3);
-							gameSettings.add(SETTINGS_DIFFICULT_LEVEL_4);
-							gameSettings.add(SETTINGS_DIFFICULT_LEVEL_5);
-							gameSettings.add(SETTINGS_DIFFICULT_LEVEL_6);
-							gameSettings.add(SETTINGS_DIFFICULT_LEVEL_7);
-							do {
-								// One extra live every few levels.
-								boolean bonusLife = gameState.getLevel()
-										% EXTRA_LIFE_FRECUENCY == 0
-										&& gameState.getLivesRemaining().getPlayer1Value() < MAX_LIVES;
-
-								currentScreen = new GameScreen(gameState,
-										gameSettings.get(gameState.getLevel() - 1),
-										bonusLife, width, height, FPS);
-								LOGGER.info("Starting " + WIDTH + "x" + HEIGHT
-										+ " game screen at " + FPS + " fps.");
-								frame.setScreen(currentScreen);
-								LOGGER.info("Closing game screen.");
-
-								gameState = ((GameScreen) currentScreen).getGameState();
-
-								gameState = new GameState(gameState.getLevel() + 1,
-										gameState.getScore(),
-										gameState.getLivesRemaining(),
-										gameState.getBulletsShot(),
-										gameState.getShipsDestroyed(),
-										playerCode);
-
-							} while (gameState.getLivesRemaining().getPlayer1Value() > 0
-									&& gameState.getLevel() <= NUM_LEVELS);
-
-							LOGGER.info("Starting " + WIDTH + "x" + HEIGHT
-									+ " score screen at " + FPS + " fps, with a score of "
-									+ gameState.getScore() + ", "
-									+ gameState.getLivesRemaining() + " lives remaining, "
-									+ gameState.getBulletsShot() + " bullets shot and "
-									+ gameState.getShipsDestroyed() + " ships destroyed.");
-							currentScreen = new ScoreScreen(width, height, FPS, gameState);
-							returnCode = frame.setScreen(currentScreen);
-							break;
-						}
-					}
-					else if (playerCode == 2) {
-						if (difficultyCode == 1) {
-							gameSettings.add(SETTINGS_EASY_LEVEL_1);
-							gameSettings.add(SETTINGS_EASY_LEVEL_2);
-							gameSettings.add(SETTINGS_EASY_LEVEL_3);
-							gameSettings.add(SETTINGS_EASY_LEVEL_4);
-							gameSettings.add(SETTINGS_EASY_LEVEL_5);
-							gameSettings.add(SETTINGS_EASY_LEVEL_6);
-							gameSettings.add(SETTINGS_EASY_LEVEL_7);
-							do {
-								// One extra live every few levels.
-								boolean bonusLife = gameState.getLevel()
-										% EXTRA_LIFE_FRECUENCY == 0
-										&& gameState.getLivesRemaining().getPlayer1Value() < MAX_LIVES;
-
-								currentScreen = new GameScreen(gameState,
-										gameSettings.get(gameState.getLevel() - 1),
-										bonusLife, width, height, FPS);
-								LOGGER.info("Starting " + WIDTH + "x" + HEIGHT
-										+ " game screen at " + FPS + " fps.");
-								frame.setScreen(currentScreen);
-								LOGGER.info("Closing game screen.");
-
-								gameState = ((GameScreen) currentScreen).getGameState();
-
-								gameState = new GameState(gameState.getLevel() + 1,
-										gameState.getScore(),
-										gameState.getLivesRemaining(),
-										gameState.getBulletsShot(),
-										gameState.getShipsDestroyed(),
-										playerCode);
-
-							} while ((gameState.getLivesRemaining().getPlayer1Value() > 0
-									|| gameState.getLivesRemaining().getPlayer2Value() > 0)
-									&& gameState.getLevel() <= NUM_LEVELS);
-
-							LOGGER.info("Starting " + WIDTH + "x" + HEIGHT
-									+ " score screen at " + FPS + " fps, with a score of "
-									+ gameState.getScore() + ", "
-									+ gameState.getLivesRemaining() + " lives remaining, "
-									+ gameState.getBulletsShot() + " bullets shot and "
-									+ gameState.getShipsDestroyed() + " ships destroyed.");
-							currentScreen = new ScoreScreen(width, height, FPS, gameState);
-							frame.setScreen(currentScreen);
-							currentScreen = new Player2ScoreScreen(width, height, FPS, gameState);
-							returnCode = frame.setScreen(currentScreen);
-							break;
-						} else if (difficultyCode == 2) {
-							gameSettings.add(SETTINGS_MEDIUM_LEVEL_1);
-							gameSettings.add(SETTINGS_MEDIUM_LEVEL_2);
-							gameSettings.add(SETTINGS_MEDIUM_LEVEL_3);
-							gameSettings.add(SETTINGS_MEDIUM_LEVEL_4);
-							gameSettings.add(SETTINGS_MEDIUM_LEVEL_5);
-							gameSettings.add(SETTINGS_MEDIUM_LEVEL_6);
-							gameSettings.add(SETTINGS_MEDIUM_LEVEL_7);
-							do {
-								// One extra live every few levels.
-								boolean bonusLife = gameState.getLevel()
-										% EXTRA_LIFE_FRECUENCY == 0
-										&& gameState.getLivesRemaining().getPlayer1Value() < MAX_LIVES;
-
-								currentScreen = new GameScreen(gameState,
-										gameSettings.get(gameState.getLevel() - 1),
-										bonusLife, width, height, FPS);
-								LOGGER.info("Starting " + WIDTH + "x" + HEIGHT
-										+ " game screen at " + FPS + " fps.");
-								frame.setScreen(currentScreen);
-								LOGGER.info("Closing game screen.");
-
-								gameState = ((GameScreen) currentScreen).getGameState();
-
-								gameState = new GameState(gameState.getLevel() + 1,
-										gameState.getScore(),
-										gameState.getLivesRemaining(),
-										gameState.getBulletsShot(),
-										gameState.getShipsDestroyed(),
-										playerCode);
-
-							} while (
-									(gameState.getLivesRemaining().getPlayer1Value() > 0
-									|| gameState.getLivesRemaining().getPlayer2Value() > 0)
-									&& gameState.getLevel() <= NUM_LEVELS
-							);
-
-							LOGGER.info("Starting " + WIDTH + "x" + HEIGHT
-									+ " score screen at " + FPS + " fps, with a score of "
-									+ gameState.getScore() + ", "
-									+ gameState.getLivesRemaining() + " lives remaining, "
-									+ gameState.getBulletsShot() + " bullets shot and "
-									+ gameState.getShipsDestroyed() + " ships destroyed.");
-							currentScreen = new ScoreScreen(width, height, FPS, gameState);
-							frame.setScreen(currentScreen);
-							currentScreen = new Player2ScoreScreen(width, height, FPS, gameState);
-							returnCode = frame.setScreen(currentScreen);
-							LOGGER.info("Closing score screen.");
-							break;
-						} else if (difficultyCode == 3) {
-							gameSettings.add(SETTINGS_DIFFICULT_LEVEL_1);
-							gameSettings.add(SETTINGS_DIFFICULT_LEVEL_2);
-							gameSettings.add(SETTINGS_DIFFICULT_LEVEL_3);
-							gameSettings.add(SETTINGS_DIFFICULT_LEVEL_4);
-							gameSettings.add(SETTINGS_DIFFICULT_LEVEL_5);
-							gameSettings.add(SETTINGS_DIFFICULT_LEVEL_6);
-							gameSettings.add(SETTINGS_DIFFICULT_LEVEL_7);
-							do {
-								// One extra live every few levels.
-								boolean bonusLife = gameState.getLevel()
-										% EXTRA_LIFE_FRECUENCY == 0
-										&& gameState.getLivesRemaining().getPlayer1Value() < MAX_LIVES;
-
-								currentScreen = new GameScreen(gameState,
-										gameSettings.get(gameState.getLevel() - 1),
-										bonusLife, width, height, FPS);
-								LOGGER.info("Starting " + WIDTH + "x" + HEIGHT
-										+ " game screen at " + FPS + " fps.");
-								frame.setScreen(currentScreen);
-								LOGGER.info("Closing game screen.");
-
-								gameState = ((GameScreen) currentScreen).getGameState();
-
-								gameState = new GameState(gameState.getLevel() + 1,
-										gameState.getScore(),
-										gameState.getLivesRemaining(),
-										gameState.getBulletsShot(),
-										gameState.getShipsDestroyed(),
-										playerCode);
-
-							} while (
-									(gameState.getLivesRemaining().getPlayer1Value() > 0
-									|| gameState.getLivesRemaining().getPlayer2Value() > 0)
-									&& gameState.getLevel() <= NUM_LEVELS
-							);
-
-							LOGGER.info("Starting " + WIDTH + "x" + HEIGHT
-									+ " score screen at " + FPS + " fps, with a score of "
-									+ gameState.getScore() + ", "
-									+ gameState.getLivesRemaining() + " lives remaining, "
-									+ gameState.getBulletsShot() + " bullets shot and "
-									+ gameState.getShipsDestroyed() + " ships destroyed.");
-							currentScreen = new ScoreScreen(width, height, FPS, gameState);
-							frame.setScreen(currentScreen);
-							currentScreen = new Player2ScoreScreen(width, height, FPS, gameState);
-							returnCode = frame.setScreen(currentScreen);
-							LOGGER.info("Closing score screen.");
-							break;
-						}
+					gameState = LevelProgression.newGame(playerCode,
+							difficultyCode, GameRandom.newSeed());
+					gameSettings.addAll(getLevelSettings(difficultyCode));
+					do {
+						currentScreen = new GameScreen(gameState,
+								gameSettings.get(gameState.getLevel() - 1),
+								LevelProgression.hasBonusLife(gameState),
+								width, height, FPS);
+						LOGGER.info("Starting " + WIDTH + "x" + HEIGHT
+								+ " game screen at " + FPS + " fps.");
+						frame.setScreen(currentScreen);
+						LOGGER.info("Closing game screen.");
+
+						gameState = LevelProgression.nextLevel(
+								((GameScreen) currentScreen).getGameState());
+					} while (!LevelProgression.isGameOver(gameState));
+
+					LOGGER.info("Starting " + WIDTH + "x" + HEIGHT
+							+ " score screen at " + FPS + " fps, with a score of "
+							+ gameState.getScore() + ", "
+							+ gameState.getLivesRemaining() + " lives remaining, "
+							+ gameState.getBulletsShot() + " bullets shot and "
+							+ gameState.getShipsDestroyed() + " ships destroyed.");
+					currentScreen = new ScoreScreen(width, height, FPS, gameState);
+					if (playerCode == 2) {
+						frame.setScreen(currentScreen);
+						currentScreen = new Player2ScoreScreen(width, height,
+								FPS, gameState);
 					}
+					returnCode = frame.setScreen(currentScreen);
+					LOGGER.info("Closing score screen.");
+					break;
 			case 3:
 				// Reset High Score.
 				currentScreen = new ScoreResetSelectScreen(width, height, FPS);
@@ -470,12 +328,14 @@ public final class Core {
 						+ " score reset screen at " + FPS + " fps.");
 				resetCode = frame.setScreen(currentScreen);
 				if (resetCode == 1) {
-					List<Score> highScores = new ArrayList<Score>();
 					try {
-						getFileManager().saveHighScores(highScores);
-
+						Leaderboard highScores = getFileManager()
+								.loadLeaderboard().copy();
+						highScores.clear();
+						getFileManager().saveLeaderboard(highScores);
+					} catch (IOException e) {
+						LOGGER.warning("Couldn't reset high scores!");
 					}
-					catch (IOException e) { }
 				}
 				currentScreen = new TitleScreen(width, height, FPS);
 				LOGGER.info("Starting " + WIDTH + "x" + HEIGHT
@@ -502,6 +362,21 @@ public final class Core {
 		System.exit(0);
 	}
 
+	/**
+	 * Writes the last game events to a file, for EventRecorder to decode.
+	 * 
+	 * @param file
+	 *            File to write to.
+	 */
+	private static void dumpEvents(final File file) {
+		try {
+			getEventRecorder().dump(file);
+			LOGGER.info("Last game events written to " + file + ".");
+		} catch (IOException e) {
+			LOGGER.warning("Couldn't write the game events!");
+		}
+	}
+
 	/**
 	 * Constructor, not called.
 	 */
@@ -509,6 +384,31 @@ public final class Core {
 
 	}
 
+	/**
+	 * Returns the settings of each level of a difficulty.
+	 * 
+	 * @param difficultyCode
+	 *            Difficulty code, 1 to 3.
+	 * @return Settings of the levels, in order.
+	 */
+	public static List<GameSettings> getLevelSettings(
+			final int difficultyCode) {
+		if (difficultyCode == 1)
+			return Arrays.asList(SETTINGS_EASY_LEVEL_1, SETTINGS_EASY_LEVEL_2,
+					SETTINGS_EASY_LEVEL_3, SETTINGS_EASY_LEVEL_4,
+					SETTINGS_EASY_LEVEL_5, SETTINGS_EASY_LEVEL_6,
+					SETTINGS_EASY_LEVEL_7);
+		if (difficultyCode == 2)
+			return Arrays.asList(SETTINGS_MEDIUM_LEVEL_1,
+					SETTINGS_MEDIUM_LEVEL_2, SETTINGS_MEDIUM_LEVEL_3,
+					SETTINGS_MEDIUM_LEVEL_4, SETTINGS_MEDIUM_LEVEL_5,
+					SETTINGS_MEDIUM_LEVEL_6, SETTINGS_MEDIUM_LEVEL_7);
+		return Arrays.asList(SETTINGS_DIFFICULT_LEVEL_1,
+				SETTINGS_DIFFICULT_LEVEL_2, SETTINGS_DIFFICULT_LEVEL_3,
+				SETTINGS_DIFFICULT_LEVEL_4, SETTINGS_DIFFICULT_LEVEL_5,
+				SETTINGS_DIFFICULT_LEVEL_6, SETTINGS_DIFFICULT_LEVEL_7);
+	}
+
 	/**
 	 * Controls access to the logger.
 	 * 
@@ -536,6 +436,87 @@ public final class Core {
 		return InputManager.getInstance();
 	}
 
+	/**
+	 * Controls creation of drawing managers that draw on an image instead of
+	 * the frame.
+	 * 
+	 * @param width
+	 *            Width of the image.
+	 * @param height
+	 *            Height of the image.
+	 * @return A new offscreen draw manager.
+	 */
+	public static DrawManager getOffscreenDrawManager(final int width,
+			final int height) {
+		return DrawManager.newOffscreenInstance(width, height);
+	}
+
+	/**
+	 * Controls creation of input managers not attached to the keyboard.
+	 * 
+	 * @return A new virtual input manager.
+	 */
+	public static InputManager getVirtualInputManager() {
+		return InputManager.newVirtualInstance();
+	}
+
+	/**
+	 * Controls access to the game metrics.
+	 * 
+	 * @return Application metrics registry.
+	 */
+	public static Metrics getMetrics() {
+		return Metrics.getInstance();
+	}
+
+	/**
+	 * Controls access to the hitch detector.
+	 * 
+	 * @return Application hitch detector.
+	 */
+	public static HitchDetector getHitchDetector() {
+		return HitchDetector.getInstance();
+	}
+
+	/**
+	 * Controls access to the game event recorder.
+	 * 
+	 * @return Application event recorder.
+	 */
+	public static EventRecorder getEventRecorder() {
+		return EventRecorder.getInstance();
+	}
+
+	/**
+	 * Controls access to the replay recorder.
+	 * 
+	 * @return Application replay recorder, null if games are not recorded.
+	 */
+	public static ReplayRecorder getReplayRecorder() {
+		return ReplayRecorder.getInstance();
+	}
+
+	/**
+	 * Controls access to the bullet pool of the game in the window.
+	 * 
+	 * @return Application bullet pool.
+	 */
+	public static BulletPool getBulletPool() {
+		return BULLET_POOL;
+	}
+
+	/**
+	 * Returns the context of the game played in the window, made of the
+	 * application managers.
+	 * 
+	 * @return Application game context.
+	 */
+	public static GameContext getGameContext() {
+		return new GameContext(getDrawManager(), getInputManager(),
+				getLogger(), getMetrics(), getEventRecorder(),
+				getReplayRecorder(), getBulletPool());
+	}
+
 	/**
 	 * Controls access to the file manager.
 	 * 
@@ -563,10 +544,12 @@ public final class Core {
 	 *            Duration of the cooldown.
 	 * @param variance
 	 *            Variation in the cooldown duration.
+	 * @param random
+	 *            Source of the variations, of the game session.
 	 * @return A new cooldown with variance.
 	 */
 	public static Cooldown getVariableCooldown(final int milliseconds,
-			final int variance) {
-		return new Cooldown(milliseconds, variance);
+			final int variance, final GameRandom random) {
+		return new Cooldown(milliseconds, variance, random);
 	}
 }
\ No newline at end of file
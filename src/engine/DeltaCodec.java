@@ -0,0 +1,176 @@
+package engine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes a game state as its difference from an earlier one. The bytes of
+ * both are XORed, so what didn't change is zero, and the result is written
+ * as runs: a count of unchanged bytes, a count of changed bytes, then the
+ * changed bytes themselves. Counts are variable length, one byte up to 127.
+ *
+ * Only absolute positions of the states are used, their positions and
+ * limits are left as they are.
+ *
+ */
+public final class DeltaCodec {
+
+	/**
+	 * Largest encoding of a state of the given length, whatever the base.
+	 *
+	 * @param length
+	 *            Length of the state, in bytes.
+	 * @return Bytes the delta may take.
+	 */
+	public static int maxEncodedLength(final int length) {
+		// At worst every other byte changed: two counts per changed byte.
+		return 7 + 2 * length + length / 128;
+	}
+
+	/**
+	 * Private constructor, static methods only.
+	 */
+	private DeltaCodec() {
+
+	}
+
+	/**
+	 * Writes the difference between two states. Bytes past the end of the
+	 * base are taken as zero, so an empty base encodes a whole state.
+	 *
+	 * @param base
+	 *            State the receiver has, its first baseLength bytes.
+	 * @param baseLength
+	 *            Length of the base.
+	 * @param state
+	 *            New state, its first length bytes.
+	 * @param length
+	 *            Length of the new state.
+	 * @param out
+	 *            Buffer to write the delta to, at its position.
+	 */
+	public static void encode(final ByteBuffer base, final int baseLength,
+			final ByteBuffer state, final int length, final ByteBuffer out) {
+		putVarInt(out, length);
+		int i = 0;
+		while (i < length) {
+			int unchanged = i;
+			while (unchanged < length
+					&& diff(base, baseLength, state, unchanged) == 0)
+				unchanged++;
+			int changed = unchanged;
+			while (changed < length
+					&& diff(base, baseLength, state, changed) != 0)
+				changed++;
+			putVarInt(out, unchanged - i);
+			putVarInt(out, changed - unchanged);
+			for (int j = unchanged; j < changed; j++)
+				out.put(diff(base, baseLength, state, j));
+			i = changed;
+		}
+	}
+
+	/**
+	 * Applies a delta to a state, giving the new one.
+	 *
+	 * @param base
+	 *            State the delta was encoded against, its first baseLength
+	 *            bytes.
+	 * @param baseLength
+	 *            Length of the base.
+	 * @param in
+	 *            Delta, read from its position.
+	 * @param state
+	 *            Buffer to write the new state to, from 0. May be the base.
+	 * @return Length of the new state.
+	 */
+	public static int decode(final ByteBuffer base, final int baseLength,
+			final ByteBuffer in, final ByteBuffer state) {
+		int length = getVarInt(in);
+		if (length < 0 || length > state.capacity())
+			throw new IllegalArgumentException("State too large: "
+					+ length);
+		int i = 0;
+		while (i < length) {
+			int unchanged = getVarInt(in);
+			int changed = getVarInt(in);
+			if (unchanged < 0 || changed < 0
+					|| unchanged + changed > length - i)
+				throw new IllegalArgumentException("Corrupt delta.");
+			for (int end = i + unchanged; i < end; i++)
+				state.put(i, baseByte(base, baseLength, i));
+			for (int end = i + changed; i < end; i++)
+				state.put(i,
+						(byte) (baseByte(base, baseLength, i) ^ in.get()));
+		}
+		return length;
+	}
+
+	/**
+	 * Difference between a byte of the new state and the base.
+	 *
+	 * @param base
+	 *            Base state.
+	 * @param baseLength
+	 *            Length of the base.
+	 * @param state
+	 *            New state.
+	 * @param index
+	 *            Position of the byte.
+	 * @return XOR of both bytes, zero if unchanged.
+	 */
+	private static byte diff(final ByteBuffer base, final int baseLength,
+			final ByteBuffer state, final int index) {
+		return (byte) (state.get(index) ^ baseByte(base, baseLength, index));
+	}
+
+	/**
+	 * Reads a byte of the base, zero past its end.
+	 *
+	 * @param base
+	 *            Base state.
+	 * @param baseLength
+	 *            Length of the base.
+	 * @param index
+	 *            Position of the byte.
+	 * @return Byte of the base.
+	 */
+	private static byte baseByte(final ByteBuffer base, final int baseLength,
+			final int index) {
+		return index < baseLength ? base.get(index) : 0;
+	}
+
+	/**
+	 * Writes a non negative number, seven bits per byte, lowest first.
+	 *
+	 * @param out
+	 *            Buffer to write to.
+	 * @param value
+	 *            Number to write.
+	 */
+	private static void putVarInt(final ByteBuffer out, final int value) {
+		int rest = value;
+		while ((rest & ~0x7F) != 0) {
+			out.put((byte) ((rest & 0x7F) | 0x80));
+			rest >>>= 7;
+		}
+		out.put((byte) rest);
+	}
+
+	/**
+	 * Reads a number written by putVarInt.
+	 *
+	 * @param in
+	 *            Buffer to read from.
+	 * @return Number read.
+	 */
+	private static int getVarInt(final ByteBuffer in) {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte b = in.get();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IllegalArgumentException("Corrupt delta.");
+	}
+}
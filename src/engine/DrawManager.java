@@ -7,9 +7,16 @@ import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.util.LinkedHashMap;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Logger;
 
 import screen.Screen;
@@ -26,29 +33,46 @@ public final class DrawManager {
 
 	/** Singleton instance of the class. */
 	private static DrawManager instance;
-	/** Current frame. */
-	private static Frame frame;
 	/** FileManager instance. */
 	private static FileManager fileManager;
 	/** Application logger. */
 	private static Logger logger;
-	/** Graphics context. */
-	private static Graphics graphics;
-	/** Buffer Graphics. */
-	private static Graphics backBufferGraphics;
-	/** Buffer image. */
-	private static BufferedImage backBuffer;
 	/** Normal sized font. */
 	private static Font fontRegular;
-	/** Normal sized font properties. */
-	private static FontMetrics fontRegularMetrics;
 	/** Big sized font. */
 	private static Font fontBig;
-	/** Big sized font properties. */
-	private static FontMetrics fontBigMetrics;
 
 	/** Sprite types mapped to their images. */
-	private static Map<SpriteType, boolean[][]> spriteMap;
+	private static volatile Map<SpriteType, boolean[][]> spriteMap;
+	/** Sprites being loaded. */
+	private static Future<Map<SpriteType, boolean[][]>> spritesLoad;
+	/** Font being loaded. */
+	private static Future<Font> fontLoad;
+	/** If the font sizes have been derived. */
+	private static volatile boolean fontsReady;
+	/** If the first frame has been shown. */
+	private static boolean firstFrameShown;
+	/** If the startup times have been logged. */
+	private static boolean startupLogged;
+
+	/** Current frame, null when drawing offscreen. */
+	private Frame frame;
+	/** Image standing in for the frame when drawing offscreen. */
+	private BufferedImage offscreenImage;
+	/** Graphics context. */
+	private Graphics graphics;
+	/** Buffer Graphics. */
+	private Graphics backBufferGraphics;
+	/** Buffer image. */
+	private BufferedImage backBuffer;
+	/** Normal sized font properties. */
+	private FontMetrics fontRegularMetrics;
+	/** Big sized font properties. */
+	private FontMetrics fontBigMetrics;
+	/** Time the drawing in progress started, in nanoseconds. */
+	private long drawingStart;
+	/** Total time spent drawing, in nanoseconds. */
+	private long drawingTime;
 
 	/** Sprite types. */
 	public static enum SpriteType {
@@ -83,42 +107,177 @@ public final class DrawManager {
 	/** Default color for player2's ship.*/
 	private Color SHIP2_COLOR = Color.RED;
 
+	/** Font of the performance overlay. */
+	private static final Font OVERLAY_FONT = new Font(Font.MONOSPACED,
+			Font.PLAIN, 10);
+	/** Translucent background of the performance overlay. */
+	private static final Color OVERLAY_BACKGROUND = new Color(0, 0, 0, 192);
+	/** Left edge of the performance overlay. */
+	private static final int OVERLAY_X = 8;
+	/** Top edge of the performance overlay. */
+	private static final int OVERLAY_Y = 45;
+	/** Height of a line of the performance overlay. */
+	private static final int OVERLAY_LINE_HEIGHT = 12;
+	/** Height of the frame time graph. */
+	private static final int OVERLAY_GRAPH_HEIGHT = 40;
+
+	/** Statistics shown by the performance overlay. */
+	private PerformanceOverlay performanceOverlay;
+	/** Text of a line of the performance overlay. */
+	private char[] overlayText;
+	/** Frames shown in the window. */
+	private LongAdder framesRendered;
+
 	/**
 	 * Private constructor.
 	 */
 	private DrawManager() {
 		fileManager = Core.getFileManager();
 		logger = Core.getLogger();
+		performanceOverlay = new PerformanceOverlay();
+		overlayText = new char[PerformanceOverlay.LINE_LENGTH];
+		framesRendered = Core.getMetrics().counter(Metrics.FRAMES_RENDERED);
+	}
+
+	/**
+	 * Starts loading the sprites and the font in the background. Drawing
+	 * only waits for them the first time they are needed.
+	 * 
+	 * @param executor
+	 *            Executor to load the resources on.
+	 */
+	public void loadResources(final Executor executor) {
 		logger.info("Started loading resources.");
 
+		FutureTask<Map<SpriteType, boolean[][]>> sprites =
+				new FutureTask<Map<SpriteType, boolean[][]>>(
+						new Callable<Map<SpriteType, boolean[][]>>() {
+					@Override
+					public Map<SpriteType, boolean[][]> call()
+							throws IOException {
+						Map<SpriteType, boolean[][]> loaded = fileManager
+								.loadSprite();
+						logger.info("Finished loading the sprites.");
+						return loaded;
+					}
+				});
+		FutureTask<Font> font = new FutureTask<Font>(new Callable<Font>() {
+			@Override
+			public Font call() throws IOException, FontFormatException {
+				Font loaded = fileManager.loadFont();
+				logger.info("Finished loading the fonts.");
+				return loaded;
+			}
+		});
+
+		synchronized (DrawManager.class) {
+			spritesLoad = sprites;
+			fontLoad = font;
+		}
+		executor.execute(sprites);
+		executor.execute(font);
+	}
+
+	/**
+	 * Loads the resources on the calling thread if nobody started loading
+	 * them, as happens when drawing without a frame.
+	 */
+	private static synchronized void ensureLoading() {
+		if (spritesLoad == null)
+			getInstance().loadResources(new Executor() {
+				@Override
+				public void execute(final Runnable command) {
+					command.run();
+				}
+			});
+	}
+
+	/**
+	 * Returns the sprites, waiting for them to load the first time.
+	 * 
+	 * @return Sprite types mapped to their images.
+	 */
+	private static Map<SpriteType, boolean[][]> getSpriteMap() {
+		Map<SpriteType, boolean[][]> sprites = spriteMap;
+		if (sprites == null)
+			sprites = awaitSprites();
+		return sprites;
+	}
+
+	/**
+	 * Waits for the sprites to load. Several drawing threads may ask for them
+	 * at the same time.
+	 * 
+	 * @return Sprite types mapped to their images.
+	 */
+	private static synchronized Map<SpriteType, boolean[][]> awaitSprites() {
+		if (spriteMap == null) {
+			ensureLoading();
+			Map<SpriteType, boolean[][]> sprites = await(spritesLoad);
+			if (sprites == null)
+				sprites = new EnumMap<SpriteType, boolean[][]>(
+						SpriteType.class);
+			spriteMap = sprites;
+		}
+		return spriteMap;
+	}
+
+	/**
+	 * Derives the font sizes, waiting for the font to load the first time.
+	 */
+	private static synchronized void awaitFonts() {
+		if (!fontsReady) {
+			ensureLoading();
+			Font font = await(fontLoad);
+			// The font is downloaded for releases, plain checkouts lack it.
+			if (font == null)
+				font = new Font(Font.MONOSPACED, Font.PLAIN, 1);
+			fontRegular = font.deriveFont(14f);
+			fontBig = font.deriveFont(24f);
+			fontsReady = true;
+		}
+	}
+
+	/**
+	 * Waits for a resource to load.
+	 * 
+	 * @param load
+	 *            Resource being loaded.
+	 * @param <T>
+	 *            Type of the resource.
+	 * @return Loaded resource, null if loading failed.
+	 */
+	private static <T> T await(final Future<T> load) {
 		try {
-			spriteMap = new LinkedHashMap<SpriteType, boolean[][]>();
-
-			spriteMap.put(SpriteType.Ship, new boolean[13][8]);
-			spriteMap.put(SpriteType.ShipDestroyed, new boolean[13][8]);
-			spriteMap.put(SpriteType.Bullet, new boolean[3][5]);
-			spriteMap.put(SpriteType.EnemyBullet, new boolean[3][5]);
-			spriteMap.put(SpriteType.EnemyShipA1, new boolean[12][8]);
-			spriteMap.put(SpriteType.EnemyShipA2, new boolean[12][8]);
-			spriteMap.put(SpriteType.EnemyShipB1, new boolean[12][8]);
-			spriteMap.put(SpriteType.EnemyShipB2, new boolean[12][8]);
-			spriteMap.put(SpriteType.EnemyShipC1, new boolean[12][8]);
-			spriteMap.put(SpriteType.EnemyShipC2, new boolean[12][8]);
-			spriteMap.put(SpriteType.EnemyShipSpecial, new boolean[16][7]);
-			spriteMap.put(SpriteType.Explosion, new boolean[13][7]);
-
-			fileManager.loadSprite(spriteMap);
-			logger.info("Finished loading the sprites.");
-
-			// Font loading.
-			fontRegular = fileManager.loadFont(14f);
-			fontBig = fileManager.loadFont(24f);
-			logger.info("Finished loading the fonts.");
-
-		} catch (IOException e) {
-			logger.warning("Loading failed.");
-		} catch (FontFormatException e) {
-			logger.warning("Font formating failed.");
+			return load.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof FontFormatException)
+				logger.warning("Font formating failed.");
+			else
+				logger.warning("Loading failed.");
+		}
+		return null;
+	}
+
+	/**
+	 * Logs how long after the JVM started the first frame was shown, and the
+	 * first frame with every startup resource ready.
+	 */
+	private static void logStartupTimes() {
+		if (!firstFrameShown) {
+			firstFrameShown = true;
+			logger.info("Time to first frame: "
+					+ ManagementFactory.getRuntimeMXBean().getUptime()
+					+ " ms.");
+		}
+		if (spritesLoad != null && spritesLoad.isDone() && fontsReady
+				&& fileManager.isLeaderboardLoaded()) {
+			startupLogged = true;
+			logger.info("Time to interactive: "
+					+ ManagementFactory.getRuntimeMXBean().getUptime()
+					+ " ms.");
 		}
 	}
 
@@ -133,6 +292,50 @@ public final class DrawManager {
 		return instance;
 	}
 
+	/**
+	 * Returns a new DrawManager that draws on an image of the given size
+	 * instead of the frame. Sprites and fonts are shared with the rest of
+	 * the application.
+	 * 
+	 * @param width
+	 *            Width of the image to draw on.
+	 * @param height
+	 *            Height of the image to draw on.
+	 * @return New offscreen DrawManager.
+	 */
+	protected static DrawManager newOffscreenInstance(final int width,
+			final int height) {
+		getInstance();
+		DrawManager drawManager = new DrawManager();
+		drawManager.setOffscreen(width, height);
+		return drawManager;
+	}
+
+	/**
+	 * Draws on an image of the given size instead of a frame, for running
+	 * without a display.
+	 * 
+	 * @param width
+	 *            Width of the image to draw on.
+	 * @param height
+	 *            Height of the image to draw on.
+	 */
+	public void setOffscreen(final int width, final int height) {
+		this.frame = null;
+		this.offscreenImage = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+	}
+
+	/**
+	 * Getter for the image drawn on instead of a frame.
+	 * 
+	 * @return Image holding the last frame drawn, null if drawing on a
+	 *         frame.
+	 */
+	public BufferedImage getOffscreenImage() {
+		return this.offscreenImage;
+	}
+
 	/**
 	 * Sets the frame to draw the image on.
 	 * 
@@ -140,7 +343,7 @@ public final class DrawManager {
 	 *            Frame to draw on.
 	 */
 	public void setFrame(final Frame currentFrame) {
-		frame = currentFrame;
+		this.frame = currentFrame;
 	}
 
 	/**
@@ -151,16 +354,22 @@ public final class DrawManager {
 	 *            Screen to draw in.
 	 */
 	public void initDrawing(final Screen screen) {
+		drawingStart = System.nanoTime();
 		backBuffer = new BufferedImage(screen.getWidth(), screen.getHeight(),
 				BufferedImage.TYPE_INT_RGB);
 
-		graphics = frame.getGraphics();
+		if (frame != null)
+			graphics = frame.getGraphics();
+		else
+			graphics = offscreenImage.getGraphics();
 		backBufferGraphics = backBuffer.getGraphics();
 
 		backBufferGraphics.setColor(Color.BLACK);
 		backBufferGraphics
 				.fillRect(0, 0, screen.getWidth(), screen.getHeight());
 
+		if (!fontsReady)
+			awaitFonts();
 		fontRegularMetrics = backBufferGraphics.getFontMetrics(fontRegular);
 		fontBigMetrics = backBufferGraphics.getFontMetrics(fontBig);
 
@@ -175,8 +384,101 @@ public final class DrawManager {
 	 *            Screen to draw on.
 	 */
 	public void completeDrawing(final Screen screen) {
+		if (performanceOverlay.isVisible())
+			drawPerformanceOverlay(screen);
+
+		if (frame == null) {
+			graphics.drawImage(backBuffer, 0, 0, null);
+			drawingTime += System.nanoTime() - drawingStart;
+			return;
+		}
+
 		graphics.drawImage(backBuffer, frame.getInsets().left,
 				frame.getInsets().top, frame);
+		drawingTime += System.nanoTime() - drawingStart;
+		framesRendered.increment();
+
+		if (!startupLogged)
+			logStartupTimes();
+	}
+
+	/**
+	 * Draws the performance overlay on top of the screen: frame time
+	 * statistics, counts of the screen, memory figures and a graph of the
+	 * time taken by the last frames. Allocates nothing.
+	 * 
+	 * @param screen
+	 *            Screen to draw on.
+	 */
+	private void drawPerformanceOverlay(final Screen screen) {
+		performanceOverlay.setCounts(screen.getEntityCount(),
+				screen.getBulletCount(), screen.getPooledBulletCount());
+
+		int graphTop = OVERLAY_Y + PerformanceOverlay.LINES
+				* OVERLAY_LINE_HEIGHT + 4;
+		backBufferGraphics.setColor(OVERLAY_BACKGROUND);
+		backBufferGraphics.fillRect(OVERLAY_X - 4, OVERLAY_Y - 4,
+				screen.getWidth() - 2 * (OVERLAY_X - 4),
+				graphTop + OVERLAY_GRAPH_HEIGHT + 4 - (OVERLAY_Y - 4));
+
+		backBufferGraphics.setFont(OVERLAY_FONT);
+		backBufferGraphics.setColor(Color.WHITE);
+		for (int line = 0; line < PerformanceOverlay.LINES; line++) {
+			int length = performanceOverlay.writeLine(line, overlayText);
+			backBufferGraphics.drawChars(overlayText, 0, length, OVERLAY_X,
+					OVERLAY_Y + (line + 1) * OVERLAY_LINE_HEIGHT - 2);
+		}
+
+		// The graph is two frame budgets high, the line marks one budget.
+		long budget = 1000000000L / screen.getFps();
+		int graphBottom = graphTop + OVERLAY_GRAPH_HEIGHT;
+		int count = performanceOverlay.getCount();
+		for (int i = 0; i < count; i++) {
+			long frameTime = performanceOverlay.getFrameTime(i);
+			int height = (int) Math.min(OVERLAY_GRAPH_HEIGHT, frameTime
+					* OVERLAY_GRAPH_HEIGHT / (2 * budget));
+			int x = OVERLAY_X + PerformanceOverlay.FRAMES - count + i;
+			backBufferGraphics.setColor(frameTime > budget ? Color.RED
+					: Color.GREEN);
+			backBufferGraphics.drawLine(x, graphBottom, x, graphBottom
+					- height);
+		}
+		backBufferGraphics.setColor(Color.GRAY);
+		backBufferGraphics.drawLine(OVERLAY_X, graphBottom
+				- OVERLAY_GRAPH_HEIGHT / 2, OVERLAY_X
+				+ PerformanceOverlay.FRAMES, graphBottom
+				- OVERLAY_GRAPH_HEIGHT / 2);
+	}
+
+	/**
+	 * Getter for the statistics of the performance overlay.
+	 * 
+	 * @return Performance overlay of this draw manager.
+	 */
+	public PerformanceOverlay getPerformanceOverlay() {
+		return performanceOverlay;
+	}
+
+	/**
+	 * Returns the total time spent drawing, from the start of each drawing
+	 * to its completion. The difference between two calls is the time spent
+	 * drawing in between.
+	 * 
+	 * @return Time spent drawing, in nanoseconds.
+	 */
+	public long getDrawingTime() {
+		return drawingTime;
+	}
+
+	/**
+	 * Draws an image from the top left corner of the screen, such as a
+	 * frame received from elsewhere.
+	 * 
+	 * @param image
+	 *            Image to draw.
+	 */
+	public void drawImage(final BufferedImage image) {
+		backBufferGraphics.drawImage(image, 0, 0, null);
 	}
 
 	/**
@@ -191,7 +493,7 @@ public final class DrawManager {
 	 */
 	public void drawEntity(final Entity entity, final int positionX,
 			final int positionY) {
-		boolean[][] image = spriteMap.get(entity.getSpriteType());
+		boolean[][] image = getSpriteMap().get(entity.getSpriteType());
 
 		backBufferGraphics.setColor(entity.getColor());
 		for (int i = 0; i < image.length; i++)
@@ -532,10 +834,14 @@ public final class DrawManager {
 	 * 
 	 * @param screen
 	 *            Screen to draw on.
+	 * @param boardName
+	 *            Name of the leaderboard shown.
 	 */
-	public void drawHighScoreMenu(final Screen screen) {
+	public void drawHighScoreMenu(final Screen screen,
+			final String boardName) {
 		String highScoreString = "High Scores";
 		String instructionsString = "Press Space to return";
+		String boardString = "< " + boardName + " >";
 
 		backBufferGraphics.setColor(Color.GREEN);
 		drawCenteredBigString(screen, highScoreString, screen.getHeight() / 8);
@@ -543,6 +849,10 @@ public final class DrawManager {
 		backBufferGraphics.setColor(Color.GRAY);
 		drawCenteredRegularString(screen, instructionsString,
 				screen.getHeight() / 5);
+
+		backBufferGraphics.setColor(Color.GREEN);
+		drawCenteredRegularString(screen, boardString, screen.getHeight()
+				/ 4);
 	}
 
 	/**
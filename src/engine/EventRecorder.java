@@ -0,0 +1,335 @@
+package engine;
+
+import java.awt.event.KeyEvent;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps the last game events in a fixed size ring buffer outside the heap,
+ * so that they can be written to disk when the game crashes or exits.
+ * Events are compact binary records: inputs, spawns, hits, screen changes
+ * and frame times. Recording one is a counter increment and a few writes,
+ * cheap enough to always be on.
+ *
+ * Run as a program to turn a dump into text.
+ *
+ */
+public final class EventRecorder {
+
+	/** Marks the start of a dump, "EVTR". */
+	private static final int MAGIC = 0x45565452;
+	/** Version of the dump format. */
+	private static final int VERSION = 2;
+	/** Bytes taken by each event. */
+	private static final int RECORD_SIZE = 32;
+	/** Events kept, a few minutes of play. */
+	private static final int DEFAULT_CAPACITY = 1 << 16;
+	/** Nanoseconds in a microsecond. */
+	private static final long NANOS_PER_MICRO = 1000;
+	/** Screen codes whose names are kept, from 0. */
+	private static final int MAX_SCREENS = 64;
+
+	/** Frame, with its length, update time and draw time in microseconds. */
+	public static final int FRAME = 1;
+	/** Key pressed or released, with its key code and 1 or 0. */
+	public static final int KEY = 2;
+	/** Entity appeared, with its kind and position. */
+	public static final int SPAWN = 3;
+	/** Entity hit, with its kind and position. */
+	public static final int HIT = 4;
+	/** Screen shown, with its code and the level. */
+	public static final int SCREEN = 5;
+
+	/** Player 1 ship. */
+	public static final int PLAYER1 = 1;
+	/** Player 2 ship. */
+	public static final int PLAYER2 = 2;
+	/** Enemy ship of the formation. */
+	public static final int ENEMY = 3;
+	/** Special enemy ship. */
+	public static final int SPECIAL = 4;
+	/** Enemy formation, its position is the number of ships and 0. */
+	public static final int FORMATION = 5;
+	/** Bullets, their position is the number fired in the frame and 0. */
+	public static final int BULLETS = 6;
+
+	/** Names of the event types, by code. */
+	private static final String[] TYPES = { "?", "FRAME", "KEY", "SPAWN",
+			"HIT", "SCREEN" };
+	/** Names of the entity kinds, by code. */
+	private static final String[] ENTITIES = { "?", "player 1", "player 2",
+			"enemy", "special", "formation", "bullets" };
+
+	/** Singleton instance of the class. */
+	private static EventRecorder instance;
+
+	/** Ring of records, outside the heap. */
+	private final ByteBuffer buffer;
+	/** Number of records the ring holds. */
+	private final int capacity;
+	/** Sequence number of the next event. */
+	private final AtomicLong next;
+	/** Time the recorder was created, in nanoseconds. */
+	private final long startNanos;
+	/** Time the recorder was created, in milliseconds since epoch. */
+	private final long startMillis;
+	/** Names of the screens recorded, by code, written with the dump. */
+	private final AtomicReferenceArray<String> screens;
+
+	/**
+	 * Constructor, allocates the ring.
+	 *
+	 * @param capacity
+	 *            Number of events kept.
+	 */
+	public EventRecorder(final int capacity) {
+		this.capacity = capacity;
+		this.buffer = ByteBuffer.allocateDirect(capacity * RECORD_SIZE);
+		this.next = new AtomicLong();
+		this.startNanos = System.nanoTime();
+		this.startMillis = System.currentTimeMillis();
+		this.screens = new AtomicReferenceArray<String>(MAX_SCREENS);
+	}
+
+	/**
+	 * Returns shared instance of EventRecorder.
+	 *
+	 * @return Shared instance of EventRecorder.
+	 */
+	protected static synchronized EventRecorder getInstance() {
+		if (instance == null)
+			instance = new EventRecorder(DEFAULT_CAPACITY);
+		return instance;
+	}
+
+	/**
+	 * Records an event. Safe to call from any thread.
+	 *
+	 * @param type
+	 *            Event type.
+	 * @param a
+	 *            First value.
+	 * @param b
+	 *            Second value.
+	 * @param c
+	 *            Third value.
+	 */
+	public void record(final int type, final int a, final int b,
+			final int c) {
+		long sequence = this.next.getAndIncrement();
+		int position = (int) (sequence % this.capacity) * RECORD_SIZE;
+		// Sequence numbers are kept one up, so that 0 marks an empty slot.
+		this.buffer.putLong(position, sequence + 1);
+		this.buffer.putLong(position + 8, System.nanoTime()
+				- this.startNanos);
+		this.buffer.putInt(position + 16, type);
+		this.buffer.putInt(position + 20, a);
+		this.buffer.putInt(position + 24, b);
+		this.buffer.putInt(position + 28, c);
+	}
+
+	/**
+	 * Records a frame.
+	 *
+	 * @param frameTime
+	 *            Length of the frame, in nanoseconds.
+	 * @param updateTime
+	 *            Time updating, in nanoseconds.
+	 * @param drawTime
+	 *            Time drawing, in nanoseconds.
+	 */
+	public void recordFrame(final long frameTime, final long updateTime,
+			final long drawTime) {
+		record(FRAME, (int) (frameTime / NANOS_PER_MICRO),
+				(int) (updateTime / NANOS_PER_MICRO),
+				(int) (drawTime / NANOS_PER_MICRO));
+	}
+
+	/**
+	 * Records a screen being shown. Its name is kept for the dump, so
+	 * that any screen reads back by name.
+	 *
+	 * @param code
+	 *            Code of the screen, the same in every version.
+	 * @param screen
+	 *            Name of the screen class.
+	 * @param level
+	 *            Level being played, 0 outside the game.
+	 */
+	public void recordScreen(final int code, final String screen,
+			final int level) {
+		if (code >= 0 && code < MAX_SCREENS)
+			this.screens.set(code, screen);
+		record(SCREEN, code, level, 0);
+	}
+
+	/**
+	 * Writes the recorded events to a file.
+	 *
+	 * @param file
+	 *            File to write to.
+	 * @throws IOException
+	 *             In case of writing problems.
+	 */
+	public void dump(final File file) throws IOException {
+		FileOutputStream outputStream = new FileOutputStream(file);
+		try {
+			DataOutputStream header = new DataOutputStream(outputStream);
+			header.writeInt(MAGIC);
+			header.writeInt(VERSION);
+			header.writeInt(RECORD_SIZE);
+			header.writeInt(this.capacity);
+			header.writeLong(this.next.get());
+			header.writeLong(this.startMillis);
+			for (int code = 0; code < MAX_SCREENS; code++) {
+				String screen = this.screens.get(code);
+				if (screen != null) {
+					header.writeInt(code);
+					header.writeUTF(screen);
+				}
+			}
+			header.writeInt(-1);
+			header.flush();
+
+			ByteBuffer records = this.buffer.duplicate();
+			records.clear();
+			FileChannel channel = outputStream.getChannel();
+			while (records.hasRemaining())
+				channel.write(records);
+		} finally {
+			outputStream.close();
+		}
+	}
+
+	/**
+	 * Turns a dump into text, one event per line, oldest first.
+	 *
+	 * @param inputStream
+	 *            Dump to read.
+	 * @param out
+	 *            Stream to write the text to.
+	 * @throws IOException
+	 *             In case of reading problems or if it is not a dump.
+	 */
+	public static void decode(final InputStream inputStream,
+			final PrintStream out) throws IOException {
+		DataInputStream input = new DataInputStream(inputStream);
+		if (input.readInt() != MAGIC || input.readInt() != VERSION
+				|| input.readInt() != RECORD_SIZE)
+			throw new IOException("Not an event dump.");
+		int capacity = input.readInt();
+		long next = input.readLong();
+		long startMillis = input.readLong();
+		String[] screens = new String[MAX_SCREENS];
+		for (int code = input.readInt(); code >= 0; code = input
+				.readInt()) {
+			if (code >= MAX_SCREENS)
+				throw new IOException("Not an event dump.");
+			screens[code] = input.readUTF();
+		}
+
+		long[][] records = new long[capacity][];
+		for (int i = 0; i < capacity; i++) {
+			long sequence = input.readLong() - 1;
+			long time = input.readLong();
+			records[i] = new long[] { sequence, time, input.readInt(),
+					input.readInt(), input.readInt(), input.readInt() };
+		}
+
+		out.println("Recording started at "
+				+ new Date(startMillis) + ", " + next + " events, "
+				+ Math.min(next, capacity) + " kept.");
+		long first = Math.max(0, next - capacity);
+		for (long sequence = first; sequence < next; sequence++) {
+			long[] record = records[(int) (sequence % capacity)];
+			// Slots being written when the dump was taken are skipped.
+			if (record[0] != sequence)
+				continue;
+			out.println(String.format("%10.3f s  %s", record[1] / 1e9,
+					describe((int) record[2], (int) record[3],
+							(int) record[4], (int) record[5], screens)));
+		}
+	}
+
+	/**
+	 * Describes an event.
+	 *
+	 * @param type
+	 *            Event type.
+	 * @param a
+	 *            First value.
+	 * @param b
+	 *            Second value.
+	 * @param c
+	 *            Third value.
+	 * @param screens
+	 *            Names of the screens, by code.
+	 * @return Text of the event.
+	 */
+	private static String describe(final int type, final int a, final int b,
+			final int c, final String[] screens) {
+		String name = type > 0 && type < TYPES.length ? TYPES[type] : "?";
+		switch (type) {
+		case FRAME:
+			return String.format("%-6s %.3f ms, update %.3f ms, "
+					+ "draw %.3f ms", name, a / 1000.0, b / 1000.0,
+					c / 1000.0);
+		case KEY:
+			return String.format("%-6s %s %s", name,
+					KeyEvent.getKeyText(a),
+					b == 1 ? "down" : "up");
+		case SPAWN:
+			if (a == FORMATION)
+				return String.format("%-6s formation of %d ships", name, b);
+			if (a == BULLETS)
+				return String.format("%-6s %d bullets", name, b);
+			return String.format("%-6s %s at %d, %d", name,
+					a > 0 && a < ENTITIES.length ? ENTITIES[a] : "?", b, c);
+		case HIT:
+			return String.format("%-6s %s at %d, %d", name,
+					a > 0 && a < ENTITIES.length ? ENTITIES[a] : "?", b, c);
+		case SCREEN:
+			return String.format("%-6s %s%s", name,
+					a >= 0 && a < screens.length && screens[a] != null
+							? screens[a] : "?",
+					b > 0 ? " level " + b : "");
+		default:
+			return String.format("%-6s %d %d %d", name, a, b, c);
+		}
+	}
+
+	/**
+	 * Turns a dump into text on the standard output.
+	 *
+	 * @param args
+	 *            Path of the dump.
+	 * @throws IOException
+	 *             In case of reading problems.
+	 */
+	public static void main(final String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("Usage: EventRecorder <event dump>");
+			System.exit(1);
+		}
+
+		InputStream inputStream = new BufferedInputStream(
+				new FileInputStream(args[0]));
+		try {
+			decode(inputStream, System.out);
+		} finally {
+			inputStream.close();
+		}
+	}
+}
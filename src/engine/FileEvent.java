@@ -0,0 +1,66 @@
+package engine;
+
+/**
+ * Flight recorder event of a file or resource being loaded or saved.
+ *
+ */
+final class FileEvent extends FlightEvent {
+
+	/** Type of the events. */
+	private static final Type TYPE = new Type("invaders.File",
+			"File Access", new String[] { "Invaders", "Files" },
+			"Load or save of a game file", true,
+			new Field(String.class, "operation", "Operation", false),
+			new Field(String.class, "path", "Path", false),
+			new Field(boolean.class, "succeeded", "Succeeded", false));
+
+	/** What is being done, as in "Load sprites". */
+	private String operation;
+
+	/** File path or resource name. */
+	private String path;
+
+	/** If the operation completed without errors. */
+	private boolean succeeded;
+
+	/**
+	 * Constructor, describes the operation.
+	 *
+	 * @param operation
+	 *            What is being done.
+	 * @param path
+	 *            File path or resource name.
+	 */
+	FileEvent(final String operation, final String path) {
+		super(TYPE);
+		this.operation = operation;
+		this.path = path;
+	}
+
+	/**
+	 * Setter for the path, when it is only known once the file is opened.
+	 *
+	 * @param path
+	 *            File path or resource name.
+	 */
+	void setPath(final String path) {
+		this.path = path;
+	}
+
+	/**
+	 * Marks the operation as completed without errors.
+	 */
+	void succeed() {
+		this.succeeded = true;
+	}
+
+	/**
+	 * Returns the values of the fields.
+	 *
+	 * @return Operation, path, succeeded.
+	 */
+	@Override
+	protected Object[] getValues() {
+		return new Object[] { this.operation, this.path, this.succeeded };
+	}
+}
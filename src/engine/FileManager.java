@@ -2,6 +2,8 @@ package engine;
 
 import java.awt.Font;
 import java.awt.FontFormatException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
@@ -15,10 +17,15 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.net.URLDecoder;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
 import engine.DrawManager.SpriteType;
@@ -35,14 +42,54 @@ public final class FileManager {
 	private static FileManager instance;
 	/** Application logger. */
 	private static Logger logger;
-	/** Max number of high scores. */
+	/** Max number of high scores on each board. */
 	private static final int MAX_SCORES = 7;
+	/** Milliseconds to wait for pending saves on shutdown. */
+	private static final int FLUSH_TIMEOUT = 2000;
+
+	/** Thread doing the high scores file input/output. */
+	private final ThreadPoolExecutor fileExecutor;
+	/** Time taken by each file load or save. */
+	private final LatencyHistogram fileLatency;
+	/** Startup load of the high scores. */
+	private Future<Leaderboard> leaderboardLoad;
+	/** Cached high scores, never changed once published. */
+	private volatile Leaderboard leaderboard;
+	/** Latest high scores waiting to be written, null if none. */
+	private final AtomicReference<Leaderboard> pendingSave;
 
 	/**
 	 * private constructor.
 	 */
 	private FileManager() {
 		logger = Core.getLogger();
+		this.pendingSave = new AtomicReference<Leaderboard>();
+		this.fileLatency = Core.getMetrics().histogram(Metrics.FILE_LATENCY);
+		this.fileExecutor = new ThreadPoolExecutor(1, 1, 0,
+				TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(final Runnable runnable) {
+						Thread thread = new Thread(runnable, "FileManager");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		Core.getMetrics().gauge(Metrics.FILE_QUEUE_DEPTH, new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return fileExecutor.getQueue().size()
+						+ fileExecutor.getActiveCount();
+			}
+		});
+
+		// Queued saves are written even if the window is closed.
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		}, "FileManager-flush"));
 	}
 
 	/**
@@ -57,72 +104,80 @@ public final class FileManager {
 	}
 
 	/**
-	 * Loads sprites from disk.
+	 * Loads sprites from the atlas compiled at build time. Falls back to the
+	 * sprite sources if the atlas has not been built.
 	 * 
-	 * @param spriteMap
-	 *            Mapping of sprite type and empty boolean matrix that will
-	 *            contain the image.
+	 * @return Mapping of sprite type and boolean matrix containing the image.
 	 * @throws IOException
 	 *             In case of loading problems.
 	 */
-	public void loadSprite(final Map<SpriteType, boolean[][]> spriteMap)
-			throws IOException {
+	public Map<SpriteType, boolean[][]> loadSprite() throws IOException {
 		InputStream inputStream = null;
+		Map<SpriteType, boolean[][]> spriteMap;
+		FileEvent fileEvent = new FileEvent("Load sprites", "graphics.atlas");
+		fileEvent.begin();
+		long start = System.nanoTime();
 
 		try {
 			inputStream = DrawManager.class.getClassLoader()
-					.getResourceAsStream("graphics");
-			char c;
-
-			// Sprite loading.
-			for (Map.Entry<SpriteType, boolean[][]> sprite : spriteMap
-					.entrySet()) {
-				for (int i = 0; i < sprite.getValue().length; i++)
-					for (int j = 0; j < sprite.getValue()[i].length; j++) {
-						do
-							c = (char) inputStream.read();
-						while (c != '0' && c != '1');
-
-						if (c == '1')
-							sprite.getValue()[i][j] = true;
-						else
-							sprite.getValue()[i][j] = false;
-					}
-				logger.fine("Sprite " + sprite.getKey() + " loaded.");
+					.getResourceAsStream("graphics.atlas");
+
+			if (inputStream != null) {
+				spriteMap = SpriteAtlas.read(inputStream);
+			} else {
+				logger.info("No sprite atlas, compiling sprite sources.");
+				fileEvent.setPath("graphics");
+				inputStream = DrawManager.class.getClassLoader()
+						.getResourceAsStream("graphics");
+				if (inputStream == null)
+					throw new FileNotFoundException("No sprites found.");
+				spriteMap = SpriteAtlas.parse(new InputStreamReader(
+						inputStream, Charset.forName("UTF-8")));
 			}
-			if (inputStream != null)
-				inputStream.close();
+
+			for (SpriteType spriteType : spriteMap.keySet())
+				logger.fine("Sprite " + spriteType + " loaded.");
+			fileEvent.succeed();
 		} finally {
 			if (inputStream != null)
 				inputStream.close();
+			fileEvent.commit();
+			fileLatency.record(System.nanoTime() - start);
 		}
+
+		return spriteMap;
 	}
 
 	/**
-	 * Loads a font of a given size.
+	 * Loads the font, sizes are derived from it.
 	 * 
-	 * @param size
-	 *            Point size of the font.
-	 * @return New font.
+	 * @return New font, one point in size.
 	 * @throws IOException
 	 *             In case of loading problems.
 	 * @throws FontFormatException
 	 *             In case of incorrect font format.
 	 */
-	public Font loadFont(final float size) throws IOException,
-			FontFormatException {
+	public Font loadFont() throws IOException, FontFormatException {
 		InputStream inputStream = null;
 		Font font;
+		FileEvent fileEvent = new FileEvent("Load font", "font.ttf");
+		fileEvent.begin();
+		long start = System.nanoTime();
 
 		try {
 			// Font loading.
 			inputStream = FileManager.class.getClassLoader()
 					.getResourceAsStream("font.ttf");
-			font = Font.createFont(Font.TRUETYPE_FONT, inputStream).deriveFont(
-					size);
+			if (inputStream == null)
+				throw new FileNotFoundException("No font found.");
+			font = Font.createFont(Font.TRUETYPE_FONT, new BufferedInputStream(
+					inputStream));
+			fileEvent.succeed();
 		} finally {
 			if (inputStream != null)
 				inputStream.close();
+			fileEvent.commit();
+			fileLatency.record(System.nanoTime() - start);
 		}
 
 		return font;
@@ -136,84 +191,284 @@ public final class FileManager {
 	 * @throws IOException
 	 *             In case of loading problems.
 	 */
-	private List<Score> loadDefaultHighScores() throws IOException {
-		List<Score> highScores = new ArrayList<Score>();
+	private Leaderboard loadDefaultHighScores() throws IOException {
 		InputStream inputStream = null;
-		BufferedReader reader = null;
 
 		try {
 			inputStream = FileManager.class.getClassLoader().getResourceAsStream("scores");
-			reader = new BufferedReader(new InputStreamReader(inputStream));
+			return readLeaderboard(new BufferedReader(new InputStreamReader(
+					inputStream)));
+		} finally {
+			if (inputStream != null)
+				inputStream.close();
+		}
+	}
+
+	/**
+	 * Starts loading the high scores on the file thread, if it has not been
+	 * started yet. Called once at startup so that screens never wait for the
+	 * disk.
+	 */
+	public void preloadLeaderboard() {
+		synchronized (this) {
+			if (this.leaderboardLoad == null)
+				this.leaderboardLoad = this.fileExecutor
+						.submit(new Callable<Leaderboard>() {
+							@Override
+							public Leaderboard call() throws IOException {
+								leaderboard = loadHighScores();
+								return leaderboard;
+							}
+						});
+		}
+	}
 
-			Score highScore = null;
-			String name = reader.readLine();
-			String score = reader.readLine();
+	/**
+	 * Checks if the high scores have been read.
+	 * 
+	 * @return True once the startup load has finished.
+	 */
+	public boolean isLeaderboardLoaded() {
+		return this.leaderboard != null;
+	}
 
-			while ((name != null) && (score != null)) {
-				highScore = new Score(name, Integer.parseInt(score));
-				highScores.add(highScore);
-				name = reader.readLine();
-				score = reader.readLine();
+	/**
+	 * Returns the cached leaderboard. Only waits for the disk if the startup
+	 * load has not finished yet. The leaderboard returned must not be
+	 * changed; changes are made on a copy and saved.
+	 * 
+	 * @return Leaderboard with the high scores of every game mode.
+	 * @throws IOException
+	 *             In case of loading problems.
+	 */
+	public Leaderboard loadLeaderboard() throws IOException {
+		Leaderboard cached = this.leaderboard;
+		if (cached != null)
+			return cached;
+
+		preloadLeaderboard();
+		try {
+			return this.leaderboardLoad.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading high scores.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Replaces the cached leaderboard and queues it to be written to disk.
+	 * Saves queued before the file thread gets to them are coalesced, only
+	 * the latest one is written.
+	 * 
+	 * @param changedLeaderboard
+	 *            Leaderboard to save, a changed copy of the cached one that
+	 *            is not changed afterwards.
+	 */
+	public void saveLeaderboard(final Leaderboard changedLeaderboard) {
+		this.leaderboard = changedLeaderboard;
+		if (this.pendingSave.getAndSet(changedLeaderboard) == null)
+			this.fileExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					Leaderboard toSave = pendingSave.getAndSet(null);
+					try {
+						saveHighScores(toSave);
+					} catch (IOException e) {
+						logger.warning("Couldn't save high scores!");
+					}
+				}
+			});
+	}
+
+	/**
+	 * Queues a replay to be written to disk.
+	 * 
+	 * @param replay
+	 *            Replay to save, not changed afterwards.
+	 * @param file
+	 *            File to write to.
+	 */
+	public void saveReplay(final Replay replay, final File file) {
+		this.fileExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				OutputStream outputStream = null;
+				FileEvent fileEvent = new FileEvent("Save replay",
+						file.getPath());
+				fileEvent.begin();
+				long start = System.nanoTime();
+
+				try {
+					outputStream = new BufferedOutputStream(
+							new FileOutputStream(file));
+					replay.write(outputStream);
+					fileEvent.succeed();
+				} catch (IOException e) {
+					logger.warning("Couldn't save the replay!");
+				} finally {
+					try {
+						if (outputStream != null)
+							outputStream.close();
+					} catch (IOException e) {
+						logger.warning("Couldn't save the replay!");
+					}
+					fileEvent.commit();
+					fileLatency.record(System.nanoTime() - start);
+				}
 			}
+		});
+	}
+
+	/**
+	 * Loads a replay.
+	 * 
+	 * @param file
+	 *            File to read.
+	 * @return Replay read.
+	 * @throws IOException
+	 *             In case of loading problems.
+	 */
+	public Replay loadReplay(final File file) throws IOException {
+		InputStream inputStream = null;
+		Replay replay;
+		FileEvent fileEvent = new FileEvent("Load replay", file.getPath());
+		fileEvent.begin();
+		long start = System.nanoTime();
+
+		try {
+			inputStream = new BufferedInputStream(new FileInputStream(file));
+			replay = Replay.read(inputStream);
+			fileEvent.succeed();
 		} finally {
 			if (inputStream != null)
 				inputStream.close();
+			fileEvent.commit();
+			fileLatency.record(System.nanoTime() - start);
+		}
+
+		return replay;
+	}
+
+	/**
+	 * Waits for the queued saves to reach the disk. Called on shutdown.
+	 */
+	private void flush() {
+		this.fileExecutor.shutdown();
+		try {
+			if (!this.fileExecutor.awaitTermination(FLUSH_TIMEOUT,
+					TimeUnit.MILLISECONDS))
+				logger.warning("Timed out saving high scores.");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns the user high scores file, next to the application jar unless
+	 * the invaders.scores system property names another one.
+	 * 
+	 * @return High scores file.
+	 * @throws IOException
+	 *             In case the location can't be decoded.
+	 */
+	private static File getScoresFile() throws IOException {
+		String customPath = System.getProperty("invaders.scores");
+		if (customPath != null)
+			return new File(customPath);
+
+		String jarPath = FileManager.class.getProtectionDomain()
+				.getCodeSource().getLocation().getPath();
+		jarPath = URLDecoder.decode(jarPath, "UTF-8");
+
+		String scoresPath = new File(jarPath).getParent();
+		scoresPath += File.separator;
+		scoresPath += "scores";
+
+		return new File(scoresPath);
+	}
+
+	/**
+	 * Reads high score records, pairs of lines with the name and the score
+	 * followed by its difficulty, player code and timestamp. Records with
+	 * just the score, from older versions, go to the easy one player board.
+	 * 
+	 * @param reader
+	 *            Reader to read the records from.
+	 * @return Leaderboard with the records.
+	 * @throws IOException
+	 *             In case of loading problems.
+	 */
+	static Leaderboard readLeaderboard(final BufferedReader reader)
+			throws IOException {
+		Leaderboard highScores = new Leaderboard(MAX_SCORES);
+
+		String name = reader.readLine();
+		String record = reader.readLine();
+
+		while ((name != null) && (record != null)) {
+			String[] fields = record.trim().split(" ");
+			int score = Integer.parseInt(fields[0]);
+			int difficulty = 1;
+			int playerCode = 1;
+			long timestamp = 0;
+			if (fields.length == 4) {
+				difficulty = Integer.parseInt(fields[1]);
+				playerCode = Integer.parseInt(fields[2]);
+				timestamp = Long.parseLong(fields[3]);
+			}
+			highScores.submit(difficulty, playerCode, new Score(name, score,
+					timestamp));
+			name = reader.readLine();
+			record = reader.readLine();
 		}
 
 		return highScores;
 	}
 
 	/**
-	 * Loads high scores from file, and returns a sorted list of pairs score -
-	 * value.
+	 * Loads high scores from file.
 	 * 
-	 * @return Sorted list of scores - players.
+	 * @return Leaderboard with the high scores of every game mode.
 	 * @throws IOException
 	 *             In case of loading problems.
 	 */
-	public List<Score> loadHighScores() throws IOException {
+	private Leaderboard loadHighScores() throws IOException {
 
-		List<Score> highScores = new ArrayList<Score>();
-		InputStream inputStream = null;
+		Leaderboard highScores;
 		BufferedReader bufferedReader = null;
+		FileEvent fileEvent = new FileEvent("Load high scores", null);
+		fileEvent.begin();
+		long start = System.nanoTime();
 
 		try {
-			String jarPath = FileManager.class.getProtectionDomain()
-					.getCodeSource().getLocation().getPath();
-			jarPath = URLDecoder.decode(jarPath, "UTF-8");
-
-			String scoresPath = new File(jarPath).getParent();
-			scoresPath += File.separator;
-			scoresPath += "scores";
-
-			File scoresFile = new File(scoresPath);
-			inputStream = new FileInputStream(scoresFile);
+			File scoresFile = getScoresFile();
+			fileEvent.setPath(scoresFile.getPath());
 			bufferedReader = new BufferedReader(new InputStreamReader(
-					inputStream, Charset.forName("UTF-8")));
+					new FileInputStream(scoresFile), Charset.forName("UTF-8")));
 
 			logger.info("Loading user high scores.");
-
-			Score highScore = null;
-			String name = bufferedReader.readLine();
-			String score = bufferedReader.readLine();
-
-			while ((name != null) && (score != null)) {
-				highScore = new Score(name, Integer.parseInt(score));
-				highScores.add(highScore);
-				name = bufferedReader.readLine();
-				score = bufferedReader.readLine();
-			}
+			highScores = readLeaderboard(bufferedReader);
+			fileEvent.succeed();
 
 		} catch (FileNotFoundException e) {
 			// loads default if there's no user scores.
 			logger.info("Loading default high scores.");
+			fileEvent.setPath("scores");
 			highScores = loadDefaultHighScores();
+			fileEvent.succeed();
 		} finally {
 			if (bufferedReader != null)
 				bufferedReader.close();
+			fileEvent.commit();
+			fileLatency.record(System.nanoTime() - start);
 		}
 
-		Collections.sort(highScores);
 		return highScores;
 	}
 
@@ -225,21 +480,17 @@ public final class FileManager {
 	 * @throws IOException
 	 *             In case of loading problems.
 	 */
-	public void saveHighScores(final List<Score> highScores) 
+	private void saveHighScores(final Leaderboard highScores)
 			throws IOException {
 		OutputStream outputStream = null;
 		BufferedWriter bufferedWriter = null;
+		FileEvent fileEvent = new FileEvent("Save high scores", null);
+		fileEvent.begin();
+		long start = System.nanoTime();
 
 		try {
-			String jarPath = FileManager.class.getProtectionDomain()
-					.getCodeSource().getLocation().getPath();
-			jarPath = URLDecoder.decode(jarPath, "UTF-8");
-
-			String scoresPath = new File(jarPath).getParent();
-			scoresPath += File.separator;
-			scoresPath += "scores";
-
-			File scoresFile = new File(scoresPath);
+			File scoresFile = getScoresFile();
+			fileEvent.setPath(scoresFile.getPath());
 
 			if (!scoresFile.exists())
 				scoresFile.createNewFile();
@@ -249,22 +500,41 @@ public final class FileManager {
 					outputStream, Charset.forName("UTF-8")));
 
 			logger.info("Saving user high scores.");
-
-			// Saves 7 or less scores.
-			int savedCount = 0;
-			for (Score score : highScores) {
-				if (savedCount >= MAX_SCORES)
-					break;
-				bufferedWriter.write(score.getName());
-				bufferedWriter.newLine();
-				bufferedWriter.write(Integer.toString(score.getScore()));
-				bufferedWriter.newLine();
-				savedCount++;
-			}
+			writeLeaderboard(highScores, bufferedWriter);
+			fileEvent.succeed();
 
 		} finally {
 			if (bufferedWriter != null)
 				bufferedWriter.close();
+			fileEvent.commit();
+			fileLatency.record(System.nanoTime() - start);
 		}
 	}
+
+	/**
+	 * Writes the scores on any board of each game mode, in the format read by
+	 * readLeaderboard.
+	 * 
+	 * @param highScores
+	 *            High scores to write.
+	 * @param writer
+	 *            Writer to write the records to.
+	 * @throws IOException
+	 *             In case of writing problems.
+	 */
+	static void writeLeaderboard(final Leaderboard highScores,
+			final BufferedWriter writer) throws IOException {
+		for (int difficulty = 1;
+				difficulty <= Leaderboard.NUM_DIFFICULTIES; difficulty++)
+			for (int playerCode = 1;
+					playerCode <= Leaderboard.NUM_PLAYER_CODES; playerCode++)
+				for (Score score : highScores.getScores(difficulty,
+						playerCode)) {
+					writer.write(score.getName());
+					writer.newLine();
+					writer.write(score.getScore() + " " + difficulty + " "
+							+ playerCode + " " + score.getTimestamp());
+					writer.newLine();
+				}
+	}
 }
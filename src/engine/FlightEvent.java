@@ -0,0 +1,445 @@
+package engine;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Flight recorder event, defined at runtime through jdk.jfr so that the game
+ * builds and runs on any Java 8. Where jdk.jfr is missing, before 8u262,
+ * events do nothing and are never committed. Each kind of event has a Type,
+ * and gives the values of its fields, in the order of the type, when it is
+ * committed. A type knows if a recording takes its events, checked again
+ * each time a recording starts or stops; while none does, events of the
+ * type are not created in the flight recorder and cost nothing to begin
+ * and end.
+ *
+ */
+public abstract class FlightEvent {
+
+	/** Flight recorder event, null if the flight recorder is missing. */
+	private final Object event;
+
+	/**
+	 * Constructor, creates an event of a type.
+	 *
+	 * @param type
+	 *            Type of the event.
+	 */
+	protected FlightEvent(final Type type) {
+		this.event = type.isEnabled() ? type.newEvent() : null;
+	}
+
+	/**
+	 * Starts timing the event.
+	 */
+	public final void begin() {
+		if (this.event != null)
+			Recorder.call(Recorder.BEGIN, this.event);
+	}
+
+	/**
+	 * Stops timing the event, commit does it if it wasn't.
+	 */
+	public final void end() {
+		if (this.event != null)
+			Recorder.call(Recorder.END, this.event);
+	}
+
+	/**
+	 * Checks if the event is being recorded, and takes long enough to be.
+	 *
+	 * @return True if committing the event would record it.
+	 */
+	public final boolean shouldCommit() {
+		return this.event != null
+				&& (Boolean) Recorder.call(Recorder.SHOULD_COMMIT, this.event);
+	}
+
+	/**
+	 * Records the event with the values of its fields, if it is being
+	 * recorded.
+	 */
+	public final void commit() {
+		if (!shouldCommit())
+			return;
+		Object[] values = getValues();
+		for (int i = 0; i < values.length; i++)
+			Recorder.set(this.event, i, values[i]);
+		Recorder.call(Recorder.COMMIT, this.event);
+	}
+
+	/**
+	 * Returns the values of the fields, in the order of the type.
+	 *
+	 * @return Field values.
+	 */
+	protected abstract Object[] getValues();
+
+	/**
+	 * Kind of event, with its name, description and fields.
+	 */
+	protected static final class Type {
+
+		/** Creates the events, null if the flight recorder is missing. */
+		private final Object factory;
+		/** Type in the flight recorder, null if it is missing. */
+		private final Object eventType;
+		/** If a recording takes the events, as of its last change. */
+		private volatile boolean enabled;
+
+		/**
+		 * Constructor, defines the type in the flight recorder.
+		 *
+		 * @param name
+		 *            Name of the events, as recordings list them.
+		 * @param label
+		 *            Label of the events.
+		 * @param category
+		 *            Categories the events are shown under.
+		 * @param description
+		 *            What the events are.
+		 * @param stackTrace
+		 *            If the events keep the stack trace.
+		 * @param fields
+		 *            Fields, each a type, a label and if it is a time span
+		 *            in nanoseconds.
+		 */
+		public Type(final String name, final String label,
+				final String[] category, final String description,
+				final boolean stackTrace, final Field... fields) {
+			this.factory = Recorder.define(name, label, category,
+					description, stackTrace, fields);
+			this.eventType = this.factory == null ? null : Recorder.call(
+					Recorder.GET_EVENT_TYPE, this.factory);
+			Recorder.register(this);
+		}
+
+		/**
+		 * Checks if a recording takes the events, without asking the flight
+		 * recorder.
+		 *
+		 * @return True if events of the type may be recorded.
+		 */
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		/**
+		 * Asks the flight recorder again if a recording takes the events.
+		 */
+		private void refresh() {
+			this.enabled = this.eventType != null && (Boolean) Recorder
+					.call(Recorder.IS_ENABLED, this.eventType);
+		}
+
+		/**
+		 * Creates an event of the type.
+		 *
+		 * @return Flight recorder event, null if the flight recorder is
+		 *         missing.
+		 */
+		private Object newEvent() {
+			if (this.factory == null)
+				return null;
+			return Recorder.call(Recorder.NEW_EVENT, this.factory);
+		}
+	}
+
+	/**
+	 * Field of a type of event.
+	 */
+	protected static final class Field {
+
+		/** Type of the values. */
+		private final Class<?> type;
+		/** Name of the field. */
+		private final String name;
+		/** Label of the field. */
+		private final String label;
+		/** If the values are time spans in nanoseconds. */
+		private final boolean timespan;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param type
+		 *            Type of the values, a primitive or String.
+		 * @param name
+		 *            Name of the field.
+		 * @param label
+		 *            Label of the field.
+		 * @param timespan
+		 *            If the values are time spans in nanoseconds.
+		 */
+		public Field(final Class<?> type, final String name,
+				final String label, final boolean timespan) {
+			this.type = type;
+			this.name = name;
+			this.label = label;
+			this.timespan = timespan;
+		}
+	}
+
+	/**
+	 * Calls to jdk.jfr, looked up once.
+	 */
+	private static final class Recorder {
+
+		/** Event.begin, null if the flight recorder is missing. */
+		private static final MethodHandle BEGIN;
+		/** Event.end. */
+		private static final MethodHandle END;
+		/** Event.shouldCommit. */
+		private static final MethodHandle SHOULD_COMMIT;
+		/** Event.commit. */
+		private static final MethodHandle COMMIT;
+		/** Event.set, by field index. */
+		private static final MethodHandle SET;
+		/** EventFactory.newEvent. */
+		private static final MethodHandle NEW_EVENT;
+		/** EventFactory.create. */
+		private static final MethodHandle CREATE;
+		/** EventFactory.getEventType. */
+		private static final MethodHandle GET_EVENT_TYPE;
+		/** EventType.isEnabled. */
+		private static final MethodHandle IS_ENABLED;
+		/** New AnnotationElement, of a type and a value. */
+		private static final MethodHandle ANNOTATION;
+		/** New ValueDescriptor, of a type, a name and annotations. */
+		private static final MethodHandle VALUE_DESCRIPTOR;
+		/** Annotation types, in the order of the names below. */
+		private static final Class<?>[] ANNOTATIONS;
+		/** Names of the annotation types used. */
+		private static final String[] ANNOTATION_NAMES = { "Name", "Label",
+				"Category", "Description", "StackTrace", "Timespan" };
+		/** Types defined, checked again when a recording changes. */
+		private static final List<Type> TYPES =
+				new CopyOnWriteArrayList<Type>();
+
+		static {
+			MethodHandle[] handles;
+			Class<?>[] annotations = new Class<?>[ANNOTATION_NAMES.length];
+			Class<?> listener = null;
+			MethodHandle addListener = null;
+			try {
+				MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+				Class<?> event = Class.forName("jdk.jfr.Event");
+				Class<?> factory = Class.forName("jdk.jfr.EventFactory");
+				Class<?> element = Class.forName("jdk.jfr.AnnotationElement");
+				Class<?> descriptor = Class.forName("jdk.jfr.ValueDescriptor");
+				Class<?> eventType = Class.forName("jdk.jfr.EventType");
+				listener = Class.forName("jdk.jfr.FlightRecorderListener");
+				addListener = lookup.findStatic(
+						Class.forName("jdk.jfr.FlightRecorder"),
+						"addListener", MethodType.methodType(void.class,
+								listener));
+				for (int i = 0; i < annotations.length; i++)
+					annotations[i] = Class.forName("jdk.jfr."
+							+ ANNOTATION_NAMES[i]);
+				MethodType none = MethodType.methodType(void.class);
+				handles = new MethodHandle[] {
+						lookup.findVirtual(event, "begin", none),
+						lookup.findVirtual(event, "end", none),
+						lookup.findVirtual(event, "shouldCommit",
+								MethodType.methodType(boolean.class)),
+						lookup.findVirtual(event, "commit", none),
+						lookup.findVirtual(event, "set", MethodType
+								.methodType(void.class, int.class,
+										Object.class)),
+						lookup.findVirtual(factory, "newEvent", MethodType
+								.methodType(event)),
+						lookup.findStatic(factory, "create", MethodType
+								.methodType(factory, List.class, List.class)),
+						lookup.findConstructor(element, MethodType
+								.methodType(void.class, Class.class,
+										Object.class)),
+						lookup.findConstructor(descriptor, MethodType
+								.methodType(void.class, Class.class,
+										String.class, List.class)),
+						lookup.findVirtual(factory, "getEventType",
+								MethodType.methodType(eventType)),
+						lookup.findVirtual(eventType, "isEnabled",
+								MethodType.methodType(boolean.class)) };
+			} catch (ReflectiveOperationException e) {
+				// Before 8u262, there is nothing to record to.
+				handles = new MethodHandle[11];
+			}
+			BEGIN = handles[0];
+			END = handles[1];
+			SHOULD_COMMIT = handles[2];
+			COMMIT = handles[3];
+			SET = handles[4];
+			NEW_EVENT = handles[5];
+			CREATE = handles[6];
+			ANNOTATION = handles[7];
+			VALUE_DESCRIPTOR = handles[8];
+			GET_EVENT_TYPE = handles[9];
+			IS_ENABLED = handles[10];
+			ANNOTATIONS = annotations;
+			if (CREATE != null)
+				listen(listener, addListener);
+		}
+
+		/**
+		 * Private constructor, only the static methods are used.
+		 */
+		private Recorder() {
+
+		}
+
+		/**
+		 * Defines a type of event.
+		 *
+		 * @param name
+		 *            Name of the events.
+		 * @param label
+		 *            Label of the events.
+		 * @param category
+		 *            Categories of the events.
+		 * @param description
+		 *            What the events are.
+		 * @param stackTrace
+		 *            If the events keep the stack trace.
+		 * @param fields
+		 *            Fields of the events.
+		 * @return Factory of the events, null if the flight recorder is
+		 *         missing.
+		 */
+		static Object define(final String name, final String label,
+				final String[] category, final String description,
+				final boolean stackTrace, final Field[] fields) {
+			if (CREATE == null)
+				return null;
+			try {
+				List<Object> annotations = Arrays.asList(
+						annotation(0, name), annotation(1, label),
+						annotation(2, category), annotation(3, description),
+						annotation(4, stackTrace));
+				List<Object> values = new ArrayList<Object>();
+				for (Field field : fields) {
+					List<Object> fieldAnnotations = new ArrayList<Object>();
+					fieldAnnotations.add(annotation(1, field.label));
+					if (field.timespan)
+						fieldAnnotations.add(annotation(5, "NANOSECONDS"));
+					values.add(VALUE_DESCRIPTOR.invoke(field.type,
+							field.name, fieldAnnotations));
+				}
+				return CREATE.invoke(annotations,
+						Collections.unmodifiableList(values));
+			} catch (Throwable e) {
+				throw new IllegalStateException("Couldn't define the "
+						+ name + " flight recorder event.", e);
+			}
+		}
+
+		/**
+		 * Has the flight recorder tell when a recording starts or stops, to
+		 * check the types again.
+		 *
+		 * @param listener
+		 *            FlightRecorderListener interface.
+		 * @param addListener
+		 *            FlightRecorder.addListener.
+		 */
+		private static void listen(final Class<?> listener,
+				final MethodHandle addListener) {
+			Object proxy = Proxy.newProxyInstance(
+					FlightEvent.class.getClassLoader(),
+					new Class<?>[] { listener }, new InvocationHandler() {
+						@Override
+						public Object invoke(final Object self,
+								final Method method, final Object[] args) {
+							if ("equals".equals(method.getName()))
+								return self == args[0];
+							if ("hashCode".equals(method.getName()))
+								return System.identityHashCode(self);
+							if ("toString".equals(method.getName()))
+								return "FlightEvent listener";
+							// A recording changed, or the recorder started.
+							for (Type type : TYPES)
+								type.refresh();
+							return null;
+						}
+					});
+			try {
+				addListener.invoke(proxy);
+			} catch (Throwable e) {
+				throw new IllegalStateException("Couldn't listen to the "
+						+ "flight recorder.", e);
+			}
+		}
+
+		/**
+		 * Adds a type to those checked again when a recording changes, and
+		 * checks it.
+		 *
+		 * @param type
+		 *            Type defined.
+		 */
+		static void register(final Type type) {
+			TYPES.add(type);
+			type.refresh();
+		}
+
+		/**
+		 * Creates an annotation.
+		 *
+		 * @param index
+		 *            Place of the annotation type in ANNOTATION_NAMES.
+		 * @param value
+		 *            Value of the annotation.
+		 * @return Annotation element.
+		 * @throws Throwable
+		 *             If it can't be created.
+		 */
+		private static Object annotation(final int index, final Object value)
+				throws Throwable {
+			return ANNOTATION.invoke(ANNOTATIONS[index], value);
+		}
+
+		/**
+		 * Calls a method without arguments.
+		 *
+		 * @param method
+		 *            Method called.
+		 * @param target
+		 *            Object called.
+		 * @return Result, null if none.
+		 */
+		static Object call(final MethodHandle method, final Object target) {
+			try {
+				return method.invoke(target);
+			} catch (Throwable e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		/**
+		 * Sets a field of an event.
+		 *
+		 * @param event
+		 *            Event to set.
+		 * @param index
+		 *            Place of the field.
+		 * @param value
+		 *            Value of the field.
+		 */
+		static void set(final Object event, final int index,
+				final Object value) {
+			try {
+				SET.invoke(event, index, value);
+			} catch (Throwable e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package engine;
+
+/**
+ * Flight recorder event of a step of the enemy formation, including the
+ * removal of the ships destroyed since the last step.
+ *
+ */
+public final class FormationMoveEvent extends FlightEvent {
+
+	/** Type of the events. */
+	private static final Type TYPE = new Type("invaders.FormationMove",
+			"Formation Move", new String[] { "Invaders", "Game Loop" },
+			"Step of the enemy formation", false,
+			new Field(String.class, "direction", "Direction", false),
+			new Field(int.class, "positionX", "Position X", false),
+			new Field(int.class, "positionY", "Position Y", false),
+			new Field(int.class, "ships", "Ships", false));
+
+	/** Direction of the step. */
+	private String direction;
+
+	/** Horizontal position of the formation after the step. */
+	private int positionX;
+
+	/** Vertical position of the formation after the step. */
+	private int positionY;
+
+	/** Ships left in the formation. */
+	private int ships;
+
+	/**
+	 * Constructor, creates an event that isn't started.
+	 */
+	public FormationMoveEvent() {
+		super(TYPE);
+	}
+
+	/**
+	 * Setter for the direction.
+	 *
+	 * @param direction
+	 *            Direction of the step.
+	 */
+	public void setDirection(final String direction) {
+		this.direction = direction;
+	}
+
+	/**
+	 * Setter for the position.
+	 *
+	 * @param positionX
+	 *            Horizontal position after the step.
+	 * @param positionY
+	 *            Vertical position after the step.
+	 */
+	public void setPosition(final int positionX, final int positionY) {
+		this.positionX = positionX;
+		this.positionY = positionY;
+	}
+
+	/**
+	 * Setter for the ships left.
+	 *
+	 * @param ships
+	 *            Ships left in the formation.
+	 */
+	public void setShips(final int ships) {
+		this.ships = ships;
+	}
+
+	/**
+	 * Returns the values of the fields.
+	 *
+	 * @return Direction, position in the X and Y axes, ships.
+	 */
+	@Override
+	protected Object[] getValues() {
+		return new Object[] { this.direction, this.positionX,
+				this.positionY, this.ships };
+	}
+}
@@ -54,8 +54,23 @@ public class Frame extends JFrame {
 	 * @return Return code of the finished screen.
 	 */
 	public final int setScreen(final Screen screen) {
+		ScreenTransitionEvent transitionEvent = new ScreenTransitionEvent();
+		transitionEvent.begin();
+		String previousScreen = currentScreen == null ? null
+				: currentScreen.getClass().getSimpleName();
+
 		currentScreen = screen;
+		Core.getMetrics().setScreen(screen.getClass().getSimpleName());
 		currentScreen.initialize();
+		Core.getEventRecorder().recordScreen(currentScreen.getCode(),
+				currentScreen.getClass().getSimpleName(),
+				currentScreen.getLevel());
+
+		if (transitionEvent.shouldCommit()) {
+			transitionEvent.setScreens(previousScreen,
+					currentScreen.getClass().getSimpleName());
+			transitionEvent.commit();
+		}
 		return currentScreen.run();
 	}
 
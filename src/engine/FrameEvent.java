@@ -0,0 +1,83 @@
+package engine;
+
+/**
+ * Flight recorder event of a frame, from the start of its update to the end
+ * of its drawing. The sleep until the next frame is not included.
+ *
+ */
+public final class FrameEvent extends FlightEvent {
+
+	/** Type of the events. */
+	private static final Type TYPE = new Type("invaders.Frame",
+			"Frame", new String[] { "Invaders", "Game Loop" },
+			"Update and drawing of a frame", false,
+			new Field(String.class, "screen", "Screen", false),
+			new Field(long.class, "updateTime", "Update Time", true),
+			new Field(long.class, "drawTime", "Draw Time", true));
+
+	/** Kind of screen the frame belongs to. */
+	private String screen;
+
+	/** Time spent updating the screen, drawing excluded. */
+	private long updateTime;
+
+	/** Time spent drawing the screen. */
+	private long drawTime;
+
+	/**
+	 * Constructor, creates an event that isn't started.
+	 */
+	public FrameEvent() {
+		super(TYPE);
+	}
+
+	/**
+	 * Checks if a recording takes the events, so that frames can skip
+	 * creating one when none does.
+	 *
+	 * @return True if the events may be recorded.
+	 */
+	public static boolean isEnabled() {
+		return TYPE.isEnabled();
+	}
+
+	/**
+	 * Setter for the kind of screen.
+	 *
+	 * @param screen
+	 *            Name of the screen class.
+	 */
+	public void setScreen(final String screen) {
+		this.screen = screen;
+	}
+
+	/**
+	 * Setter for the update time.
+	 *
+	 * @param updateTime
+	 *            Update time, in nanoseconds.
+	 */
+	public void setUpdateTime(final long updateTime) {
+		this.updateTime = updateTime;
+	}
+
+	/**
+	 * Setter for the draw time.
+	 *
+	 * @param drawTime
+	 *            Draw time, in nanoseconds.
+	 */
+	public void setDrawTime(final long drawTime) {
+		this.drawTime = drawTime;
+	}
+
+	/**
+	 * Returns the values of the fields.
+	 *
+	 * @return Screen, update time, draw time.
+	 */
+	@Override
+	protected Object[] getValues() {
+		return new Object[] { this.screen, this.updateTime, this.drawTime };
+	}
+}
@@ -0,0 +1,98 @@
+package engine;
+
+import java.util.Arrays;
+
+/**
+ * Records how long frames take and reports their percentiles.
+ *
+ */
+public final class FrameTimeStats {
+
+	/** Initial number of frames the record has room for. */
+	private static final int INITIAL_CAPACITY = 1024;
+	/** Nanoseconds in a millisecond. */
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	/** Frame durations, in nanoseconds. */
+	private long[] durations;
+	/** Number of frames recorded. */
+	private int count;
+
+	/**
+	 * Constructor, creates an empty record.
+	 */
+	public FrameTimeStats() {
+		this.durations = new long[INITIAL_CAPACITY];
+		this.count = 0;
+	}
+
+	/**
+	 * Records the duration of a frame.
+	 *
+	 * @param nanos
+	 *            Duration of the frame, in nanoseconds.
+	 */
+	public void record(final long nanos) {
+		if (this.count == this.durations.length)
+			this.durations = Arrays.copyOf(this.durations, this.count * 2);
+		this.durations[this.count++] = nanos;
+	}
+
+	/**
+	 * Getter for the number of frames recorded.
+	 *
+	 * @return Number of frames.
+	 */
+	public int getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Returns a percentile of the frames recorded between two positions.
+	 *
+	 * @param from
+	 *            First frame, inclusive.
+	 * @param to
+	 *            Last frame, exclusive.
+	 * @param percentile
+	 *            Percentile to return, from 0 to 100.
+	 * @return Duration at the percentile in milliseconds, 0 if there are no
+	 *         frames.
+	 */
+	public double getPercentile(final int from, final int to,
+			final double percentile) {
+		if (to <= from)
+			return 0;
+		long[] sorted = Arrays.copyOfRange(this.durations, from, to);
+		Arrays.sort(sorted);
+		int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+		index = Math.max(0, Math.min(sorted.length - 1, index));
+		return sorted[index] / NANOS_PER_MILLI;
+	}
+
+	/**
+	 * Summarizes the frames recorded between two positions.
+	 *
+	 * @param from
+	 *            First frame, inclusive.
+	 * @param to
+	 *            Last frame, exclusive.
+	 * @return Percentiles of the frame durations, in milliseconds.
+	 */
+	public String summary(final int from, final int to) {
+		return String.format("p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, "
+				+ "max %.3f ms over %d frames",
+				getPercentile(from, to, 50), getPercentile(from, to, 90),
+				getPercentile(from, to, 99), getPercentile(from, to, 100),
+				Math.max(0, to - from));
+	}
+
+	/**
+	 * Summarizes every frame recorded.
+	 *
+	 * @return Percentiles of the frame durations, in milliseconds.
+	 */
+	public String summary() {
+		return summary(0, this.count);
+	}
+}
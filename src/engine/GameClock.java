@@ -0,0 +1,119 @@
+package engine;
+
+/**
+ * Time source of the game logic. Reads the system clock, unless the
+ * current thread runs a simulation and installed its own clock, which only
+ * moves when told to.
+ *
+ */
+public final class GameClock {
+
+	/** Simulated clock of each thread, null for the system clock. */
+	private static final ThreadLocal<GameClock> SIMULATED =
+			new ThreadLocal<GameClock>();
+
+	/** Current simulated time, in milliseconds since epoch. */
+	private long time;
+
+	/**
+	 * Constructor, starts at the given time.
+	 *
+	 * @param time
+	 *            Initial time, in milliseconds since epoch.
+	 */
+	private GameClock(final long time) {
+		this.time = time;
+	}
+
+	/**
+	 * Returns the current time for the calling thread.
+	 *
+	 * @return Simulated time if the thread installed a clock, system time
+	 *         otherwise, in milliseconds since epoch.
+	 */
+	public static long currentTimeMillis() {
+		GameClock clock = SIMULATED.get();
+		if (clock == null)
+			return System.currentTimeMillis();
+		return clock.time;
+	}
+
+	/**
+	 * Installs a simulated clock on the calling thread, starting at the
+	 * current system time.
+	 *
+	 * @return The installed clock.
+	 */
+	public static GameClock simulate() {
+		return simulate(System.currentTimeMillis());
+	}
+
+	/**
+	 * Installs a simulated clock on the calling thread, starting at the
+	 * given time.
+	 *
+	 * @param time
+	 *            Initial time, in milliseconds since epoch.
+	 * @return The installed clock.
+	 */
+	public static GameClock simulate(final long time) {
+		GameClock clock = new GameClock(time);
+		clock.use();
+		return clock;
+	}
+
+	/**
+	 * Goes back to the system clock on the calling thread.
+	 */
+	public static void useSystemClock() {
+		SIMULATED.remove();
+	}
+
+	/**
+	 * Makes this the clock of the calling thread, for simulations that move
+	 * between threads.
+	 */
+	public void use() {
+		SIMULATED.set(this);
+	}
+
+	/**
+	 * Moves the simulated time forward.
+	 *
+	 * @param milliseconds
+	 *            Time to advance.
+	 */
+	public void advance(final long milliseconds) {
+		this.time += milliseconds;
+	}
+
+	/**
+	 * Moves the simulated time forward to the given time, if it is later.
+	 *
+	 * @param time
+	 *            New time, in milliseconds since epoch.
+	 */
+	public void advanceTo(final long time) {
+		this.time = Math.max(this.time, time);
+	}
+
+	/**
+	 * Sets the simulated time, earlier times included, for a game brought
+	 * back to a saved state.
+	 *
+	 * @param time
+	 *            New time, in milliseconds since epoch.
+	 */
+	public void setTime(final long time) {
+		this.time = time;
+	}
+
+	/**
+	 * Getter for the simulated time.
+	 *
+	 * @return Time of the clock, in milliseconds since epoch.
+	 */
+	public long getTime() {
+		return this.time;
+	}
+}
@@ -0,0 +1,146 @@
+package engine;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import entity.BulletPool;
+
+/**
+ * Everything a game session shares between its screens and entities: how it
+ * draws and reads keys, where it logs, counts and records, and the bullets
+ * it reuses. The game in the window uses the application's, games played
+ * off the window each have their own so that many can run at once.
+ *
+ */
+public final class GameContext {
+
+	/** Events kept of games played off the window, which are discarded. */
+	private static final int HEADLESS_EVENTS = 16;
+
+	/** Draws the screens, may be null if nothing is drawn. */
+	private final DrawManager drawManager;
+	/** Reads the keys. */
+	private final InputManager inputManager;
+	/** Logs the game events. */
+	private final Logger logger;
+	/** Counts the game events. */
+	private final Metrics metrics;
+	/** Keeps the last game events. */
+	private final EventRecorder eventRecorder;
+	/** Records the games, null if they aren't recorded. */
+	private final ReplayRecorder replayRecorder;
+	/** Reuses the bullets. */
+	private final BulletPool bulletPool;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param drawManager
+	 *            Draws the screens, may be null if nothing is drawn.
+	 * @param inputManager
+	 *            Reads the keys.
+	 * @param logger
+	 *            Logs the game events.
+	 * @param metrics
+	 *            Counts the game events.
+	 * @param eventRecorder
+	 *            Keeps the last game events.
+	 * @param replayRecorder
+	 *            Records the games, may be null.
+	 * @param bulletPool
+	 *            Reuses the bullets.
+	 */
+	public GameContext(final DrawManager drawManager,
+			final InputManager inputManager, final Logger logger,
+			final Metrics metrics, final EventRecorder eventRecorder,
+			final ReplayRecorder replayRecorder, final BulletPool bulletPool) {
+		this.drawManager = drawManager;
+		this.inputManager = inputManager;
+		this.logger = logger;
+		this.metrics = metrics;
+		this.eventRecorder = eventRecorder;
+		this.replayRecorder = replayRecorder;
+		this.bulletPool = bulletPool;
+	}
+
+	/**
+	 * Creates a context for a game played off the window. It reads simulated
+	 * keys, logs nothing, doesn't count in the game metrics nor show in
+	 * crash dumps, isn't recorded and has its own bullets.
+	 *
+	 * @param drawManager
+	 *            Draws the screens, may be null if nothing is drawn.
+	 * @return New context.
+	 */
+	public static GameContext headless(final DrawManager drawManager) {
+		Logger silentLogger = Logger.getAnonymousLogger();
+		silentLogger.setUseParentHandlers(false);
+		silentLogger.setLevel(Level.OFF);
+		return new GameContext(drawManager, Core.getVirtualInputManager(),
+				silentLogger, new Metrics(), new EventRecorder(
+						HEADLESS_EVENTS), null, new BulletPool());
+	}
+
+	/**
+	 * Getter for the draw manager.
+	 *
+	 * @return Draw manager, null if nothing is drawn.
+	 */
+	public DrawManager getDrawManager() {
+		return this.drawManager;
+	}
+
+	/**
+	 * Getter for the input manager.
+	 *
+	 * @return Input manager.
+	 */
+	public InputManager getInputManager() {
+		return this.inputManager;
+	}
+
+	/**
+	 * Getter for the logger.
+	 *
+	 * @return Logger.
+	 */
+	public Logger getLogger() {
+		return this.logger;
+	}
+
+	/**
+	 * Getter for the metrics.
+	 *
+	 * @return Metrics.
+	 */
+	public Metrics getMetrics() {
+		return this.metrics;
+	}
+
+	/**
+	 * Getter for the event recorder.
+	 *
+	 * @return Event recorder.
+	 */
+	public EventRecorder getEventRecorder() {
+		return this.eventRecorder;
+	}
+
+	/**
+	 * Getter for the replay recorder.
+	 *
+	 * @return Replay recorder, null if games aren't recorded.
+	 */
+	public ReplayRecorder getReplayRecorder() {
+		return this.replayRecorder;
+	}
+
+	/**
+	 * Getter for the bullet pool.
+	 *
+	 * @return Bullet pool.
+	 */
+	public BulletPool getBulletPool() {
+		return this.bulletPool;
+	}
+}
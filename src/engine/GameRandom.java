@@ -0,0 +1,194 @@
+package engine;
+
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+
+/**
+ * Random number source of a game session. Every level gets its own, seeded
+ * from the game state, and splits it once per subsystem so that what one
+ * subsystem draws doesn't change what the others get.
+ *
+ * This is the algorithm of SplittableRandom, giving the same numbers for
+ * the same seed, written out so that its state can be saved with the game
+ * and restored. It is not thread safe, each session uses its own.
+ *
+ */
+public final class GameRandom {
+
+	/** Increment of the generators created from a seed. */
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	/** Scale turning the top 53 bits of a long into a double below 1. */
+	private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+	/** Creates the seeds of new games. */
+	private static final SplittableRandom SEEDER = new SplittableRandom();
+
+	/** Current position of the sequence. */
+	private long seed;
+	/** Step between two positions, always odd. */
+	private long gamma;
+
+	/**
+	 * Constructor, starts the sequence of a seed.
+	 *
+	 * @param seed
+	 *            Seed, the same seed gives the same numbers.
+	 */
+	public GameRandom(final long seed) {
+		this(seed, GOLDEN_GAMMA);
+	}
+
+	/**
+	 * Constructor, with the full state given.
+	 *
+	 * @param seed
+	 *            Position of the sequence.
+	 * @param gamma
+	 *            Step of the sequence, odd.
+	 */
+	private GameRandom(final long seed, final long gamma) {
+		this.seed = seed;
+		this.gamma = gamma;
+	}
+
+	/**
+	 * Returns a seed for a new game, different every time.
+	 *
+	 * @return New seed.
+	 */
+	public static synchronized long newSeed() {
+		return SEEDER.nextLong();
+	}
+
+	/**
+	 * Creates a generator independent from this one, which moves this one
+	 * forward by two numbers.
+	 *
+	 * @return New generator.
+	 */
+	public GameRandom split() {
+		return new GameRandom(nextLong(), mixGamma(nextSeed()));
+	}
+
+	/**
+	 * Returns a random long.
+	 *
+	 * @return Any long value.
+	 */
+	public long nextLong() {
+		return mix64(nextSeed());
+	}
+
+	/**
+	 * Returns a random int.
+	 *
+	 * @return Any int value.
+	 */
+	public int nextInt() {
+		return mix32(nextSeed());
+	}
+
+	/**
+	 * Returns a random int below a bound.
+	 *
+	 * @param bound
+	 *            Upper bound, excluded, greater than 0.
+	 * @return Value between 0 and bound - 1.
+	 */
+	public int nextInt(final int bound) {
+		if (bound <= 0)
+			throw new IllegalArgumentException("bound must be positive");
+		int r = mix32(nextSeed());
+		int m = bound - 1;
+		if ((bound & m) == 0) {
+			r &= m;
+		} else {
+			// Values from the uneven top of the range are drawn again.
+			for (int u = r >>> 1; u + m - (r = u % bound) < 0;
+					u = mix32(nextSeed()) >>> 1)
+				;
+		}
+		return r;
+	}
+
+	/**
+	 * Returns a random double.
+	 *
+	 * @return Value from 0 included to 1 excluded.
+	 */
+	public double nextDouble() {
+		return (mix64(nextSeed()) >>> 11) * DOUBLE_UNIT;
+	}
+
+	/**
+	 * Writes the state of the generator, for it to be restored later.
+	 *
+	 * @param buffer
+	 *            Buffer to write to.
+	 */
+	public void writeState(final ByteBuffer buffer) {
+		buffer.putLong(this.seed);
+		buffer.putLong(this.gamma);
+	}
+
+	/**
+	 * Restores the state written by writeState.
+	 *
+	 * @param buffer
+	 *            Buffer to read from.
+	 */
+	public void readState(final ByteBuffer buffer) {
+		this.seed = buffer.getLong();
+		this.gamma = buffer.getLong();
+	}
+
+	/**
+	 * Moves the sequence forward.
+	 *
+	 * @return New position.
+	 */
+	private long nextSeed() {
+		return this.seed += this.gamma;
+	}
+
+	/**
+	 * Mixes the bits of a position into a long.
+	 *
+	 * @param value
+	 *            Position.
+	 * @return Mixed value.
+	 */
+	private static long mix64(final long value) {
+		long z = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Mixes the bits of a position into an int.
+	 *
+	 * @param value
+	 *            Position.
+	 * @return Mixed value.
+	 */
+	private static int mix32(final long value) {
+		long z = (value ^ (value >>> 33)) * 0x62a9d9ed799705f5L;
+		return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+	}
+
+	/**
+	 * Turns a position into the step of a new generator, odd and with
+	 * enough bit changes to give a good sequence.
+	 *
+	 * @param value
+	 *            Position.
+	 * @return Step.
+	 */
+	private static long mixGamma(final long value) {
+		long z = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		z = (z ^ (z >>> 33)) | 1L;
+		int n = Long.bitCount(z ^ (z >>> 1));
+		return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+	}
+}
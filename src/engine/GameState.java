@@ -22,6 +22,10 @@ public class GameState {
 	private Pair shipsDestroyed;
 	/** The code for the number of players. */
 	private int playerCode;
+	/** The code for the difficulty of the game. */
+	private int difficultyCode;
+	/** Seed of the random source of the game. */
+	private long seed;
 
 
 	/**
@@ -37,16 +41,25 @@ public class GameState {
 	 *            Bullets shot until now.
 	 * @param shipsDestroyed
 	 *            Ships destroyed until now.
+	 * @param playerCode
+	 *            Number of players.
+	 * @param difficultyCode
+	 *            Difficulty of the game.
+	 * @param seed
+	 *            Seed of the random source of the game.
 	 */
 	public GameState(final int level, final Pair score,
 			final Pair livesRemaining, final Pair bulletsShot,
-			final Pair shipsDestroyed, final int playerCode) {
+			final Pair shipsDestroyed, final int playerCode,
+			final int difficultyCode, final long seed) {
 		this.level = level;
 		this.score = score;
 		this.livesRemaining = livesRemaining;
 		this.bulletsShot = bulletsShot;
 		this.shipsDestroyed = shipsDestroyed;
 		this.playerCode = playerCode;
+		this.difficultyCode = difficultyCode;
+		this.seed = seed;
 	}
 
 	/**
@@ -91,4 +104,18 @@ public class GameState {
 		return playerCode;
 	}
 
+	/**
+	 * @return the difficultyCode
+	 */
+	public final int getDifficultyCode() {
+		return difficultyCode;
+	}
+
+	/**
+	 * @return the seed
+	 */
+	public final long getSeed() {
+		return seed;
+	}
+
 }
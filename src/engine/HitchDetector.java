@@ -0,0 +1,308 @@
+package engine;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import screen.Screen;
+
+/**
+ * Detects frames that take much longer than the frame budget and finds out
+ * why: a garbage collection pause, a long update, a long draw or the thread
+ * waking up late from its sleep. The last hitches are kept with the state
+ * of the screen, and a report per kind of screen is written at the end.
+ *
+ */
+public final class HitchDetector {
+
+	/** Frames longer than this many frame budgets are hitches. */
+	private static final double HITCH_FACTOR = 1.5;
+	/** Number of hitches kept with their context. */
+	private static final int RECENT_HITCHES = 64;
+	/** Nanoseconds in a millisecond. */
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	/** What made a frame late. */
+	public static enum Cause {
+		/** The garbage collector stopped the game. */
+		GC_PAUSE("GC pause"),
+		/** Updating the screen took too long. */
+		UPDATE("Long update"),
+		/** Drawing and presenting the screen took too long. */
+		DRAW("Long draw"),
+		/** The thread woke up late after the frame. */
+		SLEEP_OVERSHOOT("Sleep overshoot");
+
+		/** Name shown in the report. */
+		private final String label;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param label
+		 *            Name shown in the report.
+		 */
+		Cause(final String label) {
+			this.label = label;
+		}
+	}
+
+	/** A late frame and the state of its screen. */
+	private static final class Hitch {
+		/** Kind of screen. */
+		private String screen;
+		/** Level being played, 0 outside the game. */
+		private int level;
+		/** Entities on screen. */
+		private int entities;
+		/** Bullets on screen. */
+		private int bullets;
+		/** Length of the frame, sleep included, in nanoseconds. */
+		private long frameTime;
+		/** Time updating, in nanoseconds. */
+		private long updateTime;
+		/** Time drawing, in nanoseconds. */
+		private long drawTime;
+		/** Time stopped by the garbage collector, in nanoseconds. */
+		private long gcTime;
+		/** Time overslept, in nanoseconds. */
+		private long sleepOvershoot;
+		/** Main cause. */
+		private Cause cause;
+	}
+
+	/** Hitch statistics of a kind of screen. */
+	private static final class ScreenHitches {
+		/** Frames shown. */
+		private long frames;
+		/** Hitches of each cause. */
+		private final long[] causes = new long[Cause.values().length];
+		/** Longest hitch, in nanoseconds. */
+		private long worst;
+	}
+
+	/** Singleton instance of the class. */
+	private static HitchDetector instance;
+
+	/** Time stopped by the garbage collector so far, in nanoseconds. */
+	private final AtomicLong gcPauseTime;
+	/** Time stopped by the garbage collector up to the last frame. */
+	private long lastGcPauseTime;
+	/** Last hitches, oldest first from nextHitch, overwritten in place. */
+	private final Hitch[] recent;
+	/** Position the next hitch is kept at. */
+	private int nextHitch;
+	/** Hitches detected. */
+	private long hitches;
+	/** Statistics of each kind of screen, in order of appearance. */
+	private final Map<Class<?>, ScreenHitches> screens;
+
+	/**
+	 * Constructor, starts listening to garbage collections.
+	 */
+	private HitchDetector() {
+		this.gcPauseTime = new AtomicLong();
+		this.recent = new Hitch[RECENT_HITCHES];
+		for (int i = 0; i < RECENT_HITCHES; i++)
+			this.recent[i] = new Hitch();
+		this.screens = new LinkedHashMap<Class<?>, ScreenHitches>();
+
+		NotificationListener listener = new NotificationListener() {
+			@Override
+			public void handleNotification(final Notification notification,
+					final Object handback) {
+				if (!GarbageCollectionNotificationInfo
+						.GARBAGE_COLLECTION_NOTIFICATION.equals(
+								notification.getType()))
+					return;
+				GarbageCollectionNotificationInfo info =
+						GarbageCollectionNotificationInfo.from(
+								(CompositeData) notification.getUserData());
+				// Concurrent collectors report cycles, not pauses.
+				if (info.getGcName().contains("Concurrent")
+						|| info.getGcName().contains("Cycles"))
+					return;
+				gcPauseTime.addAndGet(info.getGcInfo().getDuration()
+						* (long) NANOS_PER_MILLI);
+			}
+		};
+		for (GarbageCollectorMXBean collector
+				: ManagementFactory.getGarbageCollectorMXBeans())
+			if (collector instanceof NotificationEmitter)
+				((NotificationEmitter) collector).addNotificationListener(
+						listener, null, null);
+	}
+
+	/**
+	 * Returns shared instance of HitchDetector.
+	 *
+	 * @return Shared instance of HitchDetector.
+	 */
+	protected static synchronized HitchDetector getInstance() {
+		if (instance == null)
+			instance = new HitchDetector();
+		return instance;
+	}
+
+	/**
+	 * Checks a frame and records it if it is a hitch. Garbage collection
+	 * pauses are counted in the frame they are reported in, which may be
+	 * the one after the pause.
+	 *
+	 * @param screen
+	 *            Screen the frame belongs to.
+	 * @param frameTime
+	 *            Length of the frame, sleep included, in nanoseconds.
+	 * @param updateTime
+	 *            Time updating, drawing excluded, in nanoseconds.
+	 * @param drawTime
+	 *            Time drawing and presenting, in nanoseconds.
+	 * @param sleepOvershoot
+	 *            Time slept beyond the end of the frame, in nanoseconds.
+	 */
+	public synchronized void recordFrame(final Screen screen,
+			final long frameTime, final long updateTime, final long drawTime,
+			final long sleepOvershoot) {
+		long gcPauseTotal = this.gcPauseTime.get();
+		long gcTime = gcPauseTotal - this.lastGcPauseTime;
+		this.lastGcPauseTime = gcPauseTotal;
+
+		ScreenHitches screenHitches = this.screens.get(screen.getClass());
+		if (screenHitches == null) {
+			screenHitches = new ScreenHitches();
+			this.screens.put(screen.getClass(), screenHitches);
+		}
+		screenHitches.frames++;
+
+		double threshold = HITCH_FACTOR * NANOS_PER_MILLI * 1000
+				/ screen.getFps();
+		if (frameTime <= threshold)
+			return;
+
+		// A pause also lengthens the update or draw it stopped. It is to
+		// blame if it is most of that time, or if the frame would have been
+		// on time without it.
+		Cause cause = Cause.UPDATE;
+		long longest = updateTime;
+		if (drawTime > longest) {
+			cause = Cause.DRAW;
+			longest = drawTime;
+		}
+		if (sleepOvershoot > longest) {
+			cause = Cause.SLEEP_OVERSHOOT;
+			longest = sleepOvershoot;
+		}
+		if (gcTime > 0 && (gcTime >= longest - gcTime
+				|| frameTime - gcTime <= threshold))
+			cause = Cause.GC_PAUSE;
+
+		Hitch hitch = this.recent[this.nextHitch];
+		hitch.screen = screen.getClass().getSimpleName();
+		hitch.level = screen.getLevel();
+		hitch.entities = screen.getEntityCount();
+		hitch.bullets = screen.getBulletCount();
+		hitch.frameTime = frameTime;
+		hitch.updateTime = updateTime;
+		hitch.drawTime = drawTime;
+		hitch.gcTime = gcTime;
+		hitch.sleepOvershoot = sleepOvershoot;
+		hitch.cause = cause;
+		this.nextHitch = (this.nextHitch + 1) % RECENT_HITCHES;
+		this.hitches++;
+
+		screenHitches.causes[cause.ordinal()]++;
+		screenHitches.worst = Math.max(screenHitches.worst, frameTime);
+	}
+
+	/**
+	 * Writes the hitch report.
+	 *
+	 * @param file
+	 *            File to write the report to.
+	 * @throws IOException
+	 *             In case of writing problems.
+	 */
+	public synchronized void writeReport(final File file) throws IOException {
+		BufferedWriter writer = null;
+		try {
+			writer = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(file), Charset.forName("UTF-8")));
+			long frames = 0;
+			for (ScreenHitches screenHitches : this.screens.values())
+				frames += screenHitches.frames;
+			writer.write("Hitches: " + this.hitches + " in " + frames
+					+ " frames, frames over " + HITCH_FACTOR
+					+ " frame budgets.");
+			writer.newLine();
+
+			for (Map.Entry<Class<?>, ScreenHitches> entry
+					: this.screens.entrySet()) {
+				ScreenHitches screenHitches = entry.getValue();
+				long screenTotal = 0;
+				for (long count : screenHitches.causes)
+					screenTotal += count;
+				writer.newLine();
+				writer.write(entry.getKey().getSimpleName() + ": "
+						+ screenTotal + " in " + screenHitches.frames
+						+ " frames, worst " + millis(screenHitches.worst));
+				writer.newLine();
+				for (Cause cause : Cause.values()) {
+					writer.write("  " + cause.label + ": "
+							+ screenHitches.causes[cause.ordinal()]);
+					writer.newLine();
+				}
+			}
+
+			writer.newLine();
+			writer.write("Last hitches:");
+			writer.newLine();
+			for (int i = 0; i < RECENT_HITCHES; i++) {
+				Hitch hitch = this.recent[(this.nextHitch + i)
+						% RECENT_HITCHES];
+				// Entries not used yet have no cause.
+				if (hitch.cause == null)
+					continue;
+				writer.write(hitch.screen
+						+ (hitch.level > 0 ? " level " + hitch.level : "")
+						+ ", " + hitch.entities + " entities, "
+						+ hitch.bullets + " bullets: "
+						+ millis(hitch.frameTime) + ", " + hitch.cause.label
+						+ " (update " + millis(hitch.updateTime)
+						+ ", draw " + millis(hitch.drawTime)
+						+ ", GC " + millis(hitch.gcTime)
+						+ ", sleep overshoot " + millis(hitch.sleepOvershoot)
+						+ ")");
+				writer.newLine();
+			}
+		} finally {
+			if (writer != null)
+				writer.close();
+		}
+	}
+
+	/**
+	 * Formats a duration.
+	 *
+	 * @param nanos
+	 *            Duration, in nanoseconds.
+	 * @return Duration in milliseconds, as in "12.3 ms".
+	 */
+	private static String millis(final long nanos) {
+		return String.format("%.1f ms", nanos / NANOS_PER_MILLI);
+	}
+}
@@ -14,7 +14,7 @@ public final class InputManager implements KeyListener {
 	/** Number of recognised keys. */
 	private static final int NUM_KEYS = 256;
 	/** Array with the jeys marked as pressed or not. */
-	private static boolean[] keys;
+	private boolean[] keys;
 	/** Singleton instance of the class. */
 	private static InputManager instance;
 
@@ -22,7 +22,7 @@ public final class InputManager implements KeyListener {
 	 * Private constructor.
 	 */
 	private InputManager() {
-		keys = new boolean[NUM_KEYS];
+		this.keys = new boolean[NUM_KEYS];
 	}
 
 	/**
@@ -36,6 +36,16 @@ public final class InputManager implements KeyListener {
 		return instance;
 	}
 
+	/**
+	 * Returns a new InputManager not attached to any window, its keys are
+	 * only changed through setKeyDown.
+	 * 
+	 * @return New InputManager.
+	 */
+	protected static InputManager newVirtualInstance() {
+		return new InputManager();
+	}
+
 	/**
 	 * Returns true if the provided key is currently pressed.
 	 * 
@@ -47,6 +57,20 @@ public final class InputManager implements KeyListener {
 		return keys[keyCode];
 	}
 
+	/**
+	 * Presses or releases a key, for input that doesn't come from the
+	 * keyboard.
+	 * 
+	 * @param keyCode
+	 *            Key number to change.
+	 * @param down
+	 *            True to press the key, false to release it.
+	 */
+	public void setKeyDown(final int keyCode, final boolean down) {
+		if (keyCode >= 0 && keyCode < NUM_KEYS)
+			keys[keyCode] = down;
+	}
+
 	/**
 	 * Changes the state of the key to pressed.
 	 * 
@@ -55,8 +79,13 @@ public final class InputManager implements KeyListener {
 	 */
 	@Override
 	public void keyPressed(final KeyEvent key) {
-		if (key.getKeyCode() >= 0 && key.getKeyCode() < NUM_KEYS)
+		if (key.getKeyCode() >= 0 && key.getKeyCode() < NUM_KEYS) {
+			// Held keys repeat, only the first press is recorded.
+			if (!keys[key.getKeyCode()])
+				Core.getEventRecorder().record(EventRecorder.KEY,
+						key.getKeyCode(), 1, 0);
 			keys[key.getKeyCode()] = true;
+		}
 	}
 
 	/**
@@ -67,8 +96,11 @@ public final class InputManager implements KeyListener {
 	 */
 	@Override
 	public void keyReleased(final KeyEvent key) {
-		if (key.getKeyCode() >= 0 && key.getKeyCode() < NUM_KEYS)
+		if (key.getKeyCode() >= 0 && key.getKeyCode() < NUM_KEYS) {
+			Core.getEventRecorder().record(EventRecorder.KEY,
+					key.getKeyCode(), 0, 0);
 			keys[key.getKeyCode()] = false;
+		}
 	}
 
 	/**
@@ -0,0 +1,181 @@
+package engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies that any thread can record to without locking.
+ * Buckets grow exponentially and each one is split in linear steps, so every
+ * value is kept within about 3% of its size, from nanoseconds to minutes,
+ * in a fixed amount of memory.
+ *
+ */
+public final class LatencyHistogram {
+
+	/** Bits of precision kept within each power of two. */
+	private static final int SUB_BUCKET_BITS = 5;
+	/** Linear steps within each power of two. */
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	/** Buckets needed for any positive long value. */
+	private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS)
+			* SUB_BUCKETS;
+	/** Nanoseconds in a millisecond. */
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	/** Values recorded in each bucket. */
+	private final AtomicLongArray buckets;
+	/** Number of values recorded. */
+	private final LongAdder count;
+	/** Sum of the values recorded, in nanoseconds. */
+	private final LongAdder sum;
+	/** Largest value recorded, in nanoseconds. */
+	private final AtomicLong max;
+
+	/**
+	 * Constructor, creates an empty histogram.
+	 */
+	public LatencyHistogram() {
+		this.buckets = new AtomicLongArray(BUCKETS);
+		this.count = new LongAdder();
+		this.sum = new LongAdder();
+		this.max = new AtomicLong();
+	}
+
+	/**
+	 * Records a latency.
+	 *
+	 * @param nanos
+	 *            Latency, in nanoseconds. Negative values count as 0.
+	 */
+	public void record(final long nanos) {
+		long value = Math.max(0, nanos);
+		this.buckets.incrementAndGet(bucketOf(value));
+		this.count.increment();
+		this.sum.add(value);
+		long previousMax = this.max.get();
+		while (value > previousMax
+				&& !this.max.compareAndSet(previousMax, value))
+			previousMax = this.max.get();
+	}
+
+	/**
+	 * Returns the bucket a value is counted in. Values below SUB_BUCKETS have
+	 * a bucket each, larger ones share a bucket with those that have the
+	 * same highest SUB_BUCKET_BITS + 1 bits.
+	 *
+	 * @param value
+	 *            Non negative value.
+	 * @return Bucket index.
+	 */
+	private static int bucketOf(final long value) {
+		int highestBit = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+		int shift = Math.max(0, highestBit - SUB_BUCKET_BITS);
+		return shift * SUB_BUCKETS + (int) (value >>> shift);
+	}
+
+	/**
+	 * Returns the largest value counted in a bucket.
+	 *
+	 * @param bucket
+	 *            Bucket index.
+	 * @return Largest value of the bucket.
+	 */
+	private static long highestValueOf(final int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lowest = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	/**
+	 * Getter for the number of values recorded.
+	 *
+	 * @return Values recorded.
+	 */
+	public long getCount() {
+		return this.count.sum();
+	}
+
+	/**
+	 * Getter for the sum of the values recorded.
+	 *
+	 * @return Sum of the latencies, in nanoseconds.
+	 */
+	public long getSum() {
+		return this.sum.sum();
+	}
+
+	/**
+	 * Counts the values recorded up to each of the given bounds, in a single
+	 * read of the buckets. Values are compared by their bucket, so a value
+	 * is counted under a bound if its bucket ends at or below it.
+	 *
+	 * @param bounds
+	 *            Upper bounds, in nanoseconds, in increasing order.
+	 * @return Values recorded up to each bound, followed by every value read.
+	 */
+	public long[] countUpTo(final long[] bounds) {
+		long[] counts = new long[bounds.length + 1];
+		int bound = 0;
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			while (bound < bounds.length && highestValueOf(i) > bounds[bound])
+				counts[bound++] = seen;
+			seen += this.buckets.get(i);
+		}
+		while (bound < bounds.length)
+			counts[bound++] = seen;
+		counts[bounds.length] = seen;
+		return counts;
+	}
+
+	/**
+	 * Returns the mean of the values recorded.
+	 *
+	 * @return Mean latency in milliseconds, 0 if nothing was recorded.
+	 */
+	public double getMean() {
+		long values = this.count.sum();
+		if (values == 0)
+			return 0;
+		return this.sum.sum() / NANOS_PER_MILLI / values;
+	}
+
+	/**
+	 * Getter for the largest value recorded.
+	 *
+	 * @return Largest latency in milliseconds, 0 if nothing was recorded.
+	 */
+	public double getMax() {
+		return this.max.get() / NANOS_PER_MILLI;
+	}
+
+	/**
+	 * Returns a percentile of the values recorded. Values recorded while the
+	 * percentile is computed may or may not be counted.
+	 *
+	 * @param percentile
+	 *            Percentile to return, from 0 to 100.
+	 * @return Latency at the percentile in milliseconds, 0 if nothing was
+	 *         recorded.
+	 */
+	public double getPercentile(final double percentile) {
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++)
+			total += this.buckets.get(i);
+		if (total == 0)
+			return 0;
+
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += this.buckets.get(i);
+			if (seen >= rank)
+				return Math.min(highestValueOf(i), this.max.get())
+						/ NANOS_PER_MILLI;
+		}
+		return getMax();
+	}
+}
@@ -0,0 +1,328 @@
+package engine;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the best scores of every game mode, one bounded board per
+ * difficulty, number of players and period.
+ *
+ * Reading never changes a leaderboard, so one that is shared may be read
+ * from any thread as long as nobody changes it; changes are made on a copy.
+ *
+ */
+public final class Leaderboard {
+
+	/** Number of difficulty levels, codes start at 1. */
+	public static final int NUM_DIFFICULTIES = 3;
+	/** Number of player modes, codes start at 1. */
+	public static final int NUM_PLAYER_CODES = 2;
+
+	/** Time spans a board keeps scores for. */
+	public static enum Period {
+		/** Every score ever saved. */
+		ALL_TIME,
+		/** Scores saved since last monday. */
+		WEEKLY,
+		/** Scores saved today. */
+		DAILY
+	};
+
+	/** Boards indexed by difficulty, player code and period. */
+	private final Board[] boards;
+	/** Maximum number of scores on each board. */
+	private final int capacity;
+
+	/**
+	 * Constructor, creates empty boards for the current periods.
+	 *
+	 * @param capacity
+	 *            Maximum number of scores on each board.
+	 */
+	public Leaderboard(final int capacity) {
+		this.capacity = capacity;
+		this.boards = new Board[NUM_DIFFICULTIES * NUM_PLAYER_CODES
+				* Period.values().length];
+		for (int i = 0; i < this.boards.length; i++)
+			this.boards[i] = new Board(capacity);
+		rollOver(System.currentTimeMillis());
+	}
+
+	/**
+	 * Returns the board of a game mode and period. The board of a period
+	 * that has already ended is read as empty, and left as it is.
+	 *
+	 * @param difficulty
+	 *            Difficulty code, from 1 to NUM_DIFFICULTIES.
+	 * @param playerCode
+	 *            Number of players, from 1 to NUM_PLAYER_CODES.
+	 * @param period
+	 *            Period of the board.
+	 * @return Requested board.
+	 */
+	public Board getBoard(final int difficulty, final int playerCode,
+			final Period period) {
+		Board board = this.boards[indexOf(difficulty, playerCode, period)];
+		long bucket = bucketOf(period, System.currentTimeMillis());
+		if (board.bucket == bucket)
+			return board;
+		Board empty = new Board(this.capacity);
+		empty.bucket = bucket;
+		return empty;
+	}
+
+	/**
+	 * Checks if a score would enter any of the boards of a game mode.
+	 *
+	 * @param difficulty
+	 *            Difficulty code.
+	 * @param playerCode
+	 *            Number of players.
+	 * @param score
+	 *            Score points.
+	 * @return True if the score is a new record.
+	 */
+	public boolean isNewRecord(final int difficulty, final int playerCode,
+			final int score) {
+		for (Period period : Period.values())
+			if (getBoard(difficulty, playerCode, period).rankOf(score) >= 0)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Adds a score to every board of its game mode whose period includes the
+	 * moment it was obtained. Boards of the periods that have ended are
+	 * emptied first.
+	 *
+	 * @param difficulty
+	 *            Difficulty code.
+	 * @param playerCode
+	 *            Number of players.
+	 * @param score
+	 *            Score to add.
+	 */
+	public void submit(final int difficulty, final int playerCode,
+			final Score score) {
+		long now = System.currentTimeMillis();
+		for (Period period : Period.values()) {
+			Board board = this.boards[indexOf(difficulty, playerCode,
+					period)];
+			long bucket = bucketOf(period, now);
+			if (board.bucket != bucket)
+				board.reset(bucket);
+			if (bucketOf(period, score.getTimestamp()) == bucket)
+				board.insert(score);
+		}
+	}
+
+	/**
+	 * Removes every score.
+	 */
+	public void clear() {
+		for (Board board : this.boards)
+			board.reset(board.bucket);
+	}
+
+	/**
+	 * Returns the distinct scores of a game mode, on any of its boards.
+	 *
+	 * @param difficulty
+	 *            Difficulty code.
+	 * @param playerCode
+	 *            Number of players.
+	 * @return Scores of the mode, best first.
+	 */
+	public List<Score> getScores(final int difficulty, final int playerCode) {
+		List<Score> scores = new ArrayList<Score>();
+		// Boards share score objects, each one is listed once.
+		Set<Score> listed = Collections.newSetFromMap(
+				new IdentityHashMap<Score, Boolean>());
+		for (Period period : Period.values())
+			for (Score score : getBoard(difficulty, playerCode, period)
+					.getScores())
+				if (listed.add(score))
+					scores.add(score);
+		Collections.sort(scores);
+		return scores;
+	}
+
+	/**
+	 * Copies the leaderboard, leaving out the boards of the periods that
+	 * have ended. Scores are immutable, so they are shared.
+	 *
+	 * @return Independent copy.
+	 */
+	public Leaderboard copy() {
+		Leaderboard copy = new Leaderboard(this.capacity);
+		for (int i = 0; i < this.boards.length; i++) {
+			copy.boards[i].bucket = this.boards[i].bucket;
+			copy.boards[i].size = this.boards[i].size;
+			System.arraycopy(this.boards[i].entries, 0,
+					copy.boards[i].entries, 0, this.boards[i].size);
+		}
+		copy.rollOver(System.currentTimeMillis());
+		return copy;
+	}
+
+	/**
+	 * Empties the boards whose period has ended.
+	 *
+	 * @param now
+	 *            Milliseconds since epoch.
+	 */
+	private void rollOver(final long now) {
+		for (Period period : Period.values()) {
+			long bucket = bucketOf(period, now);
+			for (int i = period.ordinal(); i < this.boards.length;
+					i += Period.values().length)
+				if (this.boards[i].bucket != bucket)
+					this.boards[i].reset(bucket);
+		}
+	}
+
+	/**
+	 * Computes the position of a board in the boards array.
+	 *
+	 * @param difficulty
+	 *            Difficulty code.
+	 * @param playerCode
+	 *            Number of players.
+	 * @param period
+	 *            Period of the board.
+	 * @return Index of the board.
+	 */
+	private static int indexOf(final int difficulty, final int playerCode,
+			final Period period) {
+		if (difficulty < 1 || difficulty > NUM_DIFFICULTIES
+				|| playerCode < 1 || playerCode > NUM_PLAYER_CODES)
+			throw new IllegalArgumentException("No board for difficulty "
+					+ difficulty + " and player code " + playerCode);
+		return ((difficulty - 1) * NUM_PLAYER_CODES + playerCode - 1)
+				* Period.values().length + period.ordinal();
+	}
+
+	/**
+	 * Identifies the period instance a moment belongs to, days since epoch
+	 * for daily boards and the monday of the week for weekly ones.
+	 *
+	 * @param period
+	 *            Period of the board.
+	 * @param timestamp
+	 *            Milliseconds since epoch.
+	 * @return Period identifier, 0 for all time boards.
+	 */
+	private static long bucketOf(final Period period, final long timestamp) {
+		if (period == Period.ALL_TIME)
+			return 0;
+		LocalDate date = Instant.ofEpochMilli(timestamp)
+				.atZone(ZoneId.systemDefault()).toLocalDate();
+		if (period == Period.WEEKLY)
+			date = date.minusDays(date.getDayOfWeek().getValue()
+					- DayOfWeek.MONDAY.getValue());
+		return date.toEpochDay();
+	}
+
+	/**
+	 * Top scores of one game mode and period, kept sorted in a bounded array.
+	 * Rank lookups are a binary search.
+	 */
+	public static final class Board {
+
+		/** Scores, best first. */
+		private final Score[] entries;
+		/** Number of scores on the board. */
+		private int size;
+		/** Period instance the scores belong to. */
+		private long bucket;
+
+		/**
+		 * Constructor, creates an empty board.
+		 *
+		 * @param capacity
+		 *            Maximum number of scores.
+		 */
+		private Board(final int capacity) {
+			this.entries = new Score[capacity];
+		}
+
+		/**
+		 * Returns the position a new score would take on the board. Ties go
+		 * after the older scores.
+		 *
+		 * @param score
+		 *            Score points.
+		 * @return Zero based rank, -1 if the score doesn't make the board.
+		 */
+		public int rankOf(final int score) {
+			int low = 0;
+			int high = this.size;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (this.entries[middle].getScore() >= score)
+					low = middle + 1;
+				else
+					high = middle;
+			}
+			return low < this.entries.length ? low : -1;
+		}
+
+		/**
+		 * Inserts a score, dropping the lowest one if the board is full.
+		 *
+		 * @param score
+		 *            Score to insert.
+		 * @return Zero based rank, -1 if the score doesn't make the board.
+		 */
+		private int insert(final Score score) {
+			int rank = rankOf(score.getScore());
+			if (rank < 0)
+				return rank;
+			int moved = Math.min(this.size, this.entries.length - 1) - rank;
+			System.arraycopy(this.entries, rank, this.entries, rank + 1,
+					moved);
+			this.entries[rank] = score;
+			this.size = Math.min(this.size + 1, this.entries.length);
+			return rank;
+		}
+
+		/**
+		 * Empties the board for a new period instance.
+		 *
+		 * @param newBucket
+		 *            Period instance identifier.
+		 */
+		private void reset(final long newBucket) {
+			Arrays.fill(this.entries, null);
+			this.size = 0;
+			this.bucket = newBucket;
+		}
+
+		/**
+		 * Getter for the scores on the board.
+		 *
+		 * @return Immutable list of scores, best first.
+		 */
+		public List<Score> getScores() {
+			return Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(
+					this.entries, this.size)));
+		}
+
+		/**
+		 * Getter for the number of scores on the board.
+		 *
+		 * @return Number of scores.
+		 */
+		public int size() {
+			return this.size;
+		}
+	}
+}
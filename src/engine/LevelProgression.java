@@ -0,0 +1,82 @@
+package engine;
+
+import entity.Pair;
+
+/**
+ * Rules taking a game from one level to the next, shared by every way of
+ * playing it: the window, game server sessions, network hosts and the
+ * soak test. A game starts at level 1 with every life, gets a bonus life
+ * every few levels, and ends when no player is alive or the last level is
+ * cleared.
+ *
+ */
+public final class LevelProgression {
+
+	/**
+	 * Private constructor, only the static methods are used.
+	 */
+	private LevelProgression() {
+
+	}
+
+	/**
+	 * Creates the state of a new game, at the start of the first level.
+	 *
+	 * @param playerCode
+	 *            Number of players, 1 or 2.
+	 * @param difficultyCode
+	 *            Difficulty code, 1 to 3.
+	 * @param seed
+	 *            Seed of the random source of the game.
+	 * @return State at the start of level 1.
+	 */
+	public static GameState newGame(final int playerCode,
+			final int difficultyCode, final long seed) {
+		return new GameState(1, new Pair(0, 0), new Pair(Core.MAX_LIVES,
+				Core.MAX_LIVES), new Pair(0, 0), new Pair(0, 0), playerCode,
+				difficultyCode, seed);
+	}
+
+	/**
+	 * Checks if a level starts with a bonus life: one extra life every few
+	 * levels, if player 1 has lost one.
+	 *
+	 * @param gameState
+	 *            State at the start of the level.
+	 * @return True if the level gives a bonus life.
+	 */
+	public static boolean hasBonusLife(final GameState gameState) {
+		return gameState.getLevel() % Core.EXTRA_LIFE_FRECUENCY == 0
+				&& gameState.getLivesRemaining().getPlayer1Value()
+						< Core.MAX_LIVES;
+	}
+
+	/**
+	 * Moves a game to the next level, keeping its score, lives and counts.
+	 *
+	 * @param played
+	 *            State at the end of a level, end of level score included.
+	 * @return State at the start of the next level.
+	 */
+	public static GameState nextLevel(final GameState played) {
+		return new GameState(played.getLevel() + 1, played.getScore(),
+				played.getLivesRemaining(), played.getBulletsShot(),
+				played.getShipsDestroyed(), played.getPlayerCode(),
+				played.getDifficultyCode(), played.getSeed());
+	}
+
+	/**
+	 * Checks if a game is over.
+	 *
+	 * @param gameState
+	 *            State at the start of a level, as given by nextLevel.
+	 * @return True if no player is alive or every level has been cleared.
+	 */
+	public static boolean isGameOver(final GameState gameState) {
+		Pair lives = gameState.getLivesRemaining();
+		boolean alive = lives.getPlayer1Value() > 0
+				|| gameState.getPlayerCode() == 2
+						&& lives.getPlayer2Value() > 0;
+		return !alive || gameState.getLevel() > Core.NUM_LEVELS;
+	}
+}
@@ -0,0 +1,384 @@
+package engine;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registry of the metrics of the running game: counters, gauges and latency
+ * histograms, all of which can be updated from any thread without locking.
+ * Published as a JMX MBean, so they can be watched with JConsole or
+ * VisualVM.
+ *
+ */
+public final class Metrics implements DynamicMBean {
+
+	/** Name the registry is published under. */
+	public static final String OBJECT_NAME = "invaders:type=Metrics";
+
+	/** Frames shown in the game window. */
+	public static final String FRAMES_RENDERED = "FramesRendered";
+	/** Iterations of the game loop. */
+	public static final String TICKS = "Ticks";
+	/** Iterations of the game loop that took longer than a frame. */
+	public static final String MISSED_DEADLINES = "MissedDeadlines";
+	/** Bullets fired by any ship. */
+	public static final String BULLETS_FIRED = "BulletsFired";
+	/** Bullet and ship pairs checked for collisions. */
+	public static final String COLLISIONS_TESTED = "CollisionsTested";
+	/** Time taken by each iteration of the game loop. */
+	public static final String TICK_TIME = "TickTime";
+	/** Time taken by each file load or save. */
+	public static final String FILE_LATENCY = "FileLatency";
+	/** Tasks waiting for the file thread, or running on it. */
+	public static final String FILE_QUEUE_DEPTH = "FileQueueDepth";
+	/** Levels played to the end, won or lost. */
+	public static final String LEVELS_PLAYED = "LevelsPlayed";
+	/** Games played to the score screen. */
+	public static final String GAMES_PLAYED = "GamesPlayed";
+	/** Sessions open on a game server. */
+	public static final String SESSIONS_OPEN = "SessionsOpen";
+	/** Sessions of a game server playing a game. */
+	public static final String SESSIONS_ACTIVE = "SessionsActive";
+	/** Attribute with the kind of screen shown. */
+	public static final String SCREEN = "Screen";
+
+	/** Value of a gauge, read whenever it is observed. */
+	public interface Gauge {
+		/**
+		 * Reads the current value.
+		 *
+		 * @return Current value.
+		 */
+		long getValue();
+	}
+
+	/** Suffixes of the attributes derived from each histogram. */
+	private static final String[] HISTOGRAM_ATTRIBUTES = { "Count",
+			"Mean", "P50", "P99", "Max" };
+
+	/** Singleton instance of the class. */
+	private static Metrics instance;
+
+	/** Counters, by name. */
+	private final ConcurrentMap<String, LongAdder> counters;
+	/** Gauges, by name. */
+	private final ConcurrentMap<String, Gauge> gauges;
+	/** Histograms, by name. */
+	private final ConcurrentMap<String, LatencyHistogram> histograms;
+	/** Kind of screen shown, null before the first one. */
+	private volatile String screen;
+
+	/**
+	 * Constructor, creates a registry with every metric of the game at 0.
+	 * Only the shared instance is published, others are for game objects
+	 * that should not count in the application metrics.
+	 */
+	public Metrics() {
+		this.counters = new ConcurrentSkipListMap<String, LongAdder>();
+		this.gauges = new ConcurrentSkipListMap<String, Gauge>();
+		this.histograms =
+				new ConcurrentSkipListMap<String, LatencyHistogram>();
+
+		counter(FRAMES_RENDERED);
+		counter(TICKS);
+		counter(MISSED_DEADLINES);
+		counter(BULLETS_FIRED);
+		counter(COLLISIONS_TESTED);
+		counter(LEVELS_PLAYED);
+		counter(GAMES_PLAYED);
+		histogram(TICK_TIME);
+		histogram(FILE_LATENCY);
+	}
+
+	/**
+	 * Returns shared instance of Metrics.
+	 *
+	 * @return Shared instance of Metrics.
+	 */
+	protected static synchronized Metrics getInstance() {
+		if (instance == null)
+			instance = new Metrics();
+		return instance;
+	}
+
+	/**
+	 * Returns a counter, creating it if needed.
+	 *
+	 * @param name
+	 *            Name of the counter.
+	 * @return Counter with that name.
+	 */
+	public LongAdder counter(final String name) {
+		LongAdder counter = this.counters.get(name);
+		if (counter == null) {
+			LongAdder created = new LongAdder();
+			counter = this.counters.putIfAbsent(name, created);
+			if (counter == null)
+				counter = created;
+		}
+		return counter;
+	}
+
+	/**
+	 * Registers a gauge, replacing any other with the same name.
+	 *
+	 * @param name
+	 *            Name of the gauge.
+	 * @param gauge
+	 *            Reads the value of the gauge.
+	 */
+	public void gauge(final String name, final Gauge gauge) {
+		this.gauges.put(name, gauge);
+	}
+
+	/**
+	 * Returns a latency histogram, creating it if needed.
+	 *
+	 * @param name
+	 *            Name of the histogram.
+	 * @return Histogram with that name.
+	 */
+	public LatencyHistogram histogram(final String name) {
+		LatencyHistogram histogram = this.histograms.get(name);
+		if (histogram == null) {
+			LatencyHistogram created = new LatencyHistogram();
+			histogram = this.histograms.putIfAbsent(name, created);
+			if (histogram == null)
+				histogram = created;
+		}
+		return histogram;
+	}
+
+	/**
+	 * Returns the names of the counters.
+	 *
+	 * @return Counter names, in alphabetical order.
+	 */
+	public Set<String> getCounterNames() {
+		return Collections.unmodifiableSet(this.counters.keySet());
+	}
+
+	/**
+	 * Returns the names of the gauges.
+	 *
+	 * @return Gauge names, in alphabetical order.
+	 */
+	public Set<String> getGaugeNames() {
+		return Collections.unmodifiableSet(this.gauges.keySet());
+	}
+
+	/**
+	 * Returns the names of the histograms.
+	 *
+	 * @return Histogram names, in alphabetical order.
+	 */
+	public Set<String> getHistogramNames() {
+		return Collections.unmodifiableSet(this.histograms.keySet());
+	}
+
+	/**
+	 * Reads a gauge.
+	 *
+	 * @param name
+	 *            Name of the gauge.
+	 * @return Current value, 0 if there is no such gauge.
+	 */
+	public long readGauge(final String name) {
+		Gauge gauge = this.gauges.get(name);
+		return gauge == null ? 0 : gauge.getValue();
+	}
+
+	/**
+	 * Setter for the kind of screen shown.
+	 *
+	 * @param screen
+	 *            Name of the screen class.
+	 */
+	public void setScreen(final String screen) {
+		this.screen = screen;
+	}
+
+	/**
+	 * Getter for the kind of screen shown.
+	 *
+	 * @return Name of the screen class, null before the first screen.
+	 */
+	public String getScreen() {
+		return this.screen;
+	}
+
+	/**
+	 * Publishes the registry on the platform MBean server.
+	 *
+	 * @param logger
+	 *            Logger to report problems to.
+	 */
+	public void publish(final Logger logger) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name))
+				server.registerMBean(this, name);
+		} catch (JMException e) {
+			logger.log(Level.WARNING, "Couldn't publish the metrics.", e);
+		}
+	}
+
+	/**
+	 * Reads a metric, or a statistic of a histogram, by its attribute name.
+	 *
+	 * @param attribute
+	 *            Name of a counter or gauge, or of a histogram followed by
+	 *            Count, Mean, P50, P99 or Max.
+	 * @return Value, Long for counters, gauges and histogram counts, Double
+	 *         in milliseconds for the other histogram statistics.
+	 * @throws AttributeNotFoundException
+	 *             If there is no such metric.
+	 */
+	@Override
+	public Object getAttribute(final String attribute)
+			throws AttributeNotFoundException {
+		if (attribute.equals(SCREEN))
+			return this.screen;
+		LongAdder counter = this.counters.get(attribute);
+		if (counter != null)
+			return counter.sum();
+		Gauge gauge = this.gauges.get(attribute);
+		if (gauge != null)
+			return gauge.getValue();
+
+		for (Map.Entry<String, LatencyHistogram> entry
+				: this.histograms.entrySet()) {
+			if (!attribute.startsWith(entry.getKey()))
+				continue;
+			String statistic = attribute.substring(entry.getKey().length());
+			LatencyHistogram histogram = entry.getValue();
+			if (statistic.equals("Count"))
+				return histogram.getCount();
+			if (statistic.equals("Mean"))
+				return histogram.getMean();
+			if (statistic.equals("P50"))
+				return histogram.getPercentile(50);
+			if (statistic.equals("P99"))
+				return histogram.getPercentile(99);
+			if (statistic.equals("Max"))
+				return histogram.getMax();
+		}
+		throw new AttributeNotFoundException(attribute);
+	}
+
+	/**
+	 * Reads several metrics, skipping unknown ones.
+	 *
+	 * @param attributes
+	 *            Attribute names.
+	 * @return Values found.
+	 */
+	@Override
+	public AttributeList getAttributes(final String[] attributes) {
+		AttributeList values = new AttributeList();
+		for (String attribute : attributes) {
+			try {
+				values.add(new Attribute(attribute, getAttribute(attribute)));
+			} catch (AttributeNotFoundException e) {
+				// Unknown attributes are left out of the list.
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Metrics are read only.
+	 *
+	 * @param attribute
+	 *            Ignored.
+	 * @throws AttributeNotFoundException
+	 *             Always.
+	 */
+	@Override
+	public void setAttribute(final Attribute attribute)
+			throws AttributeNotFoundException {
+		throw new AttributeNotFoundException(attribute.getName()
+				+ " is read only.");
+	}
+
+	/**
+	 * Metrics are read only.
+	 *
+	 * @param attributes
+	 *            Ignored.
+	 * @return Empty list, nothing is set.
+	 */
+	@Override
+	public AttributeList setAttributes(final AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	/**
+	 * The registry has no operations.
+	 *
+	 * @param actionName
+	 *            Ignored.
+	 * @param params
+	 *            Ignored.
+	 * @param signature
+	 *            Ignored.
+	 * @return Never returns.
+	 */
+	@Override
+	public Object invoke(final String actionName, final Object[] params,
+			final String[] signature) {
+		throw new UnsupportedOperationException(actionName);
+	}
+
+	/**
+	 * Describes the metrics registered so far.
+	 *
+	 * @return Description of every attribute.
+	 */
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		List<MBeanAttributeInfo> attributes =
+				new ArrayList<MBeanAttributeInfo>();
+		attributes.add(new MBeanAttributeInfo(SCREEN, "java.lang.String",
+				"Kind of screen shown", true, false, false));
+		for (String name : this.counters.keySet())
+			attributes.add(new MBeanAttributeInfo(name, "long",
+					"Counter " + name, true, false, false));
+		for (String name : this.gauges.keySet())
+			attributes.add(new MBeanAttributeInfo(name, "long",
+					"Gauge " + name, true, false, false));
+		for (String name : this.histograms.keySet())
+			for (String statistic : HISTOGRAM_ATTRIBUTES)
+				attributes.add(new MBeanAttributeInfo(name + statistic,
+						statistic.equals("Count") ? "long" : "double",
+						statistic.equals("Count") ? "Values in " + name
+								: statistic + " of " + name + ", in ms",
+						true, false, false));
+
+		return new MBeanInfo(Metrics.class.getName(),
+				"Metrics of the running game.",
+				attributes.toArray(new MBeanAttributeInfo[attributes.size()]),
+				null, new MBeanOperationInfo[0], null);
+	}
+}
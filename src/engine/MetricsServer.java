@@ -0,0 +1,265 @@
+package engine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the game metrics over HTTP on the local machine, in the Prometheus
+ * text exposition format. Scrapes only read the metrics, they never wait on
+ * the game loop.
+ *
+ */
+public final class MetricsServer {
+
+	/** Path the metrics are served at. */
+	public static final String PATH = "/metrics";
+
+	/** Prefix of every metric name. */
+	private static final String PREFIX = "invaders_";
+	/** Upper bounds of the histogram buckets, in nanoseconds. */
+	private static final long[] BUCKET_BOUNDS = { 1000000L, 2000000L,
+			4000000L, 8000000L, 16000000L, 33000000L, 50000000L, 100000000L,
+			250000000L, 1000000000L, 5000000000L };
+	/** Nanoseconds in a second. */
+	private static final double NANOS_PER_SECOND = 1000000000.0;
+	/** Minimum nanoseconds between two measures of the tick rate. */
+	private static final long TICK_RATE_INTERVAL = 1000000000L;
+	/** Content type of the Prometheus text format. */
+	private static final String CONTENT_TYPE =
+			"text/plain; version=0.0.4; charset=utf-8";
+
+	/** Metrics served. */
+	private final Metrics metrics;
+	/** Embedded HTTP server. */
+	private final HttpServer server;
+	/** Thread answering the scrapes. */
+	private final ExecutorService executor;
+
+	/** Time of the last tick rate measure, in nanoseconds. */
+	private long tickRateTime;
+	/** Ticks at the last tick rate measure. */
+	private long tickRateTicks;
+	/** Ticks per second between the last two measures. */
+	private double tickRate;
+
+	/**
+	 * Constructor, binds the server to the loopback address.
+	 *
+	 * @param metrics
+	 *            Metrics to serve.
+	 * @param port
+	 *            Port to listen on, 0 for any free port.
+	 * @throws IOException
+	 *             If the port can't be bound.
+	 */
+	public MetricsServer(final Metrics metrics, final int port)
+			throws IOException {
+		this.metrics = metrics;
+		this.tickRateTime = System.nanoTime();
+		this.tickRateTicks = metrics.counter(Metrics.TICKS).sum();
+		this.server = HttpServer.create(new InetSocketAddress(
+				InetAddress.getLoopbackAddress(), port), 0);
+		this.executor = Executors.newSingleThreadExecutor(
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(final Runnable runnable) {
+						Thread thread = new Thread(runnable, "MetricsServer");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		this.server.setExecutor(this.executor);
+		this.server.createContext(PATH, new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange)
+					throws IOException {
+				serve(exchange);
+			}
+		});
+	}
+
+	/**
+	 * Starts the server on the port given by the invaders.metricsPort system
+	 * property, if it is set.
+	 *
+	 * @param metrics
+	 *            Metrics to serve.
+	 * @param logger
+	 *            Logger to report the server address or problems to.
+	 * @return The running server, null if it is disabled or couldn't start.
+	 */
+	public static MetricsServer startIfEnabled(final Metrics metrics,
+			final Logger logger) {
+		Integer port = Integer.getInteger("invaders.metricsPort");
+		if (port == null)
+			return null;
+		try {
+			MetricsServer metricsServer = new MetricsServer(metrics, port);
+			metricsServer.start();
+			logger.info("Serving metrics on http://localhost:"
+					+ metricsServer.getPort() + PATH);
+			return metricsServer;
+		} catch (IOException e) {
+			logger.warning("Couldn't serve metrics on port " + port + ": "
+					+ e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Starts answering scrapes.
+	 */
+	public void start() {
+		this.server.start();
+	}
+
+	/**
+	 * Stops the server.
+	 */
+	public void stop() {
+		this.server.stop(0);
+		this.executor.shutdown();
+	}
+
+	/**
+	 * Getter for the port the server listens on.
+	 *
+	 * @return Bound port.
+	 */
+	public int getPort() {
+		return this.server.getAddress().getPort();
+	}
+
+	/**
+	 * Answers a scrape.
+	 *
+	 * @param exchange
+	 *            Request and response.
+	 * @throws IOException
+	 *             If the response can't be sent.
+	 */
+	private void serve(final HttpExchange exchange) throws IOException {
+		try {
+			if (!"GET".equals(exchange.getRequestMethod())) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			byte[] body = scrape().getBytes(Charset.forName("UTF-8"));
+			exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+			exchange.sendResponseHeaders(200, body.length);
+			OutputStream outputStream = exchange.getResponseBody();
+			outputStream.write(body);
+			outputStream.close();
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Writes every metric in the Prometheus text format.
+	 *
+	 * @return Text of the scrape.
+	 */
+	public synchronized String scrape() {
+		StringBuilder text = new StringBuilder();
+
+		for (String name : this.metrics.getCounterNames()) {
+			String metric = PREFIX + snakeCase(name) + "_total";
+			text.append("# TYPE ").append(metric).append(" counter\n");
+			text.append(metric).append(' ')
+					.append(this.metrics.counter(name).sum()).append('\n');
+		}
+
+		for (String name : this.metrics.getGaugeNames()) {
+			String metric = PREFIX + snakeCase(name);
+			text.append("# TYPE ").append(metric).append(" gauge\n");
+			text.append(metric).append(' ')
+					.append(this.metrics.readGauge(name)).append('\n');
+		}
+
+		String tickRateMetric = PREFIX + "tick_rate";
+		text.append("# TYPE ").append(tickRateMetric).append(" gauge\n");
+		text.append(tickRateMetric).append(' ').append(measureTickRate())
+				.append('\n');
+
+		// Before the first screen there is no sample, nor the metric.
+		String screenMetric = PREFIX + "screen";
+		String screen = this.metrics.getScreen();
+		if (screen != null) {
+			text.append("# TYPE ").append(screenMetric).append(" gauge\n");
+			text.append(screenMetric).append("{screen=\"").append(screen)
+					.append("\"} 1\n");
+		}
+
+		for (String name : this.metrics.getHistogramNames()) {
+			String metric = PREFIX + snakeCase(name) + "_seconds";
+			LatencyHistogram histogram = this.metrics.histogram(name);
+			long[] counts = histogram.countUpTo(BUCKET_BOUNDS);
+			text.append("# TYPE ").append(metric).append(" histogram\n");
+			for (int i = 0; i < BUCKET_BOUNDS.length; i++)
+				text.append(metric).append("_bucket{le=\"")
+						.append(BUCKET_BOUNDS[i] / NANOS_PER_SECOND)
+						.append("\"} ").append(counts[i]).append('\n');
+			text.append(metric).append("_bucket{le=\"+Inf\"} ")
+					.append(counts[BUCKET_BOUNDS.length]).append('\n');
+			text.append(metric).append("_sum ")
+					.append(histogram.getSum() / NANOS_PER_SECOND)
+					.append('\n');
+			text.append(metric).append("_count ")
+					.append(counts[BUCKET_BOUNDS.length]).append('\n');
+		}
+
+		return text.toString();
+	}
+
+	/**
+	 * Returns the game loop ticks per second, measured between scrapes at
+	 * least a second apart.
+	 *
+	 * @return Ticks per second.
+	 */
+	private double measureTickRate() {
+		long now = System.nanoTime();
+		if (now - this.tickRateTime >= TICK_RATE_INTERVAL) {
+			long ticks = this.metrics.counter(Metrics.TICKS).sum();
+			this.tickRate = (ticks - this.tickRateTicks) * NANOS_PER_SECOND
+					/ (now - this.tickRateTime);
+			this.tickRateTime = now;
+			this.tickRateTicks = ticks;
+		}
+		return this.tickRate;
+	}
+
+	/**
+	 * Converts a metric name from camel case to snake case.
+	 *
+	 * @param name
+	 *            Name, as in FramesRendered.
+	 * @return Name in snake case, as in frames_rendered.
+	 */
+	private static String snakeCase(final String name) {
+		StringBuilder snake = new StringBuilder();
+		for (int i = 0; i < name.length(); i++) {
+			char character = name.charAt(i);
+			if (Character.isUpperCase(character)) {
+				if (i > 0)
+					snake.append('_');
+				snake.append(Character.toLowerCase(character));
+			} else {
+				snake.append(character);
+			}
+		}
+		return snake.toString();
+	}
+}
@@ -0,0 +1,285 @@
+package engine;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+/**
+ * A connection of a network game, over a non blocking socket channel.
+ * Messages are framed as their length, a type byte, then the payload.
+ * Messages sent are queued in pooled buffers until the socket takes them,
+ * messages received are copied out of the stream one at a time into a
+ * buffer of the connection, so that nothing is allocated once running.
+ *
+ * A connection is not thread safe.
+ *
+ */
+public final class NetConnection {
+
+	/** Bytes before the payload of a message: length and type. */
+	public static final int HEADER_SIZE = 5;
+
+	/** Socket of the connection. */
+	private final SocketChannel channel;
+	/** Buffers of the connection and of the messages it sends. */
+	private final BufferPool pool;
+	/** Bytes received and not yet taken as messages. */
+	private final ByteBuffer readBuffer;
+	/** Last message received. */
+	private final ByteBuffer message;
+	/** Messages waiting to be written to the socket. */
+	private final ArrayDeque<ByteBuffer> writeQueue;
+	/** Registration in a selector, null if not registered. */
+	private SelectionKey key;
+	/** If the buffers have been given back to the pool. */
+	private boolean closed;
+
+	/** Bytes written to the socket. */
+	private long bytesSent;
+	/** Bytes read from the socket. */
+	private long bytesReceived;
+	/** Messages sent. */
+	private long messagesSent;
+	/** Messages received. */
+	private long messagesReceived;
+
+	/**
+	 * Constructor, makes the channel non blocking.
+	 *
+	 * @param channel
+	 *            Connected socket.
+	 * @param pool
+	 *            Buffers of the connection. The largest message sent or
+	 *            received must fit in one.
+	 * @throws IOException
+	 *             If the socket can't be set up.
+	 */
+	public NetConnection(final SocketChannel channel, final BufferPool pool)
+			throws IOException {
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		this.channel = channel;
+		this.pool = pool;
+		this.readBuffer = pool.getBuffer();
+		this.message = pool.getBuffer();
+		this.writeQueue = new ArrayDeque<ByteBuffer>();
+	}
+
+	/**
+	 * Registers the connection in a selector, for reading. It is then also
+	 * selected for writing while messages are queued.
+	 *
+	 * @param selector
+	 *            Selector to register in.
+	 * @return Key of the registration, attached to the connection.
+	 * @throws IOException
+	 *             If the channel is closed.
+	 */
+	public SelectionKey register(final Selector selector) throws IOException {
+		this.key = this.channel.register(selector, SelectionKey.OP_READ,
+				this);
+		return this.key;
+	}
+
+	/**
+	 * Starts a message. The payload is put into the buffer returned, which
+	 * is then given to send.
+	 *
+	 * @param type
+	 *            Type of the message.
+	 * @return Buffer to put the payload into.
+	 */
+	public ByteBuffer newMessage(final byte type) {
+		ByteBuffer buffer = this.pool.getBuffer();
+		buffer.position(HEADER_SIZE - 1);
+		buffer.put(type);
+		return buffer;
+	}
+
+	/**
+	 * Queues a message and writes as much of the queue as the socket takes.
+	 *
+	 * @param buffer
+	 *            Message started with newMessage, the payload ending at its
+	 *            position. It belongs to the connection afterwards.
+	 * @throws IOException
+	 *             If the connection is broken.
+	 */
+	public void send(final ByteBuffer buffer) throws IOException {
+		buffer.putInt(0, buffer.position() - (HEADER_SIZE - 1));
+		buffer.flip();
+		this.writeQueue.add(buffer);
+		this.messagesSent++;
+		flush();
+	}
+
+	/**
+	 * Writes as much of the queued messages as the socket takes.
+	 *
+	 * @return True if every message was written.
+	 * @throws IOException
+	 *             If the connection is broken.
+	 */
+	public boolean flush() throws IOException {
+		while (!this.writeQueue.isEmpty()) {
+			ByteBuffer buffer = this.writeQueue.peek();
+			this.bytesSent += this.channel.write(buffer);
+			if (buffer.hasRemaining()) {
+				setWriteInterest(true);
+				return false;
+			}
+			this.pool.recycle(this.writeQueue.poll());
+		}
+		setWriteInterest(false);
+		return true;
+	}
+
+	/**
+	 * Selects the connection for writing or not, if registered.
+	 *
+	 * @param write
+	 *            If it waits for the socket to take more.
+	 */
+	private void setWriteInterest(final boolean write) {
+		if (this.key != null && this.key.isValid())
+			this.key.interestOps(write ? SelectionKey.OP_READ
+					| SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+	}
+
+	/**
+	 * Takes the next message received, reading the socket if needed.
+	 *
+	 * @return Message, from its type byte to the end of the payload, valid
+	 *         until the next call. Null if no whole message has arrived.
+	 * @throws IOException
+	 *             If the connection is closed or broken, or the message is
+	 *             too large.
+	 */
+	public ByteBuffer receive() throws IOException {
+		if (!hasMessage()) {
+			int read = this.channel.read(this.readBuffer);
+			if (read < 0)
+				throw new EOFException("Connection closed.");
+			this.bytesReceived += read;
+			if (!hasMessage())
+				return null;
+		}
+
+		this.readBuffer.flip();
+		int length = this.readBuffer.getInt();
+		int limit = this.readBuffer.limit();
+		this.readBuffer.limit(this.readBuffer.position() + length);
+		this.message.clear();
+		this.message.put(this.readBuffer);
+		this.message.flip();
+		this.readBuffer.limit(limit);
+		this.readBuffer.compact();
+		this.messagesReceived++;
+		return this.message;
+	}
+
+	/**
+	 * Checks if a whole message is in the read buffer.
+	 *
+	 * @return True if the next message has fully arrived.
+	 * @throws IOException
+	 *             If the next message is too large or empty.
+	 */
+	private boolean hasMessage() throws IOException {
+		int available = this.readBuffer.position();
+		if (available < HEADER_SIZE - 1)
+			return false;
+		int length = this.readBuffer.getInt(0);
+		if (length < 1 || length > this.readBuffer.capacity()
+				- (HEADER_SIZE - 1))
+			throw new IOException("Bad message length: " + length);
+		return available >= HEADER_SIZE - 1 + length;
+	}
+
+	/**
+	 * Closes the socket and gives back its buffers and the queued messages.
+	 * The last message received is not valid afterwards.
+	 */
+	public void close() {
+		try {
+			this.channel.close();
+		} catch (IOException e) {
+			// Nothing left to do with it.
+		}
+		// Closing twice must not give the same buffers back twice.
+		if (this.closed)
+			return;
+		this.closed = true;
+		while (!this.writeQueue.isEmpty())
+			this.pool.recycle(this.writeQueue.poll());
+		this.pool.recycle(this.readBuffer);
+		this.pool.recycle(this.message);
+	}
+
+	/**
+	 * Checks if the connection is open.
+	 *
+	 * @return True until closed.
+	 */
+	public boolean isOpen() {
+		return this.channel.isOpen();
+	}
+
+	/**
+	 * Getter for the socket.
+	 *
+	 * @return Socket of the connection.
+	 */
+	public SocketChannel getChannel() {
+		return this.channel;
+	}
+
+	/**
+	 * Getter for the number of messages waiting to be written.
+	 *
+	 * @return Queued messages.
+	 */
+	public int getQueuedMessages() {
+		return this.writeQueue.size();
+	}
+
+	/**
+	 * Getter for the bytes written to the socket.
+	 *
+	 * @return Bytes sent, headers included.
+	 */
+	public long getBytesSent() {
+		return this.bytesSent;
+	}
+
+	/**
+	 * Getter for the bytes read from the socket.
+	 *
+	 * @return Bytes received, headers included.
+	 */
+	public long getBytesReceived() {
+		return this.bytesReceived;
+	}
+
+	/**
+	 * Getter for the number of messages sent.
+	 *
+	 * @return Messages sent.
+	 */
+	public long getMessagesSent() {
+		return this.messagesSent;
+	}
+
+	/**
+	 * Getter for the number of messages received.
+	 *
+	 * @return Messages received.
+	 */
+	public long getMessagesReceived() {
+		return this.messagesReceived;
+	}
+}
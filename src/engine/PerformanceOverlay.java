@@ -0,0 +1,354 @@
+package engine;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the statistics shown by the performance overlay: the time taken by
+ * the last frames, and memory and garbage collection figures read from the
+ * management beans once a second. Recording frames and writing the overlay
+ * text reuse the same buffers, so they allocate nothing.
+ *
+ */
+public final class PerformanceOverlay {
+
+	/** Frames kept for the statistics and the graph. */
+	public static final int FRAMES = 240;
+	/** Number of text lines of the overlay. */
+	public static final int LINES = 4;
+	/** Longest text line, in characters. */
+	public static final int LINE_LENGTH = 64;
+
+	/** Nanoseconds between reads of the management beans. */
+	private static final long SAMPLE_INTERVAL = 1000000000L;
+	/** Nanoseconds in a millisecond. */
+	private static final long NANOS_PER_MILLI = 1000000L;
+	/** Bytes in a kilobyte. */
+	private static final long KILOBYTE = 1024;
+	/** Bytes in a megabyte. */
+	private static final long MEGABYTE = 1024 * 1024;
+
+	/** Time taken by each frame, in nanoseconds, oldest first from next. */
+	private final long[] frameTimes;
+	/** Time spent drawing in each frame, in nanoseconds. */
+	private final long[] drawTimes;
+	/** Copy of the frame times, sorted to find percentiles. */
+	private final long[] sorted;
+	/** Position the next frame is recorded at. */
+	private int next;
+	/** Number of frames recorded, up to FRAMES. */
+	private int count;
+
+	/** If the overlay is shown. */
+	private boolean visible;
+	/** If the toggle key was down on the last frame. */
+	private boolean toggleKeyDown;
+
+	/** Memory bean, for the heap in use. */
+	private final MemoryMXBean memoryBean;
+	/** Garbage collector beans, for the collections so far. */
+	private final GarbageCollectorMXBean[] collectorBeans;
+	/** Thread bean, for the bytes allocated by the game thread. */
+	private final com.sun.management.ThreadMXBean threadBean;
+	/** Time of the last read of the management beans, in nanoseconds. */
+	private long lastSample;
+	/** Bytes allocated by the game thread at the last read, -1 if unknown. */
+	private long lastAllocated;
+	/** Bytes allocated per second by the game thread, -1 if unknown. */
+	private long allocationRate;
+	/** Heap in use at the last read, in bytes. */
+	private long heapUsed;
+	/** Garbage collections at the last read. */
+	private long collections;
+	/** Time spent in garbage collection at the last read, in milliseconds. */
+	private long collectionTime;
+
+	/** Entities on the screen being drawn. */
+	private int entities;
+	/** Bullets on the screen being drawn. */
+	private int bullets;
+	/** Bullets kept in the pool. */
+	private int pooledBullets;
+
+	/**
+	 * Constructor, starts hidden and with no frames recorded.
+	 */
+	public PerformanceOverlay() {
+		this.frameTimes = new long[FRAMES];
+		this.drawTimes = new long[FRAMES];
+		this.sorted = new long[FRAMES];
+		this.memoryBean = ManagementFactory.getMemoryMXBean();
+		List<GarbageCollectorMXBean> collectors =
+				ManagementFactory.getGarbageCollectorMXBeans();
+		this.collectorBeans = collectors
+				.toArray(new GarbageCollectorMXBean[collectors.size()]);
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) threads)
+						.isThreadAllocatedMemorySupported())
+			this.threadBean = (com.sun.management.ThreadMXBean) threads;
+		else
+			this.threadBean = null;
+		this.lastAllocated = -1;
+		this.allocationRate = -1;
+	}
+
+	/**
+	 * Records the time taken by a frame.
+	 *
+	 * @param frameTime
+	 *            Time taken by the frame, in nanoseconds.
+	 * @param drawTime
+	 *            Part of it spent drawing, in nanoseconds.
+	 */
+	public void recordFrame(final long frameTime, final long drawTime) {
+		this.frameTimes[this.next] = frameTime;
+		this.drawTimes[this.next] = drawTime;
+		this.next = (this.next + 1) % FRAMES;
+		if (this.count < FRAMES)
+			this.count++;
+
+		if (this.visible) {
+			long now = System.nanoTime();
+			if (now - this.lastSample >= SAMPLE_INTERVAL) {
+				sample(now);
+				this.lastSample = now;
+			}
+		}
+	}
+
+	/**
+	 * Reads the management beans. Reading the heap and the allocated bytes
+	 * creates a few small objects, hence only once a second.
+	 *
+	 * @param now
+	 *            Current time, in nanoseconds.
+	 */
+	private void sample(final long now) {
+		this.heapUsed = this.memoryBean.getHeapMemoryUsage().getUsed();
+
+		long count = 0;
+		long time = 0;
+		for (GarbageCollectorMXBean collectorBean : this.collectorBeans) {
+			count += Math.max(0, collectorBean.getCollectionCount());
+			time += Math.max(0, collectorBean.getCollectionTime());
+		}
+		this.collections = count;
+		this.collectionTime = time;
+
+		if (this.threadBean == null)
+			return;
+		long allocated = this.threadBean.getThreadAllocatedBytes(Thread
+				.currentThread().getId());
+		if (this.lastAllocated >= 0 && allocated >= this.lastAllocated)
+			this.allocationRate = (allocated - this.lastAllocated)
+					* SAMPLE_INTERVAL / (now - this.lastSample);
+		this.lastAllocated = allocated;
+	}
+
+	/**
+	 * Sets the state of the toggle key, showing or hiding the overlay when
+	 * it is pressed.
+	 *
+	 * @param down
+	 *            If the toggle key is down.
+	 */
+	public void setToggleKeyDown(final boolean down) {
+		if (down && !this.toggleKeyDown) {
+			this.visible = !this.visible;
+			// Allocation rate is measured again from the next read.
+			this.lastAllocated = -1;
+			this.allocationRate = -1;
+			this.lastSample = 0;
+		}
+		this.toggleKeyDown = down;
+	}
+
+	/**
+	 * Checks if the overlay is shown.
+	 *
+	 * @return True when the overlay is shown.
+	 */
+	public boolean isVisible() {
+		return this.visible;
+	}
+
+	/**
+	 * Sets the counts of the screen being drawn.
+	 *
+	 * @param entities
+	 *            Entities on screen.
+	 * @param bullets
+	 *            Bullets on screen.
+	 * @param pooledBullets
+	 *            Bullets kept in the pool.
+	 */
+	public void setCounts(final int entities, final int bullets,
+			final int pooledBullets) {
+		this.entities = entities;
+		this.bullets = bullets;
+		this.pooledBullets = pooledBullets;
+	}
+
+	/**
+	 * Getter for the number of frames recorded.
+	 *
+	 * @return Frames recorded, up to FRAMES.
+	 */
+	public int getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Returns the time taken by a recorded frame.
+	 *
+	 * @param index
+	 *            Frame, from 0 for the oldest to getCount() - 1 for the
+	 *            newest.
+	 * @return Time taken by the frame, in nanoseconds.
+	 */
+	public long getFrameTime(final int index) {
+		return this.frameTimes[(this.next - this.count + index + FRAMES)
+				% FRAMES];
+	}
+
+	/**
+	 * Writes a line of the overlay text.
+	 *
+	 * @param line
+	 *            Line to write, from 0 to LINES - 1.
+	 * @param text
+	 *            Buffer to write to, at least LINE_LENGTH characters long.
+	 * @return Number of characters written.
+	 */
+	public int writeLine(final int line, final char[] text) {
+		int length = 0;
+		switch (line) {
+		case 0:
+			long min = Long.MAX_VALUE;
+			long max = 0;
+			for (int i = 0; i < this.count; i++) {
+				this.sorted[i] = this.frameTimes[i];
+				min = Math.min(min, this.frameTimes[i]);
+				max = Math.max(max, this.frameTimes[i]);
+			}
+			Arrays.sort(this.sorted, 0, this.count);
+			long p99 = this.count == 0 ? 0 : this.sorted[Math.max(0,
+					(int) Math.ceil(0.99 * this.count) - 1)];
+			long last = this.count == 0 ? 0 : getFrameTime(this.count - 1);
+			length = append(text, length, "FRAME ");
+			length = appendMillis(text, length, last);
+			length = append(text, length, " MIN ");
+			length = appendMillis(text, length, this.count == 0 ? 0 : min);
+			length = append(text, length, " MAX ");
+			length = appendMillis(text, length, max);
+			length = append(text, length, " P99 ");
+			length = appendMillis(text, length, p99);
+			break;
+		case 1:
+			long frameTotal = 0;
+			long drawTotal = 0;
+			for (int i = 0; i < this.count; i++) {
+				frameTotal += this.frameTimes[i];
+				drawTotal += this.drawTimes[i];
+			}
+			int frames = Math.max(1, this.count);
+			length = append(text, length, "UPDATE ");
+			length = appendMillis(text, length, (frameTotal - drawTotal)
+					/ frames);
+			length = append(text, length, " DRAW ");
+			length = appendMillis(text, length, drawTotal / frames);
+			length = append(text, length, " MS AVERAGE");
+			break;
+		case 2:
+			length = append(text, length, "ENTITIES ");
+			length = appendLong(text, length, this.entities);
+			length = append(text, length, " BULLETS ");
+			length = appendLong(text, length, this.bullets);
+			length = append(text, length, " POOL ");
+			length = appendLong(text, length, this.pooledBullets);
+			break;
+		default:
+			length = append(text, length, "ALLOC ");
+			if (this.allocationRate < 0)
+				length = append(text, length, "-");
+			else
+				length = appendLong(text, length, this.allocationRate
+						/ KILOBYTE);
+			length = append(text, length, " KB/S HEAP ");
+			length = appendLong(text, length, this.heapUsed / MEGABYTE);
+			length = append(text, length, " MB GC ");
+			length = appendLong(text, length, this.collections);
+			length = append(text, length, " (");
+			length = appendLong(text, length, this.collectionTime);
+			length = append(text, length, " MS)");
+			break;
+		}
+		return length;
+	}
+
+	/**
+	 * Appends a string constant to the text.
+	 *
+	 * @param text
+	 *            Text buffer.
+	 * @param length
+	 *            Characters already in the buffer.
+	 * @param string
+	 *            String to append.
+	 * @return New length of the text.
+	 */
+	private static int append(final char[] text, final int length,
+			final String string) {
+		int end = Math.min(text.length, length + string.length());
+		string.getChars(0, end - length, text, length);
+		return end;
+	}
+
+	/**
+	 * Appends a non negative number to the text.
+	 *
+	 * @param text
+	 *            Text buffer.
+	 * @param length
+	 *            Characters already in the buffer.
+	 * @param value
+	 *            Number to append.
+	 * @return New length of the text.
+	 */
+	private static int appendLong(final char[] text, final int length,
+			final long value) {
+		long digits = 1;
+		while (digits <= value / 10)
+			digits *= 10;
+		int end = length;
+		for (; digits > 0 && end < text.length; digits /= 10)
+			text[end++] = (char) ('0' + (Math.max(0, value) / digits) % 10);
+		return end;
+	}
+
+	/**
+	 * Appends a duration in milliseconds, with two decimals, to the text.
+	 *
+	 * @param text
+	 *            Text buffer.
+	 * @param length
+	 *            Characters already in the buffer.
+	 * @param nanos
+	 *            Duration, in nanoseconds.
+	 * @return New length of the text.
+	 */
+	private static int appendMillis(final char[] text, final int length,
+			final long nanos) {
+		long hundredths = Math.max(0, nanos) / (NANOS_PER_MILLI / 100);
+		int end = appendLong(text, length, hundredths / 100);
+		end = append(text, end, ".");
+		if (hundredths % 100 < 10)
+			end = append(text, end, "0");
+		return appendLong(text, end, hundredths % 100);
+	}
+}
@@ -0,0 +1,686 @@
+package engine;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import entity.Pair;
+
+/**
+ * Recording of a game, level by level: the settings, state and random seed
+ * each level started with, the keys held on each update and the time each
+ * update ran at. Feeding the same keys at the same times plays the level
+ * again. The state of the game is also kept every now and then, so that
+ * playback can start anywhere without simulating the level from its start.
+ *
+ * Files are a short header followed by a Deflate compressed body. Keys and
+ * times barely change between updates, so they are stored as the change
+ * from the previous update in variable length integers, which compress to
+ * almost nothing.
+ *
+ */
+public final class Replay {
+
+	/** Marks the start of a replay file, "INVR". */
+	private static final int MAGIC = 0x494E5652;
+	/** Version of the file format. */
+	private static final int VERSION = 2;
+	/** Updates a level has room for before growing. */
+	private static final int INITIAL_TICKS = 1024;
+	/** Size of the buffer the body is inflated with. */
+	private static final int INFLATE_BUFFER = 8192;
+	/** Values kept of a game state, each pair for player 1 and player 2. */
+	private static final int STATE_VALUES = 8;
+
+	/** A level of the recorded game. */
+	public static final class Level {
+
+		/** Level number. */
+		private final int level;
+		/** Number of players. */
+		private final int playerCode;
+		/** Difficulty of the game. */
+		private final int difficultyCode;
+		/** Seed of the random source of the game. */
+		private final long seed;
+		/** Settings of the level. */
+		private final GameSettings settings;
+		/** If a bonus life was awarded at the start of the level. */
+		private final boolean bonusLife;
+		/** Score, lives, bullets shot and ships destroyed at the start. */
+		private final int[] start;
+		/** Same values at the end, null until the level ends. */
+		private int[] end;
+		/** Time the level started, in milliseconds since epoch. */
+		private final long startTime;
+		/** Number of updates recorded. */
+		private int ticks;
+		/** Keys held on each update, as an input mask. */
+		private byte[] inputs;
+		/** Time of each update, in milliseconds since the start. */
+		private int[] times;
+		/** Updates the keyframes were taken before, in order. */
+		private int[] keyframeTicks;
+		/** Game state at each keyframe. */
+		private final List<byte[]> keyframes;
+
+		/**
+		 * Constructor, starts a level with no updates.
+		 *
+		 * @param state
+		 *            State the level starts with, lives before the bonus.
+		 * @param settings
+		 *            Settings of the level.
+		 * @param bonusLife
+		 *            If a bonus life is awarded at the start.
+		 * @param startTime
+		 *            Time the level starts, in milliseconds since epoch.
+		 */
+		Level(final GameState state, final GameSettings settings,
+				final boolean bonusLife, final long startTime) {
+			this(state.getLevel(), state.getPlayerCode(),
+					state.getDifficultyCode(), state.getSeed(), settings,
+					bonusLife, valuesOf(state), startTime);
+		}
+
+		/**
+		 * Constructor, with every value given.
+		 *
+		 * @param level
+		 *            Level number.
+		 * @param playerCode
+		 *            Number of players.
+		 * @param difficultyCode
+		 *            Difficulty of the game.
+		 * @param seed
+		 *            Seed of the random source of the game.
+		 * @param settings
+		 *            Settings of the level.
+		 * @param bonusLife
+		 *            If a bonus life is awarded at the start.
+		 * @param start
+		 *            Values of the state at the start.
+		 * @param startTime
+		 *            Time the level starts, in milliseconds since epoch.
+		 */
+		private Level(final int level, final int playerCode,
+				final int difficultyCode, final long seed,
+				final GameSettings settings, final boolean bonusLife,
+				final int[] start, final long startTime) {
+			this.level = level;
+			this.playerCode = playerCode;
+			this.difficultyCode = difficultyCode;
+			this.seed = seed;
+			this.settings = settings;
+			this.bonusLife = bonusLife;
+			this.start = start;
+			this.startTime = startTime;
+			this.inputs = new byte[INITIAL_TICKS];
+			this.times = new int[INITIAL_TICKS];
+			this.keyframeTicks = new int[0];
+			this.keyframes = new ArrayList<byte[]>();
+		}
+
+		/**
+		 * Records an update.
+		 *
+		 * @param input
+		 *            Keys held, as an input mask.
+		 * @param time
+		 *            Time of the update, in milliseconds since epoch.
+		 */
+		void addTick(final int input, final long time) {
+			if (this.ticks == this.inputs.length) {
+				this.inputs = Arrays.copyOf(this.inputs, this.ticks * 2);
+				this.times = Arrays.copyOf(this.times, this.ticks * 2);
+			}
+			this.inputs[this.ticks] = (byte) input;
+			this.times[this.ticks] = (int) (time - this.startTime);
+			this.ticks++;
+		}
+
+		/**
+		 * Records the game state before the next update.
+		 *
+		 * @param state
+		 *            State, from its position to its limit.
+		 */
+		void addKeyframe(final ByteBuffer state) {
+			byte[] bytes = new byte[state.remaining()];
+			state.get(bytes);
+			addKeyframe(this.ticks, bytes);
+		}
+
+		/**
+		 * Adds a keyframe.
+		 *
+		 * @param tick
+		 *            Update the state was taken before.
+		 * @param state
+		 *            Game state.
+		 */
+		private void addKeyframe(final int tick, final byte[] state) {
+			this.keyframeTicks = Arrays.copyOf(this.keyframeTicks,
+					this.keyframeTicks.length + 1);
+			this.keyframeTicks[this.keyframeTicks.length - 1] = tick;
+			this.keyframes.add(state);
+		}
+
+		/**
+		 * Records the end of the level.
+		 *
+		 * @param state
+		 *            State at the end, end of level score included.
+		 */
+		void end(final GameState state) {
+			this.end = valuesOf(state);
+		}
+
+		/**
+		 * Getter for the level number.
+		 *
+		 * @return Level number.
+		 */
+		public int getLevel() {
+			return this.level;
+		}
+
+		/**
+		 * Getter for the number of players.
+		 *
+		 * @return Player code, 1 or 2.
+		 */
+		public int getPlayerCode() {
+			return this.playerCode;
+		}
+
+		/**
+		 * Getter for the difficulty.
+		 *
+		 * @return Difficulty code, 1 to 3.
+		 */
+		public int getDifficultyCode() {
+			return this.difficultyCode;
+		}
+
+		/**
+		 * Getter for the seed of the game.
+		 *
+		 * @return Seed of the random source.
+		 */
+		public long getSeed() {
+			return this.seed;
+		}
+
+		/**
+		 * Getter for the settings of the level.
+		 *
+		 * @return Level settings.
+		 */
+		public GameSettings getSettings() {
+			return this.settings;
+		}
+
+		/**
+		 * Checks if a bonus life was awarded at the start of the level.
+		 *
+		 * @return True if a bonus life was awarded.
+		 */
+		public boolean isBonusLife() {
+			return this.bonusLife;
+		}
+
+		/**
+		 * Returns the state the level started with, to create its screen.
+		 *
+		 * @return New game state, lives before the bonus.
+		 */
+		public GameState getStartState() {
+			return stateOf(this.start);
+		}
+
+		/**
+		 * Returns the state the level ended with.
+		 *
+		 * @return New game state, null if the level didn't end.
+		 */
+		public GameState getEndState() {
+			return this.end == null ? null : stateOf(this.end);
+		}
+
+		/**
+		 * Getter for the time the level started.
+		 *
+		 * @return Start time, in milliseconds since epoch.
+		 */
+		public long getStartTime() {
+			return this.startTime;
+		}
+
+		/**
+		 * Getter for the number of updates recorded.
+		 *
+		 * @return Updates recorded.
+		 */
+		public int getTicks() {
+			return this.ticks;
+		}
+
+		/**
+		 * Returns the keys held on an update.
+		 *
+		 * @param tick
+		 *            Update, from 0.
+		 * @return Input mask.
+		 */
+		public int getInput(final int tick) {
+			return this.inputs[tick];
+		}
+
+		/**
+		 * Returns the time an update ran at.
+		 *
+		 * @param tick
+		 *            Update, from 0.
+		 * @return Time, in milliseconds since epoch.
+		 */
+		public long getTime(final int tick) {
+			return this.startTime + this.times[tick];
+		}
+
+		/**
+		 * Finds the last keyframe taken at or before an update.
+		 *
+		 * @param tick
+		 *            Update, from 0.
+		 * @return Index of the keyframe, -1 if there is none.
+		 */
+		public int findKeyframe(final int tick) {
+			int index = Arrays.binarySearch(this.keyframeTicks, tick);
+			return index >= 0 ? index : -index - 2;
+		}
+
+		/**
+		 * Getter for the number of keyframes.
+		 *
+		 * @return Keyframes kept.
+		 */
+		public int getKeyframeCount() {
+			return this.keyframeTicks.length;
+		}
+
+		/**
+		 * Returns the update a keyframe was taken before.
+		 *
+		 * @param index
+		 *            Index of the keyframe.
+		 * @return Update, from 0.
+		 */
+		public int getKeyframeTick(final int index) {
+			return this.keyframeTicks[index];
+		}
+
+		/**
+		 * Returns the game state kept in a keyframe.
+		 *
+		 * @param index
+		 *            Index of the keyframe.
+		 * @return Read only buffer with the state.
+		 */
+		public ByteBuffer getKeyframe(final int index) {
+			return ByteBuffer.wrap(this.keyframes.get(index))
+					.asReadOnlyBuffer();
+		}
+
+		/**
+		 * Turns the state values back into a game state.
+		 *
+		 * @param values
+		 *            State values.
+		 * @return New game state.
+		 */
+		private GameState stateOf(final int[] values) {
+			return new GameState(this.level, new Pair(values[0], values[1]),
+					new Pair(values[2], values[3]), new Pair(values[4],
+							values[5]), new Pair(values[6], values[7]),
+					this.playerCode, this.difficultyCode, this.seed);
+		}
+	}
+
+	/** Levels recorded, in order. */
+	private final List<Level> levels;
+
+	/**
+	 * Constructor, creates an empty replay.
+	 */
+	public Replay() {
+		this.levels = new ArrayList<Level>();
+	}
+
+	/**
+	 * Starts recording a level.
+	 *
+	 * @param state
+	 *            State the level starts with, lives before the bonus.
+	 * @param settings
+	 *            Settings of the level.
+	 * @param bonusLife
+	 *            If a bonus life is awarded at the start.
+	 * @param startTime
+	 *            Time the level starts, in milliseconds since epoch.
+	 * @return The new level.
+	 */
+	Level addLevel(final GameState state, final GameSettings settings,
+			final boolean bonusLife, final long startTime) {
+		Level level = new Level(state, settings, bonusLife, startTime);
+		this.levels.add(level);
+		return level;
+	}
+
+	/**
+	 * Returns a replay with the levels recorded so far, which isn't changed
+	 * by levels recorded later.
+	 *
+	 * @return New replay sharing the levels.
+	 */
+	Replay copy() {
+		Replay copy = new Replay();
+		copy.levels.addAll(this.levels);
+		return copy;
+	}
+
+	/**
+	 * Getter for the levels recorded.
+	 *
+	 * @return Levels, in order.
+	 */
+	public List<Level> getLevels() {
+		return Collections.unmodifiableList(this.levels);
+	}
+
+	/**
+	 * Writes the replay. The stream is not closed.
+	 *
+	 * @param outputStream
+	 *            Stream to write to.
+	 * @throws IOException
+	 *             In case of writing problems.
+	 */
+	public void write(final OutputStream outputStream) throws IOException {
+		DataOutputStream header = new DataOutputStream(outputStream);
+		header.writeInt(MAGIC);
+		header.writeInt(VERSION);
+		header.flush();
+
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+		try {
+			DeflaterOutputStream deflaterStream = new DeflaterOutputStream(
+					outputStream, deflater);
+			OutputStream body = new BufferedOutputStream(deflaterStream);
+			writeUnsigned(body, this.levels.size());
+			for (Level level : this.levels)
+				writeLevel(body, level);
+			body.flush();
+			deflaterStream.finish();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Writes a level to the body.
+	 *
+	 * @param body
+	 *            Stream to write to.
+	 * @param level
+	 *            Level to write.
+	 * @throws IOException
+	 *             In case of writing problems.
+	 */
+	private static void writeLevel(final OutputStream body,
+			final Level level) throws IOException {
+		writeUnsigned(body, level.level);
+		writeUnsigned(body, level.playerCode);
+		writeUnsigned(body, level.difficultyCode);
+		// The seed is random, it is written whole.
+		for (int shift = Long.SIZE - Byte.SIZE; shift >= 0;
+				shift -= Byte.SIZE)
+			body.write((int) (level.seed >>> shift));
+		writeUnsigned(body, level.settings.getFormationWidth());
+		writeUnsigned(body, level.settings.getFormationHeight());
+		writeUnsigned(body, level.settings.getBaseSpeed());
+		writeUnsigned(body, level.settings.getShootingFrecuency());
+		body.write(level.bonusLife ? 1 : 0);
+		for (int value : level.start)
+			writeSigned(body, value);
+		writeSigned(body, level.startTime);
+
+		// Keys as the ones that changed, times as the change of the time
+		// between updates, so that steady play is mostly zeros.
+		writeUnsigned(body, level.ticks);
+		int previousInput = 0;
+		for (int i = 0; i < level.ticks; i++) {
+			body.write(level.inputs[i] ^ previousInput);
+			previousInput = level.inputs[i];
+		}
+		long previousTime = 0;
+		long previousDelta = 0;
+		for (int i = 0; i < level.ticks; i++) {
+			long delta = level.times[i] - previousTime;
+			writeSigned(body, delta - previousDelta);
+			previousTime = level.times[i];
+			previousDelta = delta;
+		}
+
+		writeUnsigned(body, level.keyframeTicks.length);
+		int previousTick = 0;
+		for (int i = 0; i < level.keyframeTicks.length; i++) {
+			writeUnsigned(body, level.keyframeTicks[i] - previousTick);
+			previousTick = level.keyframeTicks[i];
+			byte[] state = level.keyframes.get(i);
+			writeUnsigned(body, state.length);
+			body.write(state);
+		}
+
+		body.write(level.end == null ? 0 : 1);
+		if (level.end != null)
+			for (int value : level.end)
+				writeSigned(body, value);
+	}
+
+	/**
+	 * Reads a replay written by write. The stream is read to its end but not
+	 * closed.
+	 *
+	 * @param inputStream
+	 *            Stream to read from.
+	 * @return Replay read.
+	 * @throws IOException
+	 *             In case of reading problems or if it is not a replay.
+	 */
+	public static Replay read(final InputStream inputStream)
+			throws IOException {
+		DataInputStream header = new DataInputStream(inputStream);
+		if (header.readInt() != MAGIC)
+			throw new IOException("Not a replay.");
+		int version = header.readInt();
+		if (version != VERSION)
+			throw new IOException("Unsupported replay version " + version
+					+ ".");
+
+		// The body is small, it is inflated at once and parsed in memory.
+		InflaterInputStream inflater = new InflaterInputStream(inputStream);
+		ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+		byte[] chunk = new byte[INFLATE_BUFFER];
+		int read;
+		while ((read = inflater.read(chunk)) > 0)
+			inflated.write(chunk, 0, read);
+		ByteBuffer body = ByteBuffer.wrap(inflated.toByteArray());
+
+		Replay replay = new Replay();
+		try {
+			int levels = (int) readUnsigned(body);
+			for (int i = 0; i < levels; i++)
+				replay.levels.add(readLevel(body));
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Replay is truncated.");
+		}
+		return replay;
+	}
+
+	/**
+	 * Reads a level from the body.
+	 *
+	 * @param body
+	 *            Inflated body.
+	 * @return Level read.
+	 */
+	private static Level readLevel(final ByteBuffer body) {
+		int levelNumber = (int) readUnsigned(body);
+		int playerCode = (int) readUnsigned(body);
+		int difficultyCode = (int) readUnsigned(body);
+		long seed = body.getLong();
+		GameSettings settings = new GameSettings((int) readUnsigned(body),
+				(int) readUnsigned(body), (int) readUnsigned(body),
+				(int) readUnsigned(body));
+		boolean bonusLife = body.get() == 1;
+		int[] start = new int[STATE_VALUES];
+		for (int i = 0; i < STATE_VALUES; i++)
+			start[i] = (int) readSigned(body);
+		long startTime = readSigned(body);
+		Level level = new Level(levelNumber, playerCode, difficultyCode,
+				seed, settings, bonusLife, start, startTime);
+
+		int ticks = (int) readUnsigned(body);
+		level.ticks = ticks;
+		level.inputs = new byte[ticks];
+		level.times = new int[ticks];
+		int input = 0;
+		for (int i = 0; i < ticks; i++) {
+			input ^= body.get();
+			level.inputs[i] = (byte) input;
+		}
+		long time = 0;
+		long delta = 0;
+		for (int i = 0; i < ticks; i++) {
+			delta += readSigned(body);
+			time += delta;
+			level.times[i] = (int) time;
+		}
+
+		int keyframes = (int) readUnsigned(body);
+		int tick = 0;
+		for (int i = 0; i < keyframes; i++) {
+			tick += (int) readUnsigned(body);
+			byte[] state = new byte[(int) readUnsigned(body)];
+			body.get(state);
+			level.addKeyframe(tick, state);
+		}
+
+		if (body.get() == 1) {
+			level.end = new int[STATE_VALUES];
+			for (int i = 0; i < STATE_VALUES; i++)
+				level.end[i] = (int) readSigned(body);
+		}
+		return level;
+	}
+
+	/**
+	 * Returns the values kept of a game state.
+	 *
+	 * @param state
+	 *            Game state.
+	 * @return Score, lives, bullets shot and ships destroyed, player 1 then
+	 *         player 2.
+	 */
+	private static int[] valuesOf(final GameState state) {
+		return new int[] { state.getScore().getPlayer1Value(),
+				state.getScore().getPlayer2Value(),
+				state.getLivesRemaining().getPlayer1Value(),
+				state.getLivesRemaining().getPlayer2Value(),
+				state.getBulletsShot().getPlayer1Value(),
+				state.getBulletsShot().getPlayer2Value(),
+				state.getShipsDestroyed().getPlayer1Value(),
+				state.getShipsDestroyed().getPlayer2Value() };
+	}
+
+	/**
+	 * Writes a non negative number in as few bytes as it needs, 7 bits per
+	 * byte, lowest first, the high bit set on every byte but the last.
+	 *
+	 * @param out
+	 *            Stream to write to.
+	 * @param value
+	 *            Non negative value.
+	 * @throws IOException
+	 *             In case of writing problems.
+	 */
+	private static void writeUnsigned(final OutputStream out,
+			final long value) throws IOException {
+		long remaining = value;
+		while ((remaining & ~0x7FL) != 0) {
+			out.write((int) (remaining & 0x7F) | 0x80);
+			remaining >>>= 7;
+		}
+		out.write((int) remaining);
+	}
+
+	/**
+	 * Writes a number that may be negative, small magnitudes in few bytes.
+	 *
+	 * @param out
+	 *            Stream to write to.
+	 * @param value
+	 *            Value.
+	 * @throws IOException
+	 *             In case of writing problems.
+	 */
+	private static void writeSigned(final OutputStream out, final long value)
+			throws IOException {
+		writeUnsigned(out, (value << 1) ^ (value >> 63));
+	}
+
+	/**
+	 * Reads a number written by writeUnsigned.
+	 *
+	 * @param in
+	 *            Buffer to read from.
+	 * @return Value read.
+	 */
+	private static long readUnsigned(final ByteBuffer in) {
+		long value = 0;
+		int shift = 0;
+		byte read;
+		do {
+			read = in.get();
+			value |= (long) (read & 0x7F) << shift;
+			shift += 7;
+		} while ((read & 0x80) != 0);
+		return value;
+	}
+
+	/**
+	 * Reads a number written by writeSigned.
+	 *
+	 * @param in
+	 *            Buffer to read from.
+	 * @return Value read.
+	 */
+	private static long readSigned(final ByteBuffer in) {
+		long value = readUnsigned(in);
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
@@ -0,0 +1,129 @@
+package engine;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+/**
+ * Records the games played into a replay, saved after every level so that
+ * an unfinished game is kept too. Recording is enabled by naming the file
+ * in the invaders.record system property.
+ *
+ */
+public final class ReplayRecorder {
+
+	/** Updates between keyframes, 30 seconds of play. */
+	public static final int KEYFRAME_INTERVAL = 1800;
+	/** Largest game state kept in a keyframe, in bytes. */
+	public static final int MAX_STATE_SIZE = 64 * 1024;
+
+	/** Singleton instance of the class. */
+	private static ReplayRecorder instance;
+
+	/** File the replay is saved to. */
+	private final File file;
+	/** Buffer the game state is written to for keyframes. */
+	private final ByteBuffer stateBuffer;
+	/** Replay of the game being played, null before the first level. */
+	private Replay replay;
+	/** Level being played, null between levels. */
+	private Replay.Level level;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param file
+	 *            File the replay is saved to.
+	 */
+	public ReplayRecorder(final File file) {
+		this.file = file;
+		this.stateBuffer = ByteBuffer.allocate(MAX_STATE_SIZE);
+	}
+
+	/**
+	 * Returns shared instance of ReplayRecorder.
+	 *
+	 * @return Shared instance of ReplayRecorder, null if recording is not
+	 *         enabled.
+	 */
+	protected static synchronized ReplayRecorder getInstance() {
+		String path = System.getProperty("invaders.record");
+		if (instance == null && path != null)
+			instance = new ReplayRecorder(new File(path));
+		return instance;
+	}
+
+	/**
+	 * Starts recording a level. The first level starts a new replay.
+	 *
+	 * @param state
+	 *            State the level starts with, lives before the bonus.
+	 * @param settings
+	 *            Settings of the level.
+	 * @param bonusLife
+	 *            If a bonus life is awarded at the start.
+	 * @param startTime
+	 *            Game time the level starts at, in milliseconds.
+	 */
+	public void startLevel(final GameState state, final GameSettings settings,
+			final boolean bonusLife, final long startTime) {
+		if (this.replay == null || state.getLevel() == 1)
+			this.replay = new Replay();
+		this.level = this.replay.addLevel(state, settings, bonusLife,
+				startTime);
+	}
+
+	/**
+	 * Checks if the game state should be kept before the next update.
+	 *
+	 * @return True if a keyframe is due.
+	 */
+	public boolean isKeyframeDue() {
+		return this.level != null && this.level.getTicks() > 0
+				&& this.level.getTicks() % KEYFRAME_INTERVAL == 0;
+	}
+
+	/**
+	 * Returns the buffer to write the game state to, empty.
+	 *
+	 * @return State buffer.
+	 */
+	public ByteBuffer getStateBuffer() {
+		this.stateBuffer.clear();
+		return this.stateBuffer;
+	}
+
+	/**
+	 * Keeps the game state written to the state buffer as a keyframe.
+	 */
+	public void recordKeyframe() {
+		this.stateBuffer.flip();
+		this.level.addKeyframe(this.stateBuffer);
+	}
+
+	/**
+	 * Records an update.
+	 *
+	 * @param input
+	 *            Keys held, as an input mask.
+	 * @param time
+	 *            Game time of the update, in milliseconds.
+	 */
+	public void recordTick(final int input, final long time) {
+		if (this.level != null)
+			this.level.addTick(input, time);
+	}
+
+	/**
+	 * Ends the level and saves the replay in the background.
+	 *
+	 * @param state
+	 *            State at the end, end of level score included.
+	 */
+	public void endLevel(final GameState state) {
+		if (this.level == null)
+			return;
+		this.level.end(state);
+		this.level = null;
+		Core.getFileManager().saveReplay(this.replay.copy(), this.file);
+	}
+}
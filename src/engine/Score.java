@@ -12,6 +12,8 @@ public class Score implements Comparable<Score> {
 	private String name;
 	/** Score points. */
 	private int score;
+	/** Moment the score was obtained, in milliseconds since epoch. */
+	private long timestamp;
 
 	/**
 	 * Constructor.
@@ -22,8 +24,23 @@ public class Score implements Comparable<Score> {
 	 *            Player score.
 	 */
 	public Score(final String name, final int score) {
+		this(name, score, 0);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param name
+	 *            Player name, three letters.
+	 * @param score
+	 *            Player score.
+	 * @param timestamp
+	 *            Moment the score was obtained, 0 if unknown.
+	 */
+	public Score(final String name, final int score, final long timestamp) {
 		this.name = name;
 		this.score = score;
+		this.timestamp = timestamp;
 	}
 
 	/**
@@ -45,6 +62,15 @@ public class Score implements Comparable<Score> {
 		return this.score;
 	}
 
+	/**
+	 * Getter for the moment the score was obtained.
+	 * 
+	 * @return Milliseconds since epoch, 0 if unknown.
+	 */
+	public final long getTimestamp() {
+		return this.timestamp;
+	}
+
 	/**
 	 * Orders the scores descending by score.
 	 * 
@@ -0,0 +1,52 @@
+package engine;
+
+/**
+ * Flight recorder event of a change of screen, lasting while the new screen
+ * initializes.
+ *
+ */
+final class ScreenTransitionEvent extends FlightEvent {
+
+	/** Type of the events. */
+	private static final Type TYPE = new Type("invaders.ScreenTransition",
+			"Screen Transition", new String[] { "Invaders", "Screens" },
+			"Change of screen and initialization of the new one", true,
+			new Field(String.class, "from", "From", false),
+			new Field(String.class, "to", "To", false));
+
+	/** Kind of screen shown before, null on the first screen. */
+	private String from;
+
+	/** Kind of screen shown next. */
+	private String to;
+
+	/**
+	 * Constructor, creates an event that isn't started.
+	 */
+	ScreenTransitionEvent() {
+		super(TYPE);
+	}
+
+	/**
+	 * Setter for the screens.
+	 *
+	 * @param from
+	 *            Name of the previous screen class, null if there is none.
+	 * @param to
+	 *            Name of the next screen class.
+	 */
+	void setScreens(final String from, final String to) {
+		this.from = from;
+		this.to = to;
+	}
+
+	/**
+	 * Returns the values of the fields.
+	 *
+	 * @return From, to.
+	 */
+	@Override
+	protected Object[] getValues() {
+		return new Object[] { this.from, this.to };
+	}
+}
@@ -0,0 +1,145 @@
+package engine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps the game states of the last few updates, for games rolled back when
+ * late keys arrive. Each update has a slot, reused once the ring has gone
+ * round, so saving and loading states allocates nothing: the buffers are
+ * all created with the ring, as large as the largest state.
+ *
+ * A ring is not thread safe.
+ *
+ */
+public final class SnapshotRing {
+
+	/** Buffer of each slot. */
+	private final ByteBuffer[] slots;
+	/** Update whose state each slot holds, -1 if none. */
+	private final int[] ticks;
+	/** Length of the state each slot holds. */
+	private final int[] lengths;
+	/** Game time of the state each slot holds, in milliseconds. */
+	private final long[] times;
+
+	/**
+	 * Constructor, allocates every slot.
+	 *
+	 * @param capacity
+	 *            Number of updates kept.
+	 */
+	public SnapshotRing(final int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity must be positive");
+		this.slots = new ByteBuffer[capacity];
+		this.ticks = new int[capacity];
+		this.lengths = new int[capacity];
+		this.times = new long[capacity];
+		for (int i = 0; i < capacity; i++) {
+			this.slots[i] = ByteBuffer.allocate(ReplayRecorder.MAX_STATE_SIZE);
+			this.ticks[i] = -1;
+		}
+	}
+
+	/**
+	 * Starts saving the state of an update, in place of the oldest one. The
+	 * state is written into the buffer returned, then kept with save.
+	 *
+	 * @param tick
+	 *            Update the state is at, from 0.
+	 * @return Cleared buffer to write the state to.
+	 */
+	public ByteBuffer startSave(final int tick) {
+		int slot = slot(tick);
+		this.ticks[slot] = -1;
+		ByteBuffer buffer = this.slots[slot];
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Keeps the state written after startSave.
+	 *
+	 * @param tick
+	 *            Update the state is at.
+	 * @param time
+	 *            Game time of the state, in milliseconds.
+	 */
+	public void save(final int tick, final long time) {
+		int slot = slot(tick);
+		this.ticks[slot] = tick;
+		this.lengths[slot] = this.slots[slot].position();
+		this.times[slot] = time;
+	}
+
+	/**
+	 * Checks if the state of an update is kept.
+	 *
+	 * @param tick
+	 *            Update to look for.
+	 * @return True if it is still in the ring.
+	 */
+	public boolean contains(final int tick) {
+		return tick >= 0 && this.ticks[slot(tick)] == tick;
+	}
+
+	/**
+	 * Returns the state of an update, to read it.
+	 *
+	 * @param tick
+	 *            Update kept in the ring.
+	 * @return Buffer from the start of the state to its end.
+	 */
+	public ByteBuffer load(final int tick) {
+		int slot = checkedSlot(tick);
+		ByteBuffer buffer = this.slots[slot];
+		buffer.clear();
+		buffer.limit(this.lengths[slot]);
+		return buffer;
+	}
+
+	/**
+	 * Returns the game time of the state of an update.
+	 *
+	 * @param tick
+	 *            Update kept in the ring.
+	 * @return Game time, in milliseconds.
+	 */
+	public long getTime(final int tick) {
+		return this.times[checkedSlot(tick)];
+	}
+
+	/**
+	 * Getter for the number of updates kept.
+	 *
+	 * @return Capacity of the ring.
+	 */
+	public int getCapacity() {
+		return this.slots.length;
+	}
+
+	/**
+	 * Finds the slot of an update.
+	 *
+	 * @param tick
+	 *            Update, from 0.
+	 * @return Slot used by the update.
+	 */
+	private int slot(final int tick) {
+		return tick % this.slots.length;
+	}
+
+	/**
+	 * Finds the slot of an update that must be kept.
+	 *
+	 * @param tick
+	 *            Update.
+	 * @return Slot holding the update.
+	 */
+	private int checkedSlot(final int tick) {
+		if (!contains(tick))
+			throw new IllegalArgumentException("State of update " + tick
+					+ " isn't kept.");
+		return slot(tick);
+	}
+}
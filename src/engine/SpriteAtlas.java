@@ -0,0 +1,235 @@
+package engine;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.EnumMap;
+import java.util.Map;
+
+import engine.DrawManager.SpriteType;
+
+/**
+ * Converts the sprite sources into a packed binary atlas and back.
+ *
+ * The atlas starts with a header listing every sprite type with its width
+ * and height, followed by the pixels of each sprite packed one bit per
+ * pixel. Each sprite starts on a new byte.
+ *
+ */
+public final class SpriteAtlas {
+
+	/** Marks the start of an atlas file, "SPRA". */
+	private static final int MAGIC = 0x53505241;
+	/** Version of the atlas format. */
+	private static final int VERSION = 1;
+	/** Size of the buffer used to read the atlas. */
+	private static final int BUFFER_SIZE = 4096;
+
+	/**
+	 * Constructor, not called.
+	 */
+	private SpriteAtlas() {
+
+	}
+
+	/**
+	 * Compiles the sprite sources into an atlas. Run at build time.
+	 *
+	 * @param args
+	 *            Path of the sprite sources and path of the atlas to write.
+	 * @throws IOException
+	 *             In case of reading or writing problems.
+	 */
+	public static void main(final String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: SpriteAtlas <sprite sources> <atlas>");
+			System.exit(1);
+		}
+
+		Map<SpriteType, boolean[][]> spriteMap;
+		InputStream inputStream = new FileInputStream(args[0]);
+		try {
+			spriteMap = parse(new InputStreamReader(inputStream,
+					Charset.forName("UTF-8")));
+		} finally {
+			inputStream.close();
+		}
+
+		OutputStream outputStream = new FileOutputStream(args[1]);
+		try {
+			write(spriteMap, outputStream);
+		} finally {
+			outputStream.close();
+		}
+		System.out.println("Compiled " + spriteMap.size() + " sprites into "
+				+ args[1]);
+	}
+
+	/**
+	 * Parses the sprite sources. Each line holds a sprite type, its width, its
+	 * height and its pixels as 0 and 1, one column after another. Empty lines
+	 * and lines starting with # are ignored.
+	 *
+	 * @param source
+	 *            Reader of the sprite sources.
+	 * @return Sprite types mapped to their images.
+	 * @throws IOException
+	 *             In case of reading problems or malformed sources.
+	 */
+	public static Map<SpriteType, boolean[][]> parse(final Reader source)
+			throws IOException {
+		Map<SpriteType, boolean[][]> spriteMap =
+				new EnumMap<SpriteType, boolean[][]>(SpriteType.class);
+		BufferedReader reader = new BufferedReader(source);
+		int lineNumber = 0;
+		String line;
+
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#"))
+				continue;
+
+			String[] fields = line.split("\\s+");
+			if (fields.length != 4)
+				throw new IOException("Malformed sprite on line "
+						+ lineNumber);
+			SpriteType spriteType;
+			int width;
+			int height;
+			try {
+				spriteType = SpriteType.valueOf(fields[0]);
+				width = Integer.parseInt(fields[1]);
+				height = Integer.parseInt(fields[2]);
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Malformed sprite on line "
+						+ lineNumber, e);
+			}
+			String pixels = fields[3];
+			if (pixels.length() != width * height)
+				throw new IOException("Sprite " + spriteType + " should have "
+						+ width * height + " pixels, has "
+						+ pixels.length());
+
+			boolean[][] image = new boolean[width][height];
+			for (int i = 0; i < width; i++)
+				for (int j = 0; j < height; j++)
+					image[i][j] = pixels.charAt(i * height + j) == '1';
+			spriteMap.put(spriteType, image);
+		}
+
+		return spriteMap;
+	}
+
+	/**
+	 * Writes sprites as an atlas.
+	 *
+	 * @param spriteMap
+	 *            Sprite types mapped to their images.
+	 * @param outputStream
+	 *            Stream to write the atlas to.
+	 * @throws IOException
+	 *             In case of writing problems.
+	 */
+	public static void write(final Map<SpriteType, boolean[][]> spriteMap,
+			final OutputStream outputStream) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(buffer);
+
+		output.writeInt(MAGIC);
+		output.writeByte(VERSION);
+		output.writeShort(spriteMap.size());
+		for (Map.Entry<SpriteType, boolean[][]> sprite : spriteMap
+				.entrySet()) {
+			output.writeUTF(sprite.getKey().name());
+			output.writeShort(sprite.getValue().length);
+			output.writeShort(sprite.getValue()[0].length);
+		}
+
+		for (boolean[][] image : spriteMap.values()) {
+			int packed = 0;
+			int bits = 0;
+			for (boolean[] column : image)
+				for (boolean pixel : column) {
+					packed = (packed << 1) | (pixel ? 1 : 0);
+					if (++bits == 8) {
+						output.writeByte(packed);
+						packed = 0;
+						bits = 0;
+					}
+				}
+			if (bits > 0)
+				output.writeByte(packed << (8 - bits));
+		}
+
+		output.flush();
+		buffer.writeTo(outputStream);
+	}
+
+	/**
+	 * Reads an atlas in a single pass over an in-memory copy.
+	 *
+	 * @param inputStream
+	 *            Stream to read the atlas from.
+	 * @return Sprite types mapped to their images.
+	 * @throws IOException
+	 *             In case of reading problems or malformed atlas.
+	 */
+	public static Map<SpriteType, boolean[][]> read(
+			final InputStream inputStream) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(BUFFER_SIZE);
+		byte[] chunk = new byte[BUFFER_SIZE];
+		int read;
+		while ((read = inputStream.read(chunk)) != -1)
+			buffer.write(chunk, 0, read);
+		byte[] atlas = buffer.toByteArray();
+
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(
+				atlas));
+		if (input.readInt() != MAGIC || input.readByte() != VERSION)
+			throw new IOException("Not a sprite atlas, or unknown version.");
+
+		int count = input.readUnsignedShort();
+		SpriteType[] spriteTypes = new SpriteType[count];
+		int[] widths = new int[count];
+		int[] heights = new int[count];
+		for (int n = 0; n < count; n++) {
+			try {
+				spriteTypes[n] = SpriteType.valueOf(input.readUTF());
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Unknown sprite in atlas.", e);
+			}
+			widths[n] = input.readUnsignedShort();
+			heights[n] = input.readUnsignedShort();
+		}
+
+		Map<SpriteType, boolean[][]> spriteMap =
+				new EnumMap<SpriteType, boolean[][]>(SpriteType.class);
+		int offset = atlas.length - input.available();
+		for (int n = 0; n < count; n++) {
+			if (offset + ((widths[n] * heights[n] + 7) >> 3) > atlas.length)
+				throw new IOException("Truncated sprite atlas.");
+
+			boolean[][] image = new boolean[widths[n]][heights[n]];
+			int bit = 0;
+			for (int i = 0; i < widths[n]; i++)
+				for (int j = 0; j < heights[n]; j++, bit++)
+					image[i][j] = (atlas[offset + (bit >> 3)]
+							& (0x80 >>> (bit & 7))) != 0;
+			offset += (bit + 7) >> 3;
+			spriteMap.put(spriteTypes[n], image);
+		}
+
+		return spriteMap;
+	}
+}
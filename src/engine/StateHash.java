@@ -0,0 +1,149 @@
+package engine;
+
+/**
+ * Hash of the state of a level, kept up to date as it changes instead of
+ * being computed from the whole state. Each value hashed is a term made of
+ * its field, the key of what it belongs to and the value itself; the terms
+ * are summed, so changing a value takes its old term out and puts the new
+ * one in, and the order things change in doesn't matter.
+ *
+ * Each field is summed apart, so that two hashes that differ tell which
+ * field differs. A hash is not thread safe, each level has its own.
+ *
+ */
+public final class StateHash {
+
+	/** Fields hashed, each summed apart. */
+	public enum Field {
+		/** Position of an entity in the X axis. */
+		POSITION_X,
+		/** Position of an entity in the Y axis. */
+		POSITION_Y,
+		/** If an enemy ship was destroyed, 1 or 0. */
+		DESTROYED,
+		/** Score of a player. */
+		SCORE,
+		/** Lives of a player. */
+		LIVES,
+		/** Bullets shot by a player. */
+		BULLETS_SHOT,
+		/** Ships destroyed by a player. */
+		SHIPS_DESTROYED
+	}
+
+	/** Fields, by ordinal. */
+	private static final Field[] FIELDS = Field.values();
+
+	/** Sum of the terms of each field. */
+	private final long[] sums;
+
+	/**
+	 * Constructor, creates the hash of nothing.
+	 */
+	public StateHash() {
+		this.sums = new long[FIELDS.length];
+	}
+
+	/**
+	 * Adds a value.
+	 *
+	 * @param field
+	 *            Field of the value.
+	 * @param key
+	 *            What the value belongs to, the same in every run.
+	 * @param value
+	 *            Value added.
+	 */
+	public void add(final Field field, final int key, final int value) {
+		this.sums[field.ordinal()] += term(field, key, value);
+	}
+
+	/**
+	 * Takes out a value added before.
+	 *
+	 * @param field
+	 *            Field of the value.
+	 * @param key
+	 *            What the value belongs to.
+	 * @param value
+	 *            Value taken out.
+	 */
+	public void remove(final Field field, final int key, final int value) {
+		this.sums[field.ordinal()] -= term(field, key, value);
+	}
+
+	/**
+	 * Changes a value added before.
+	 *
+	 * @param field
+	 *            Field of the value.
+	 * @param key
+	 *            What the value belongs to.
+	 * @param oldValue
+	 *            Value until now.
+	 * @param newValue
+	 *            Value from now on.
+	 */
+	public void change(final Field field, final int key, final int oldValue,
+			final int newValue) {
+		if (oldValue != newValue)
+			this.sums[field.ordinal()] += term(field, key, newValue)
+					- term(field, key, oldValue);
+	}
+
+	/**
+	 * Returns the hash of everything added.
+	 *
+	 * @return Hash of the state.
+	 */
+	public long getValue() {
+		long value = 0;
+		for (int i = 0; i < this.sums.length; i++)
+			value = value * 31 + this.sums[i];
+		return mix64(value);
+	}
+
+	/**
+	 * Finds the first field whose values differ from another hash.
+	 *
+	 * @param other
+	 *            Hash compared.
+	 * @return First field that differs, null if none.
+	 */
+	public Field firstDifference(final StateHash other) {
+		for (int i = 0; i < this.sums.length; i++)
+			if (this.sums[i] != other.sums[i])
+				return FIELDS[i];
+		return null;
+	}
+
+	/**
+	 * Returns the term of a value.
+	 *
+	 * @param field
+	 *            Field of the value.
+	 * @param key
+	 *            What the value belongs to.
+	 * @param value
+	 *            Value.
+	 * @return Term added to the sum of the field.
+	 */
+	private static long term(final Field field, final int key,
+			final int value) {
+		return mix64(((long) field.ordinal() << 56 ^ (long) key << 32)
+				+ (value & 0xffffffffL));
+	}
+
+	/**
+	 * Mixes the bits of a long, the finalizer of SplittableRandom.
+	 *
+	 * @param z
+	 *            Long to mix.
+	 * @return Mixed long.
+	 */
+	private static long mix64(final long z) {
+		long x = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+		return x ^ (x >>> 31);
+	}
+}
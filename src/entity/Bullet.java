@@ -1,6 +1,7 @@
 package entity;
 
 import java.awt.Color;
+import java.nio.ByteBuffer;
 
 import engine.DrawManager.SpriteType;
 
@@ -12,6 +13,10 @@ import engine.DrawManager.SpriteType;
  */
 public class Bullet extends Entity {
 
+	/** Names of the shooters, by the code saved with the bullet state. */
+	private static final String[] SHOOTERS = { "ship1", "ship2",
+			"EnemyShipFormation" };
+
 	/**
 	 * Speed of the bullet, positive or negative depending on direction -
 	 * positive is down.
@@ -54,7 +59,7 @@ public class Bullet extends Entity {
 	 * Updates the bullet's position.
 	 */
 	public final void update() {
-		this.positionY += this.speed;
+		setPositionY(this.positionY + this.speed);
 	}
 
 	/**
@@ -88,4 +93,35 @@ public class Bullet extends Entity {
 	public void setName(String name) {
 		this.name = name;
 	}
+
+	/**
+	 * Writes the state of the bullet, its shooter included.
+	 * 
+	 * @param buffer
+	 *            Buffer to write to.
+	 */
+	@Override
+	public final void writeState(final ByteBuffer buffer) {
+		super.writeState(buffer);
+		buffer.putInt(this.speed);
+		byte shooter = -1;
+		for (byte i = 0; i < SHOOTERS.length; i++)
+			if (SHOOTERS[i].equals(this.name))
+				shooter = i;
+		buffer.put(shooter);
+	}
+
+	/**
+	 * Restores the state written by writeState.
+	 * 
+	 * @param buffer
+	 *            Buffer to read from.
+	 */
+	@Override
+	public final void readState(final ByteBuffer buffer) {
+		super.readState(buffer);
+		this.speed = buffer.getInt();
+		byte shooter = buffer.get();
+		this.name = shooter < 0 ? null : SHOOTERS[shooter];
+	}
 }
@@ -1,24 +1,31 @@
 package entity;
 
-import java.util.HashSet;
+import java.util.ArrayDeque;
 import java.util.Set;
 
+import engine.StateHash;
+
 /**
- * Implements a pool of recyclable bullets.
+ * Implements a pool of recyclable bullets. Each game session has its own,
+ * a pool is not thread safe.
  * 
  * @author <a href="mailto:RobertoIA1987@gmail.com">Roberto Izquierdo Amo</a>
  * 
  */
 public final class BulletPool {
 
-	/** Set of already created bullets. */
-	private static Set<Bullet> pool = new HashSet<Bullet>();
+	/** Already created bullets, taken and given back without allocating. */
+	private final ArrayDeque<Bullet> pool;
+	/** Hash the bullets taken are added to, null if they aren't hashed. */
+	private StateHash stateHash;
+	/** What the bullets are in the hash, all of them the same. */
+	private int hashKey;
 
 	/**
-	 * Constructor, not called.
+	 * Constructor, creates an empty pool.
 	 */
-	private BulletPool() {
-
+	public BulletPool() {
+		this.pool = new ArrayDeque<Bullet>();
 	}
 
 	/**
@@ -36,12 +43,11 @@ public final class BulletPool {
 	 *            Requested name of the shooter of this bullet.
 	 * @return Requested bullet.
 	 */
-	public static Bullet getBullet(final int positionX,
+	public Bullet getBullet(final int positionX,
 			final int positionY, final int speed, final String name) {
 		Bullet bullet;
-		if (!pool.isEmpty()) {
-			bullet = pool.iterator().next();
-			pool.remove(bullet);
+		if (!this.pool.isEmpty()) {
+			bullet = this.pool.pop();
 			bullet.setPositionX(positionX - bullet.getWidth() / 2);
 			bullet.setPositionY(positionY);
 			bullet.setSpeed(speed);
@@ -51,6 +57,8 @@ public final class BulletPool {
 			bullet = new Bullet(positionX, positionY, speed, name);
 			bullet.setPositionX(positionX - bullet.getWidth() / 2);
 		}
+		if (this.stateHash != null)
+			bullet.setStateHash(this.stateHash, this.hashKey);
 		return bullet;
 	}
 
@@ -60,7 +68,45 @@ public final class BulletPool {
 	 * @param bullet
 	 *            Bullets to recycle.
 	 */
-	public static void recycle(final Set<Bullet> bullet) {
-		pool.addAll(bullet);
+	public void recycle(final Set<Bullet> bullet) {
+		for (Bullet recycled : bullet) {
+			recycled.setStateHash(null, 0);
+			this.pool.add(recycled);
+		}
+	}
+
+	/**
+	 * Adds a bullet to the list of available ones.
+	 * 
+	 * @param bullet
+	 *            Bullet to recycle, not in the pool already.
+	 */
+	public void recycle(final Bullet bullet) {
+		bullet.setStateHash(null, 0);
+		this.pool.push(bullet);
+	}
+
+	/**
+	 * Adds the bullets taken from now on to the hash of a level, until they
+	 * are recycled. Bullets are hashed by their values only, the order they
+	 * were taken in doesn't change the hash.
+	 * 
+	 * @param stateHash
+	 *            Hash of the level, null to stop hashing.
+	 * @param hashKey
+	 *            What the bullets are in the hash.
+	 */
+	public void setStateHash(final StateHash stateHash, final int hashKey) {
+		this.stateHash = stateHash;
+		this.hashKey = hashKey;
+	}
+
+	/**
+	 * Getter for the number of bullets waiting to be reused.
+	 * 
+	 * @return Bullets in the pool.
+	 */
+	public int getPoolSize() {
+		return this.pool.size();
 	}
 }
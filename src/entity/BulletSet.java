@@ -0,0 +1,151 @@
+package entity;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Set of the bullets on screen, in the order they were fired. The bullets
+ * are kept in an array that only grows, so that emptying and refilling it,
+ * as restoring a saved state does, allocates nothing. Bullets are compared
+ * by identity. A set is not thread safe.
+ *
+ */
+public final class BulletSet extends AbstractSet<Bullet> {
+
+	/** Bullets the set holds before it grows. */
+	private static final int INITIAL_CAPACITY = 32;
+
+	/** Bullets of the set, from 0 to size. */
+	private Bullet[] bullets;
+	/** Number of bullets in the set. */
+	private int size;
+
+	/**
+	 * Constructor, creates an empty set.
+	 */
+	public BulletSet() {
+		this.bullets = new Bullet[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Returns a bullet by its place in firing order.
+	 *
+	 * @param index
+	 *            Place of the bullet, from 0.
+	 * @return Bullet at that place.
+	 */
+	public Bullet get(final int index) {
+		if (index < 0 || index >= this.size)
+			throw new IndexOutOfBoundsException("Index: " + index);
+		return this.bullets[index];
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public boolean contains(final Object bullet) {
+		return indexOf(bullet) >= 0;
+	}
+
+	@Override
+	public boolean add(final Bullet bullet) {
+		if (indexOf(bullet) >= 0)
+			return false;
+		if (this.size == this.bullets.length)
+			this.bullets = Arrays.copyOf(this.bullets, this.size * 2);
+		this.bullets[this.size++] = bullet;
+		return true;
+	}
+
+	@Override
+	public boolean remove(final Object bullet) {
+		int index = indexOf(bullet);
+		if (index < 0)
+			return false;
+		removeAt(index);
+		return true;
+	}
+
+	@Override
+	public boolean removeAll(final Collection<?> removed) {
+		// One pass, keeping the order of the bullets left.
+		int kept = 0;
+		for (int i = 0; i < this.size; i++)
+			if (!removed.contains(this.bullets[i]))
+				this.bullets[kept++] = this.bullets[i];
+		boolean changed = kept < this.size;
+		Arrays.fill(this.bullets, kept, this.size, null);
+		this.size = kept;
+		return changed;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(this.bullets, 0, this.size, null);
+		this.size = 0;
+	}
+
+	@Override
+	public Iterator<Bullet> iterator() {
+		return new Iterator<Bullet>() {
+			/** Place of the next bullet. */
+			private int next;
+			/** Place of the last bullet returned, -1 if removed. */
+			private int last = -1;
+
+			@Override
+			public boolean hasNext() {
+				return this.next < size;
+			}
+
+			@Override
+			public Bullet next() {
+				if (this.next >= size)
+					throw new NoSuchElementException();
+				this.last = this.next++;
+				return bullets[this.last];
+			}
+
+			@Override
+			public void remove() {
+				if (this.last < 0)
+					throw new IllegalStateException();
+				removeAt(this.last);
+				this.next = this.last;
+				this.last = -1;
+			}
+		};
+	}
+
+	/**
+	 * Finds a bullet by identity.
+	 *
+	 * @param bullet
+	 *            Bullet to find.
+	 * @return Place of the bullet, -1 if it is not in the set.
+	 */
+	private int indexOf(final Object bullet) {
+		for (int i = 0; i < this.size; i++)
+			if (this.bullets[i] == bullet)
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Removes a bullet, keeping the order of the others.
+	 *
+	 * @param index
+	 *            Place of the bullet.
+	 */
+	private void removeAt(final int index) {
+		System.arraycopy(this.bullets, index + 1, this.bullets, index,
+				this.size - index - 1);
+		this.bullets[--this.size] = null;
+	}
+}
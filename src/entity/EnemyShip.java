@@ -1,10 +1,12 @@
 package entity;
 
 import java.awt.Color;
+import java.nio.ByteBuffer;
 
 import engine.Cooldown;
 import engine.Core;
 import engine.DrawManager.SpriteType;
+import engine.StateHash;
 
 /**
  * Implements a enemy ship, to be destroyed by the player.
@@ -97,8 +99,8 @@ public class EnemyShip extends Entity {
 	 *            Distance to move in the Y axis.
 	 */
 	public final void move(final int distanceX, final int distanceY) {
-		this.positionX += distanceX;
-		this.positionY += distanceY;
+		setPositionX(this.positionX + distanceX);
+		setPositionY(this.positionY + distanceY);
 	}
 
 	/**
@@ -137,10 +139,45 @@ public class EnemyShip extends Entity {
 	 * Destroys the ship, causing an explosion.
 	 */
 	public final void destroy() {
-		this.isDestroyed = true;
+		setDestroyed(true);
 		this.spriteType = SpriteType.Explosion;
 	}
 
+	/**
+	 * Setter for the destroyed flag, keeping the hash up to date.
+	 * 
+	 * @param isDestroyed
+	 *            True if the ship has been destroyed.
+	 */
+	private void setDestroyed(final boolean isDestroyed) {
+		if (getStateHash() != null)
+			getStateHash().change(StateHash.Field.DESTROYED, getHashKey(),
+					this.isDestroyed ? 1 : 0, isDestroyed ? 1 : 0);
+		this.isDestroyed = isDestroyed;
+	}
+
+	/**
+	 * Adds the position and the destroyed flag of the ship to a hash, or
+	 * takes them out.
+	 * 
+	 * @param hash
+	 *            Hash to change.
+	 * @param key
+	 *            What the ship is in the hash.
+	 * @param add
+	 *            True to add the fields, false to take them out.
+	 */
+	@Override
+	protected final void hash(final StateHash hash, final int key,
+			final boolean add) {
+		super.hash(hash, key, add);
+		if (add)
+			hash.add(StateHash.Field.DESTROYED, key, this.isDestroyed ? 1 : 0);
+		else
+			hash.remove(StateHash.Field.DESTROYED, key,
+					this.isDestroyed ? 1 : 0);
+	}
+
 	/**
 	 * Checks if the ship has been destroyed.
 	 * 
@@ -149,4 +186,33 @@ public class EnemyShip extends Entity {
 	public final boolean isDestroyed() {
 		return this.isDestroyed;
 	}
+
+	/**
+	 * Writes the state of the ship, animation included.
+	 * 
+	 * @param buffer
+	 *            Buffer to write to.
+	 */
+	@Override
+	public final void writeState(final ByteBuffer buffer) {
+		super.writeState(buffer);
+		buffer.put((byte) (this.isDestroyed ? 1 : 0));
+		// Special ships are not animated.
+		if (this.animationCooldown != null)
+			this.animationCooldown.writeState(buffer);
+	}
+
+	/**
+	 * Restores the state written by writeState, on a ship of the same kind.
+	 * 
+	 * @param buffer
+	 *            Buffer to read from.
+	 */
+	@Override
+	public final void readState(final ByteBuffer buffer) {
+		super.readState(buffer);
+		setDestroyed(buffer.get() == 1);
+		if (this.animationCooldown != null)
+			this.animationCooldown.readState(buffer);
+	}
 }
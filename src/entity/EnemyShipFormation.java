@@ -1,9 +1,11 @@
 package entity;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.logging.Logger;
 
@@ -12,7 +14,10 @@ import engine.Cooldown;
 import engine.Core;
 import engine.DrawManager;
 import engine.DrawManager.SpriteType;
+import engine.FormationMoveEvent;
+import engine.GameRandom;
 import engine.GameSettings;
+import engine.StateHash;
 
 /**
  * Groups enemy ships into a formation that moves together.
@@ -58,8 +63,16 @@ public class EnemyShipFormation implements Iterable<EnemyShip> {
 
 	/** List of enemy ships forming the formation. */
 	private List<List<EnemyShip>> enemyShips;
+	/** Every column the formation started with, empty ones included. */
+	private List<List<EnemyShip>> allColumns;
+	/** Every ship the formation started with, column by column. */
+	private List<EnemyShip> allShips;
 	/** Minimum time between shots. */
 	private Cooldown shootingCooldown;
+	/** Picks the ship that shoots. */
+	private GameRandom shooterRandom;
+	/** Varies the time between shots. */
+	private GameRandom shootingRandom;
 	/** Number of ships in the formation - horizontally. */
 	private int nShipsWide;
 	/** Number of ships in the formation - vertically. */
@@ -105,15 +118,41 @@ public class EnemyShipFormation implements Iterable<EnemyShip> {
 		DOWN
 	};
 
+	/** Directions, by ordinal. */
+	private static final Direction[] DIRECTIONS = Direction.values();
+
 	/**
 	 * Constructor, sets the initial conditions.
 	 * 
 	 * @param gameSettings
 	 *            Current game settings.
+	 * @param random
+	 *            Random source of the game session.
 	 */
-	public EnemyShipFormation(final GameSettings gameSettings) {
-		this.drawManager = Core.getDrawManager();
-		this.logger = Core.getLogger();
+	public EnemyShipFormation(final GameSettings gameSettings,
+			final GameRandom random) {
+		this(gameSettings, random, Core.getDrawManager(), Core.getLogger());
+	}
+
+	/**
+	 * Constructor, sets the initial conditions with the given managers.
+	 * 
+	 * @param gameSettings
+	 *            Current game settings.
+	 * @param random
+	 *            Random source of the game session.
+	 * @param drawManager
+	 *            Draw manager to draw the formation with.
+	 * @param logger
+	 *            Logger for the formation events.
+	 */
+	public EnemyShipFormation(final GameSettings gameSettings,
+			final GameRandom random, final DrawManager drawManager,
+			final Logger logger) {
+		this.drawManager = drawManager;
+		this.logger = logger;
+		this.shooterRandom = random.split();
+		this.shootingRandom = random.split();
 		this.enemyShips = new ArrayList<List<EnemyShip>>();
 		this.currentDirection = Direction.RIGHT;
 		this.movementInterval = 0;
@@ -164,6 +203,11 @@ public class EnemyShipFormation implements Iterable<EnemyShip> {
 
 		for (List<EnemyShip> column : this.enemyShips)
 			this.shooters.add(column.get(column.size() - 1));
+
+		this.allColumns = new ArrayList<List<EnemyShip>>(this.enemyShips);
+		this.allShips = new ArrayList<EnemyShip>();
+		for (List<EnemyShip> column : this.enemyShips)
+			this.allShips.addAll(column);
 	}
 
 	/**
@@ -176,6 +220,21 @@ public class EnemyShipFormation implements Iterable<EnemyShip> {
 		screen = newScreen;
 	}
 
+	/**
+	 * Adds the ships of the formation to the hash of a level, keyed by their
+	 * place in the initial grid.
+	 * 
+	 * @param stateHash
+	 *            Hash of the level, null to take the ships out.
+	 * @param firstKey
+	 *            Key of the first ship, the others follow.
+	 */
+	public final void setStateHash(final StateHash stateHash,
+			final int firstKey) {
+		for (int i = 0; i < this.allShips.size(); i++)
+			this.allShips.get(i).setStateHash(stateHash, firstKey + i);
+	}
+
 	/**
 	 * Draws every individual component of the formation.
 	 */
@@ -192,7 +251,7 @@ public class EnemyShipFormation implements Iterable<EnemyShip> {
 	public final void update() {
 		if(this.shootingCooldown == null) {
 			this.shootingCooldown = Core.getVariableCooldown(shootingInterval,
-					shootingVariance);
+					shootingVariance, this.shootingRandom);
 			this.shootingCooldown.reset();
 		}
 		
@@ -209,6 +268,8 @@ public class EnemyShipFormation implements Iterable<EnemyShip> {
 		movementInterval++;
 		if (movementInterval >= this.movementSpeed) {
 			movementInterval = 0;
+			FormationMoveEvent moveEvent = new FormationMoveEvent();
+			moveEvent.begin();
 
 			boolean isAtBottom = positionY
 					+ this.height > screen.getHeight() - BOTTOM_MARGIN;
@@ -278,13 +339,20 @@ public class EnemyShipFormation implements Iterable<EnemyShip> {
 					enemyShip.move(movementX, movementY);
 					enemyShip.update();
 				}
+
+			if (moveEvent.shouldCommit()) {
+				moveEvent.setDirection(currentDirection.name());
+				moveEvent.setPosition(positionX, positionY);
+				moveEvent.setShips(this.shipCount);
+				moveEvent.commit();
+			}
 		}
 	}
 
 	/**
 	 * Cleans empty columns, adjusts the width and height of the formation.
 	 */
-	private void cleanUp() {
+	final void cleanUp() {
 		Set<Integer> emptyColumns = new HashSet<Integer>();
 		int maxColumn = 0;
 		int minPositionY = Integer.MAX_VALUE;
@@ -329,15 +397,18 @@ public class EnemyShipFormation implements Iterable<EnemyShip> {
 	 * 
 	 * @param bullets
 	 *            Bullets set to add the bullet being shot.
+	 * @param bulletPool
+	 *            Pool to take the bullet from.
 	 */
-	public final void shoot(final Set<Bullet> bullets) {
+	public final void shoot(final Set<Bullet> bullets,
+			final BulletPool bulletPool) {
 		// For now, only ships in the bottom row are able to shoot.
-		int index = (int) (Math.random() * this.shooters.size());
+		int index = this.shooterRandom.nextInt(this.shooters.size());
 		EnemyShip shooter = this.shooters.get(index);
 
 		if (this.shootingCooldown.checkFinished()) {
 			this.shootingCooldown.reset();
-			bullets.add(BulletPool.getBullet(shooter.getPositionX()
+			bullets.add(bulletPool.getBullet(shooter.getPositionX()
 					+ shooter.width / 2, shooter.getPositionY(), BULLET_SPEED, "EnemyShipFormation"));
 		}
 	}
@@ -403,19 +474,37 @@ public class EnemyShipFormation implements Iterable<EnemyShip> {
 	}
 
 	/**
-	 * Returns an iterator over the ships in the formation.
+	 * Returns an iterator over the ships in the formation, column by column
+	 * so that the order is the same on every run. Ships may be destroyed
+	 * while iterating, but not removed.
 	 * 
 	 * @return Iterator over the enemy ships.
 	 */
 	@Override
 	public final Iterator<EnemyShip> iterator() {
-		Set<EnemyShip> enemyShipsList = new HashSet<EnemyShip>();
-
-		for (List<EnemyShip> column : this.enemyShips)
-			for (EnemyShip enemyShip : column)
-				enemyShipsList.add(enemyShip);
+		return new Iterator<EnemyShip>() {
+			/** Column of the next ship. */
+			private int column = 0;
+			/** Row of the next ship. */
+			private int row = 0;
+
+			@Override
+			public boolean hasNext() {
+				while (this.column < enemyShips.size()
+						&& this.row >= enemyShips.get(this.column).size()) {
+					this.column++;
+					this.row = 0;
+				}
+				return this.column < enemyShips.size();
+			}
 
-		return enemyShipsList.iterator();
+			@Override
+			public EnemyShip next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return enemyShips.get(this.column).get(this.row++);
+			}
+		};
 	}
 
 	/**
@@ -426,4 +515,117 @@ public class EnemyShipFormation implements Iterable<EnemyShip> {
 	public final boolean isEmpty() {
 		return this.shipCount <= 0;
 	}
+
+	/**
+	 * Getter for the number of ships remaining.
+	 * 
+	 * @return Ships not destroyed yet.
+	 */
+	public final int getShipCount() {
+		return this.shipCount;
+	}
+
+	/**
+	 * Writes the state of the formation and its ships, for it to be
+	 * restored later.
+	 * 
+	 * @param buffer
+	 *            Buffer to write to.
+	 */
+	public final void writeState(final ByteBuffer buffer) {
+		buffer.putInt(this.positionX);
+		buffer.putInt(this.positionY);
+		buffer.putInt(this.width);
+		buffer.putInt(this.height);
+		buffer.putInt(this.movementInterval);
+		buffer.putInt(this.movementSpeed);
+		buffer.putInt(this.shipCount);
+		buffer.put((byte) this.currentDirection.ordinal());
+		buffer.put((byte) (this.previousDirection == null ? -1
+				: this.previousDirection.ordinal()));
+		this.shooterRandom.writeState(buffer);
+		this.shootingRandom.writeState(buffer);
+		buffer.put((byte) (this.shootingCooldown == null ? 0 : 1));
+		if (this.shootingCooldown != null)
+			this.shootingCooldown.writeState(buffer);
+
+		for (EnemyShip enemyShip : this.allShips)
+			enemyShip.writeState(buffer);
+		// Columns and ships are written as their place in the initial grid.
+		buffer.put((byte) this.enemyShips.size());
+		for (List<EnemyShip> column : this.enemyShips) {
+			buffer.put((byte) indexOf(this.allColumns, column));
+			buffer.put((byte) column.size());
+			for (EnemyShip enemyShip : column)
+				buffer.put((byte) this.allShips.indexOf(enemyShip));
+		}
+		buffer.put((byte) this.shooters.size());
+		for (EnemyShip shooter : this.shooters)
+			buffer.put((byte) this.allShips.indexOf(shooter));
+	}
+
+	/**
+	 * Restores the state written by writeState, on a formation created with
+	 * the same settings.
+	 * 
+	 * @param buffer
+	 *            Buffer to read from.
+	 */
+	public final void readState(final ByteBuffer buffer) {
+		this.positionX = buffer.getInt();
+		this.positionY = buffer.getInt();
+		this.width = buffer.getInt();
+		this.height = buffer.getInt();
+		this.movementInterval = buffer.getInt();
+		this.movementSpeed = buffer.getInt();
+		this.shipCount = buffer.getInt();
+		this.currentDirection = DIRECTIONS[buffer.get()];
+		byte previous = buffer.get();
+		this.previousDirection = previous < 0 ? null : DIRECTIONS[previous];
+		this.shooterRandom.readState(buffer);
+		this.shootingRandom.readState(buffer);
+		if (buffer.get() == 1) {
+			if (this.shootingCooldown == null)
+				this.shootingCooldown = Core.getVariableCooldown(
+						this.shootingInterval, this.shootingVariance,
+						this.shootingRandom);
+			this.shootingCooldown.readState(buffer);
+		} else {
+			this.shootingCooldown = null;
+		}
+
+		for (EnemyShip enemyShip : this.allShips)
+			enemyShip.readState(buffer);
+		this.enemyShips.clear();
+		int columns = buffer.get();
+		for (int i = 0; i < columns; i++) {
+			List<EnemyShip> column = this.allColumns.get(buffer.get());
+			column.clear();
+			int ships = buffer.get();
+			for (int j = 0; j < ships; j++)
+				column.add(this.allShips.get(buffer.get()));
+			this.enemyShips.add(column);
+		}
+		this.shooters.clear();
+		int shooterCount = buffer.get();
+		for (int i = 0; i < shooterCount; i++)
+			this.shooters.add(this.allShips.get(buffer.get()));
+	}
+
+	/**
+	 * Finds an element of a list by identity, empty columns are equal to
+	 * each other.
+	 * 
+	 * @param list
+	 *            List to search.
+	 * @param element
+	 *            Element to find.
+	 * @return Position of the element, -1 if it is not in the list.
+	 */
+	private static int indexOf(final List<?> list, final Object element) {
+		for (int i = 0; i < list.size(); i++)
+			if (list.get(i) == element)
+				return i;
+		return -1;
+	}
 }
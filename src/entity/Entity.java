@@ -1,8 +1,10 @@
 package entity;
 
 import java.awt.Color;
+import java.nio.ByteBuffer;
 
 import engine.DrawManager.SpriteType;
+import engine.StateHash;
 
 /**
  * Implements a generic game entity.
@@ -12,6 +14,9 @@ import engine.DrawManager.SpriteType;
  */
 public class Entity {
 
+	/** Sprite types, by ordinal. */
+	private static final SpriteType[] SPRITE_TYPES = SpriteType.values();
+
 	/** Position in the x-axis of the upper left corner of the entity. */
 	protected int positionX;
 	/** Position in the y-axis of the upper left corner of the entity. */
@@ -24,6 +29,10 @@ public class Entity {
 	private Color color;
 	/** Sprite type assigned to the entity. */
 	protected SpriteType spriteType;
+	/** Hash of the level the entity is in, null if it isn't hashed. */
+	private StateHash stateHash;
+	/** What the entity is in the hash, the same in every run. */
+	private int hashKey;
 
 	/**
 	 * Constructor, establishes the entity's generic properties.
@@ -82,6 +91,9 @@ public class Entity {
 	 *            New position of the entity in the X axis.
 	 */
 	public final void setPositionX(final int positionX) {
+		if (this.stateHash != null)
+			this.stateHash.change(StateHash.Field.POSITION_X, this.hashKey,
+					this.positionX, positionX);
 		this.positionX = positionX;
 	}
 
@@ -92,9 +104,70 @@ public class Entity {
 	 *            New position of the entity in the Y axis.
 	 */
 	public final void setPositionY(final int positionY) {
+		if (this.stateHash != null)
+			this.stateHash.change(StateHash.Field.POSITION_Y, this.hashKey,
+					this.positionY, positionY);
 		this.positionY = positionY;
 	}
 
+	/**
+	 * Adds the entity to the hash of a level, taking it out of the one it
+	 * was in. Its hashed fields keep the hash up to date from then on.
+	 * 
+	 * @param stateHash
+	 *            Hash to add the entity to, null to only take it out.
+	 * @param hashKey
+	 *            What the entity is in the hash, the same in every run.
+	 */
+	public final void setStateHash(final StateHash stateHash,
+			final int hashKey) {
+		if (this.stateHash != null)
+			hash(this.stateHash, this.hashKey, false);
+		this.stateHash = stateHash;
+		this.hashKey = hashKey;
+		if (stateHash != null)
+			hash(stateHash, hashKey, true);
+	}
+
+	/**
+	 * Getter for the hash the entity is in.
+	 * 
+	 * @return Hash of the level, null if the entity isn't hashed.
+	 */
+	protected final StateHash getStateHash() {
+		return this.stateHash;
+	}
+
+	/**
+	 * Getter for what the entity is in the hash.
+	 * 
+	 * @return Key of the entity.
+	 */
+	protected final int getHashKey() {
+		return this.hashKey;
+	}
+
+	/**
+	 * Adds the hashed fields of the entity to a hash, or takes them out.
+	 * 
+	 * @param hash
+	 *            Hash to change.
+	 * @param key
+	 *            What the entity is in the hash.
+	 * @param add
+	 *            True to add the fields, false to take them out.
+	 */
+	protected void hash(final StateHash hash, final int key,
+			final boolean add) {
+		if (add) {
+			hash.add(StateHash.Field.POSITION_X, key, this.positionX);
+			hash.add(StateHash.Field.POSITION_Y, key, this.positionY);
+		} else {
+			hash.remove(StateHash.Field.POSITION_X, key, this.positionX);
+			hash.remove(StateHash.Field.POSITION_Y, key, this.positionY);
+		}
+	}
+
 	/**
 	 * Getter for the sprite that the entity will be drawn as.
 	 * 
@@ -121,4 +194,28 @@ public class Entity {
 	public final int getHeight() {
 		return this.height;
 	}
+
+	/**
+	 * Writes the state of the entity, for it to be restored later.
+	 * 
+	 * @param buffer
+	 *            Buffer to write to.
+	 */
+	public void writeState(final ByteBuffer buffer) {
+		buffer.putInt(this.positionX);
+		buffer.putInt(this.positionY);
+		buffer.put((byte) this.spriteType.ordinal());
+	}
+
+	/**
+	 * Restores the state written by writeState.
+	 * 
+	 * @param buffer
+	 *            Buffer to read from.
+	 */
+	public void readState(final ByteBuffer buffer) {
+		setPositionX(buffer.getInt());
+		setPositionY(buffer.getInt());
+		this.spriteType = SPRITE_TYPES[buffer.get()];
+	}
 }
@@ -1,8 +1,14 @@
 package entity;
 
+import engine.StateHash;
+
 public class Pair {
     private int p1Value;
     private int p2Value;
+    /** Hash of the level the values are in, null if they aren't hashed. */
+    private StateHash stateHash;
+    /** Field the values are in the hash. */
+    private StateHash.Field field;
 
     public Pair(int p1Value, int p2Value){
         setPlayer1Value(p1Value);
@@ -13,12 +19,42 @@ public class Pair {
 
     public int getPlayer2Value(){return p2Value;}
 
-    public void setPlayer1Value(int p1Value){this.p1Value = p1Value;}
-
-    public void setPlayer2Value(int p2Value){this.p2Value = p2Value;}
+    public void setPlayer1Value(int p1Value){
+        if (stateHash != null)
+            stateHash.change(field, 1, this.p1Value, p1Value);
+        this.p1Value = p1Value;
+    }
 
-    public void addPlayer1Value(int inc){this.p1Value += inc;}
+    public void setPlayer2Value(int p2Value){
+        if (stateHash != null)
+            stateHash.change(field, 2, this.p2Value, p2Value);
+        this.p2Value = p2Value;
+    }
 
-    public void addPlayer2Value(int inc){this.p2Value += inc;}
+    public void addPlayer1Value(int inc){setPlayer1Value(p1Value + inc);}
+
+    public void addPlayer2Value(int inc){setPlayer2Value(p2Value + inc);}
+
+    /**
+     * Adds the values to the hash of a level, keyed by player, taking them
+     * out of the one they were in. A pair is in one hash at a time.
+     *
+     * @param stateHash
+     *            Hash to add the values to, null to only take them out.
+     * @param field
+     *            Field the values are in the hash.
+     */
+    public void setStateHash(StateHash stateHash, StateHash.Field field){
+        if (this.stateHash != null) {
+            this.stateHash.remove(this.field, 1, p1Value);
+            this.stateHash.remove(this.field, 2, p2Value);
+        }
+        this.stateHash = stateHash;
+        this.field = field;
+        if (stateHash != null) {
+            stateHash.add(field, 1, p1Value);
+            stateHash.add(field, 2, p2Value);
+        }
+    }
 
 }
@@ -1,6 +1,7 @@
 package entity;
 
 import java.awt.Color;
+import java.nio.ByteBuffer;
 import java.util.Set;
 
 import engine.Cooldown;
@@ -50,7 +51,7 @@ public class Ship extends Entity {
 	 * reached.
 	 */
 	public final void moveRight() {
-		this.positionX += SPEED;
+		setPositionX(this.positionX + SPEED);
 	}
 
 	/**
@@ -58,7 +59,7 @@ public class Ship extends Entity {
 	 * reached.
 	 */
 	public final void moveLeft() {
-		this.positionX -= SPEED;
+		setPositionX(this.positionX - SPEED);
 	}
 
 	/**
@@ -68,12 +69,15 @@ public class Ship extends Entity {
 	 *            List of bullets on screen, to add the new bullet.
 	 * @param name
 	 *            Name of shooter of this bullet.
+	 * @param bulletPool
+	 *            Pool to take the bullet from.
 	 * @return Checks if the bullet was shot correctly.
 	 */
-	public final boolean shoot(final Set<Bullet> bullets, final String name) {
+	public final boolean shoot(final Set<Bullet> bullets, final String name,
+			final BulletPool bulletPool) {
 		if (this.shootingCooldown.checkFinished()) {
 			this.shootingCooldown.reset();
-			bullets.add(BulletPool.getBullet(positionX + this.width / 2,
+			bullets.add(bulletPool.getBullet(positionX + this.width / 2,
 					positionY, BULLET_SPEED, name));
 			return true;
 		}
@@ -118,4 +122,30 @@ public class Ship extends Entity {
 	public final int getSpeed() {
 		return SPEED;
 	}
+
+	/**
+	 * Writes the state of the ship, cooldowns included.
+	 * 
+	 * @param buffer
+	 *            Buffer to write to.
+	 */
+	@Override
+	public final void writeState(final ByteBuffer buffer) {
+		super.writeState(buffer);
+		this.shootingCooldown.writeState(buffer);
+		this.destructionCooldown.writeState(buffer);
+	}
+
+	/**
+	 * Restores the state written by writeState.
+	 * 
+	 * @param buffer
+	 *            Buffer to read from.
+	 */
+	@Override
+	public final void readState(final ByteBuffer buffer) {
+		super.readState(buffer);
+		this.shootingCooldown.readState(buffer);
+		this.destructionCooldown.readState(buffer);
+	}
 }
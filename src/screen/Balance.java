@@ -0,0 +1,631 @@
+package screen;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import engine.Core;
+import engine.GameRandom;
+import engine.GameSettings;
+import engine.GameState;
+
+/**
+ * Measures how hard each level of each difficulty is, by having a bot play
+ * many one player games of it without a display. Reports how often the
+ * level is cleared, the lives lost, the time taken to clear it and the
+ * score. Each level is played on its own from full lives, as the first
+ * level of a game is.
+ *
+ * Given target clear rates, searches for each level the enemy shooting
+ * frequency that clears it that often, keeping the formation and its
+ * speed, and prints the settings to use.
+ *
+ * Games run in parallel on every core. Each game has its own seed, taken
+ * from the seed of the run, so the same run gives the same results on any
+ * machine.
+ *
+ * Usage: Balance [games] [seed] [targets]. Targets are clear rates from 0
+ * to 1, one for every difficulty or three separated by commas, easy first.
+ * The reaction time of the bot, in milliseconds, is read from the
+ * balance.reactionTime system property. Exits with 0 when done and 2 on
+ * bad arguments.
+ *
+ */
+public final class Balance {
+
+	/** Games played per level by default. */
+	private static final int DEFAULT_GAMES = 500;
+	/** Seed of the run by default. */
+	private static final long DEFAULT_SEED = 1;
+	/** Number of difficulties. */
+	private static final int DIFFICULTIES = 3;
+	/** Names of the difficulties, as in the settings constants. */
+	private static final String[] DIFFICULTY_NAMES = { "EASY", "MEDIUM",
+			"DIFFICULT" };
+	/** Updates after which a game is given up, 5 minutes of play. */
+	private static final int MAX_STEPS = 60 * 60 * 5;
+	/** Updates in a second of play. */
+	private static final double STEPS_PER_SECOND = 60;
+	/** Reaction time of the bot by default, in milliseconds. */
+	private static final int DEFAULT_REACTION_TIME = 250;
+	/** Games a task plays without splitting. */
+	private static final int GAMES_PER_TASK = 4;
+	/** Shortest shooting frequency searched, in milliseconds. */
+	private static final int MIN_SHOOTING = 200;
+	/** Longest shooting frequency searched, in milliseconds. */
+	private static final int MAX_SHOOTING = 10000;
+	/** Step the shooting frequencies found are rounded to. */
+	private static final int SHOOTING_STEP = 50;
+
+	/** Exit code when done. */
+	private static final int EXIT_DONE = 0;
+	/** Exit code on bad arguments. */
+	private static final int EXIT_USAGE = 2;
+
+	/** Pool the games run in. */
+	private final ForkJoinPool pool;
+	/** Games played per level. */
+	private final int games;
+	/** Seed of the run. */
+	private final long seed;
+	/** Updates between two looks of the bot at the screen. */
+	private final int reactionSteps;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pool
+	 *            Pool to play the games in.
+	 * @param games
+	 *            Games played per level.
+	 * @param seed
+	 *            Seed of the run.
+	 * @param reactionTime
+	 *            Reaction time of the bot, in milliseconds.
+	 */
+	private Balance(final ForkJoinPool pool, final int games,
+			final long seed, final int reactionTime) {
+		this.pool = pool;
+		this.games = games;
+		this.seed = seed;
+		this.reactionSteps = Math.max(1, (int) (reactionTime
+				* STEPS_PER_SECOND / 1000));
+	}
+
+	/**
+	 * Runs the tool.
+	 *
+	 * @param args
+	 *            Number of games, seed and target clear rates, all
+	 *            optional.
+	 */
+	public static void main(final String[] args) {
+		int games = DEFAULT_GAMES;
+		long seed = DEFAULT_SEED;
+		double[] targets = null;
+		try {
+			if (args.length > 0)
+				games = Integer.parseInt(args[0]);
+			if (args.length > 1)
+				seed = Long.parseLong(args[1]);
+			if (args.length > 2)
+				targets = parseTargets(args[2]);
+		} catch (NumberFormatException e) {
+			games = -1;
+		}
+		if (args.length > 3 || games < 1) {
+			System.err.println("Usage: Balance [games] [seed] [targets]");
+			System.exit(EXIT_USAGE);
+		}
+
+		System.setProperty("java.awt.headless", "true");
+		Balance balance = new Balance(ForkJoinPool.commonPool(), games,
+				seed, Integer.getInteger("balance.reactionTime",
+						DEFAULT_REACTION_TIME));
+		long start = System.nanoTime();
+		for (int difficulty = 1; difficulty <= DIFFICULTIES; difficulty++) {
+			List<GameSettings> levels = Core.getLevelSettings(difficulty);
+			for (int level = 1; level <= levels.size(); level++) {
+				GameSettings settings = levels.get(level - 1);
+				long[] seeds = balance.seeds(difficulty, level);
+				Results results = balance.play(settings, seeds);
+				System.out.println(name(difficulty, level) + " "
+						+ describe(settings) + ": " + results.summary());
+				if (targets != null)
+					balance.search(difficulty, level, settings, seeds,
+							targets[difficulty - 1]);
+			}
+		}
+		System.out.println(String.format(Locale.ROOT, "Done in %.1f s.",
+				(System.nanoTime() - start) / 1e9));
+		System.exit(EXIT_DONE);
+	}
+
+	/**
+	 * Reads the target clear rates.
+	 *
+	 * @param argument
+	 *            One rate, or one per difficulty separated by commas.
+	 * @return Target of each difficulty.
+	 */
+	private static double[] parseTargets(final String argument) {
+		String[] values = argument.split(",");
+		if (values.length != 1 && values.length != DIFFICULTIES)
+			throw new NumberFormatException("bad targets " + argument);
+		double[] targets = new double[DIFFICULTIES];
+		for (int i = 0; i < DIFFICULTIES; i++) {
+			targets[i] = Double.parseDouble(values[values.length == 1 ? 0
+					: i]);
+			if (!(targets[i] >= 0 && targets[i] <= 1))
+				throw new NumberFormatException("bad target " + targets[i]);
+		}
+		return targets;
+	}
+
+	/**
+	 * Returns the seeds of the games of a level. They only depend on the
+	 * seed of the run, the level and the number of games.
+	 *
+	 * @param difficulty
+	 *            Difficulty code, 1 to 3.
+	 * @param level
+	 *            Level, from 1.
+	 * @return Seed of each game.
+	 */
+	private long[] seeds(final int difficulty, final int level) {
+		GameRandom random = new GameRandom(this.seed);
+		for (int i = 1; i < (difficulty - 1) * Core.NUM_LEVELS + level; i++)
+			random.split();
+		GameRandom levelRandom = random.split();
+		long[] seeds = new long[this.games];
+		for (int i = 0; i < seeds.length; i++)
+			seeds[i] = levelRandom.nextLong();
+		return seeds;
+	}
+
+	/**
+	 * Plays a game of a level for each seed, in parallel.
+	 *
+	 * @param settings
+	 *            Settings of the level.
+	 * @param seeds
+	 *            Seed of each game.
+	 * @return Results of the games.
+	 */
+	private Results play(final GameSettings settings, final long[] seeds) {
+		Results results = new Results(seeds.length);
+		this.pool.invoke(new Games(settings, seeds, this.reactionSteps,
+				results, 0, seeds.length));
+		return results;
+	}
+
+	/**
+	 * Searches the shooting frequency closest to a target clear rate, by
+	 * bisection, with the same seeds for every frequency tried. Longer
+	 * times between shots are taken to make a level easier.
+	 *
+	 * @param difficulty
+	 *            Difficulty code, 1 to 3.
+	 * @param level
+	 *            Level, from 1.
+	 * @param settings
+	 *            Current settings of the level.
+	 * @param seeds
+	 *            Seed of each game.
+	 * @param target
+	 *            Clear rate to reach, 0 to 1.
+	 */
+	private void search(final int difficulty, final int level,
+			final GameSettings settings, final long[] seeds,
+			final double target) {
+		int low = MIN_SHOOTING;
+		int high = MAX_SHOOTING;
+		int best = settings.getShootingFrecuency();
+		Results bestResults = null;
+		while (high - low > SHOOTING_STEP) {
+			int middle = (low + high) / 2 / SHOOTING_STEP * SHOOTING_STEP;
+			Results results = play(withShooting(settings, middle), seeds);
+			if (bestResults == null
+					|| Math.abs(results.getClearRate() - target) < Math
+							.abs(bestResults.getClearRate() - target)) {
+				best = middle;
+				bestResults = results;
+			}
+			if (results.getClearRate() < target)
+				low = middle;
+			else
+				high = middle;
+		}
+		GameSettings found = withShooting(settings, best);
+		System.out.println(String.format(Locale.ROOT,
+				"  SETTINGS_%s_LEVEL_%d = new GameSettings(%d, %d, %d, %d);"
+						+ " clears %.1f%% for a target of %.1f%%",
+				DIFFICULTY_NAMES[difficulty - 1], level,
+				found.getFormationWidth(), found.getFormationHeight(),
+				found.getBaseSpeed(), found.getShootingFrecuency(),
+				bestResults.getClearRate() * 100, target * 100));
+	}
+
+	/**
+	 * Copies settings with another shooting frequency.
+	 *
+	 * @param settings
+	 *            Settings to copy.
+	 * @param shootingFrecuency
+	 *            Shooting frequency, in milliseconds.
+	 * @return New settings.
+	 */
+	private static GameSettings withShooting(final GameSettings settings,
+			final int shootingFrecuency) {
+		return new GameSettings(settings.getFormationWidth(),
+				settings.getFormationHeight(), settings.getBaseSpeed(),
+				shootingFrecuency);
+	}
+
+	/**
+	 * Names a level.
+	 *
+	 * @param difficulty
+	 *            Difficulty code, 1 to 3.
+	 * @param level
+	 *            Level, from 1.
+	 * @return Name of the level.
+	 */
+	private static String name(final int difficulty, final int level) {
+		String name = DIFFICULTY_NAMES[difficulty - 1];
+		return name.charAt(0) + name.substring(1).toLowerCase(Locale.ROOT)
+				+ " level " + level;
+	}
+
+	/**
+	 * Describes level settings.
+	 *
+	 * @param settings
+	 *            Settings to describe.
+	 * @return Formation, speed and shooting frequency.
+	 */
+	private static String describe(final GameSettings settings) {
+		return "(" + settings.getFormationWidth() + "x"
+				+ settings.getFormationHeight() + ", speed "
+				+ settings.getBaseSpeed() + ", shooting "
+				+ settings.getShootingFrecuency() + " ms)";
+	}
+
+	/**
+	 * Plays a range of games, splitting it in halves while it is large.
+	 */
+	private static final class Games extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		/** Settings of the level. */
+		private final GameSettings settings;
+		/** Seed of each game. */
+		private final long[] seeds;
+		/** Updates between two looks of the bot at the screen. */
+		private final int reactionSteps;
+		/** Results of the games, filled by index. */
+		private final Results results;
+		/** First game of the range. */
+		private final int from;
+		/** Game after the last one of the range. */
+		private final int to;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param settings
+		 *            Settings of the level.
+		 * @param seeds
+		 *            Seed of each game.
+		 * @param reactionSteps
+		 *            Updates between two looks of the bot at the screen.
+		 * @param results
+		 *            Results of the games, filled by index.
+		 * @param from
+		 *            First game of the range.
+		 * @param to
+		 *            Game after the last one of the range.
+		 */
+		Games(final GameSettings settings, final long[] seeds,
+				final int reactionSteps, final Results results,
+				final int from, final int to) {
+			this.settings = settings;
+			this.seeds = seeds;
+			this.reactionSteps = reactionSteps;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+		/**
+		 * Plays the games of the range, or splits it.
+		 */
+		@Override
+		protected void compute() {
+			if (this.to - this.from > GAMES_PER_TASK) {
+				int middle = (this.from + this.to) >>> 1;
+				invokeAll(new Games(this.settings, this.seeds,
+						this.reactionSteps, this.results, this.from, middle),
+						new Games(this.settings, this.seeds,
+								this.reactionSteps, this.results, middle,
+								this.to));
+				return;
+			}
+			Simulation simulation = new Simulation(1);
+			byte[] grid = new byte[Simulation.GRID_SIZE];
+			for (int i = this.from; i < this.to; i++) {
+				Bot bot = new Bot(this.reactionSteps);
+				simulation.reset(this.settings, this.seeds[i]);
+				simulation.observe(grid);
+				while (!simulation.isDone()
+						&& simulation.getSteps() < MAX_STEPS)
+					simulation.step(bot.act(grid), grid);
+				GameState gameState = simulation.getGameState();
+				int lives = gameState.getLivesRemaining().getPlayer1Value();
+				this.results.record(i, simulation.isDone() && lives > 0,
+						Core.MAX_LIVES - lives, simulation.getSteps(),
+						gameState.getScore().getPlayer1Value());
+			}
+		}
+	}
+
+	/**
+	 * Plays player 1 from the screen grid: moves out from under enemy
+	 * bullets, otherwise moves under the closest enemy, and always shoots.
+	 * Like a player, it only looks at the screen every reaction time and
+	 * holds the same keys in between.
+	 */
+	private static final class Bot {
+
+		/** Rows above the ship where enemy bullets are dodged. */
+		private static final int DANGER_ROWS = 12;
+		/** Columns beside the ship kept clear of enemy bullets. */
+		private static final int DANGER_MARGIN = 1;
+
+		/** Updates between two looks at the screen. */
+		private final int reactionSteps;
+		/** Columns with an enemy bullet close above the ship. */
+		private final boolean[] danger = new boolean[Simulation.GRID_WIDTH];
+		/** Updates until the next look at the screen. */
+		private int wait;
+		/** Keys held since the last look. */
+		private int action;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param reactionSteps
+		 *            Updates between two looks at the screen, at least 1.
+		 */
+		Bot(final int reactionSteps) {
+			this.reactionSteps = reactionSteps;
+		}
+
+		/**
+		 * Returns the keys to hold, looking at the screen if the reaction
+		 * time has passed.
+		 *
+		 * @param grid
+		 *            Screen grid after the last step.
+		 * @return Input mask.
+		 */
+		int act(final byte[] grid) {
+			if (--this.wait <= 0) {
+				this.action = decide(grid);
+				this.wait = this.reactionSteps;
+			}
+			return this.action;
+		}
+
+		/**
+		 * Picks the keys to hold.
+		 *
+		 * @param grid
+		 *            Screen grid.
+		 * @return Input mask.
+		 */
+		private int decide(final byte[] grid) {
+			int shipLeft = Simulation.GRID_WIDTH;
+			int shipRight = -1;
+			int shipTop = Simulation.GRID_HEIGHT;
+			for (int cell = 0; cell < Simulation.GRID_SIZE; cell++)
+				if (grid[cell] == Simulation.PLAYER1) {
+					int column = cell % Simulation.GRID_WIDTH;
+					shipLeft = Math.min(shipLeft, column);
+					shipRight = Math.max(shipRight, column);
+					shipTop = Math.min(shipTop, cell
+							/ Simulation.GRID_WIDTH);
+				}
+			if (shipRight < 0)
+				return GameScreen.INPUT_SPACE;
+			int center = (shipLeft + shipRight) / 2;
+
+			Arrays.fill(this.danger, false);
+			int target = -1;
+			for (int cell = 0; cell < Simulation.GRID_SIZE; cell++) {
+				int column = cell % Simulation.GRID_WIDTH;
+				if (grid[cell] == Simulation.ENEMY_BULLET
+						&& cell / Simulation.GRID_WIDTH
+								>= shipTop - DANGER_ROWS)
+					this.danger[column] = true;
+				else if ((grid[cell] == Simulation.ENEMY
+						|| grid[cell] == Simulation.SPECIAL)
+						&& (target < 0 || Math.abs(column - center)
+								< Math.abs(target - center)))
+					target = column;
+			}
+
+			int move = 0;
+			if (!isSafe(shipLeft, shipRight, 0))
+				move = escape(shipLeft, shipRight);
+			else if (target >= 0 && target < center
+					&& isSafe(shipLeft, shipRight, -1))
+				move = GameScreen.INPUT_LEFT;
+			else if (target > center && isSafe(shipLeft, shipRight, 1))
+				move = GameScreen.INPUT_RIGHT;
+			return move | GameScreen.INPUT_SPACE;
+		}
+
+		/**
+		 * Picks the way to the closest safe position.
+		 *
+		 * @param shipLeft
+		 *            First column of the ship.
+		 * @param shipRight
+		 *            Last column of the ship.
+		 * @return Input mask moving there, 0 if there is none.
+		 */
+		private int escape(final int shipLeft, final int shipRight) {
+			for (int shift = 1; shift < Simulation.GRID_WIDTH; shift++) {
+				if (shipLeft - shift >= 0
+						&& isSafe(shipLeft, shipRight, -shift))
+					return GameScreen.INPUT_LEFT;
+				if (shipRight + shift < Simulation.GRID_WIDTH
+						&& isSafe(shipLeft, shipRight, shift))
+					return GameScreen.INPUT_RIGHT;
+			}
+			return 0;
+		}
+
+		/**
+		 * Checks if the ship would be clear of enemy bullets.
+		 *
+		 * @param shipLeft
+		 *            First column of the ship.
+		 * @param shipRight
+		 *            Last column of the ship.
+		 * @param shift
+		 *            Columns the ship is moved by.
+		 * @return True if no column around the ship has a bullet close.
+		 */
+		private boolean isSafe(final int shipLeft, final int shipRight,
+				final int shift) {
+			int left = Math.max(0, shipLeft + shift - DANGER_MARGIN);
+			int right = Math.min(Simulation.GRID_WIDTH - 1, shipRight
+					+ shift + DANGER_MARGIN);
+			for (int column = left; column <= right; column++)
+				if (this.danger[column])
+					return false;
+			return true;
+		}
+	}
+
+	/**
+	 * Results of the games of a level, filled by index so that they don't
+	 * depend on the order the games finish in.
+	 */
+	private static final class Results {
+
+		/** If each game cleared the level. */
+		private final boolean[] cleared;
+		/** Lives lost in each game. */
+		private final int[] livesLost;
+		/** Updates played in each game. */
+		private final int[] steps;
+		/** Score of each game. */
+		private final int[] scores;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param games
+		 *            Number of games.
+		 */
+		Results(final int games) {
+			this.cleared = new boolean[games];
+			this.livesLost = new int[games];
+			this.steps = new int[games];
+			this.scores = new int[games];
+		}
+
+		/**
+		 * Records the result of a game.
+		 *
+		 * @param game
+		 *            Index of the game.
+		 * @param cleared
+		 *            If the level was cleared.
+		 * @param livesLost
+		 *            Lives lost.
+		 * @param steps
+		 *            Updates played.
+		 * @param score
+		 *            Score.
+		 */
+		void record(final int game, final boolean cleared,
+				final int livesLost, final int steps, final int score) {
+			this.cleared[game] = cleared;
+			this.livesLost[game] = livesLost;
+			this.steps[game] = steps;
+			this.scores[game] = score;
+		}
+
+		/**
+		 * Returns the share of games that cleared the level.
+		 *
+		 * @return Clear rate, 0 to 1.
+		 */
+		double getClearRate() {
+			int clears = 0;
+			for (boolean clear : this.cleared)
+				if (clear)
+					clears++;
+			return (double) clears / this.cleared.length;
+		}
+
+		/**
+		 * Summarizes the results: clear rate, average lives lost, and the
+		 * 10th, 50th and 90th percentiles of the time to clear and of the
+		 * score.
+		 *
+		 * @return One line summary.
+		 */
+		String summary() {
+			int clears = 0;
+			int timedOut = 0;
+			long livesLost = 0;
+			int[] clearSteps = new int[this.cleared.length];
+			for (int i = 0; i < this.cleared.length; i++) {
+				if (this.cleared[i])
+					clearSteps[clears++] = this.steps[i];
+				else if (this.steps[i] >= MAX_STEPS)
+					timedOut++;
+				livesLost += this.livesLost[i];
+			}
+			clearSteps = Arrays.copyOf(clearSteps, clears);
+			Arrays.sort(clearSteps);
+			int[] sortedScores = this.scores.clone();
+			Arrays.sort(sortedScores);
+
+			String time = clears == 0 ? "none" : String.format(Locale.ROOT,
+					"%.1f/%.1f/%.1f s", percentile(clearSteps, 10)
+							/ STEPS_PER_SECOND, percentile(clearSteps, 50)
+							/ STEPS_PER_SECOND, percentile(clearSteps, 90)
+							/ STEPS_PER_SECOND);
+			return String.format(Locale.ROOT, "clears %.1f%%, lives lost "
+					+ "%.2f, time to clear %s, score %d/%d/%d "
+					+ "(p10/p50/p90), %d timed out.", getClearRate() * 100,
+					(double) livesLost / this.cleared.length, time,
+					percentile(sortedScores, 10),
+					percentile(sortedScores, 50),
+					percentile(sortedScores, 90), timedOut);
+		}
+
+		/**
+		 * Returns a percentile of sorted values, the nearest rank.
+		 *
+		 * @param sorted
+		 *            Values in ascending order, at least one.
+		 * @param percent
+		 *            Percentile, 0 to 100.
+		 * @return Value at the percentile.
+		 */
+		private static int percentile(final int[] sorted, final int percent) {
+			int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+			return sorted[Math.max(0, rank - 1)];
+		}
+	}
+}
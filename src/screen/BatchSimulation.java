@@ -0,0 +1,268 @@
+package screen;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import engine.GameClock;
+import engine.GameRandom;
+import engine.GameSettings;
+
+/**
+ * Steps many independent simulations together, for training with batches
+ * of games. The simulations are split into one partition per worker of a
+ * fork/join pool, and every step plays one update of each, in parallel.
+ * The screens of all of them are written into one buffer, one grid after
+ * the other.
+ *
+ * Each simulation has its own clock, random source and game context, so
+ * the partitions share nothing while they run. A simulation whose level is
+ * over starts a new one on the next step, with a seed of its own random
+ * source: the same seed, settings and actions play the same whatever the
+ * number of workers.
+ *
+ * A batch is not thread safe, one thread at a time steps it.
+ *
+ */
+public final class BatchSimulation {
+
+	/** Simulations stepped. */
+	private final Simulation[] simulations;
+	/** Seeds of the levels of each simulation. */
+	private final GameRandom[] seeds;
+	/** Pool the partitions run in. */
+	private final ForkJoinPool pool;
+	/** Simulations of each worker, reused from step to step. */
+	private final Partition[] partitions;
+	/** Task forking the partitions, reused from step to step. */
+	private final RecursiveAction root;
+
+	/** Settings of the levels. */
+	private GameSettings settings;
+	/** If the running pass starts new levels instead of stepping. */
+	private boolean resetting;
+	/** Keys held in each simulation during the running pass. */
+	private int[] actions;
+	/** Rewards of the running pass, may be null. */
+	private int[] rewards;
+	/** Levels over after the running pass, may be null. */
+	private boolean[] dones;
+	/** Screens after the running pass, may be null. */
+	private byte[] observations;
+
+	/**
+	 * Constructor, the batch must be reset before stepping.
+	 *
+	 * @param size
+	 *            Number of simulations.
+	 * @param playerCode
+	 *            Number of players of every simulation, 1 or 2.
+	 * @param pool
+	 *            Pool to run the simulations in, one partition per worker.
+	 */
+	public BatchSimulation(final int size, final int playerCode,
+			final ForkJoinPool pool) {
+		if (size <= 0)
+			throw new IllegalArgumentException("size must be positive");
+		this.simulations = new Simulation[size];
+		this.seeds = new GameRandom[size];
+		for (int i = 0; i < size; i++)
+			this.simulations[i] = new Simulation(playerCode);
+		this.pool = pool;
+
+		int workers = Math.min(size, pool.getParallelism());
+		this.partitions = new Partition[workers];
+		for (int i = 0; i < workers; i++)
+			this.partitions[i] = new Partition(size * i / workers, size
+					* (i + 1) / workers);
+		this.root = new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				for (Partition partition : partitions)
+					partition.reinitialize();
+				invokeAll(partitions);
+			}
+		};
+	}
+
+	/**
+	 * Constructor, runs the simulations in the common pool.
+	 *
+	 * @param size
+	 *            Number of simulations.
+	 * @param playerCode
+	 *            Number of players of every simulation, 1 or 2.
+	 */
+	public BatchSimulation(final int size, final int playerCode) {
+		this(size, playerCode, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Starts a level in every simulation, each with a different seed.
+	 *
+	 * @param settings
+	 *            Settings of the levels, kept for the levels started later.
+	 * @param seed
+	 *            Seed of the batch, the same seed and steps play the same.
+	 * @param observations
+	 *            Buffer to write the screens to, GRID_SIZE cells per
+	 *            simulation. May be null.
+	 */
+	public void reset(final GameSettings settings, final long seed,
+			final byte[] observations) {
+		if (observations != null)
+			checkLength(observations.length,
+					size() * Simulation.GRID_SIZE);
+		GameRandom random = new GameRandom(seed);
+		for (int i = 0; i < this.seeds.length; i++)
+			this.seeds[i] = random.split();
+		this.settings = settings;
+		this.resetting = true;
+		this.observations = observations;
+		run();
+	}
+
+	/**
+	 * Plays one update of every simulation. Simulations whose level was
+	 * over after the last step start a new level first.
+	 *
+	 * @param actions
+	 *            Keys held in each simulation, as GameScreen input masks.
+	 * @param rewards
+	 *            Filled with the points scored in each simulation. May be
+	 *            null.
+	 * @param dones
+	 *            Filled with whether the level of each simulation is over.
+	 *            May be null.
+	 * @param observations
+	 *            Buffer to write the screens to, GRID_SIZE cells per
+	 *            simulation. May be null.
+	 */
+	public void step(final int[] actions, final int[] rewards,
+			final boolean[] dones, final byte[] observations) {
+		if (this.settings == null)
+			throw new IllegalStateException("batch must be reset first");
+		checkLength(actions.length, size());
+		if (rewards != null)
+			checkLength(rewards.length, size());
+		if (dones != null)
+			checkLength(dones.length, size());
+		if (observations != null)
+			checkLength(observations.length,
+					size() * Simulation.GRID_SIZE);
+		this.resetting = false;
+		this.actions = actions;
+		this.rewards = rewards;
+		this.dones = dones;
+		this.observations = observations;
+		run();
+	}
+
+	/**
+	 * Runs a pass over every partition and waits for them to finish. The
+	 * buffers of the pass aren't kept afterwards.
+	 */
+	private void run() {
+		this.root.reinitialize();
+		try {
+			this.pool.invoke(this.root);
+		} finally {
+			this.actions = null;
+			this.rewards = null;
+			this.dones = null;
+			this.observations = null;
+		}
+	}
+
+	/**
+	 * Checks that a buffer given to the batch fits it.
+	 *
+	 * @param length
+	 *            Length of the buffer.
+	 * @param expected
+	 *            Length the buffer must have.
+	 */
+	private static void checkLength(final int length, final int expected) {
+		if (length != expected)
+			throw new IllegalArgumentException("buffer length must be "
+					+ expected);
+	}
+
+	/**
+	 * Getter for the number of simulations.
+	 *
+	 * @return Simulations in the batch.
+	 */
+	public int size() {
+		return this.simulations.length;
+	}
+
+	/**
+	 * Getter for one of the simulations, to read its game state. It must
+	 * not be stepped on its own.
+	 *
+	 * @param index
+	 *            Index of the simulation.
+	 * @return Simulation.
+	 */
+	public Simulation getSimulation(final int index) {
+		return this.simulations[index];
+	}
+
+	/**
+	 * Simulations of one worker, a range of indexes.
+	 */
+	private final class Partition extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		/** First simulation of the partition. */
+		private final int from;
+		/** Simulation after the last one of the partition. */
+		private final int to;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param from
+		 *            First simulation of the partition.
+		 * @param to
+		 *            Simulation after the last one of the partition.
+		 */
+		Partition(final int from, final int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		/**
+		 * Resets or steps the simulations of the partition, then gives the
+		 * worker back the system clock.
+		 */
+		@Override
+		protected void compute() {
+			try {
+				for (int i = this.from; i < this.to; i++) {
+					Simulation simulation = simulations[i];
+					int offset = i * Simulation.GRID_SIZE;
+					if (resetting || simulation.isDone()) {
+						simulation.reset(settings, seeds[i].nextLong());
+						if (resetting) {
+							if (observations != null)
+								simulation.observe(observations, offset);
+							continue;
+						}
+					}
+					int reward = simulation.step(actions[i], observations,
+							offset);
+					if (rewards != null)
+						rewards[i] = reward;
+					if (dones != null)
+						dones[i] = simulation.isDone();
+				}
+			} finally {
+				GameClock.useSystemClock();
+			}
+		}
+	}
+}
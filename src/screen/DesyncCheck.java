@@ -0,0 +1,296 @@
+package screen;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import engine.GameClock;
+import engine.GameContext;
+import engine.GameState;
+import engine.ReplayRecorder;
+import engine.StateHash;
+import entity.EnemyShip;
+import entity.Entity;
+import entity.Pair;
+
+/**
+ * Checks that a level plays the same every time, by playing it again in
+ * step with the game. A shadow screen, brought to the state of the level
+ * when the check starts, gets the keys and the game time of each update
+ * after the level does, and the state hashes of both must stay equal. The
+ * first update where they differ is logged with the field, and the entity
+ * or player, that differs; the check stops there.
+ *
+ * The game checks its levels when the invaders.checkDesync system property
+ * is true. A check runs on the thread of the game.
+ *
+ */
+final class DesyncCheck {
+
+	/** Level checked. */
+	private final GameScreen gameScreen;
+	/** Clock of the level. */
+	private final GameClock clock;
+	/** Same level, played again. */
+	private final GameScreen shadow;
+	/** Clock of the shadow level. */
+	private final GameClock shadowClock;
+	/** Logger the desync is reported to. */
+	private final Logger logger;
+
+	/** Updates checked. */
+	private int ticks;
+	/** What differed at the first update that did, null if none has. */
+	private String desync;
+
+	/**
+	 * Constructor, creates the shadow level in the state of the level.
+	 *
+	 * @param gameScreen
+	 *            Level to check, initialized.
+	 * @param clock
+	 *            Clock of the level, in use.
+	 * @param logger
+	 *            Logger to report the desync to.
+	 */
+	DesyncCheck(final GameScreen gameScreen, final GameClock clock,
+			final Logger logger) {
+		this.gameScreen = gameScreen;
+		this.clock = clock;
+		this.logger = logger;
+
+		ByteBuffer state = ByteBuffer.allocate(ReplayRecorder.MAX_STATE_SIZE);
+		gameScreen.writeState(state);
+		state.flip();
+		this.shadowClock = GameClock.simulate(clock.getTime());
+		this.shadow = new GameScreen(gameScreen.copyGameState(),
+				gameScreen.getGameSettings(), gameScreen.hasBonusLife(),
+				gameScreen.getWidth(), gameScreen.getHeight(),
+				gameScreen.getFps(), GameContext.headless(null));
+		this.shadow.initialize();
+		this.shadow.isRunning = true;
+		this.shadow.readState(state);
+		clock.use();
+		compare();
+	}
+
+	/**
+	 * Plays the update the level has just played on the shadow level, and
+	 * compares them.
+	 *
+	 * @param input
+	 *            Input mask of the keys of the update.
+	 * @param time
+	 *            Game time of the update, in milliseconds.
+	 * @return False once they have differed.
+	 */
+	boolean check(final int input, final long time) {
+		if (this.desync != null)
+			return false;
+		this.shadowClock.use();
+		this.shadowClock.setTime(time);
+		this.shadow.tick(input);
+		this.clock.use();
+		this.ticks++;
+		return compare();
+	}
+
+	/**
+	 * Compares the hashes of both levels, and reports what differs if they
+	 * don't match.
+	 *
+	 * @return True if they match.
+	 */
+	private boolean compare() {
+		StateHash hash = this.gameScreen.getStateHash();
+		StateHash shadowHash = this.shadow.getStateHash();
+		if (hash.getValue() == shadowHash.getValue())
+			return true;
+		StateHash.Field field = hash.firstDifference(shadowHash);
+		this.desync = field + describe(field);
+		this.logger.warning("Desync at update " + this.ticks + ": "
+				+ this.desync + ".");
+		return false;
+	}
+
+	/**
+	 * Finds what a field differs in, walking both levels.
+	 *
+	 * @param field
+	 *            Field whose hashes differ.
+	 * @return Owner of the field and both values, empty if not found.
+	 */
+	private String describe(final StateHash.Field field) {
+		switch (field) {
+		case SCORE:
+		case LIVES:
+		case BULLETS_SHOT:
+		case SHIPS_DESTROYED:
+			return describe(getPair(this.gameScreen.getGameState(), field),
+					getPair(this.shadow.getGameState(), field));
+		default:
+			List<String> names = new ArrayList<String>();
+			List<String> shadowNames = new ArrayList<String>();
+			return describe(field, names, getEntities(this.gameScreen,
+					names), shadowNames, getEntities(this.shadow,
+					shadowNames));
+		}
+	}
+
+	/**
+	 * Finds which player a pair differs in.
+	 *
+	 * @param pair
+	 *            Pair of the level.
+	 * @param shadowPair
+	 *            Same pair of the shadow level.
+	 * @return Player and both values, empty if they are the same.
+	 */
+	private static String describe(final Pair pair, final Pair shadowPair) {
+		if (pair.getPlayer1Value() != shadowPair.getPlayer1Value())
+			return " of player 1 is " + pair.getPlayer1Value() + ", "
+					+ shadowPair.getPlayer1Value() + " played again";
+		if (pair.getPlayer2Value() != shadowPair.getPlayer2Value())
+			return " of player 2 is " + pair.getPlayer2Value() + ", "
+					+ shadowPair.getPlayer2Value() + " played again";
+		return "";
+	}
+
+	/**
+	 * Finds the first entity a field differs in.
+	 *
+	 * @param field
+	 *            Field of the entities.
+	 * @param names
+	 *            Names of the entities of the level.
+	 * @param entities
+	 *            Entities of the level.
+	 * @param shadowNames
+	 *            Names of the entities of the shadow level.
+	 * @param shadowEntities
+	 *            Entities of the shadow level, in the same order.
+	 * @return Entity and both values, or both entity counts.
+	 */
+	private static String describe(final StateHash.Field field,
+			final List<String> names, final List<Entity> entities,
+			final List<String> shadowNames,
+			final List<Entity> shadowEntities) {
+		int count = Math.min(entities.size(), shadowEntities.size());
+		for (int i = 0; i < count; i++) {
+			if (!names.get(i).equals(shadowNames.get(i)))
+				return " of " + names.get(i) + ", " + shadowNames.get(i)
+						+ " played again";
+			int value = getValue(entities.get(i), field);
+			int shadowValue = getValue(shadowEntities.get(i), field);
+			if (value != shadowValue)
+				return " of " + names.get(i) + " is " + value + ", "
+						+ shadowValue + " played again";
+		}
+		if (entities.size() != shadowEntities.size())
+			return " with " + entities.size() + " entities, "
+					+ shadowEntities.size() + " played again";
+		return "";
+	}
+
+	/**
+	 * Lists the hashed entities of a level.
+	 *
+	 * @param gameScreen
+	 *            Level to list.
+	 * @param names
+	 *            List the names of the entities are added to.
+	 * @return Entities, in the order of their names.
+	 */
+	private static List<Entity> getEntities(final GameScreen gameScreen,
+			final List<String> names) {
+		List<Entity> entities = new ArrayList<Entity>();
+		names.add("ship 1");
+		entities.add(gameScreen.getShip1());
+		if (gameScreen.getShip2() != null) {
+			names.add("ship 2");
+			entities.add(gameScreen.getShip2());
+		}
+		if (gameScreen.getEnemyShipSpecial() != null) {
+			names.add("bonus ship");
+			entities.add(gameScreen.getEnemyShipSpecial());
+		}
+		int enemyShips = 0;
+		for (EnemyShip enemyShip : gameScreen.getEnemyShipFormation()) {
+			names.add("enemy ship " + enemyShips++);
+			entities.add(enemyShip);
+		}
+		int bullets = 0;
+		for (Entity bullet : gameScreen.getBullets()) {
+			names.add("bullet " + bullets++);
+			entities.add(bullet);
+		}
+		return entities;
+	}
+
+	/**
+	 * Reads a hashed field of an entity.
+	 *
+	 * @param entity
+	 *            Entity to read.
+	 * @param field
+	 *            Field read.
+	 * @return Value hashed, 0 if the entity doesn't have the field.
+	 */
+	private static int getValue(final Entity entity,
+			final StateHash.Field field) {
+		switch (field) {
+		case POSITION_X:
+			return entity.getPositionX();
+		case POSITION_Y:
+			return entity.getPositionY();
+		case DESTROYED:
+			return entity instanceof EnemyShip
+					&& ((EnemyShip) entity).isDestroyed() ? 1 : 0;
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * Reads the pair of a field.
+	 *
+	 * @param gameState
+	 *            State to read.
+	 * @param field
+	 *            Field of a pair.
+	 * @return Pair of the field.
+	 */
+	private static Pair getPair(final GameState gameState,
+			final StateHash.Field field) {
+		switch (field) {
+		case SCORE:
+			return gameState.getScore();
+		case LIVES:
+			return gameState.getLivesRemaining();
+		case BULLETS_SHOT:
+			return gameState.getBulletsShot();
+		default:
+			return gameState.getShipsDestroyed();
+		}
+	}
+
+	/**
+	 * Getter for the number of updates checked.
+	 *
+	 * @return Updates checked, the one that differed included.
+	 */
+	int getTicks() {
+		return this.ticks;
+	}
+
+	/**
+	 * Getter for what differed.
+	 *
+	 * @return Field, owner and values of the first difference, null if
+	 *         none was found.
+	 */
+	String getDesync() {
+		return this.desync;
+	}
+}
@@ -105,4 +105,14 @@ public class DifficultySelectScreen extends Screen {
 
 		drawManager.completeDrawing(this);
 	}
+
+	/**
+	 * Returns the code of the screen in event recordings.
+	 * 
+	 * @return Code of the difficulty select screen.
+	 */
+	@Override
+	public int getCode() {
+		return CODE_DIFFICULTY_SELECT;
+	}
 }
@@ -2,15 +2,27 @@ package screen;
 
 import java.awt.*;
 import java.awt.event.KeyEvent;
+import java.nio.ByteBuffer;
 import java.util.HashSet;
 import java.util.Set;
 
+import engine.CollisionEvent;
 import engine.Cooldown;
 import engine.Core;
+import engine.EventRecorder;
+import engine.FrameTimeStats;
+import engine.GameClock;
+import engine.GameContext;
+import engine.GameRandom;
 import engine.GameSettings;
 import engine.GameState;
+import engine.InputManager;
+import engine.Metrics;
+import engine.ReplayRecorder;
+import engine.StateHash;
 import entity.Bullet;
 import entity.BulletPool;
+import entity.BulletSet;
 import entity.EnemyShip;
 import entity.EnemyShipFormation;
 import entity.Entity;
@@ -25,8 +37,25 @@ import entity.Pair;
  */
 public class GameScreen extends Screen {
 
+	/** Input mask bit of the left arrow key. */
+	public static final int INPUT_LEFT = 1;
+	/** Input mask bit of the right arrow key. */
+	public static final int INPUT_RIGHT = 1 << 1;
+	/** Input mask bit of the A key. */
+	public static final int INPUT_A = 1 << 2;
+	/** Input mask bit of the D key. */
+	public static final int INPUT_D = 1 << 3;
+	/** Input mask bit of the space key. */
+	public static final int INPUT_SPACE = 1 << 4;
+	/** Input mask bit of the enter key. */
+	public static final int INPUT_ENTER = 1 << 5;
+	/** Keys read by the game, by their input mask bit. */
+	private static final int[] INPUT_KEYS = { KeyEvent.VK_LEFT,
+			KeyEvent.VK_RIGHT, KeyEvent.VK_A, KeyEvent.VK_D,
+			KeyEvent.VK_SPACE, KeyEvent.VK_ENTER };
+
 	/** Milliseconds until the screen accepts user input. */
-	private static final int INPUT_DELAY = 6000;
+	static final int INPUT_DELAY = 6000;
 	/** Bonus score for each life remaining at the end of the level. */
 	private static final int LIFE_SCORE = 100;
 	/** Minimum time between bonus ship's appearances. */
@@ -39,6 +68,16 @@ public class GameScreen extends Screen {
 	private static final int SCREEN_CHANGE_INTERVAL = 1500;
 	/** Height of the interface separation line. */
 	private static final int SEPARATION_LINE_HEIGHT = 40;
+	/** Key of player 1's ship in the state hash. */
+	private static final int SHIP1_HASH_KEY = 1;
+	/** Key of player 2's ship in the state hash. */
+	private static final int SHIP2_HASH_KEY = 2;
+	/** Key of the bonus ship in the state hash. */
+	private static final int SPECIAL_HASH_KEY = 3;
+	/** Key of every bullet in the state hash. */
+	private static final int BULLET_HASH_KEY = 4;
+	/** Key of the first ship of the formation in the state hash. */
+	private static final int FORMATION_HASH_KEY = 16;
 
 	/** Current game difficulty settings. */
 	private GameSettings gameSettings;
@@ -52,24 +91,40 @@ public class GameScreen extends Screen {
 	private Ship ship2;
 	/** Bonus enemy ship that appears sometimes. */
 	private EnemyShip enemyShipSpecial;
+	/** Bonus ship let go by a restored state, reused by the next one. */
+	private EnemyShip enemyShipSpecialSpare;
 	/** Minimum time between bonus ship appearances. */
 	private Cooldown enemyShipSpecialCooldown;
+	/** Varies the time between bonus ship appearances. */
+	private GameRandom enemyShipSpecialRandom;
 	/** Time until bonus ship explosion disappears. */
 	private Cooldown enemyShipSpecialExplosionCooldown;
 	/** Time from finishing the level to screen change. */
 	private Cooldown screenFinishedCooldown;
 	/** Set of all bullets fired by on screen ships. */
-	private Set<Bullet> bullets;
+	private BulletSet bullets;
+	/** Reuses the bullets of the session. */
+	private final BulletPool bulletPool;
+	/** Bullets to remove after an update pass, reused between updates. */
+	private Set<Bullet> recyclable;
+	/** Collision checks since the last collision pass was counted. */
+	private int collisionsTested;
 	/** Current score. */
 	private Pair score;
 	/** Player lives left. */
 	private Pair lives;
+	/** Player lives at the start of the level, before the bonus life. */
+	private Pair startLives;
 	/** Total bullets shot by the player. */
 	private Pair bulletsShot;
 	/** Total ships destroyed by the player. */
 	private Pair shipsDestroyed;
 	/** Current Players' numbers.*/
 	private int playerCode;
+	/** Current difficulty code. */
+	private int difficultyCode;
+	/** Seed of the random source of the game. */
+	private long seed;
 	/** Moment the game starts. */
 	private long gameStartTime;
 	/** Checks if the level is finished. */
@@ -79,6 +134,15 @@ public class GameScreen extends Screen {
 
 	private boolean isPaused;
 
+	/** Hash of the state of the level, kept up to date as it changes. */
+	private final StateHash stateHash;
+	/** Re-simulates the level to check it, null if it isn't checked. */
+	private DesyncCheck desyncCheck;
+	/** Records the level for replays, null if it isn't recorded. */
+	private final ReplayRecorder replayRecorder;
+	/** Clock of the game thread while the level runs in the window. */
+	private GameClock liveClock;
+
 	/** Default color for player1's ship.*/
 	private Color SHIP1_COLOR = Color.GREEN;
 	/** Default color for player2's ship.*/
@@ -104,21 +168,57 @@ public class GameScreen extends Screen {
 	public GameScreen(final GameState gameState,
 					  final GameSettings gameSettings, final boolean bonusLife,
 					  final int width, final int height, final int fps) {
-		super(width, height, fps);
+		this(gameState, gameSettings, bonusLife, width, height, fps,
+				Core.getGameContext());
+	}
+
+	/**
+	 * Constructor, establishes the properties of a screen that doesn't use
+	 * the application managers.
+	 *
+	 * @param gameState
+	 *            Current game state.
+	 * @param gameSettings
+	 *            Current game settings.
+	 * @param bonusLife
+	 *            Checks if a bonus life is awarded this level.
+	 * @param width
+	 *            Screen width.
+	 * @param height
+	 *            Screen height.
+	 * @param fps
+	 *            Frames per second, frame rate at which the game is run.
+	 * @param context
+	 *            Managers of the game session the screen belongs to.
+	 */
+	public GameScreen(final GameState gameState,
+					  final GameSettings gameSettings, final boolean bonusLife,
+					  final int width, final int height, final int fps,
+					  final GameContext context) {
+		super(width, height, fps, context);
 
 		this.gameSettings = gameSettings;
 		this.bonusLife = bonusLife;
 		this.playerCode = gameState.getPlayerCode();
+		this.difficultyCode = gameState.getDifficultyCode();
+		this.seed = gameState.getSeed();
 		this.level = gameState.getLevel();
 		this.score = gameState.getScore();
 		this.lives = gameState.getLivesRemaining();
+		this.startLives = new Pair(this.lives.getPlayer1Value(),
+				this.lives.getPlayer2Value());
 		if (this.bonusLife) {
 			if(this.lives.getPlayer1Value() > 0) this.lives.addPlayer1Value(1);
 			if(this.playerCode == 2 && this.lives.getPlayer2Value() > 0) this.lives.addPlayer2Value(1);
 		}
 		this.bulletsShot = gameState.getBulletsShot();
 		this.shipsDestroyed = gameState.getShipsDestroyed();
-
+		// The first level is the one most exposed to a cold JIT.
+		if (this.level == 1)
+			this.frameTimes = new FrameTimeStats();
+		this.replayRecorder = context.getReplayRecorder();
+		this.bulletPool = context.getBulletPool();
+		this.stateHash = new StateHash();
 	}
 
 	/**
@@ -127,8 +227,19 @@ public class GameScreen extends Screen {
 	public final void initialize() {
 		super.initialize();
 
-		enemyShipFormation = new EnemyShipFormation(this.gameSettings);
+		// Each level has its own random source, split off the game's, and
+		// gives a split of it to each subsystem.
+		GameRandom gameRandom = new GameRandom(this.seed);
+		GameRandom random = gameRandom.split();
+		for (int i = 1; i < this.level; i++)
+			random = gameRandom.split();
+
+		enemyShipFormation = new EnemyShipFormation(this.gameSettings,
+				random, this.drawManager, this.logger);
 		enemyShipFormation.attach(this);
+		this.eventRecorder.record(EventRecorder.SPAWN,
+				EventRecorder.FORMATION,
+				this.enemyShipFormation.getShipCount(), 0);
 		if(this.playerCode == 1) //player1
 			this.ship1 = new Ship(this.width / 2, this.height - 30, SHIP1_COLOR);
 		else{ //player2
@@ -137,18 +248,44 @@ public class GameScreen extends Screen {
 		}
 
 		// Appears each 10-30 seconds.
+		this.enemyShipSpecialRandom = random.split();
 		this.enemyShipSpecialCooldown = Core.getVariableCooldown(
-				BONUS_SHIP_INTERVAL, BONUS_SHIP_VARIANCE);
+				BONUS_SHIP_INTERVAL, BONUS_SHIP_VARIANCE,
+				this.enemyShipSpecialRandom);
 		this.enemyShipSpecialCooldown.reset();
 		this.enemyShipSpecialExplosionCooldown = Core
 				.getCooldown(BONUS_SHIP_EXPLOSION);
 		this.screenFinishedCooldown = Core.getCooldown(SCREEN_CHANGE_INTERVAL);
-		this.bullets = new HashSet<Bullet>();
+		// Bullets are checked in the order they were fired, as in replays.
+		this.bullets = new BulletSet();
+		this.recyclable = new HashSet<Bullet>();
+
+		// Everything hashed changes the hash itself from now on.
+		this.ship1.setStateHash(this.stateHash, SHIP1_HASH_KEY);
+		if (this.ship2 != null)
+			this.ship2.setStateHash(this.stateHash, SHIP2_HASH_KEY);
+		this.enemyShipFormation.setStateHash(this.stateHash,
+				FORMATION_HASH_KEY);
+		this.bulletPool.setStateHash(this.stateHash, BULLET_HASH_KEY);
+		this.score.setStateHash(this.stateHash, StateHash.Field.SCORE);
+		this.lives.setStateHash(this.stateHash, StateHash.Field.LIVES);
+		this.bulletsShot.setStateHash(this.stateHash,
+				StateHash.Field.BULLETS_SHOT);
+		this.shipsDestroyed.setStateHash(this.stateHash,
+				StateHash.Field.SHIPS_DESTROYED);
 
 		// Special input delay / countdown.
-		this.gameStartTime = System.currentTimeMillis();
+		this.gameStartTime = GameClock.currentTimeMillis();
 		this.inputDelay = Core.getCooldown(INPUT_DELAY);
 		this.inputDelay.reset();
+
+		if (this.replayRecorder != null)
+			this.replayRecorder.startLevel(new GameState(this.level,
+					this.score, this.startLives, this.bulletsShot,
+					this.shipsDestroyed, this.playerCode,
+					this.difficultyCode, this.seed), this.gameSettings,
+					this.bonusLife,
+					this.gameStartTime);
 	}
 
 	/**
@@ -157,9 +294,42 @@ public class GameScreen extends Screen {
 	 * @return Next screen code.
 	 */
 	public final int run() {
-		super.run();
+		// Time only moves between updates, so that every check in an update
+		// sees the same time, as when the level is replayed.
+		this.liveClock = GameClock.simulate();
+		if (Boolean.getBoolean("invaders.checkDesync"))
+			this.desyncCheck = new DesyncCheck(this, this.liveClock,
+					this.logger);
+		try {
+			super.run();
+		} finally {
+			GameClock.useSystemClock();
+			this.liveClock = null;
+		}
+		if (this.desyncCheck != null) {
+			if (this.desyncCheck.getDesync() == null)
+				this.logger.info("No desync in " + this.desyncCheck.getTicks()
+						+ " updates.");
+			this.desyncCheck = null;
+		}
 		isPaused = false;
+		this.metrics.counter(Metrics.LEVELS_PLAYED).increment();
+		if (this.frameTimes != null)
+			this.logger.info("Level " + this.level + " frame times: "
+					+ this.frameTimes.summary());
+
+		addEndOfLevelScore();
+		if (this.replayRecorder != null)
+			this.replayRecorder.endLevel(getGameState());
 
+		return this.returnCode;
+	}
+
+	/**
+	 * Adds the bonus for the lives left to the score, or takes the game over
+	 * penalty.
+	 */
+	final void addEndOfLevelScore() {
 		if (this.playerCode == 1) { // In player 1 mode, score changes per lives after each stage
 			if (lives.getPlayer1Value() > 0) {//when you're alive
 				this.score.addPlayer1Value(LIFE_SCORE * (this.lives.getPlayer1Value() - 1));
@@ -188,8 +358,6 @@ public class GameScreen extends Screen {
 
 
 		}
-
-		return this.returnCode;
 	}
 
 	/**
@@ -212,13 +380,56 @@ public class GameScreen extends Screen {
 					Thread.currentThread().interrupt();
 				}
 			}
+		}
+
+		if (this.liveClock != null)
+			this.liveClock.advanceTo(System.currentTimeMillis());
+		// Keys are read once, they may change while the update runs.
+		int input = readInput(this.inputManager);
+		if (this.replayRecorder != null) {
+			if (this.replayRecorder.isKeyframeDue()) {
+				writeState(this.replayRecorder.getStateBuffer());
+				this.replayRecorder.recordKeyframe();
+			}
+			this.replayRecorder.recordTick(input,
+					GameClock.currentTimeMillis());
+		}
+
+		tick(input);
+		if (this.desyncCheck != null)
+			this.desyncCheck.check(input, GameClock.currentTimeMillis());
+		draw();
+	}
+
+	/**
+	 * Reads the keys the game uses.
+	 *
+	 * @param inputManager
+	 *            Input manager to read the keys from.
+	 * @return Input mask of the keys held.
+	 */
+	static int readInput(final InputManager inputManager) {
+		int input = 0;
+		for (int i = 0; i < INPUT_KEYS.length; i++)
+			if (inputManager.isKeyDown(INPUT_KEYS[i]))
+				input |= 1 << i;
+		return input;
+	}
 
+	/**
+	 * Advances the game one update, without drawing it.
+	 *
+	 * @param input
+	 *            Input mask of the keys held.
+	 */
+	final void tick(final int input) {
+		int bulletsBefore = this.bullets.size();
+
+		if (this.inputDelay.checkFinished() && !this.levelFinished) {
 			if(playerCode == 1){ //When you are playing one player mode.
 				if (!this.ship1.isDestroyed()) {
-					boolean moveRight = inputManager.isKeyDown(KeyEvent.VK_RIGHT)
-							|| inputManager.isKeyDown(KeyEvent.VK_D);
-					boolean moveLeft = inputManager.isKeyDown(KeyEvent.VK_LEFT)
-							|| inputManager.isKeyDown(KeyEvent.VK_A);
+					boolean moveRight = (input & (INPUT_RIGHT | INPUT_D)) != 0;
+					boolean moveLeft = (input & (INPUT_LEFT | INPUT_A)) != 0;
 
 					boolean isRightBorder = this.ship1.getPositionX()
 							+ this.ship1.getWidth() + this.ship1.getSpeed() > this.width - 1;
@@ -231,14 +442,15 @@ public class GameScreen extends Screen {
 					if (moveLeft && !isLeftBorder) {
 						this.ship1.moveLeft();
 					}
-					if (inputManager.isKeyDown(KeyEvent.VK_SPACE))
-						if (this.ship1.shoot(this.bullets, "ship1"))
+					if ((input & INPUT_SPACE) != 0)
+						if (this.ship1.shoot(this.bullets, "ship1",
+								this.bulletPool))
 							this.bulletsShot.addPlayer1Value(1);
 				}
 			} else if(playerCode == 2){ //When you are playing two players mode.
 				if (!this.ship1.isDestroyed()) { //player1 status
-					boolean moveRight = inputManager.isKeyDown(KeyEvent.VK_D);
-					boolean moveLeft = inputManager.isKeyDown(KeyEvent.VK_A);
+					boolean moveRight = (input & INPUT_D) != 0;
+					boolean moveLeft = (input & INPUT_A) != 0;
 
 					boolean isRightBorder = this.ship1.getPositionX()
 							+ this.ship1.getWidth() + this.ship1.getSpeed() > this.width - 1;
@@ -251,14 +463,15 @@ public class GameScreen extends Screen {
 					if (moveLeft && !isLeftBorder) {
 						this.ship1.moveLeft();
 					}
-					if (inputManager.isKeyDown(KeyEvent.VK_SPACE))
-						if (this.ship1.shoot(this.bullets, "ship1"))
+					if ((input & INPUT_SPACE) != 0)
+						if (this.ship1.shoot(this.bullets, "ship1",
+								this.bulletPool))
 							this.bulletsShot.addPlayer1Value(1);
 				}
 
 				if (!this.ship2.isDestroyed()){ //player2 status
-					boolean moveRight = inputManager.isKeyDown(KeyEvent.VK_RIGHT);
-					boolean moveLeft = inputManager.isKeyDown(KeyEvent.VK_LEFT);
+					boolean moveRight = (input & INPUT_RIGHT) != 0;
+					boolean moveLeft = (input & INPUT_LEFT) != 0;
 
 					boolean isRightBorder = this.ship2.getPositionX()
 							+ this.ship2.getWidth() + this.ship2.getSpeed() > this.width - 1;
@@ -271,8 +484,9 @@ public class GameScreen extends Screen {
 					if (moveLeft && !isLeftBorder) {
 						this.ship2.moveLeft();
 					}
-					if (inputManager.isKeyDown(KeyEvent.VK_ENTER))
-						if (this.ship2.shoot(this.bullets, "ship2"))
+					if ((input & INPUT_ENTER) != 0)
+						if (this.ship2.shoot(this.bullets, "ship2",
+								this.bulletPool))
 							this.bulletsShot.addPlayer2Value(1);
 				}
 			}
@@ -281,18 +495,22 @@ public class GameScreen extends Screen {
 				if (!this.enemyShipSpecial.isDestroyed())
 					this.enemyShipSpecial.move(2, 0);
 				else if (this.enemyShipSpecialExplosionCooldown.checkFinished())
-					this.enemyShipSpecial = null;
+					setEnemyShipSpecial(null);
 
 			}
 			if (this.enemyShipSpecial == null
 					&& this.enemyShipSpecialCooldown.checkFinished()) {
-				this.enemyShipSpecial = new EnemyShip();
+				setEnemyShipSpecial(new EnemyShip());
 				this.enemyShipSpecialCooldown.reset();
+				this.eventRecorder.record(EventRecorder.SPAWN,
+						EventRecorder.SPECIAL,
+						this.enemyShipSpecial.getPositionX(),
+						this.enemyShipSpecial.getPositionY());
 				this.logger.info("A special ship appears");
 			}
 			if (this.enemyShipSpecial != null
 					&& this.enemyShipSpecial.getPositionX() > this.width) {
-				this.enemyShipSpecial = null;
+				setEnemyShipSpecial(null);
 				this.logger.info("The special ship has escaped");
 			}
 
@@ -300,12 +518,18 @@ public class GameScreen extends Screen {
 			this.ship1.update(lives.getPlayer1Value());//player1 update
 			if(playerCode == 2) this.ship2.update(lives.getPlayer2Value());//player2 update
 			this.enemyShipFormation.update();
-			this.enemyShipFormation.shoot(this.bullets);
+			this.enemyShipFormation.shoot(this.bullets, this.bulletPool);
+		}
+
+		int bulletsFired = this.bullets.size() - bulletsBefore;
+		if (bulletsFired > 0) {
+			this.metrics.counter(Metrics.BULLETS_FIRED).add(bulletsFired);
+			this.eventRecorder.record(EventRecorder.SPAWN,
+					EventRecorder.BULLETS, bulletsFired, 0);
 		}
 
 		manageCollisions();
 		cleanBullets();
-		draw();
 
 		switch(playerCode){
 			case 1 : //one-player mode check
@@ -335,7 +559,7 @@ public class GameScreen extends Screen {
 	/**
 	 * Draws the elements associated with the screen.
 	 */
-	private void draw() {
+	final void draw() {
 		drawManager.initDrawing(this);
 
 		drawManager.drawEntity(this.ship1, this.ship1.getPositionX(),
@@ -367,7 +591,7 @@ public class GameScreen extends Screen {
 		// Countdown to game start.
 		if (!this.inputDelay.checkFinished()) {
 			int countdown = (int) ((INPUT_DELAY
-					- (System.currentTimeMillis()
+					- (GameClock.currentTimeMillis()
 					- this.gameStartTime)) / 1000);
 			drawManager.drawCountDown(this, this.level, countdown,
 					this.bonusLife);
@@ -397,24 +621,34 @@ public class GameScreen extends Screen {
 	/**
 	 * Cleans bullets that go off screen.
 	 */
-	private void cleanBullets() {
-		Set<Bullet> recyclable = new HashSet<Bullet>();
+	final void cleanBullets() {
+		Set<Bullet> recyclable = this.recyclable;
 		for (Bullet bullet : this.bullets) {
 			bullet.update();
 			if (bullet.getPositionY() < SEPARATION_LINE_HEIGHT
 					|| bullet.getPositionY() > this.height)
 				recyclable.add(bullet);
 		}
-		this.bullets.removeAll(recyclable);
-		BulletPool.recycle(recyclable);
+		if (!recyclable.isEmpty()) {
+			this.bullets.removeAll(recyclable);
+			this.bulletPool.recycle(recyclable);
+			recyclable.clear();
+		}
 	}
 
 	/**
 	 * Manages collisions between bullets and ships.
 	 */
 
-	private void manageCollisions() {
-		Set<Bullet> recyclable = new HashSet<Bullet>();
+	final void manageCollisions() {
+		CollisionEvent collisionEvent = CollisionEvent.isEnabled()
+				? new CollisionEvent() : null;
+		if (collisionEvent != null)
+			collisionEvent.begin();
+		int bulletCount = this.bullets.size();
+		int enemyCount = this.enemyShipFormation.getShipCount();
+
+		Set<Bullet> recyclable = this.recyclable;
 		for (Bullet bullet : this.bullets) {
 //			this.logger.info("bullet name : " + bullet.getName());
 			if (bullet.getSpeed() > 0) {
@@ -422,6 +656,10 @@ public class GameScreen extends Screen {
 					recyclable.add(bullet);
 					if (!this.ship1.isDestroyed()) {
 						this.ship1.destroy();
+						this.eventRecorder.record(EventRecorder.HIT,
+								EventRecorder.PLAYER1,
+								this.ship1.getPositionX(),
+								this.ship1.getPositionY());
 						this.lives.addPlayer1Value(-1);
 						this.logger.info("Hit on player ship, " + this.lives.getPlayer1Value()
 								+ " lives remaining.");
@@ -432,6 +670,10 @@ public class GameScreen extends Screen {
 					recyclable.add(bullet);
 					if (!this.ship2.isDestroyed()) {
 						this.ship2.destroy();
+						this.eventRecorder.record(EventRecorder.HIT,
+								EventRecorder.PLAYER2,
+								this.ship2.getPositionX(),
+								this.ship2.getPositionY());
 						this.lives.addPlayer2Value(-1);
 						this.logger.info("Hit on player ship, " + this.lives.getPlayer2Value()
 								+ " lives remaining.");
@@ -462,6 +704,10 @@ public class GameScreen extends Screen {
 							}
 						}
 						this.enemyShipFormation.destroy(enemyShip);
+						this.eventRecorder.record(EventRecorder.HIT,
+								EventRecorder.ENEMY,
+								enemyShip.getPositionX(),
+								enemyShip.getPositionY());
 						recyclable.add(bullet);
 					}
 				if (this.enemyShipSpecial != null
@@ -478,13 +724,32 @@ public class GameScreen extends Screen {
 						this.logger.info("Player 2 get " + this.enemyShipSpecial.getPointValue() + "points.");
 					}
 					this.enemyShipSpecial.destroy();
+					this.eventRecorder.record(EventRecorder.HIT,
+							EventRecorder.SPECIAL,
+							this.enemyShipSpecial.getPositionX(),
+							this.enemyShipSpecial.getPositionY());
 					this.enemyShipSpecialExplosionCooldown.reset();
 					recyclable.add(bullet);
 				}
 			}
 		}
-		this.bullets.removeAll(recyclable);
-		BulletPool.recycle(recyclable);
+		int hits = recyclable.size();
+		if (hits > 0) {
+			this.bullets.removeAll(recyclable);
+			this.bulletPool.recycle(recyclable);
+			recyclable.clear();
+		}
+
+		this.metrics.counter(Metrics.COLLISIONS_TESTED).add(
+				this.collisionsTested);
+		this.collisionsTested = 0;
+
+		if (collisionEvent != null && collisionEvent.shouldCommit()) {
+			collisionEvent.setBullets(bulletCount);
+			collisionEvent.setEnemies(enemyCount);
+			collisionEvent.setHits(hits);
+			collisionEvent.commit();
+		}
 	}
 
 	/**
@@ -497,6 +762,7 @@ public class GameScreen extends Screen {
 	 * @return Result of the collision test.
 	 */
 	private boolean checkCollision(final Entity a, final Entity b) {
+		this.collisionsTested++;
 		// Calculate center point of the entities in both axis.
 		int centerAX = a.getPositionX() + a.getWidth() / 2;
 		int centerAY = a.getPositionY() + a.getHeight() / 2;
@@ -512,6 +778,124 @@ public class GameScreen extends Screen {
 		return distanceX < maxDistanceX && distanceY < maxDistanceY;
 	}
 
+	/**
+	 * Writes the state of the level: ships, formation, bullets, cooldowns and
+	 * the players' counts. A screen created with the same game state and
+	 * settings, and initialized, can be brought to it with readState.
+	 *
+	 * @param buffer
+	 *            Buffer to write to, at least ReplayRecorder.MAX_STATE_SIZE
+	 *            bytes long.
+	 */
+	public final void writeState(final ByteBuffer buffer) {
+		writePair(buffer, this.score);
+		writePair(buffer, this.lives);
+		writePair(buffer, this.bulletsShot);
+		writePair(buffer, this.shipsDestroyed);
+		buffer.put((byte) (this.levelFinished ? 1 : 0));
+		this.inputDelay.writeState(buffer);
+		this.enemyShipSpecialCooldown.writeState(buffer);
+		this.enemyShipSpecialRandom.writeState(buffer);
+		this.enemyShipSpecialExplosionCooldown.writeState(buffer);
+		this.screenFinishedCooldown.writeState(buffer);
+
+		this.ship1.writeState(buffer);
+		if (this.playerCode == 2)
+			this.ship2.writeState(buffer);
+		buffer.put((byte) (this.enemyShipSpecial == null ? 0 : 1));
+		if (this.enemyShipSpecial != null)
+			this.enemyShipSpecial.writeState(buffer);
+		this.enemyShipFormation.writeState(buffer);
+
+		buffer.putInt(this.bullets.size());
+		for (int i = 0; i < this.bullets.size(); i++)
+			this.bullets.get(i).writeState(buffer);
+	}
+
+	/**
+	 * Restores the state written by writeState.
+	 *
+	 * @param buffer
+	 *            Buffer to read from.
+	 */
+	public final void readState(final ByteBuffer buffer) {
+		readPair(buffer, this.score);
+		readPair(buffer, this.lives);
+		readPair(buffer, this.bulletsShot);
+		readPair(buffer, this.shipsDestroyed);
+		this.levelFinished = buffer.get() == 1;
+		this.inputDelay.readState(buffer);
+		this.enemyShipSpecialCooldown.readState(buffer);
+		this.enemyShipSpecialRandom.readState(buffer);
+		this.enemyShipSpecialExplosionCooldown.readState(buffer);
+		this.screenFinishedCooldown.readState(buffer);
+
+		this.ship1.readState(buffer);
+		if (this.playerCode == 2)
+			this.ship2.readState(buffer);
+		if (buffer.get() == 1) {
+			if (this.enemyShipSpecial == null)
+				setEnemyShipSpecial(this.enemyShipSpecialSpare != null
+						? this.enemyShipSpecialSpare : new EnemyShip());
+			this.enemyShipSpecialSpare = null;
+			this.enemyShipSpecial.readState(buffer);
+		} else if (this.enemyShipSpecial != null) {
+			this.enemyShipSpecialSpare = this.enemyShipSpecial;
+			setEnemyShipSpecial(null);
+		}
+		this.enemyShipFormation.readState(buffer);
+
+		for (int i = 0; i < this.bullets.size(); i++)
+			this.bulletPool.recycle(this.bullets.get(i));
+		this.bullets.clear();
+		int bulletCount = buffer.getInt();
+		for (int i = 0; i < bulletCount; i++) {
+			Bullet bullet = this.bulletPool.getBullet(0, 0, 0, null);
+			bullet.readState(buffer);
+			this.bullets.add(bullet);
+		}
+	}
+
+	/**
+	 * Replaces the bonus ship, moving the hash from one to the other.
+	 *
+	 * @param enemyShipSpecial
+	 *            New bonus ship, null if none is on screen.
+	 */
+	private void setEnemyShipSpecial(final EnemyShip enemyShipSpecial) {
+		if (this.enemyShipSpecial != null)
+			this.enemyShipSpecial.setStateHash(null, 0);
+		this.enemyShipSpecial = enemyShipSpecial;
+		if (enemyShipSpecial != null)
+			enemyShipSpecial.setStateHash(this.stateHash, SPECIAL_HASH_KEY);
+	}
+
+	/**
+	 * Writes the values of a pair.
+	 *
+	 * @param buffer
+	 *            Buffer to write to.
+	 * @param pair
+	 *            Pair to write.
+	 */
+	private static void writePair(final ByteBuffer buffer, final Pair pair) {
+		buffer.putInt(pair.getPlayer1Value());
+		buffer.putInt(pair.getPlayer2Value());
+	}
+
+	/**
+	 * Reads the values of a pair.
+	 *
+	 * @param buffer
+	 *            Buffer to read from.
+	 * @param pair
+	 *            Pair to set.
+	 */
+	private static void readPair(final ByteBuffer buffer, final Pair pair) {
+		pair.setPlayer1Value(buffer.getInt());
+		pair.setPlayer2Value(buffer.getInt());
+	}
+
 	/**
 	 * Returns a GameState object representing the status of the game.
 	 *
@@ -519,6 +903,173 @@ public class GameScreen extends Screen {
 	 */
 	public final GameState getGameState() {
 		return new GameState(this.level, this.score, this.lives,
-				this.bulletsShot, this.shipsDestroyed, this.playerCode);
+				this.bulletsShot, this.shipsDestroyed, this.playerCode,
+				this.difficultyCode, this.seed);
+	}
+
+	/**
+	 * Getter for the hash of the state of the level, up to date after every
+	 * update. Two screens of the same level in the same state have the same
+	 * hash.
+	 *
+	 * @return State hash of the level.
+	 */
+	public final StateHash getStateHash() {
+		return this.stateHash;
+	}
+
+	/**
+	 * Copies the game state, for another screen of the level to be created
+	 * with: the pairs are new, and the lives those before the bonus life.
+	 *
+	 * @return New game state.
+	 */
+	final GameState copyGameState() {
+		return new GameState(this.level, new Pair(
+				this.score.getPlayer1Value(), this.score.getPlayer2Value()),
+				new Pair(this.startLives.getPlayer1Value(),
+						this.startLives.getPlayer2Value()),
+				new Pair(this.bulletsShot.getPlayer1Value(),
+						this.bulletsShot.getPlayer2Value()),
+				new Pair(this.shipsDestroyed.getPlayer1Value(),
+						this.shipsDestroyed.getPlayer2Value()),
+				this.playerCode, this.difficultyCode, this.seed);
+	}
+
+	/**
+	 * Getter for the bullets on screen.
+	 *
+	 * @return Set of the bullets fired by on screen ships.
+	 */
+	final Set<Bullet> getBullets() {
+		return this.bullets;
+	}
+
+	/**
+	 * Getter for the settings of the level.
+	 *
+	 * @return Settings the level was created with.
+	 */
+	final GameSettings getGameSettings() {
+		return this.gameSettings;
+	}
+
+	/**
+	 * Checks if the level gave an extra life.
+	 *
+	 * @return True if the level was created with a bonus life.
+	 */
+	final boolean hasBonusLife() {
+		return this.bonusLife;
+	}
+
+	/**
+	 * Getter for the score of the players.
+	 *
+	 * @return Score, updated as the level is played.
+	 */
+	final Pair getScore() {
+		return this.score;
+	}
+
+	/**
+	 * Getter for the ship of player 1.
+	 *
+	 * @return Player 1 ship.
+	 */
+	final Ship getShip1() {
+		return this.ship1;
+	}
+
+	/**
+	 * Getter for the ship of player 2.
+	 *
+	 * @return Player 2 ship, null in one player games.
+	 */
+	final Ship getShip2() {
+		return this.ship2;
+	}
+
+	/**
+	 * Getter for the special enemy ship.
+	 *
+	 * @return Special ship, null if it isn't on screen.
+	 */
+	final EnemyShip getEnemyShipSpecial() {
+		return this.enemyShipSpecial;
+	}
+
+	/**
+	 * Getter for the enemy formation.
+	 *
+	 * @return Enemy formation.
+	 */
+	final EnemyShipFormation getEnemyShipFormation() {
+		return this.enemyShipFormation;
+	}
+
+	/**
+	 * Checks if the level is over, the formation destroyed or the players
+	 * out of lives. The screen still runs for a moment after.
+	 *
+	 * @return True if the level is over.
+	 */
+	final boolean isLevelFinished() {
+		return this.levelFinished;
+	}
+
+	/**
+	 * Getter for the level being played.
+	 *
+	 * @return Current level.
+	 */
+	@Override
+	public final int getLevel() {
+		return this.level;
+	}
+
+	/**
+	 * Counts the ships on screen, for the performance overlay.
+	 *
+	 * @return Player ships, enemy ships and the special ship.
+	 */
+	@Override
+	public final int getEntityCount() {
+		int entities = this.playerCode == 2 ? 2 : 1;
+		if (this.enemyShipFormation != null)
+			entities += this.enemyShipFormation.getShipCount();
+		if (this.enemyShipSpecial != null)
+			entities++;
+		return entities;
+	}
+
+	/**
+	 * Counts the bullets on screen, for the performance overlay.
+	 *
+	 * @return Bullets on screen.
+	 */
+	@Override
+	public final int getBulletCount() {
+		return this.bullets == null ? 0 : this.bullets.size();
+	}
+
+	/**
+	 * Counts the bullets kept for reuse, for the performance overlay.
+	 *
+	 * @return Bullets in the pool of the session.
+	 */
+	@Override
+	public final int getPooledBulletCount() {
+		return this.bulletPool.getPoolSize();
+	}
+
+	/**
+	 * Returns the code of the screen in event recordings.
+	 *
+	 * @return Code of the game screen.
+	 */
+	@Override
+	public int getCode() {
+		return CODE_GAME;
 	}
-}
\ No newline at end of file
+}
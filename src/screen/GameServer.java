@@ -0,0 +1,424 @@
+package screen;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import engine.Core;
+import engine.EventRecorder;
+import engine.GameClock;
+import engine.GameContext;
+import engine.GameRandom;
+import engine.LatencyHistogram;
+import engine.Metrics;
+import entity.BulletPool;
+
+/**
+ * Hosts many game sessions in one process, for tournament and kiosk
+ * backends. A single timer ticks the sessions playing a game 60 times per
+ * second, spread over the workers of a fork/join pool. Idle and finished
+ * sessions are not ticked and hold no game, so they cost a few fields
+ * each; a session holds no thread either way.
+ *
+ * Each game has its own input manager, bullet pool and clock. Nothing is
+ * drawn. The sessions share the server's metrics, event recorder and
+ * logger, all of which are safe to use from any thread.
+ *
+ * Run as a program to load test the server: GameServer [idle] [active]
+ * [seconds] opens idle sessions, plays games on the active ones with
+ * random keys, and reports the heap taken by the sessions and the tick
+ * times. Exits with 0 when done and 2 on bad arguments.
+ *
+ */
+public final class GameServer {
+
+	/** Width of the screens, as in the game. */
+	static final int WIDTH = 448;
+	/** Height of the screens, as in the game. */
+	static final int HEIGHT = 520;
+	/** Frames per second, as in the game. */
+	static final int FPS = 60;
+	/** Game time of a tick, in milliseconds. */
+	private static final int FRAME_TIME = 1000 / FPS;
+	/** Sessions a task ticks without splitting. */
+	private static final int SESSIONS_PER_TASK = 16;
+	/** Events kept of the games, from every session. */
+	private static final int SERVER_EVENTS = 65536;
+
+	/** Idle sessions opened by the load test by default. */
+	private static final int DEFAULT_IDLE = 10000;
+	/** Sessions playing in the load test by default. */
+	private static final int DEFAULT_ACTIVE = 1000;
+	/** Length of the load test by default, in seconds. */
+	private static final int DEFAULT_SECONDS = 10;
+	/** Milliseconds between two key changes of the load test clients. */
+	private static final int INPUT_PERIOD = 250;
+	/** Input masks there are, every combination of the six keys. */
+	private static final int ACTIONS = 64;
+	/** Bytes in a kilobyte. */
+	private static final double KILOBYTE = 1024;
+	/** Exit code when done. */
+	private static final int EXIT_DONE = 0;
+	/** Exit code on bad arguments. */
+	private static final int EXIT_USAGE = 2;
+
+	/** Workers ticking the sessions. */
+	private final ForkJoinPool pool;
+	/** Timer starting the ticks. */
+	private final ScheduledExecutorService timer;
+	/** Metrics of the server and its games. */
+	private final Metrics metrics;
+	/** Recent events of the games. */
+	private final EventRecorder eventRecorder;
+	/** Logger of the server and its games. */
+	private final Logger logger;
+	/** Identifier of the next session. */
+	private final AtomicLong nextId;
+	/** Sessions open. */
+	private final AtomicInteger openSessions;
+	/** Sessions started since the last tick. */
+	private final Queue<GameSession> started;
+
+	/** Sessions ticked, only used by the timer thread. */
+	private GameSession[] active;
+	/** Number of sessions ticked. */
+	private volatile int activeCount;
+
+	/**
+	 * Constructor, the server must be started to tick the sessions.
+	 *
+	 * @param workers
+	 *            Threads ticking the sessions.
+	 * @param logger
+	 *            Logger of the server and its games.
+	 */
+	public GameServer(final int workers, final Logger logger) {
+		this.pool = new ForkJoinPool(workers);
+		this.timer = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(final Runnable runnable) {
+						Thread thread = new Thread(runnable, "GameServer");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		this.metrics = new Metrics();
+		this.eventRecorder = new EventRecorder(SERVER_EVENTS);
+		this.logger = logger;
+		this.nextId = new AtomicLong();
+		this.openSessions = new AtomicInteger();
+		this.started = new ConcurrentLinkedQueue<GameSession>();
+		this.active = new GameSession[SESSIONS_PER_TASK];
+
+		this.metrics.gauge(Metrics.SESSIONS_OPEN, new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return openSessions.get();
+			}
+		});
+		this.metrics.gauge(Metrics.SESSIONS_ACTIVE, new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return activeCount;
+			}
+		});
+	}
+
+	/**
+	 * Starts ticking the sessions.
+	 */
+	public void start() {
+		this.timer.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					tick();
+				} catch (RuntimeException e) {
+					// A failed tick would stop the timer for every session.
+					logger.log(Level.SEVERE, "Server tick failed.", e);
+				}
+			}
+		}, 0, FRAME_TIME, TimeUnit.MILLISECONDS);
+		this.logger.info("Game server started with "
+				+ this.pool.getParallelism() + " workers.");
+	}
+
+	/**
+	 * Stops ticking the sessions and the workers. The games are left
+	 * where they are.
+	 */
+	public void stop() {
+		this.timer.shutdown();
+		try {
+			this.timer.awaitTermination(1, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		this.pool.shutdown();
+	}
+
+	/**
+	 * Opens an idle session.
+	 *
+	 * @return New session.
+	 */
+	public GameSession open() {
+		this.openSessions.incrementAndGet();
+		return new GameSession(this, this.nextId.getAndIncrement());
+	}
+
+	/**
+	 * Schedules a session that started a game for ticking.
+	 *
+	 * @param session
+	 *            Session started.
+	 */
+	void activate(final GameSession session) {
+		this.started.add(session);
+	}
+
+	/**
+	 * Counts a session out, once it is closed.
+	 *
+	 * @param session
+	 *            Session closed.
+	 */
+	void closed(final GameSession session) {
+		this.openSessions.decrementAndGet();
+	}
+
+	/**
+	 * Creates the managers of a new game.
+	 *
+	 * @return Context with its own input manager and bullet pool, no draw
+	 *         manager, and the server's logger, metrics and events.
+	 */
+	GameContext newContext() {
+		return new GameContext(null, Core.getVirtualInputManager(),
+				this.logger, this.metrics, this.eventRecorder, null,
+				new BulletPool());
+	}
+
+	/**
+	 * Ticks every session playing a game, on the workers, and waits for
+	 * them. Sessions no longer playing are dropped first.
+	 */
+	private void tick() {
+		long start = System.nanoTime();
+		GameSession session;
+		while ((session = this.started.poll()) != null) {
+			if (session.scheduled)
+				continue;
+			if (this.activeCount == this.active.length)
+				this.active = Arrays.copyOf(this.active,
+						this.active.length * 2);
+			session.scheduled = true;
+			this.active[this.activeCount++] = session;
+		}
+
+		int count = 0;
+		for (int i = 0; i < this.activeCount; i++) {
+			session = this.active[i];
+			if (session.getState() == GameSession.State.PLAYING) {
+				this.active[count++] = session;
+			} else {
+				session.scheduled = false;
+			}
+		}
+		Arrays.fill(this.active, count, this.activeCount, null);
+		this.activeCount = count;
+
+		if (count > 0)
+			this.pool.invoke(new Ticks(this.active, 0, count));
+
+		long tickTime = System.nanoTime() - start;
+		this.metrics.counter(Metrics.TICKS).increment();
+		this.metrics.histogram(Metrics.TICK_TIME).record(tickTime);
+		if (tickTime > TimeUnit.MILLISECONDS.toNanos(FRAME_TIME))
+			this.metrics.counter(Metrics.MISSED_DEADLINES).increment();
+	}
+
+	/**
+	 * Getter for the metrics of the server and its games.
+	 *
+	 * @return Server metrics.
+	 */
+	public Metrics getMetrics() {
+		return this.metrics;
+	}
+
+	/**
+	 * Getter for the recent events of the games.
+	 *
+	 * @return Server event recorder.
+	 */
+	public EventRecorder getEventRecorder() {
+		return this.eventRecorder;
+	}
+
+	/**
+	 * Ticks a range of sessions, splitting it in halves while it is large.
+	 */
+	private static final class Ticks extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		/** Sessions ticked. */
+		private final GameSession[] sessions;
+		/** First session of the range. */
+		private final int from;
+		/** Session after the last one of the range. */
+		private final int to;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param sessions
+		 *            Sessions ticked.
+		 * @param from
+		 *            First session of the range.
+		 * @param to
+		 *            Session after the last one of the range.
+		 */
+		Ticks(final GameSession[] sessions, final int from, final int to) {
+			this.sessions = sessions;
+			this.from = from;
+			this.to = to;
+		}
+
+		/**
+		 * Ticks the sessions of the range, or splits it, then gives the
+		 * worker back the system clock.
+		 */
+		@Override
+		protected void compute() {
+			if (this.to - this.from > SESSIONS_PER_TASK) {
+				int middle = (this.from + this.to) >>> 1;
+				invokeAll(new Ticks(this.sessions, this.from, middle),
+						new Ticks(this.sessions, middle, this.to));
+				return;
+			}
+			try {
+				for (int i = this.from; i < this.to; i++)
+					this.sessions[i].tick(FRAME_TIME);
+			} finally {
+				GameClock.useSystemClock();
+			}
+		}
+	}
+
+	/**
+	 * Runs the load test.
+	 *
+	 * @param args
+	 *            Idle sessions, active sessions and seconds, all optional.
+	 * @throws InterruptedException
+	 *             If interrupted while the games are played.
+	 */
+	public static void main(final String[] args)
+			throws InterruptedException {
+		int idle = DEFAULT_IDLE;
+		int playing = DEFAULT_ACTIVE;
+		int seconds = DEFAULT_SECONDS;
+		try {
+			if (args.length > 0)
+				idle = Integer.parseInt(args[0]);
+			if (args.length > 1)
+				playing = Integer.parseInt(args[1]);
+			if (args.length > 2)
+				seconds = Integer.parseInt(args[2]);
+		} catch (NumberFormatException e) {
+			seconds = -1;
+		}
+		if (args.length > 3 || idle < 0 || playing < 0 || seconds < 1) {
+			System.err.println("Usage: GameServer [idle] [active] [seconds]");
+			System.exit(EXIT_USAGE);
+		}
+
+		System.setProperty("java.awt.headless", "true");
+		Logger logger = Core.getLogger();
+		logger.setLevel(Level.WARNING);
+		GameServer server = new GameServer(Runtime.getRuntime()
+				.availableProcessors(), logger);
+
+		long allocated = allocatedBytes();
+		// Kept open until the end of the test.
+		GameSession[] idleSessions = new GameSession[idle];
+		for (int i = 0; i < idle; i++)
+			idleSessions[i] = server.open();
+		allocated = allocatedBytes() - allocated;
+		if (allocated >= 0)
+			System.out.println(String.format(Locale.ROOT, "Opened %d idle "
+					+ "sessions, %.0f KB allocated, %.0f bytes each.", idle,
+					allocated / KILOBYTE, idle == 0 ? 0.0
+							: (double) allocated / idle));
+
+		GameRandom random = new GameRandom(1);
+		List<GameSession> sessions = new ArrayList<GameSession>();
+		for (int i = 0; i < playing; i++) {
+			GameSession session = server.open();
+			session.start(1 + i % 2, 1 + i % 3, random.nextLong());
+			sessions.add(session);
+		}
+		server.start();
+		long end = System.currentTimeMillis() + seconds * 1000L;
+		while (System.currentTimeMillis() < end) {
+			for (GameSession session : sessions) {
+				if (session.getState() == GameSession.State.OVER)
+					session.start(session.getGameState().getPlayerCode(),
+							session.getGameState().getDifficultyCode(),
+							random.nextLong());
+				session.setInput(random.nextInt(ACTIONS));
+			}
+			TimeUnit.MILLISECONDS.sleep(INPUT_PERIOD);
+		}
+		server.stop();
+
+		Metrics metrics = server.getMetrics();
+		LongAdder ticks = metrics.counter(Metrics.TICKS);
+		LatencyHistogram tickTimes = metrics.histogram(Metrics.TICK_TIME);
+		System.out.println(String.format(Locale.ROOT, "Played %d sessions "
+				+ "for %d s: %d ticks, %d missed deadlines, tick time "
+				+ "%.2f ms on average, %.2f ms p99, %.2f ms max.", playing,
+				seconds, ticks.sum(), metrics.counter(
+						Metrics.MISSED_DEADLINES).sum(),
+				tickTimes.getMean(), tickTimes.getPercentile(99),
+				tickTimes.getMax()));
+		System.out.println("Levels played: "
+				+ metrics.counter(Metrics.LEVELS_PLAYED).sum()
+				+ ", games played: "
+				+ metrics.counter(Metrics.GAMES_PLAYED).sum() + ".");
+		System.exit(EXIT_DONE);
+	}
+
+	/**
+	 * Returns the bytes allocated by the calling thread so far. The checks
+	 * of the package measure allocations with it too.
+	 *
+	 * @return Bytes allocated, -1 if the JVM doesn't count them.
+	 */
+	static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		return ((com.sun.management.ThreadMXBean) threads)
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
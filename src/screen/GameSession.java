@@ -0,0 +1,229 @@
+package screen;
+
+import java.util.List;
+
+import engine.Core;
+import engine.GameClock;
+import engine.GameContext;
+import engine.GameSettings;
+import engine.GameState;
+import engine.LevelProgression;
+import engine.Metrics;
+import entity.Pair;
+
+/**
+ * A game hosted by a game server. It plays the levels of a difficulty one
+ * after the other, as the game in the window does, with the keys set by
+ * its client, until the players run out of lives or clear the last level.
+ * It is then over and can be started again.
+ *
+ * A session only holds its game while it is played: an idle or finished
+ * session is a few fields, and the server doesn't look at it. Time in the
+ * game is simulated, one frame per server tick, so a slow tick slows the
+ * game down instead of skipping updates.
+ *
+ * Clients may call any method from any thread.
+ *
+ */
+public final class GameSession {
+
+	/** What a session is doing. */
+	public static enum State {
+		/** Opened, no game played yet. */
+		IDLE,
+		/** Playing a game, ticked by the server. */
+		PLAYING,
+		/** The game is over, its final state is kept. */
+		OVER,
+		/** Closed, can't be started again. */
+		CLOSED
+	}
+
+	/** Server hosting the session. */
+	private final GameServer server;
+	/** Identifier, unique in the server. */
+	private final long id;
+
+	/** What the session is doing. */
+	private volatile State state;
+	/** Keys held by the client, as a GameScreen input mask. */
+	private volatile int input;
+	/** State at the start of the level being played, or the final one. */
+	private volatile GameState gameState;
+
+	/** If the server has the session in its ticked sessions. */
+	boolean scheduled;
+	/** Settings of the levels of the game. */
+	private List<GameSettings> levelSettings;
+	/** Simulated clock of the game. */
+	private GameClock clock;
+	/** Managers of the game, only kept while it is played. */
+	private GameContext context;
+	/** Screen of the level being played. */
+	private GameScreen gameScreen;
+
+	/**
+	 * Constructor, the session starts idle.
+	 *
+	 * @param server
+	 *            Server hosting the session.
+	 * @param id
+	 *            Identifier, unique in the server.
+	 */
+	GameSession(final GameServer server, final long id) {
+		this.server = server;
+		this.id = id;
+		this.state = State.IDLE;
+	}
+
+	/**
+	 * Starts a new game from the first level. Does nothing if a game is
+	 * being played or the session is closed.
+	 *
+	 * @param playerCode
+	 *            Number of players, 1 or 2.
+	 * @param difficultyCode
+	 *            Difficulty code, 1 to 3.
+	 * @param seed
+	 *            Seed of the game.
+	 * @return False if the game couldn't be started.
+	 */
+	public synchronized boolean start(final int playerCode,
+			final int difficultyCode, final long seed) {
+		if (this.state == State.PLAYING || this.state == State.CLOSED)
+			return false;
+		this.levelSettings = Core.getLevelSettings(difficultyCode);
+		this.gameState = LevelProgression.newGame(playerCode,
+				difficultyCode, seed);
+		this.input = 0;
+		this.state = State.PLAYING;
+		this.server.activate(this);
+		return true;
+	}
+
+	/**
+	 * Closes the session, ending its game if one is played.
+	 */
+	public synchronized void close() {
+		if (this.state == State.CLOSED)
+			return;
+		this.state = State.CLOSED;
+		release();
+		this.server.closed(this);
+	}
+
+	/**
+	 * Plays one frame of the game. Called by the server, from one of its
+	 * workers.
+	 *
+	 * @param frameTime
+	 *            Game time of the frame, in milliseconds.
+	 */
+	synchronized void tick(final int frameTime) {
+		if (this.state != State.PLAYING)
+			return;
+		if (this.gameScreen == null) {
+			this.clock = GameClock.simulate(System.currentTimeMillis());
+			this.context = this.server.newContext();
+			startLevel();
+		}
+		this.clock.use();
+		this.clock.advance(frameTime);
+		this.gameScreen.tick(this.input);
+		if (!this.gameScreen.isRunning)
+			endLevel();
+	}
+
+	/**
+	 * Creates the screen of the level the game state is at.
+	 */
+	private void startLevel() {
+		this.gameScreen = new GameScreen(this.gameState,
+				this.levelSettings.get(this.gameState.getLevel() - 1),
+				LevelProgression.hasBonusLife(this.gameState),
+				GameServer.WIDTH, GameServer.HEIGHT, GameServer.FPS,
+				this.context);
+		this.gameScreen.initialize();
+		this.gameScreen.isRunning = true;
+	}
+
+	/**
+	 * Scores the level just finished and moves to the next one, or ends the
+	 * game.
+	 */
+	private void endLevel() {
+		this.gameScreen.addEndOfLevelScore();
+		this.context.getMetrics().counter(Metrics.LEVELS_PLAYED)
+				.increment();
+		this.gameState = LevelProgression.nextLevel(this.gameScreen
+				.getGameState());
+		if (!LevelProgression.isGameOver(this.gameState)) {
+			startLevel();
+		} else {
+			this.context.getMetrics().counter(Metrics.GAMES_PLAYED)
+					.increment();
+			this.state = State.OVER;
+			release();
+		}
+	}
+
+	/**
+	 * Lets go of the game, keeping only its state.
+	 */
+	private void release() {
+		this.gameScreen = null;
+		this.context = null;
+		this.clock = null;
+	}
+
+	/**
+	 * Sets the keys held by the client, used from the next frame on.
+	 *
+	 * @param input
+	 *            GameScreen input mask. In two player games player 1 uses
+	 *            A, D and space, player 2 the arrows and enter.
+	 */
+	public void setInput(final int input) {
+		this.input = input;
+	}
+
+	/**
+	 * Getter for the identifier.
+	 *
+	 * @return Identifier, unique in the server.
+	 */
+	public long getId() {
+		return this.id;
+	}
+
+	/**
+	 * Getter for what the session is doing.
+	 *
+	 * @return State of the session.
+	 */
+	public State getState() {
+		return this.state;
+	}
+
+	/**
+	 * Returns the state of the game at the start of the level being
+	 * played, or once it is over, its final state.
+	 *
+	 * @return Game state, null if no game was started.
+	 */
+	public GameState getGameState() {
+		return this.gameState;
+	}
+
+	/**
+	 * Returns the score of the game being played, as of the last frame.
+	 *
+	 * @return Score of both players, null if no level is being played.
+	 */
+	public synchronized Pair getScore() {
+		if (this.gameScreen == null)
+			return null;
+		Pair score = this.gameScreen.getScore();
+		return new Pair(score.getPlayer1Value(), score.getPlayer2Value());
+	}
+}
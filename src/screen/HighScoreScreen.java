@@ -2,10 +2,11 @@ package screen;
 
 import java.awt.event.KeyEvent;
 import java.io.IOException;
-import java.util.List;
 
+import engine.Cooldown;
 import engine.Core;
-import engine.Score;
+import engine.Leaderboard;
+import engine.Leaderboard.Period;
 
 /**
  * Implements the high scores screen, it shows player records.
@@ -15,8 +16,25 @@ import engine.Score;
  */
 public class HighScoreScreen extends Screen {
 
-	/** List of past high scores. */
-	private List<Score> highScores;
+	/** Milliseconds between changes in user selection. */
+	private static final int SELECTION_TIME = 200;
+	/** Names of the difficulty codes. */
+	private static final String[] DIFFICULTY_NAMES =
+			{ "Easy", "Medium", "Hard" };
+	/** Names of the periods. */
+	private static final String[] PERIOD_NAMES =
+			{ "all time", "this week", "today" };
+
+	/** Past high scores of every game mode. */
+	private Leaderboard highScores;
+	/** Difficulty code of the board shown. */
+	private int difficultyCode;
+	/** Player code of the board shown. */
+	private int playerCode;
+	/** Period of the board shown. */
+	private Period period;
+	/** Time between changes in user selection. */
+	private Cooldown selectionCooldown;
 
 	/**
 	 * Constructor, establishes the properties of the screen.
@@ -32,9 +50,14 @@ public class HighScoreScreen extends Screen {
 		super(width, height, fps);
 
 		this.returnCode = 1;
+		this.difficultyCode = 1;
+		this.playerCode = 1;
+		this.period = Period.ALL_TIME;
+		this.selectionCooldown = Core.getCooldown(SELECTION_TIME);
+		this.selectionCooldown.reset();
 
 		try {
-			this.highScores = Core.getFileManager().loadHighScores();
+			this.highScores = Core.getFileManager().loadLeaderboard();
 		} catch (NumberFormatException | IOException e) {
 			logger.warning("Couldn't load high scores!");
 		}
@@ -58,20 +81,88 @@ public class HighScoreScreen extends Screen {
 		super.update();
 
 		draw();
+		if (this.selectionCooldown.checkFinished()
+				&& this.inputDelay.checkFinished()) {
+			if (inputManager.isKeyDown(KeyEvent.VK_RIGHT)
+					|| inputManager.isKeyDown(KeyEvent.VK_D)) {
+				nextGameMode();
+				this.selectionCooldown.reset();
+			}
+			if (inputManager.isKeyDown(KeyEvent.VK_LEFT)
+					|| inputManager.isKeyDown(KeyEvent.VK_A)) {
+				previousGameMode();
+				this.selectionCooldown.reset();
+			}
+			if (inputManager.isKeyDown(KeyEvent.VK_DOWN)
+					|| inputManager.isKeyDown(KeyEvent.VK_S)) {
+				this.period = Period.values()[(this.period.ordinal() + 1)
+						% Period.values().length];
+				this.selectionCooldown.reset();
+			}
+			if (inputManager.isKeyDown(KeyEvent.VK_UP)
+					|| inputManager.isKeyDown(KeyEvent.VK_W)) {
+				this.period = Period.values()[(this.period.ordinal()
+						+ Period.values().length - 1)
+						% Period.values().length];
+				this.selectionCooldown.reset();
+			}
+		}
 		if (inputManager.isKeyDown(KeyEvent.VK_SPACE)
 				&& this.inputDelay.checkFinished())
 			this.isRunning = false;
 	}
 
+	/**
+	 * Shows the board of the next game mode, one player boards first.
+	 */
+	private void nextGameMode() {
+		if (this.difficultyCode < Leaderboard.NUM_DIFFICULTIES) {
+			this.difficultyCode++;
+		} else {
+			this.difficultyCode = 1;
+			this.playerCode = this.playerCode
+					% Leaderboard.NUM_PLAYER_CODES + 1;
+		}
+	}
+
+	/**
+	 * Shows the board of the previous game mode.
+	 */
+	private void previousGameMode() {
+		if (this.difficultyCode > 1) {
+			this.difficultyCode--;
+		} else {
+			this.difficultyCode = Leaderboard.NUM_DIFFICULTIES;
+			this.playerCode = this.playerCode == 1
+					? Leaderboard.NUM_PLAYER_CODES : this.playerCode - 1;
+		}
+	}
+
 	/**
 	 * Draws the elements associated with the screen.
 	 */
 	private void draw() {
 		drawManager.initDrawing(this);
 
-		drawManager.drawHighScoreMenu(this);
-		drawManager.drawHighScores(this, this.highScores);
+		String boardName = DIFFICULTY_NAMES[this.difficultyCode - 1] + " "
+				+ this.playerCode + "P - "
+				+ PERIOD_NAMES[this.period.ordinal()];
+		drawManager.drawHighScoreMenu(this, boardName);
+		if (this.highScores != null)
+			drawManager.drawHighScores(this, this.highScores.getBoard(
+					this.difficultyCode, this.playerCode, this.period)
+					.getScores());
 
 		drawManager.completeDrawing(this);
 	}
+
+	/**
+	 * Returns the code of the screen in event recordings.
+	 * 
+	 * @return Code of the high score screen.
+	 */
+	@Override
+	public int getCode() {
+		return CODE_HIGH_SCORE;
+	}
 }
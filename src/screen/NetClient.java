@@ -0,0 +1,338 @@
+package screen;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import engine.BufferPool;
+import engine.DeltaCodec;
+import engine.DrawManager;
+import engine.GameClock;
+import engine.GameContext;
+import engine.GameSettings;
+import engine.GameState;
+import engine.LatencyHistogram;
+import engine.NetConnection;
+
+/**
+ * Plays a network game hosted elsewhere, on the calling thread. It sends
+ * the keys held and shows the game as the host sends it: the level screen
+ * is built like the host's, and every snapshot is applied to the last
+ * state to give the new one, which the screen is brought to. The client
+ * never updates the game itself.
+ *
+ * It also measures the connection: bytes each way, snapshot sizes, and
+ * the time from sending keys to the first snapshot with them applied.
+ *
+ * A client is not thread safe.
+ *
+ */
+public final class NetClient {
+
+	/** Keys sent kept for latency, a power of two. */
+	private static final int SENT_TIMES = 1024;
+
+	/** Managers of the level screens, nothing is read from them. */
+	private final GameContext context;
+	/** Buffers of the connection and the states. */
+	private final BufferPool pool;
+	/** Time each of the last keys was sent, by sequence number. */
+	private final long[] sentTimes;
+	/** Time from sending keys to seeing them applied. */
+	private final LatencyHistogram latency;
+
+	/** Connection to the host, null before connecting. */
+	private NetConnection connection;
+	/** Player of the client, 0 until welcomed. */
+	private int player;
+	/** Sequence number of the last keys sent. */
+	private int sequence;
+	/** Sequence number of the last keys the host applied. */
+	private int acknowledged;
+	/** If the host ended the game. */
+	private boolean over;
+
+	/** Simulated clock of the level, at the host's time. */
+	private GameClock clock;
+	/** Screen of the level, null before the first one. */
+	private GameScreen gameScreen;
+	/** State of the last snapshot. */
+	private ByteBuffer state;
+	/** Length of the state, 0 before the first snapshot of a level. */
+	private int stateLength;
+	/** Buffer the next state is decoded into. */
+	private ByteBuffer next;
+	/** Update of the level the state is at. */
+	private int tick;
+
+	/** Snapshots received. */
+	private long snapshots;
+	/** Bytes of the deltas received. */
+	private long deltaBytes;
+	/** Bytes of the states they gave. */
+	private long stateBytes;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param drawManager
+	 *            Draws the game, may be null if it isn't shown.
+	 */
+	public NetClient(final DrawManager drawManager) {
+		this.context = GameContext.headless(drawManager);
+		this.pool = new BufferPool(NetProtocol.MAX_MESSAGE_SIZE);
+		this.sentTimes = new long[SENT_TIMES];
+		this.latency = new LatencyHistogram();
+	}
+
+	/**
+	 * Connects to a host, waiting until connected.
+	 *
+	 * @param host
+	 *            Name or address of the host.
+	 * @param port
+	 *            Port the host listens on.
+	 * @throws IOException
+	 *             If the host can't be reached.
+	 */
+	public void connect(final String host, final int port)
+			throws IOException {
+		SocketChannel channel = SocketChannel.open(new InetSocketAddress(
+				host, port));
+		this.connection = new NetConnection(channel, this.pool);
+		this.state = this.pool.getBuffer();
+		this.next = this.pool.getBuffer();
+	}
+
+	/**
+	 * Sends the keys held. Sent every frame, so that a lost change of keys
+	 * can't leave a ship moving.
+	 *
+	 * @param input
+	 *            Keys held, as a GameScreen input mask. Either set of keys
+	 *            moves the client's ship.
+	 * @throws IOException
+	 *             If the connection is broken.
+	 */
+	public void sendInput(final int input) throws IOException {
+		this.sequence++;
+		this.sentTimes[this.sequence & (SENT_TIMES - 1)] = System.nanoTime();
+		ByteBuffer message = this.connection.newMessage(NetProtocol.INPUT);
+		message.putInt(this.sequence);
+		message.put((byte) input);
+		this.connection.send(message);
+	}
+
+	/**
+	 * Applies the messages the host has sent since the last call.
+	 *
+	 * @return False once the game is over.
+	 * @throws IOException
+	 *             If the connection is broken or a message is wrong.
+	 */
+	public boolean update() throws IOException {
+		if (this.over)
+			return false;
+		this.connection.flush();
+		ByteBuffer message;
+		while ((message = this.connection.receive()) != null) {
+			byte type = message.get();
+			switch (type) {
+			case NetProtocol.WELCOME:
+				this.player = message.get();
+				break;
+			case NetProtocol.LEVEL:
+				startLevel(message);
+				break;
+			case NetProtocol.SNAPSHOT:
+				applySnapshot(message);
+				break;
+			case NetProtocol.GAME_OVER:
+				this.over = true;
+				return false;
+			default:
+				throw new IOException("Unexpected message: " + type);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Builds the screen of a level from its LEVEL message.
+	 *
+	 * @param message
+	 *            Message, after its type.
+	 */
+	private void startLevel(final ByteBuffer message) {
+		long time = message.getLong();
+		GameState gameState = NetProtocol.readLevelState(message);
+		boolean bonusLife = message.get() == 1;
+		GameSettings settings = NetProtocol.readLevelSettings(message);
+
+		this.clock = GameClock.simulate(time);
+		this.gameScreen = new GameScreen(gameState, settings, bonusLife,
+				GameServer.WIDTH, GameServer.HEIGHT, GameServer.FPS,
+				this.context);
+		this.gameScreen.initialize();
+		this.gameScreen.isRunning = true;
+		this.stateLength = 0;
+		this.tick = 0;
+	}
+
+	/**
+	 * Applies a snapshot to the last state and brings the screen to it.
+	 *
+	 * @param message
+	 *            Message, after its type.
+	 * @throws IOException
+	 *             If it comes before its level.
+	 */
+	private void applySnapshot(final ByteBuffer message) throws IOException {
+		if (this.gameScreen == null)
+			throw new IOException("Snapshot before the level.");
+		this.tick = message.getInt();
+		long time = message.getLong();
+		int acknowledged1 = message.getInt();
+		int acknowledged2 = message.getInt();
+		int deltaSize = message.remaining();
+
+		this.next.clear();
+		int length = DeltaCodec.decode(this.state, this.stateLength,
+				message, this.next);
+		ByteBuffer decoded = this.next;
+		this.next = this.state;
+		this.state = decoded;
+		this.stateLength = length;
+
+		this.clock.use();
+		this.clock.advanceTo(time);
+		this.state.clear();
+		this.state.limit(length);
+		this.gameScreen.readState(this.state);
+
+		this.snapshots++;
+		this.deltaBytes += deltaSize;
+		this.stateBytes += length;
+		int acknowledgedNow = this.player == 2 ? acknowledged2
+				: acknowledged1;
+		if (acknowledgedNow - this.acknowledged > 0) {
+			if (this.sequence - acknowledgedNow < SENT_TIMES)
+				this.latency.record(System.nanoTime() - this.sentTimes[
+						acknowledgedNow & (SENT_TIMES - 1)]);
+			this.acknowledged = acknowledgedNow;
+		}
+	}
+
+	/**
+	 * Draws the level as of the last snapshot, if a level has started.
+	 */
+	public void draw() {
+		if (this.gameScreen == null)
+			return;
+		this.clock.use();
+		this.gameScreen.draw();
+	}
+
+	/**
+	 * Closes the connection.
+	 */
+	public void close() {
+		if (this.connection != null)
+			this.connection.close();
+		GameClock.useSystemClock();
+	}
+
+	/**
+	 * Getter for the player of the client.
+	 *
+	 * @return 1 or 2, 0 until the game starts.
+	 */
+	public int getPlayer() {
+		return this.player;
+	}
+
+	/**
+	 * Getter for the screen of the level, as of the last snapshot.
+	 *
+	 * @return Game screen, null before the first level.
+	 */
+	public GameScreen getGameScreen() {
+		return this.gameScreen;
+	}
+
+	/**
+	 * Getter for the state of the last snapshot.
+	 *
+	 * @return State, from 0 to its limit. Valid until the next update.
+	 */
+	ByteBuffer getState() {
+		this.state.clear();
+		this.state.limit(this.stateLength);
+		return this.state;
+	}
+
+	/**
+	 * Getter for the update of the level the last snapshot is at.
+	 *
+	 * @return Update, from 1.
+	 */
+	public int getTick() {
+		return this.tick;
+	}
+
+	/**
+	 * Getter for the time from sending keys to seeing them applied.
+	 *
+	 * @return Latency of the keys, round trip and host update included.
+	 */
+	public LatencyHistogram getLatency() {
+		return this.latency;
+	}
+
+	/**
+	 * Getter for the number of snapshots received.
+	 *
+	 * @return Snapshots applied.
+	 */
+	public long getSnapshots() {
+		return this.snapshots;
+	}
+
+	/**
+	 * Getter for the bytes of the deltas received.
+	 *
+	 * @return Bytes of the snapshots, without their headers.
+	 */
+	public long getDeltaBytes() {
+		return this.deltaBytes;
+	}
+
+	/**
+	 * Getter for the bytes of the states the deltas gave.
+	 *
+	 * @return Bytes the snapshots would take whole.
+	 */
+	public long getStateBytes() {
+		return this.stateBytes;
+	}
+
+	/**
+	 * Getter for the bytes received.
+	 *
+	 * @return Bytes read from the socket.
+	 */
+	public long getBytesReceived() {
+		return this.connection == null ? 0 : this.connection
+				.getBytesReceived();
+	}
+
+	/**
+	 * Getter for the bytes sent.
+	 *
+	 * @return Bytes written to the socket.
+	 */
+	public long getBytesSent() {
+		return this.connection == null ? 0 : this.connection.getBytesSent();
+	}
+}
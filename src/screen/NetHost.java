@@ -0,0 +1,632 @@
+package screen;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import engine.BufferPool;
+import engine.Core;
+import engine.DeltaCodec;
+import engine.GameClock;
+import engine.GameContext;
+import engine.GameSettings;
+import engine.GameState;
+import engine.LevelProgression;
+import engine.NetConnection;
+
+/**
+ * Hosts a network game. The host plays the game, the only one that does:
+ * clients send it the keys held, and it sends them the state of the game
+ * after every update, 60 times per second, as a delta from the state sent
+ * before. Each client moves one ship, whatever keys it sends.
+ *
+ * Everything runs on the calling thread, around a selector: the sockets
+ * are read as soon as keys arrive, and waited on between updates. Message
+ * buffers are direct and pooled, and each snapshot is encoded once and
+ * sent to every client.
+ *
+ */
+public final class NetHost {
+
+	/** Port the host listens on by default. */
+	public static final int DEFAULT_PORT = 7460;
+
+	/** Game time of an update, in milliseconds. */
+	private static final int FRAME_TIME = 1000 / GameServer.FPS;
+	/** Real time of an update, in nanoseconds. */
+	private static final long FRAME_NANOS = TimeUnit.SECONDS.toNanos(1)
+			/ GameServer.FPS;
+	/** Updates the host may fall behind before it skips them. */
+	private static final int MAX_LATE_FRAMES = 5;
+	/** Snapshots queued for a client before it's dropped, 2 seconds. */
+	private static final int MAX_QUEUED = GameServer.FPS * 2;
+	/** Longest wait for the last messages to be sent, in milliseconds. */
+	private static final long CLOSE_TIMEOUT = 1000;
+	/** Difficulty played by default, normal. */
+	private static final int DEFAULT_DIFFICULTY = 2;
+	/** Exit code on bad arguments. */
+	private static final int EXIT_USAGE = 2;
+
+	/** Port to listen on, 0 for any. */
+	private final int port;
+	/** Number of players, 1 or 2. */
+	private final int playerCode;
+	/** Difficulty code, 1 to 3. */
+	private final int difficultyCode;
+	/** Seed of the game. */
+	private final long seed;
+	/** Logger of the host. */
+	private final Logger logger;
+	/** Buffers of the connections and their messages. */
+	private final BufferPool pool;
+	/** Connection of each player, null if not connected. */
+	private final NetConnection[] players;
+	/** Keys held by each player, as sent. */
+	private final int[] inputs;
+	/** Sequence number of the keys held by each player, both kept. */
+	private final int[] sequences;
+
+	/** Streams the game to spectators, null if not streamed. */
+	private SpectatorServer spectators;
+
+	/** Accepts the players. */
+	private ServerSocketChannel server;
+	/** Waits on the sockets. */
+	private Selector selector;
+	/** If the host goes on, cleared to stop it. */
+	private volatile boolean running;
+
+	/** State the clients have, sent last. */
+	private ByteBuffer base;
+	/** Length of the state sent last, 0 at the start of a level. */
+	private int baseLength;
+	/** State after the last update. */
+	private ByteBuffer state;
+	/** Delta of the last update. */
+	private ByteBuffer delta;
+
+	/** Settings of the levels of the game. */
+	private List<GameSettings> levelSettings;
+	/** State at the start of the level being played. */
+	private GameState gameState;
+	/** Simulated clock of the game. */
+	private GameClock clock;
+	/** Managers of the game. */
+	private GameContext context;
+	/** Screen of the level being played. */
+	private GameScreen gameScreen;
+	/** Updates played in the level. */
+	private int tick;
+
+	/** Snapshots encoded. */
+	private long snapshots;
+	/** Snapshots encoded from nothing, the first of each level. */
+	private long fullSnapshots;
+	/** Bytes of the deltas of the first snapshots of the levels. */
+	private long fullBytes;
+	/** Bytes of the deltas of the other snapshots. */
+	private long deltaBytes;
+	/** Bytes of the game states encoded. */
+	private long stateBytes;
+
+	/**
+	 * Constructor, the host must be bound before it runs.
+	 *
+	 * @param port
+	 *            Port to listen on, 0 for any free one.
+	 * @param playerCode
+	 *            Number of players, 1 or 2.
+	 * @param difficultyCode
+	 *            Difficulty code, 1 to 3.
+	 * @param seed
+	 *            Seed of the game.
+	 * @param logger
+	 *            Logger of the host.
+	 */
+	public NetHost(final int port, final int playerCode,
+			final int difficultyCode, final long seed, final Logger logger) {
+		if (playerCode != 1 && playerCode != 2)
+			throw new IllegalArgumentException("playerCode must be 1 or 2");
+		this.port = port;
+		this.playerCode = playerCode;
+		this.difficultyCode = difficultyCode;
+		this.seed = seed;
+		this.logger = logger;
+		this.pool = new BufferPool(NetProtocol.MAX_MESSAGE_SIZE);
+		this.players = new NetConnection[playerCode];
+		this.inputs = new int[2];
+		this.sequences = new int[2];
+	}
+
+	/**
+	 * Starts listening for the players.
+	 *
+	 * @return Port listened on.
+	 * @throws IOException
+	 *             If the port can't be listened on.
+	 */
+	public int bind() throws IOException {
+		this.selector = Selector.open();
+		this.server = ServerSocketChannel.open();
+		this.server.configureBlocking(false);
+		this.server.socket().bind(new InetSocketAddress(this.port));
+		this.server.register(this.selector, SelectionKey.OP_ACCEPT);
+		this.running = true;
+		int localPort = this.server.socket().getLocalPort();
+		this.logger.info("Hosting a " + this.playerCode
+				+ " player game on port " + localPort + ".");
+		return localPort;
+	}
+
+	/**
+	 * Streams the game to spectators as it is played.
+	 *
+	 * @param spectatorServer
+	 *            Bound server each update is published to, null for none.
+	 */
+	public void setSpectators(final SpectatorServer spectatorServer) {
+		this.spectators = spectatorServer;
+	}
+
+	/**
+	 * Waits for the players, then plays the game until it is over or the
+	 * host is stopped. The host can't be run again afterwards.
+	 *
+	 * @throws IOException
+	 *             If the sockets fail, not counting the players'.
+	 */
+	public void run() throws IOException {
+		if (this.selector == null)
+			throw new IllegalStateException("host must be bound first");
+		try {
+			waitForPlayers();
+			if (this.running)
+				play();
+			closeAll();
+		} finally {
+			for (NetConnection player : this.players)
+				if (player != null)
+					player.close();
+			this.server.close();
+			this.selector.close();
+			GameClock.useSystemClock();
+		}
+	}
+
+	/**
+	 * Stops the host, from any thread. The game ends on the next update.
+	 */
+	public void stop() {
+		this.running = false;
+		if (this.selector != null)
+			this.selector.wakeup();
+	}
+
+	/**
+	 * Accepts players until every one is connected, then welcomes them.
+	 *
+	 * @throws IOException
+	 *             If the sockets fail.
+	 */
+	private void waitForPlayers() throws IOException {
+		while (this.running && connectedPlayers() < this.players.length) {
+			this.selector.select();
+			handleKeys();
+		}
+		for (int i = 0; i < this.players.length; i++) {
+			if (this.players[i] == null)
+				continue;
+			ByteBuffer message = this.players[i]
+					.newMessage(NetProtocol.WELCOME);
+			message.put((byte) (i + 1));
+			message.put((byte) this.playerCode);
+			send(i, message);
+		}
+	}
+
+	/**
+	 * Plays the game, one update per frame, reading the keys in between.
+	 *
+	 * @throws IOException
+	 *             If the sockets fail.
+	 */
+	private void play() throws IOException {
+		this.base = this.pool.getBuffer();
+		this.state = this.pool.getBuffer();
+		this.delta = this.pool.getBuffer();
+		this.clock = GameClock.simulate(System.currentTimeMillis());
+		this.context = GameContext.headless(null);
+		this.levelSettings = Core.getLevelSettings(this.difficultyCode);
+		this.gameState = LevelProgression.newGame(this.playerCode,
+				this.difficultyCode, this.seed);
+		startLevel();
+
+		long nextTick = System.nanoTime();
+		while (this.running) {
+			long wait = nextTick - System.nanoTime();
+			if (wait > 0)
+				this.selector.select(Math.max(1,
+						TimeUnit.NANOSECONDS.toMillis(wait)));
+			else
+				this.selector.selectNow();
+			handleKeys();
+
+			long now = System.nanoTime();
+			if (now - nextTick >= 0) {
+				tick();
+				nextTick += FRAME_NANOS;
+				if (now - nextTick > FRAME_NANOS * MAX_LATE_FRAMES)
+					nextTick = now;
+			}
+			if (connectedPlayers() == 0) {
+				this.logger.info("Every player left, game ended.");
+				this.running = false;
+			}
+		}
+	}
+
+	/**
+	 * Plays one update and sends its snapshot to every player.
+	 */
+	private void tick() {
+		this.clock.use();
+		this.clock.advance(FRAME_TIME);
+		int input = 0;
+		for (int i = 0; i < this.players.length; i++)
+			if (this.players[i] != null)
+				input |= NetProtocol.playerInput(this.inputs[i], i + 1);
+		this.gameScreen.tick(input);
+		this.tick++;
+		if (this.spectators != null)
+			this.spectators.publish(this.gameScreen);
+
+		this.state.clear();
+		this.gameScreen.writeState(this.state);
+		int length = this.state.position();
+		this.delta.clear();
+		DeltaCodec.encode(this.base, this.baseLength, this.state, length,
+				this.delta);
+		this.delta.flip();
+		this.snapshots++;
+		this.stateBytes += length;
+		if (this.baseLength == 0) {
+			this.fullSnapshots++;
+			this.fullBytes += this.delta.remaining();
+		} else {
+			this.deltaBytes += this.delta.remaining();
+		}
+
+		for (int i = 0; i < this.players.length; i++) {
+			NetConnection player = this.players[i];
+			if (player == null)
+				continue;
+			if (player.getQueuedMessages() > MAX_QUEUED) {
+				disconnect(i, "too slow");
+				continue;
+			}
+			ByteBuffer message = player.newMessage(NetProtocol.SNAPSHOT);
+			message.putInt(this.tick);
+			message.putLong(GameClock.currentTimeMillis());
+			message.putInt(this.sequences[0]);
+			message.putInt(this.sequences[1]);
+			this.delta.rewind();
+			message.put(this.delta);
+			send(i, message);
+		}
+		ByteBuffer sent = this.base;
+		this.base = this.state;
+		this.state = sent;
+		this.baseLength = length;
+
+		if (!this.gameScreen.isRunning)
+			endLevel();
+	}
+
+	/**
+	 * Creates the screen of the level the game state is at and sends it to
+	 * the players. Its first snapshot is a whole state.
+	 */
+	private void startLevel() {
+		boolean bonusLife = LevelProgression.hasBonusLife(this.gameState);
+		GameSettings settings = this.levelSettings.get(this.gameState
+				.getLevel() - 1);
+		this.gameScreen = new GameScreen(this.gameState, settings, bonusLife,
+				GameServer.WIDTH, GameServer.HEIGHT, GameServer.FPS,
+				this.context);
+		this.gameScreen.initialize();
+		this.gameScreen.isRunning = true;
+		this.tick = 0;
+		this.baseLength = 0;
+
+		for (int i = 0; i < this.players.length; i++) {
+			if (this.players[i] == null)
+				continue;
+			ByteBuffer message = this.players[i]
+					.newMessage(NetProtocol.LEVEL);
+			NetProtocol.writeLevel(message, this.gameState, settings,
+					bonusLife, GameClock.currentTimeMillis());
+			send(i, message);
+		}
+		this.logger.info("Level " + this.gameState.getLevel()
+				+ " started.");
+	}
+
+	/**
+	 * Scores the level just finished and moves to the next one, or ends the
+	 * game.
+	 */
+	private void endLevel() {
+		this.gameScreen.addEndOfLevelScore();
+		GameState played = this.gameScreen.getGameState();
+		this.gameState = LevelProgression.nextLevel(played);
+		if (!LevelProgression.isGameOver(this.gameState)) {
+			startLevel();
+			return;
+		}
+		for (int i = 0; i < this.players.length; i++)
+			if (this.players[i] != null)
+				send(i, this.players[i].newMessage(NetProtocol.GAME_OVER));
+		this.logger.info("Game over, scores " + played.getScore()
+				.getPlayer1Value() + " and "
+				+ played.getScore().getPlayer2Value() + ".");
+		this.running = false;
+	}
+
+	/**
+	 * Handles the sockets selected: accepts players, reads their keys and
+	 * writes what is queued for them.
+	 *
+	 * @throws IOException
+	 *             If a player can't be accepted.
+	 */
+	private void handleKeys() throws IOException {
+		Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+		while (keys.hasNext()) {
+			SelectionKey key = keys.next();
+			keys.remove();
+			if (!key.isValid())
+				continue;
+			if (key.isAcceptable()) {
+				accept();
+				continue;
+			}
+			NetConnection connection = (NetConnection) key.attachment();
+			int player = indexOf(connection);
+			if (player < 0)
+				continue;
+			try {
+				if (key.isWritable())
+					connection.flush();
+				if (key.isReadable())
+					readInputs(player);
+			} catch (IOException e) {
+				disconnect(player, e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Accepts a player, or turns them away if the game is full.
+	 *
+	 * @throws IOException
+	 *             If the socket can't be set up.
+	 */
+	private void accept() throws IOException {
+		SocketChannel channel = this.server.accept();
+		if (channel == null)
+			return;
+		int player = indexOf(null);
+		if (player < 0 || this.gameScreen != null) {
+			channel.close();
+			return;
+		}
+		this.players[player] = new NetConnection(channel, this.pool);
+		this.players[player].register(this.selector);
+		this.logger.info("Player " + (player + 1) + " connected from "
+				+ channel.socket().getRemoteSocketAddress() + ".");
+	}
+
+	/**
+	 * Reads the messages a player has sent.
+	 *
+	 * @param player
+	 *            Index of the player.
+	 * @throws IOException
+	 *             If the connection is broken or the message is wrong.
+	 */
+	private void readInputs(final int player) throws IOException {
+		ByteBuffer message;
+		while ((message = this.players[player].receive()) != null) {
+			byte type = message.get();
+			if (type != NetProtocol.INPUT)
+				throw new IOException("Unexpected message: " + type);
+			int sequence = message.getInt();
+			int input = message.get();
+			if (sequence - this.sequences[player] > 0) {
+				this.sequences[player] = sequence;
+				this.inputs[player] = input;
+			}
+		}
+	}
+
+	/**
+	 * Sends a message to a player, dropping them if the socket fails.
+	 *
+	 * @param player
+	 *            Index of the player.
+	 * @param message
+	 *            Message started with newMessage.
+	 */
+	private void send(final int player, final ByteBuffer message) {
+		try {
+			this.players[player].send(message);
+		} catch (IOException e) {
+			disconnect(player, e.getMessage());
+		}
+	}
+
+	/**
+	 * Closes the connection of a player. Their ship stays, without keys.
+	 *
+	 * @param player
+	 *            Index of the player.
+	 * @param reason
+	 *            Why they are dropped.
+	 */
+	private void disconnect(final int player, final String reason) {
+		this.players[player].close();
+		this.players[player] = null;
+		this.inputs[player] = 0;
+		this.logger.info("Player " + (player + 1) + " disconnected: "
+				+ reason + ".");
+	}
+
+	/**
+	 * Waits a little for the last messages to be written.
+	 *
+	 * @throws IOException
+	 *             If the selector fails.
+	 */
+	private void closeAll() throws IOException {
+		long end = System.currentTimeMillis() + CLOSE_TIMEOUT;
+		while (System.currentTimeMillis() < end) {
+			boolean flushed = true;
+			for (NetConnection player : this.players)
+				if (player != null && player.getQueuedMessages() > 0)
+					flushed = false;
+			if (flushed)
+				return;
+			this.selector.select(end - System.currentTimeMillis() + 1);
+			handleKeys();
+		}
+	}
+
+	/**
+	 * Finds a player by connection.
+	 *
+	 * @param connection
+	 *            Connection to look for, null for a free place.
+	 * @return Index of the player, -1 if not found.
+	 */
+	private int indexOf(final NetConnection connection) {
+		for (int i = 0; i < this.players.length; i++)
+			if (this.players[i] == connection)
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Counts the players connected.
+	 *
+	 * @return Players with a connection.
+	 */
+	private int connectedPlayers() {
+		int connected = 0;
+		for (NetConnection player : this.players)
+			if (player != null)
+				connected++;
+		return connected;
+	}
+
+	/**
+	 * Getter for the number of snapshots encoded.
+	 *
+	 * @return Snapshots, each sent to every player.
+	 */
+	public long getSnapshots() {
+		return this.snapshots;
+	}
+
+	/**
+	 * Getter for the average size of the first snapshot of each level.
+	 *
+	 * @return Bytes of the delta from nothing, on average.
+	 */
+	public double getAverageFullSize() {
+		return this.fullSnapshots == 0 ? 0
+				: (double) this.fullBytes / this.fullSnapshots;
+	}
+
+	/**
+	 * Getter for the average size of the other snapshots.
+	 *
+	 * @return Bytes of the delta, on average.
+	 */
+	public double getAverageDeltaSize() {
+		long deltas = this.snapshots - this.fullSnapshots;
+		return deltas == 0 ? 0 : (double) this.deltaBytes / deltas;
+	}
+
+	/**
+	 * Getter for the average size of the game states encoded.
+	 *
+	 * @return Bytes of the state, on average.
+	 */
+	public double getAverageStateSize() {
+		return this.snapshots == 0 ? 0
+				: (double) this.stateBytes / this.snapshots;
+	}
+
+	/**
+	 * Hosts a game until it is over.
+	 *
+	 * @param args
+	 *            Port, number of players, difficulty code and the port
+	 *            spectators watch on, all optional. The game is streamed
+	 *            to spectators only if that port is given.
+	 * @throws IOException
+	 *             If a port can't be listened on.
+	 * @throws InterruptedException
+	 *             If interrupted while the spectators take the end.
+	 */
+	public static void main(final String[] args) throws IOException,
+			InterruptedException {
+		int port = DEFAULT_PORT;
+		int playerCode = 2;
+		int difficultyCode = DEFAULT_DIFFICULTY;
+		int spectatorPort = -1;
+		try {
+			if (args.length > 0)
+				port = Integer.parseInt(args[0]);
+			if (args.length > 1)
+				playerCode = Integer.parseInt(args[1]);
+			if (args.length > 2)
+				difficultyCode = Integer.parseInt(args[2]);
+			if (args.length > 3)
+				spectatorPort = Integer.parseInt(args[3]);
+		} catch (NumberFormatException e) {
+			port = -1;
+		}
+		if (args.length > 4 || port < 0 || playerCode < 1 || playerCode > 2
+				|| difficultyCode < 1 || difficultyCode > 3
+				|| (args.length > 3 && spectatorPort < 0)) {
+			System.err.println("Usage: NetHost [port] [players] "
+					+ "[difficulty] [spectator port]");
+			System.exit(EXIT_USAGE);
+		}
+
+		System.setProperty("java.awt.headless", "true");
+		NetHost host = new NetHost(port, playerCode, difficultyCode,
+				System.nanoTime(), Core.getLogger());
+		SpectatorServer spectators = null;
+		if (spectatorPort >= 0) {
+			spectators = new SpectatorServer(spectatorPort,
+					SpectatorServer.Mode.STATE, Core.getLogger());
+			spectators.bind();
+			host.setSpectators(spectators);
+		}
+		host.bind();
+		host.run();
+		if (spectators != null)
+			spectators.close();
+		System.exit(0);
+	}
+}
@@ -0,0 +1,194 @@
+package screen;
+
+import java.nio.ByteBuffer;
+
+import engine.DeltaCodec;
+import engine.GameSettings;
+import engine.GameState;
+import engine.NetConnection;
+import engine.ReplayRecorder;
+import entity.Pair;
+
+/**
+ * Messages of network games, between the host and its clients.
+ *
+ * The host sends WELCOME once both players are connected, LEVEL when a
+ * level starts, then a SNAPSHOT every update: the game state as a delta
+ * from the one sent before, the first one of a level from nothing. Over a
+ * stream socket every snapshot arrives, in order, so the last one is always
+ * the base of the next. GAME_OVER ends the game. Clients send INPUT, the
+ * keys held, every frame.
+ *
+ * Spectators only receive. A KEYFRAME holds a whole update, as a delta
+ * from nothing, and each FRAME after it the delta of an update from that
+ * keyframe, so that a spectator may skip any frame. GAME_OVER ends the
+ * stream.
+ *
+ */
+final class NetProtocol {
+
+	/** Host to client: player number and number of players. */
+	static final byte WELCOME = 1;
+	/** Host to client: state and settings of the level starting. */
+	static final byte LEVEL = 2;
+	/** Host to client: update, game time, inputs applied and the delta. */
+	static final byte SNAPSHOT = 3;
+	/** Host to client: the game is over. */
+	static final byte GAME_OVER = 4;
+	/** Client to host: sequence number and keys held. */
+	static final byte INPUT = 5;
+	/** Server to spectator: mode, new level, update, level and delta. */
+	static final byte KEYFRAME = 6;
+	/** Server to spectator: keyframe, update, game time and delta. */
+	static final byte FRAME = 7;
+
+	/** Bytes of a snapshot before the delta. */
+	static final int SNAPSHOT_HEADER = 4 + 8 + 4 + 4;
+	/** Largest message, a snapshot of the largest state. */
+	static final int MAX_MESSAGE_SIZE = NetConnection.HEADER_SIZE
+			+ SNAPSHOT_HEADER
+			+ DeltaCodec.maxEncodedLength(ReplayRecorder.MAX_STATE_SIZE);
+
+	/** Bytes of the payload of a LEVEL message. */
+	static final int LEVEL_SIZE = 8 + 4 + 4 * 8 + 1 + 1 + 8 + 1 + 4 * 4;
+	/** Bytes of a keyframe before the delta, at most. */
+	static final int KEYFRAME_HEADER = 1 + 1 + 4 + LEVEL_SIZE;
+	/** Bytes of a frame before the delta. */
+	static final int FRAME_HEADER = 4 + 4 + 8;
+	/** Bytes of the largest screen sent to spectators, 4 per pixel. */
+	static final int MAX_FRAME_SIZE = GameServer.WIDTH * GameServer.HEIGHT
+			* 4;
+	/** Largest spectator message, a keyframe of the largest update. */
+	static final int MAX_SPECTATOR_MESSAGE_SIZE = NetConnection.HEADER_SIZE
+			+ KEYFRAME_HEADER + DeltaCodec.maxEncodedLength(Math.max(
+					ReplayRecorder.MAX_STATE_SIZE, MAX_FRAME_SIZE));
+
+	/**
+	 * Private constructor, constants and static methods only.
+	 */
+	private NetProtocol() {
+
+	}
+
+	/**
+	 * Keeps the keys of one player from an input mask, so that a client
+	 * can't move the other ship. Either set of keys moves the player's own.
+	 *
+	 * @param input
+	 *            Keys held by the client, as a GameScreen input mask.
+	 * @param player
+	 *            Player of the client, 1 or 2.
+	 * @return Input mask with the keys of the player only.
+	 */
+	static int playerInput(final int input, final int player) {
+		boolean left = (input & (GameScreen.INPUT_LEFT
+				| GameScreen.INPUT_A)) != 0;
+		boolean right = (input & (GameScreen.INPUT_RIGHT
+				| GameScreen.INPUT_D)) != 0;
+		boolean shoot = (input & (GameScreen.INPUT_SPACE
+				| GameScreen.INPUT_ENTER)) != 0;
+		if (player == 1)
+			return (left ? GameScreen.INPUT_A : 0)
+					| (right ? GameScreen.INPUT_D : 0)
+					| (shoot ? GameScreen.INPUT_SPACE : 0);
+		return (left ? GameScreen.INPUT_LEFT : 0)
+				| (right ? GameScreen.INPUT_RIGHT : 0)
+				| (shoot ? GameScreen.INPUT_ENTER : 0);
+	}
+
+	/**
+	 * Writes the payload of a LEVEL message.
+	 *
+	 * @param buffer
+	 *            Message to write to.
+	 * @param gameState
+	 *            State the level starts with.
+	 * @param settings
+	 *            Settings of the level.
+	 * @param bonusLife
+	 *            If the level gives an extra life.
+	 * @param time
+	 *            Game time the level starts at, in milliseconds.
+	 */
+	static void writeLevel(final ByteBuffer buffer, final GameState gameState,
+			final GameSettings settings, final boolean bonusLife,
+			final long time) {
+		buffer.putLong(time);
+		buffer.putInt(gameState.getLevel());
+		writePair(buffer, gameState.getScore());
+		writePair(buffer, gameState.getLivesRemaining());
+		writePair(buffer, gameState.getBulletsShot());
+		writePair(buffer, gameState.getShipsDestroyed());
+		buffer.put((byte) gameState.getPlayerCode());
+		buffer.put((byte) gameState.getDifficultyCode());
+		buffer.putLong(gameState.getSeed());
+		buffer.put((byte) (bonusLife ? 1 : 0));
+		buffer.putInt(settings.getFormationWidth());
+		buffer.putInt(settings.getFormationHeight());
+		buffer.putInt(settings.getBaseSpeed());
+		buffer.putInt(settings.getShootingFrecuency());
+	}
+
+	/**
+	 * Reads the game state of a LEVEL message, after its time.
+	 *
+	 * @param buffer
+	 *            Message to read from.
+	 * @return State the level starts with.
+	 */
+	static GameState readLevelState(final ByteBuffer buffer) {
+		int level = buffer.getInt();
+		Pair score = readPair(buffer);
+		Pair lives = readPair(buffer);
+		Pair bulletsShot = readPair(buffer);
+		Pair shipsDestroyed = readPair(buffer);
+		int playerCode = buffer.get();
+		int difficultyCode = buffer.get();
+		long seed = buffer.getLong();
+		return new GameState(level, score, lives, bulletsShot,
+				shipsDestroyed, playerCode, difficultyCode, seed);
+	}
+
+	/**
+	 * Reads the settings of a LEVEL message, after its game state and
+	 * bonus life.
+	 *
+	 * @param buffer
+	 *            Message to read from.
+	 * @return Settings of the level.
+	 */
+	static GameSettings readLevelSettings(final ByteBuffer buffer) {
+		int formationWidth = buffer.getInt();
+		int formationHeight = buffer.getInt();
+		int baseSpeed = buffer.getInt();
+		int shootingFrecuency = buffer.getInt();
+		return new GameSettings(formationWidth, formationHeight, baseSpeed,
+				shootingFrecuency);
+	}
+
+	/**
+	 * Writes both values of a pair.
+	 *
+	 * @param buffer
+	 *            Buffer to write to.
+	 * @param pair
+	 *            Pair to write.
+	 */
+	private static void writePair(final ByteBuffer buffer, final Pair pair) {
+		buffer.putInt(pair.getPlayer1Value());
+		buffer.putInt(pair.getPlayer2Value());
+	}
+
+	/**
+	 * Reads a pair written by writePair.
+	 *
+	 * @param buffer
+	 *            Buffer to read from.
+	 * @return New pair.
+	 */
+	private static Pair readPair(final ByteBuffer buffer) {
+		int player1 = buffer.getInt();
+		int player2 = buffer.getInt();
+		return new Pair(player1, player2);
+	}
+}
@@ -0,0 +1,113 @@
+package screen;
+
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.logging.Level;
+
+/**
+ * Plays a network game in the window. The keys held are sent to the host
+ * every frame and the last snapshot it sent is drawn. Escape leaves.
+ *
+ */
+public class NetScreen extends Screen {
+
+	/** Name or address of the host. */
+	private final String host;
+	/** Port the host listens on. */
+	private final int port;
+	/** Client of the game. */
+	private final NetClient client;
+
+	/**
+	 * Constructor, establishes the properties of the screen.
+	 *
+	 * @param host
+	 *            Name or address of the host.
+	 * @param port
+	 *            Port the host listens on.
+	 * @param width
+	 *            Screen width.
+	 * @param height
+	 *            Screen height.
+	 * @param fps
+	 *            Frames per second, frame rate at which the game is run.
+	 */
+	public NetScreen(final String host, final int port, final int width,
+			final int height, final int fps) {
+		super(width, height, fps);
+		this.host = host;
+		this.port = port;
+		this.client = new NetClient(this.drawManager);
+	}
+
+	/**
+	 * Connects to the host and plays until the game is over.
+	 *
+	 * @return Next screen code.
+	 */
+	public final int run() {
+		try {
+			this.client.connect(this.host, this.port);
+		} catch (IOException e) {
+			this.logger.log(Level.WARNING, "Couldn't connect to "
+					+ this.host + ":" + this.port + ".", e);
+			return this.returnCode;
+		}
+		this.logger.info("Connected to " + this.host + ":" + this.port
+				+ ".");
+		super.run();
+		this.client.close();
+		this.logger.info(String.format(Locale.ROOT, "Received %d "
+				+ "snapshots, %d bytes in and %d out, input latency %.1f "
+				+ "ms on average, %.1f ms p99.", this.client.getSnapshots(),
+				this.client.getBytesReceived(), this.client.getBytesSent(),
+				this.client.getLatency().getMean(), this.client.getLatency()
+						.getPercentile(99)));
+
+		return this.returnCode;
+	}
+
+	/**
+	 * Sends the keys, applies what the host sent and draws it. Cooldowns
+	 * are not used here, the clock of the thread is the host's.
+	 */
+	protected final void update() {
+		super.update();
+
+		if (this.inputManager.isKeyDown(KeyEvent.VK_ESCAPE)) {
+			this.isRunning = false;
+			return;
+		}
+		try {
+			this.client.sendInput(GameScreen.readInput(this.inputManager));
+			if (!this.client.update()) {
+				this.isRunning = false;
+				return;
+			}
+		} catch (IOException e) {
+			this.logger.log(Level.WARNING, "Lost the connection to the "
+					+ "host.", e);
+			this.isRunning = false;
+			return;
+		}
+
+		if (this.client.getGameScreen() != null) {
+			this.client.draw();
+		} else {
+			this.drawManager.initDrawing(this);
+			this.drawManager.drawPausedMessage(this, "Waiting for players");
+			this.drawManager.completeDrawing(this);
+		}
+	}
+
+	/**
+	 * Returns the code of the screen in event recordings.
+	 *
+	 * @return Code of the network game screen.
+	 */
+	@Override
+	public int getCode() {
+		return CODE_NET;
+	}
+}
@@ -104,4 +104,14 @@ public class PlayerSelectScreen extends Screen {
 
 		drawManager.completeDrawing(this);
 	}
+
+	/**
+	 * Returns the code of the screen in event recordings.
+	 * 
+	 * @return Code of the player select screen.
+	 */
+	@Override
+	public int getCode() {
+		return CODE_PLAYER_SELECT;
+	}
 }
@@ -0,0 +1,279 @@
+package screen;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+
+import engine.Core;
+import engine.DrawManager;
+import engine.GameClock;
+import engine.GameContext;
+import engine.GameState;
+import engine.Replay;
+import entity.Pair;
+
+/**
+ * Plays a replay back on the calling thread, feeding the recorded keys to a
+ * game screen at the recorded times of a simulated clock. Each level starts
+ * from its recorded state, and seeking restores the last keyframe before
+ * the target and simulates the rest without drawing.
+ *
+ * Run as a program to play a replay without a display, as fast as it goes,
+ * and check that each level ends as it did when it was recorded. Exits with
+ * 0 if they all do, 1 if any doesn't and 2 on bad arguments.
+ *
+ */
+public final class ReplayPlayer {
+
+	/** Width of the screens, as in the game. */
+	private static final int WIDTH = 448;
+	/** Height of the screens, as in the game. */
+	private static final int HEIGHT = 520;
+	/** Frames per second, as in the game. */
+	private static final int FPS = 60;
+
+	/** Replay being played. */
+	private final Replay replay;
+	/** Screen width. */
+	private final int width;
+	/** Screen height. */
+	private final int height;
+	/** Frames per second of the screens. */
+	private final int fps;
+	/** Managers of the screens, the keys come from the replay. */
+	private final GameContext context;
+
+	/** Simulated clock of the level being played. */
+	private GameClock clock;
+	/** Index of the level being played. */
+	private int levelIndex;
+	/** Level being played. */
+	private Replay.Level level;
+	/** Screen of the level being played. */
+	private GameScreen gameScreen;
+	/** Next update to play. */
+	private int tick;
+
+	/**
+	 * Constructor, gets the first level ready to play.
+	 *
+	 * @param replay
+	 *            Replay to play, with at least one level.
+	 * @param width
+	 *            Screen width.
+	 * @param height
+	 *            Screen height.
+	 * @param fps
+	 *            Frames per second of the screens.
+	 * @param drawManager
+	 *            Draw manager the levels are drawn with.
+	 */
+	public ReplayPlayer(final Replay replay, final int width,
+			final int height, final int fps, final DrawManager drawManager) {
+		this.replay = replay;
+		this.width = width;
+		this.height = height;
+		this.fps = fps;
+		this.context = GameContext.headless(drawManager);
+		startLevel(0, 0);
+	}
+
+	/**
+	 * Creates the screen of a level and brings it to the last keyframe at or
+	 * before an update.
+	 *
+	 * @param index
+	 *            Index of the level.
+	 * @param target
+	 *            Update to start close to.
+	 */
+	private void startLevel(final int index, final int target) {
+		this.levelIndex = index;
+		this.level = this.replay.getLevels().get(index);
+		this.clock = GameClock.simulate(this.level.getStartTime());
+
+		this.gameScreen = new GameScreen(this.level.getStartState(),
+				this.level.getSettings(), this.level.isBonusLife(),
+				this.width, this.height, this.fps, this.context);
+		this.gameScreen.initialize();
+		this.gameScreen.isRunning = true;
+		this.tick = 0;
+
+		int keyframe = this.level.findKeyframe(target);
+		if (keyframe >= 0) {
+			this.gameScreen.readState(this.level.getKeyframe(keyframe));
+			this.tick = this.level.getKeyframeTick(keyframe);
+		}
+	}
+
+	/**
+	 * Plays the next update of the level, without drawing it.
+	 *
+	 * @return False if every update of the level has been played.
+	 */
+	public boolean step() {
+		if (this.tick >= this.level.getTicks())
+			return false;
+		this.clock.advanceTo(this.level.getTime(this.tick));
+		this.gameScreen.tick(this.level.getInput(this.tick));
+		this.tick++;
+		return true;
+	}
+
+	/**
+	 * Moves to an update of the level being played. Only the updates after
+	 * the closest keyframe are simulated.
+	 *
+	 * @param target
+	 *            Update to move to, from 0.
+	 */
+	public void seek(final int target) {
+		int clamped = Math.max(0, Math.min(target, this.level.getTicks()));
+		int keyframe = this.level.findKeyframe(clamped);
+		int keyframeTick = keyframe < 0 ? 0
+				: this.level.getKeyframeTick(keyframe);
+		if (clamped < this.tick || keyframeTick > this.tick)
+			startLevel(this.levelIndex, clamped);
+		while (this.tick < clamped)
+			step();
+	}
+
+	/**
+	 * Ends the level being played, adding the end of level score.
+	 *
+	 * @return State at the end of the level.
+	 */
+	public GameState endLevel() {
+		this.gameScreen.addEndOfLevelScore();
+		return this.gameScreen.getGameState();
+	}
+
+	/**
+	 * Moves to the start of the next level.
+	 *
+	 * @return False if this was the last level.
+	 */
+	public boolean nextLevel() {
+		if (this.levelIndex + 1 >= this.replay.getLevels().size())
+			return false;
+		startLevel(this.levelIndex + 1, 0);
+		return true;
+	}
+
+	/**
+	 * Draws the level as it is after the last update played.
+	 */
+	public void draw() {
+		this.gameScreen.draw();
+	}
+
+	/**
+	 * Getter for the level being played.
+	 *
+	 * @return Recorded level.
+	 */
+	public Replay.Level getLevel() {
+		return this.level;
+	}
+
+	/**
+	 * Getter for the next update to play.
+	 *
+	 * @return Update, from 0.
+	 */
+	public int getTick() {
+		return this.tick;
+	}
+
+	/**
+	 * Getter for the screen of the level being played.
+	 *
+	 * @return Game screen.
+	 */
+	public GameScreen getGameScreen() {
+		return this.gameScreen;
+	}
+
+	/**
+	 * Plays a replay without a display and checks how each level ends.
+	 *
+	 * @param args
+	 *            Path of the replay.
+	 * @throws IOException
+	 *             In case the replay can't be read.
+	 */
+	public static void main(final String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("Usage: ReplayPlayer <replay>");
+			System.exit(2);
+		}
+		System.setProperty("java.awt.headless", "true");
+		Core.getLogger().setLevel(Level.WARNING);
+
+		long start = System.nanoTime();
+		Replay replay = Core.getFileManager().loadReplay(new File(args[0]));
+		long loaded = System.nanoTime();
+		System.out.println(String.format("Loaded %d levels in %.1f ms.",
+				replay.getLevels().size(), (loaded - start) / 1e6));
+		if (replay.getLevels().isEmpty())
+			System.exit(0);
+
+		ReplayPlayer player = new ReplayPlayer(replay, WIDTH, HEIGHT, FPS,
+				Core.getOffscreenDrawManager(WIDTH, HEIGHT));
+		boolean matched = true;
+		long ticks = 0;
+		do {
+			while (player.step())
+				ticks++;
+			GameState played = player.endLevel();
+			GameState recorded = player.getLevel().getEndState();
+			boolean same = recorded != null && sameState(played, recorded);
+			matched &= same;
+			System.out.println("Level " + player.getLevel().getLevel()
+					+ ": " + player.getLevel().getTicks() + " updates, score "
+					+ played.getScore().getPlayer1Value() + "/"
+					+ played.getScore().getPlayer2Value() + ", lives "
+					+ played.getLivesRemaining().getPlayer1Value() + "/"
+					+ played.getLivesRemaining().getPlayer2Value() + ", "
+					+ (recorded == null ? "unfinished when recorded"
+							: same ? "as recorded" : "DIFFERENT from the "
+									+ "recording"));
+		} while (player.nextLevel());
+
+		double seconds = (System.nanoTime() - loaded) / 1e9;
+		System.out.println(String.format("Played %d updates in %.2f s, "
+				+ "%.0f updates per second.", ticks, seconds,
+				ticks / seconds));
+		System.exit(matched ? 0 : 1);
+	}
+
+	/**
+	 * Compares the counts of two game states.
+	 *
+	 * @param a
+	 *            First state.
+	 * @param b
+	 *            Second state.
+	 * @return True if score, lives, bullets shot and ships destroyed match.
+	 */
+	private static boolean sameState(final GameState a, final GameState b) {
+		return samePair(a.getScore(), b.getScore())
+				&& samePair(a.getLivesRemaining(), b.getLivesRemaining())
+				&& samePair(a.getBulletsShot(), b.getBulletsShot())
+				&& samePair(a.getShipsDestroyed(), b.getShipsDestroyed());
+	}
+
+	/**
+	 * Compares two pairs.
+	 *
+	 * @param a
+	 *            First pair.
+	 * @param b
+	 *            Second pair.
+	 * @return True if both values match.
+	 */
+	private static boolean samePair(final Pair a, final Pair b) {
+		return a.getPlayer1Value() == b.getPlayer1Value()
+				&& a.getPlayer2Value() == b.getPlayer2Value();
+	}
+}
@@ -0,0 +1,116 @@
+package screen;
+
+import java.awt.event.KeyEvent;
+
+import engine.Replay;
+
+/**
+ * Shows a recorded game. Up and down change the playback speed, left and
+ * right go back and forward a few seconds, escape closes the replay.
+ *
+ */
+public class ReplayScreen extends Screen {
+
+	/** Fastest playback speed, in updates per frame. */
+	private static final int MAX_SPEED = 64;
+	/** Updates skipped by left and right, 10 seconds of play. */
+	private static final int SEEK_TICKS = 600;
+	/** Keys that act when pressed: faster, slower, back and forward. */
+	private static final int[] KEYS = { KeyEvent.VK_UP, KeyEvent.VK_DOWN,
+			KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT };
+
+	/** Player of the replay. */
+	private final ReplayPlayer player;
+	/** Updates played each frame. */
+	private int speed;
+	/** Keys held on the last frame, so that holding one acts once. */
+	private final boolean[] keysDown;
+
+	/**
+	 * Constructor, establishes the properties of the screen.
+	 *
+	 * @param replay
+	 *            Replay to show, with at least one level.
+	 * @param width
+	 *            Screen width.
+	 * @param height
+	 *            Screen height.
+	 * @param fps
+	 *            Frames per second, frame rate at which the game is run.
+	 */
+	public ReplayScreen(final Replay replay, final int width,
+			final int height, final int fps) {
+		super(width, height, fps);
+		this.player = new ReplayPlayer(replay, width, height, fps,
+				this.drawManager);
+		this.speed = 1;
+		this.keysDown = new boolean[KEYS.length];
+	}
+
+	/**
+	 * Starts the action.
+	 *
+	 * @return Next screen code.
+	 */
+	public final int run() {
+		super.run();
+
+		return this.returnCode;
+	}
+
+	/**
+	 * Plays the updates of the frame and draws the last one. Cooldowns are
+	 * not used here, the clock of the thread is the replay's.
+	 */
+	protected final void update() {
+		super.update();
+
+		if (this.inputManager.isKeyDown(KeyEvent.VK_ESCAPE)) {
+			this.isRunning = false;
+			return;
+		}
+		if (pressed(0) && this.speed < MAX_SPEED) {
+			this.speed *= 2;
+			this.logger.info("Replay speed x" + this.speed);
+		}
+		if (pressed(1) && this.speed > 1) {
+			this.speed /= 2;
+			this.logger.info("Replay speed x" + this.speed);
+		}
+		if (pressed(2))
+			this.player.seek(this.player.getTick() - SEEK_TICKS);
+		if (pressed(3))
+			this.player.seek(this.player.getTick() + SEEK_TICKS);
+
+		for (int i = 0; i < this.speed; i++)
+			if (!this.player.step() && !this.player.nextLevel()) {
+				this.isRunning = false;
+				break;
+			}
+		this.player.draw();
+	}
+
+	/**
+	 * Checks if a key has just been pressed.
+	 *
+	 * @param key
+	 *            Index of the key in KEYS.
+	 * @return True if the key is held now and wasn't on the last frame.
+	 */
+	private boolean pressed(final int key) {
+		boolean down = this.inputManager.isKeyDown(KEYS[key]);
+		boolean wasDown = this.keysDown[key];
+		this.keysDown[key] = down;
+		return down && !wasDown;
+	}
+
+	/**
+	 * Returns the code of the screen in event recordings.
+	 *
+	 * @return Code of the replay screen.
+	 */
+	@Override
+	public int getCode() {
+		return CODE_REPLAY;
+	}
+}
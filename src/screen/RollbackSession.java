@@ -0,0 +1,327 @@
+package screen;
+
+import engine.DrawManager;
+import engine.GameClock;
+import engine.GameContext;
+import engine.GameSettings;
+import engine.GameState;
+import engine.LatencyHistogram;
+import engine.SnapshotRing;
+
+/**
+ * Plays one side of a two player level over a link with lag, with
+ * rollback. Both sides play the whole game and send each other the keys of
+ * their player for each update. The local keys are played at once, and
+ * the other player's are guessed to be the last ones received. The state
+ * before each update is saved into a ring of preallocated buffers, and
+ * when keys arrive that differ from the guess, the game goes back to the
+ * state before them and plays the updates since again.
+ *
+ * Keys must arrive in order, each update once. A side doesn't run more
+ * than MAX_PREDICTION updates ahead of the keys it has from the other one,
+ * it waits for them instead. Both sides see the same game once the keys of
+ * every update have arrived.
+ *
+ * A session plays one level. It is not thread safe, but any thread may
+ * play it; its clock is installed on each call.
+ *
+ */
+public final class RollbackSession {
+
+	/** Updates a side may play with the other player's keys guessed. */
+	public static final int MAX_PREDICTION = 8;
+
+	/** Game time of an update, in milliseconds. */
+	private static final int FRAME_TIME = 1000 / GameServer.FPS;
+	/** Keys kept per player, more than the updates the sides may be apart. */
+	private static final int INPUTS = 64;
+
+	/** Player of this side, 1 or 2. */
+	private final int localPlayer;
+	/** Simulated clock of the level. */
+	private final GameClock clock;
+	/** Screen of the level. */
+	private final GameScreen gameScreen;
+	/** State before each of the updates that may be played again. */
+	private final SnapshotRing snapshots;
+	/** Keys of this side's player for each update, by update. */
+	private final int[] localInputs;
+	/** Keys of the other player, received or guessed, by update. */
+	private final int[] remoteInputs;
+	/** Time taken to save a state. */
+	private final LatencyHistogram saveTimes;
+	/** Time taken to restore a state. */
+	private final LatencyHistogram restoreTimes;
+
+	/** Updates played. */
+	private int tick;
+	/** Updates whose keys from the other side have arrived. */
+	private int remoteTicks;
+	/** Last keys received from the other side. */
+	private int lastRemoteInput;
+	/** First update played with a wrong guess, -1 if none. */
+	private int mispredicted;
+
+	/** Times the game went back. */
+	private long rollbacks;
+	/** Updates played again. */
+	private long replayedTicks;
+	/** Most updates played again at once. */
+	private int maxRollback;
+
+	/**
+	 * Constructor, the level starts at once.
+	 *
+	 * @param gameState
+	 *            State the level starts with, of a two player game. The
+	 *            level keeps its scores in it, so it can't be shared.
+	 * @param settings
+	 *            Settings of the level.
+	 * @param bonusLife
+	 *            If the level gives an extra life.
+	 * @param localPlayer
+	 *            Player of this side, 1 or 2.
+	 * @param startTime
+	 *            Game time the level starts at, the same on both sides.
+	 * @param drawManager
+	 *            Draws the level, may be null if it isn't shown.
+	 */
+	public RollbackSession(final GameState gameState,
+			final GameSettings settings, final boolean bonusLife,
+			final int localPlayer, final long startTime,
+			final DrawManager drawManager) {
+		if (gameState.getPlayerCode() != 2)
+			throw new IllegalArgumentException("game must have two players");
+		if (localPlayer != 1 && localPlayer != 2)
+			throw new IllegalArgumentException("localPlayer must be 1 or 2");
+		this.localPlayer = localPlayer;
+		this.clock = GameClock.simulate(startTime);
+		this.gameScreen = new GameScreen(gameState, settings, bonusLife,
+				GameServer.WIDTH, GameServer.HEIGHT, GameServer.FPS,
+				GameContext.headless(drawManager));
+		this.gameScreen.initialize();
+		this.gameScreen.isRunning = true;
+		this.snapshots = new SnapshotRing(MAX_PREDICTION + 1);
+		this.localInputs = new int[INPUTS];
+		this.remoteInputs = new int[INPUTS];
+		this.saveTimes = new LatencyHistogram();
+		this.restoreTimes = new LatencyHistogram();
+		this.mispredicted = -1;
+	}
+
+	/**
+	 * Plays the next update with the keys of this side's player, unless the
+	 * level is over or the other side is too far behind.
+	 *
+	 * @param input
+	 *            Keys held, as a GameScreen input mask. Either set of keys
+	 *            moves this side's ship.
+	 * @return Update played, to send to the other side with the keys. -1
+	 *         if none was played, the keys must be given again.
+	 */
+	public int advance(final int input) {
+		this.clock.use();
+		rollback();
+		if (!this.gameScreen.isRunning
+				|| this.tick - this.remoteTicks >= MAX_PREDICTION)
+			return -1;
+
+		int slot = this.tick & (INPUTS - 1);
+		this.localInputs[slot] = NetProtocol.playerInput(input,
+				this.localPlayer);
+		if (this.tick >= this.remoteTicks)
+			this.remoteInputs[slot] = this.lastRemoteInput;
+		save(this.tick);
+		play(this.tick);
+		return this.tick++;
+	}
+
+	/**
+	 * Takes the keys the other side played an update with.
+	 *
+	 * @param remoteTick
+	 *            Update, the one after the last received.
+	 * @param input
+	 *            Keys held by the other player, as a GameScreen input mask.
+	 */
+	public void addRemoteInput(final int remoteTick, final int input) {
+		if (remoteTick < this.remoteTicks)
+			return;
+		if (remoteTick != this.remoteTicks)
+			throw new IllegalArgumentException("Keys of update "
+					+ this.remoteTicks + " are missing.");
+		if (remoteTick - this.tick >= INPUTS - MAX_PREDICTION)
+			throw new IllegalArgumentException("Keys of update "
+					+ remoteTick + " are too far ahead.");
+
+		int remoteInput = NetProtocol.playerInput(input,
+				3 - this.localPlayer);
+		int slot = remoteTick & (INPUTS - 1);
+		if (remoteTick < this.tick && this.mispredicted < 0
+				&& this.remoteInputs[slot] != remoteInput)
+			this.mispredicted = remoteTick;
+		this.remoteInputs[slot] = remoteInput;
+		this.lastRemoteInput = remoteInput;
+		this.remoteTicks++;
+	}
+
+	/**
+	 * Goes back to the first update played with a wrong guess and plays the
+	 * updates since again, with the keys received.
+	 */
+	private void rollback() {
+		if (this.mispredicted < 0)
+			return;
+		int from = this.mispredicted;
+		this.mispredicted = -1;
+		restore(from);
+		for (int t = from; t < this.tick; t++) {
+			if (t >= this.remoteTicks)
+				this.remoteInputs[t & (INPUTS - 1)] = this.lastRemoteInput;
+			if (t > from)
+				save(t);
+			play(t);
+		}
+		this.rollbacks++;
+		this.replayedTicks += this.tick - from;
+		this.maxRollback = Math.max(this.maxRollback, this.tick - from);
+	}
+
+	/**
+	 * Saves the state before an update.
+	 *
+	 * @param t
+	 *            Update about to be played.
+	 */
+	private void save(final int t) {
+		long start = System.nanoTime();
+		this.gameScreen.writeState(this.snapshots.startSave(t));
+		this.snapshots.save(t, this.clock.getTime());
+		this.saveTimes.record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Brings the level back to the state before an update.
+	 *
+	 * @param t
+	 *            Update whose state is kept.
+	 */
+	private void restore(final int t) {
+		long start = System.nanoTime();
+		this.clock.setTime(this.snapshots.getTime(t));
+		this.gameScreen.readState(this.snapshots.load(t));
+		// The level may have ended after the state was saved.
+		this.gameScreen.isRunning = true;
+		this.restoreTimes.record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Plays an update with the keys kept for it.
+	 *
+	 * @param t
+	 *            Update to play.
+	 */
+	private void play(final int t) {
+		int slot = t & (INPUTS - 1);
+		this.clock.advance(FRAME_TIME);
+		this.gameScreen.tick(this.localInputs[slot]
+				| this.remoteInputs[slot]);
+	}
+
+	/**
+	 * Checks if the level is over, with the keys of every update played
+	 * received.
+	 *
+	 * @return True if the level ended and won't be rolled back.
+	 */
+	public boolean isOver() {
+		this.clock.use();
+		rollback();
+		return !this.gameScreen.isRunning && this.remoteTicks >= this.tick;
+	}
+
+	/**
+	 * Draws the level as of the last update played.
+	 */
+	public void draw() {
+		this.clock.use();
+		rollback();
+		this.gameScreen.draw();
+	}
+
+	/**
+	 * Getter for the screen of the level, as of the last update played.
+	 * Rollbacks due are done first.
+	 *
+	 * @return Game screen.
+	 */
+	public GameScreen getGameScreen() {
+		this.clock.use();
+		rollback();
+		return this.gameScreen;
+	}
+
+	/**
+	 * Getter for the number of updates played.
+	 *
+	 * @return Updates played.
+	 */
+	public int getTick() {
+		return this.tick;
+	}
+
+	/**
+	 * Getter for the updates whose keys from the other side have arrived.
+	 * The game up to them won't change.
+	 *
+	 * @return Updates with both players' keys.
+	 */
+	public int getConfirmedTicks() {
+		return Math.min(this.tick, this.remoteTicks);
+	}
+
+	/**
+	 * Getter for the number of times the game went back.
+	 *
+	 * @return Rollbacks.
+	 */
+	public long getRollbacks() {
+		return this.rollbacks;
+	}
+
+	/**
+	 * Getter for the number of updates played again.
+	 *
+	 * @return Updates played again, over every rollback.
+	 */
+	public long getReplayedTicks() {
+		return this.replayedTicks;
+	}
+
+	/**
+	 * Getter for the most updates played again at once.
+	 *
+	 * @return Longest rollback, in updates.
+	 */
+	public int getMaxRollback() {
+		return this.maxRollback;
+	}
+
+	/**
+	 * Getter for the time taken to save a state.
+	 *
+	 * @return Save times.
+	 */
+	public LatencyHistogram getSaveTimes() {
+		return this.saveTimes;
+	}
+
+	/**
+	 * Getter for the time taken to restore a state.
+	 *
+	 * @return Restore times.
+	 */
+	public LatencyHistogram getRestoreTimes() {
+		return this.restoreTimes;
+	}
+}
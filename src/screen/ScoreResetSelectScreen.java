@@ -104,4 +104,14 @@ public class ScoreResetSelectScreen extends Screen {
 
         drawManager.completeDrawing(this);
     }
+
+    /**
+     * Returns the code of the screen in event recordings.
+     *
+     * @return Code of the score reset select screen.
+     */
+    @Override
+    public int getCode() {
+        return CODE_SCORE_RESET_SELECT;
+    }
 }
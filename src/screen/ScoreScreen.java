@@ -2,12 +2,12 @@ package screen;
 
 import java.awt.event.KeyEvent;
 import java.io.IOException;
-import java.util.Collections;
-import java.util.List;
 
 import engine.Cooldown;
 import engine.Core;
 import engine.GameState;
+import engine.Leaderboard;
+import engine.Metrics;
 import engine.Score;
 
 import entity.Pair;
@@ -22,8 +22,6 @@ public class ScoreScreen extends Screen {
 
 	/** Milliseconds between changes in user selection. */
 	private static final int SELECTION_TIME = 200;
-	/** Maximum number of high scores. */
-	private static final int MAX_HIGH_SCORE_NUM = 7;
 	/** Code of first mayus character. */
 	private static final int FIRST_CHAR = 65;
 	/** Code of last mayus character. */
@@ -39,8 +37,10 @@ public class ScoreScreen extends Screen {
 	private Pair shipsDestroyed;
 	/** Current Players' numbers.*/
 	private int playerCode;
-	/** List of past high scores. */
-	private List<Score> highScores;
+	/** Current difficulty code. */
+	private int difficultyCode;
+	/** Past high scores of every game mode. */
+	private Leaderboard highScores;
 	/** Checks if current score is a new high score. */
 	private boolean isNewRecord;
 	/** Player name for record input. */
@@ -65,12 +65,14 @@ public class ScoreScreen extends Screen {
 	public ScoreScreen(final int width, final int height, final int fps,
 			final GameState gameState) {
 		super(width, height, fps);
+		this.metrics.counter(Metrics.GAMES_PLAYED).increment();
 
 		this.score = gameState.getScore();
 		this.livesRemaining = gameState.getLivesRemaining();
 		this.bulletsShot = gameState.getBulletsShot();
 		this.shipsDestroyed = gameState.getShipsDestroyed();
 		this.playerCode = gameState.getPlayerCode(); // 1 or 2
+		this.difficultyCode = gameState.getDifficultyCode();
 		this.isNewRecord = false;
 		this.p1name = "AAA".toCharArray();
 		this.nameCharSelected = 0;
@@ -78,11 +80,10 @@ public class ScoreScreen extends Screen {
 		this.selectionCooldown.reset();
 
 		try {
-			this.highScores = Core.getFileManager().loadHighScores();
-			if (highScores.size() < MAX_HIGH_SCORE_NUM
-					|| highScores.get(highScores.size() - 1).getScore()
-					< this.score.getPlayer1Value())
-				this.isNewRecord = true;
+			this.highScores = Core.getFileManager().loadLeaderboard();
+			this.isNewRecord = this.highScores.isNewRecord(
+					this.difficultyCode, this.playerCode,
+					this.score.getPlayer1Value());
 
 		} catch (IOException e) {
 			logger.warning("Couldn't load high scores!");
@@ -165,17 +166,12 @@ public class ScoreScreen extends Screen {
 	 * Saves the score as a high score.
 	 */
 	private void saveScore() {
-		highScores.add(new Score(new String(this.p1name), score.getPlayer1Value()));
+		Leaderboard changed = highScores.copy();
+		changed.submit(this.difficultyCode, this.playerCode,
+				new Score(new String(this.p1name), score.getPlayer1Value(),
+						System.currentTimeMillis()));
 
-		Collections.sort(highScores);
-		if (highScores.size() > MAX_HIGH_SCORE_NUM)
-			highScores.remove(highScores.size() - 1);
-
-		try {
-			Core.getFileManager().saveHighScores(highScores);
-		} catch (IOException e) {
-			logger.warning("Couldn't load high scores!");
-		}
+		Core.getFileManager().saveLeaderboard(changed);
 	}
 
 	/**
@@ -198,4 +194,14 @@ public class ScoreScreen extends Screen {
 
 		drawManager.completeDrawing(this);
 	}
+
+	/**
+	 * Returns the code of the screen in event recordings.
+	 * 
+	 * @return Code of the score screen.
+	 */
+	@Override
+	public int getCode() {
+		return CODE_SCORE;
+	}
 }
@@ -3,12 +3,21 @@ package screen;
 import java.awt.Insets;
 import java.awt.event.KeyEvent;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Logger;
 
 import engine.Cooldown;
 import engine.Core;
 import engine.DrawManager;
+import engine.EventRecorder;
+import engine.FrameEvent;
+import engine.FrameTimeStats;
+import engine.GameContext;
+import engine.HitchDetector;
 import engine.InputManager;
+import engine.LatencyHistogram;
+import engine.Metrics;
+import engine.PerformanceOverlay;
 
 /**
  * Implements a generic screen.
@@ -21,6 +30,32 @@ public class Screen {
 	/** Milliseconds until the screen accepts user input. */
 	private static final int INPUT_DELAY = 1000;
 
+	// Codes of the screens in event recordings, never given to another.
+	/** Code of screens without one of their own. */
+	public static final int CODE_OTHER = 0;
+	/** Code of the title screen. */
+	public static final int CODE_TITLE = 1;
+	/** Code of the player select screen. */
+	public static final int CODE_PLAYER_SELECT = 2;
+	/** Code of the difficulty select screen. */
+	public static final int CODE_DIFFICULTY_SELECT = 3;
+	/** Code of the game screen. */
+	public static final int CODE_GAME = 4;
+	/** Code of the score screen. */
+	public static final int CODE_SCORE = 5;
+	/** Code of the player 2 score screen. */
+	public static final int CODE_PLAYER2_SCORE = 6;
+	/** Code of the high score screen. */
+	public static final int CODE_HIGH_SCORE = 7;
+	/** Code of the score reset select screen. */
+	public static final int CODE_SCORE_RESET_SELECT = 8;
+	/** Code of the replay screen. */
+	public static final int CODE_REPLAY = 9;
+	/** Code of the network game screen. */
+	public static final int CODE_NET = 10;
+	/** Code of the spectator screen. */
+	public static final int CODE_SPECTATOR = 11;
+
 	/** Draw Manager instance. */
 	protected DrawManager drawManager;
 	/** Input Manager instance. */
@@ -39,6 +74,13 @@ public class Screen {
 	/** Time until the screen accepts user input. */
 	protected Cooldown inputDelay;
 
+	/** Time taken by each frame, if it is being measured. */
+	protected FrameTimeStats frameTimes;
+	/** Metrics the screen counts in. */
+	protected Metrics metrics;
+	/** Recorder of the game events, kept for crash dumps. */
+	protected EventRecorder eventRecorder;
+
 	/** If the screen is running. */
 	protected boolean isRunning;
 	/** What kind of screen goes next. */
@@ -62,13 +104,33 @@ public class Screen {
 	 *            Frames per second, frame rate at which the game is run.
 	 */
 	public Screen(final int width, final int height, final int fps) {
+		this(width, height, fps, Core.getGameContext());
+	}
+
+	/**
+	 * Constructor, establishes the properties of a screen that doesn't use
+	 * the application managers.
+	 * 
+	 * @param width
+	 *            Screen width.
+	 * @param height
+	 *            Screen height.
+	 * @param fps
+	 *            Frames per second, frame rate at which the game is run.
+	 * @param context
+	 *            Managers of the game session the screen belongs to.
+	 */
+	public Screen(final int width, final int height, final int fps,
+			final GameContext context) {
 		this.width = width;
 		this.height = height;
 		this.fps = fps;
 
-		this.drawManager = Core.getDrawManager();
-		this.inputManager = Core.getInputManager();
-		this.logger = Core.getLogger();
+		this.drawManager = context.getDrawManager();
+		this.inputManager = context.getInputManager();
+		this.logger = context.getLogger();
+		this.metrics = context.getMetrics();
+		this.eventRecorder = context.getEventRecorder();
 		this.inputDelay = Core.getCooldown(INPUT_DELAY);
 		this.inputDelay.reset();
 		this.returnCode = 0;
@@ -91,19 +153,61 @@ public class Screen {
 	 */
 	public int run() {
 		this.isRunning = true;
+		LongAdder ticks = this.metrics.counter(Metrics.TICKS);
+		LongAdder missedDeadlines = this.metrics
+				.counter(Metrics.MISSED_DEADLINES);
+		LatencyHistogram tickTimes = this.metrics
+				.histogram(Metrics.TICK_TIME);
+		HitchDetector hitchDetector = Core.getHitchDetector();
 
 		while (this.isRunning) {
+			FrameEvent frameEvent = FrameEvent.isEnabled()
+					? new FrameEvent() : null;
+			if (frameEvent != null)
+				frameEvent.begin();
 			long time = System.currentTimeMillis();
+			long frameStart = System.nanoTime();
+			long drawingTime = this.drawManager.getDrawingTime();
+			PerformanceOverlay overlay = this.drawManager
+					.getPerformanceOverlay();
+			overlay.setToggleKeyDown(this.inputManager
+					.isKeyDown(KeyEvent.VK_F3));
 
 			update();
+			long frameTime = System.nanoTime() - frameStart;
+			if (frameEvent != null)
+				frameEvent.end();
+			drawingTime = this.drawManager.getDrawingTime() - drawingTime;
+			overlay.recordFrame(frameTime, drawingTime);
+			if (frameEvent != null && frameEvent.shouldCommit()) {
+				frameEvent.setScreen(getClass().getSimpleName());
+				frameEvent.setUpdateTime(frameTime - drawingTime);
+				frameEvent.setDrawTime(drawingTime);
+				frameEvent.commit();
+			}
+			if (this.frameTimes != null)
+				this.frameTimes.record(frameTime);
+			ticks.increment();
+			tickTimes.record(frameTime);
 			time = (1000 / this.fps) - (System.currentTimeMillis() - time);
+			long sleepStart = System.nanoTime();
 			if (time > 0) {
 				try {
 					TimeUnit.MILLISECONDS.sleep(time);
 				} catch (InterruptedException e) {
 					return 0;
 				}
+			} else if (time < 0) {
+				missedDeadlines.increment();
 			}
+			long frameEnd = System.nanoTime();
+			long sleepOvershoot = frameEnd - sleepStart
+					- TimeUnit.MILLISECONDS.toNanos(Math.max(0, time));
+			hitchDetector.recordFrame(this, frameEnd - frameStart,
+					frameTime - drawingTime, drawingTime,
+					Math.max(0, sleepOvershoot));
+			this.eventRecorder.recordFrame(frameEnd - frameStart,
+					frameTime - drawingTime, drawingTime);
 		}
 
 		return 0;
@@ -132,4 +236,61 @@ public class Screen {
 	public final int getHeight() {
 		return this.height;
 	}
+
+	/**
+	 * Getter for the frames per second.
+	 * 
+	 * @return Frames per second the screen runs at.
+	 */
+	public final int getFps() {
+		return this.fps;
+	}
+
+	/**
+	 * Returns the code of the screen in event recordings.
+	 * 
+	 * @return One of the CODE constants, CODE_OTHER unless overridden.
+	 */
+	public int getCode() {
+		return CODE_OTHER;
+	}
+
+	/**
+	 * Returns the level being played, for hitch reports.
+	 * 
+	 * @return Level, 0 outside the game.
+	 */
+	public int getLevel() {
+		return 0;
+	}
+
+	/**
+	 * Returns the number of entities on screen, shown by the performance
+	 * overlay.
+	 * 
+	 * @return Entities on screen.
+	 */
+	public int getEntityCount() {
+		return 0;
+	}
+
+	/**
+	 * Returns the number of bullets on screen, shown by the performance
+	 * overlay.
+	 * 
+	 * @return Bullets on screen.
+	 */
+	public int getBulletCount() {
+		return 0;
+	}
+
+	/**
+	 * Returns the number of bullets kept for reuse by the screen's session,
+	 * shown by the performance overlay.
+	 * 
+	 * @return Bullets in the pool.
+	 */
+	public int getPooledBulletCount() {
+		return 0;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,252 @@
+package screen;
+
+import java.util.Arrays;
+
+import engine.Core;
+import engine.GameClock;
+import engine.GameContext;
+import engine.GameSettings;
+import engine.GameState;
+import entity.Bullet;
+import entity.EnemyShip;
+import entity.Entity;
+import entity.Pair;
+
+/**
+ * Runs the rules of the game without a window, one update per step, for
+ * bots and training. Steps take the keys held as an input mask, run on a
+ * simulated clock and never draw nor wait. What is on screen can be written
+ * into a grid given by the caller.
+ *
+ * A simulation is not thread safe, but may be stepped from a different
+ * thread each time.
+ *
+ */
+public final class Simulation {
+
+	/** Width of the screen, as in the game. */
+	public static final int WIDTH = 448;
+	/** Height of the screen, as in the game. */
+	public static final int HEIGHT = 520;
+	/** Side of a grid cell, in pixels. */
+	public static final int CELL_SIZE = 8;
+	/** Columns of the grid. */
+	public static final int GRID_WIDTH = WIDTH / CELL_SIZE;
+	/** Rows of the grid. */
+	public static final int GRID_HEIGHT = HEIGHT / CELL_SIZE;
+	/** Cells of the grid, row by row from the top left. */
+	public static final int GRID_SIZE = GRID_WIDTH * GRID_HEIGHT;
+
+	/** Cell with nothing in it. */
+	public static final byte EMPTY = 0;
+	/** Cell with the ship of player 1. */
+	public static final byte PLAYER1 = 1;
+	/** Cell with the ship of player 2. */
+	public static final byte PLAYER2 = 2;
+	/** Cell with a ship of the formation. */
+	public static final byte ENEMY = 3;
+	/** Cell with the special ship. */
+	public static final byte SPECIAL = 4;
+	/** Cell with a bullet of the players. */
+	public static final byte PLAYER_BULLET = 5;
+	/** Cell with a bullet of the enemies. */
+	public static final byte ENEMY_BULLET = 6;
+
+	/** Frames per second, as in the game. */
+	private static final int FPS = 60;
+	/** Game time of a step, in milliseconds. */
+	private static final int FRAME_TIME = 1000 / FPS;
+	/** Time the clock starts at, fixed so that runs are the same. */
+	private static final long START_TIME = 946684800000L;
+
+	/** Number of players, 1 or 2. */
+	private final int playerCode;
+	/** Managers of the screens, shared with no other simulation. */
+	private final GameContext context;
+
+	/** Simulated clock of the level. */
+	private GameClock clock;
+	/** Screen of the level. */
+	private GameScreen gameScreen;
+	/** Score of both players after the last step. */
+	private int score;
+	/** Steps played since the last reset. */
+	private int steps;
+
+	/**
+	 * Constructor, the simulation must be reset before stepping.
+	 *
+	 * @param playerCode
+	 *            Number of players, 1 or 2.
+	 */
+	public Simulation(final int playerCode) {
+		this.playerCode = playerCode;
+		this.context = GameContext.headless(null);
+	}
+
+	/**
+	 * Starts a level, with full lives and no score. The countdown before
+	 * the level is skipped, the first step can already move and shoot.
+	 *
+	 * @param settings
+	 *            Settings of the level.
+	 * @param seed
+	 *            Seed of the random source, the same seed and steps play
+	 *            the same.
+	 */
+	public void reset(final GameSettings settings, final long seed) {
+		this.clock = GameClock.simulate(START_TIME);
+		GameState gameState = new GameState(1, new Pair(0, 0), new Pair(
+				Core.MAX_LIVES, Core.MAX_LIVES), new Pair(0, 0), new Pair(0,
+				0), this.playerCode, 1, seed);
+		this.gameScreen = new GameScreen(gameState, settings, false, WIDTH,
+				HEIGHT, FPS, this.context);
+		this.gameScreen.initialize();
+		this.gameScreen.isRunning = true;
+		// The countdown only lets time pass, it is jumped over.
+		this.clock.advance(GameScreen.INPUT_DELAY + 1);
+		this.score = 0;
+		this.steps = 0;
+	}
+
+	/**
+	 * Plays one update. Does nothing once the level is over.
+	 *
+	 * @param action
+	 *            Keys held, as a GameScreen input mask. In two player games
+	 *            player 1 uses A, D and space, player 2 the arrows and
+	 *            enter.
+	 * @param observation
+	 *            Grid to write the screen to after the update, of at least
+	 *            GRID_SIZE cells. May be null.
+	 * @return Reward, the points scored in the update by both players.
+	 */
+	public int step(final int action, final byte[] observation) {
+		return step(action, observation, 0);
+	}
+
+	/**
+	 * Plays one update, writing the screen at an offset of a larger buffer.
+	 * Does nothing once the level is over.
+	 *
+	 * @param action
+	 *            Keys held, as a GameScreen input mask.
+	 * @param observation
+	 *            Buffer to write the screen to after the update, with at
+	 *            least GRID_SIZE cells from the offset. May be null.
+	 * @param offset
+	 *            Index of the first cell of the grid in the buffer.
+	 * @return Reward, the points scored in the update by both players.
+	 */
+	public int step(final int action, final byte[] observation,
+			final int offset) {
+		if (isDone())
+			return 0;
+		this.clock.use();
+		this.clock.advance(FRAME_TIME);
+		this.gameScreen.tick(action);
+		this.steps++;
+
+		Pair scores = this.gameScreen.getScore();
+		int newScore = scores.getPlayer1Value() + scores.getPlayer2Value();
+		int reward = newScore - this.score;
+		this.score = newScore;
+		if (observation != null)
+			observe(observation, offset);
+		return reward;
+	}
+
+	/**
+	 * Checks if the level is over, the formation destroyed or the players
+	 * out of lives.
+	 *
+	 * @return True if the level is over.
+	 */
+	public boolean isDone() {
+		return this.gameScreen.isLevelFinished();
+	}
+
+	/**
+	 * Writes what is on screen into a grid of CELL_SIZE pixel cells, row by
+	 * row from the top left. Each cell holds what covers it, bullets over
+	 * ships, or EMPTY.
+	 *
+	 * @param grid
+	 *            Grid to write to, of at least GRID_SIZE cells.
+	 */
+	public void observe(final byte[] grid) {
+		observe(grid, 0);
+	}
+
+	/**
+	 * Writes what is on screen into a grid at an offset of a larger buffer,
+	 * as observe(grid) does.
+	 *
+	 * @param buffer
+	 *            Buffer to write to, with at least GRID_SIZE cells from the
+	 *            offset.
+	 * @param offset
+	 *            Index of the first cell of the grid in the buffer.
+	 */
+	public void observe(final byte[] buffer, final int offset) {
+		Arrays.fill(buffer, offset, offset + GRID_SIZE, EMPTY);
+		for (EnemyShip enemyShip : this.gameScreen.getEnemyShipFormation())
+			if (!enemyShip.isDestroyed())
+				mark(buffer, offset, enemyShip, ENEMY);
+		EnemyShip special = this.gameScreen.getEnemyShipSpecial();
+		if (special != null && !special.isDestroyed())
+			mark(buffer, offset, special, SPECIAL);
+		mark(buffer, offset, this.gameScreen.getShip1(), PLAYER1);
+		if (this.playerCode == 2)
+			mark(buffer, offset, this.gameScreen.getShip2(), PLAYER2);
+		for (Bullet bullet : this.gameScreen.getBullets())
+			mark(buffer, offset, bullet, bullet.getSpeed() < 0
+					? PLAYER_BULLET : ENEMY_BULLET);
+	}
+
+	/**
+	 * Marks the cells an entity covers.
+	 *
+	 * @param grid
+	 *            Buffer holding the grid.
+	 * @param offset
+	 *            Index of the first cell of the grid in the buffer.
+	 * @param entity
+	 *            Entity to mark.
+	 * @param cell
+	 *            Value of the cells.
+	 */
+	private static void mark(final byte[] grid, final int offset,
+			final Entity entity, final byte cell) {
+		int left = Math.max(0, entity.getPositionX());
+		int top = Math.max(0, entity.getPositionY());
+		int right = Math.min(WIDTH, entity.getPositionX()
+				+ entity.getWidth()) - 1;
+		int bottom = Math.min(HEIGHT, entity.getPositionY()
+				+ entity.getHeight()) - 1;
+		if (left > right || top > bottom)
+			return;
+		for (int row = top / CELL_SIZE; row <= bottom / CELL_SIZE; row++)
+			for (int column = left / CELL_SIZE; column <= right / CELL_SIZE;
+					column++)
+				grid[offset + row * GRID_WIDTH + column] = cell;
+	}
+
+	/**
+	 * Returns the state of the game, its score, lives and counts.
+	 *
+	 * @return Current game state.
+	 */
+	public GameState getGameState() {
+		return this.gameScreen.getGameState();
+	}
+
+	/**
+	 * Getter for the steps played since the last reset.
+	 *
+	 * @return Steps played.
+	 */
+	public int getSteps() {
+		return this.steps;
+	}
+}
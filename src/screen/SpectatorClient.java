@@ -0,0 +1,345 @@
+package screen;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import engine.BufferPool;
+import engine.DeltaCodec;
+import engine.DrawManager;
+import engine.GameClock;
+import engine.GameContext;
+import engine.GameSettings;
+import engine.GameState;
+import engine.NetConnection;
+
+/**
+ * Watches a game streamed by a SpectatorServer, on the calling thread.
+ * Each update is applied to the last keyframe: in STATE mode the level
+ * screen is built like the server's and brought to the state, in FRAME
+ * mode the pixels are copied into an image. Updates the server skipped
+ * for this spectator are counted.
+ *
+ * A client is not thread safe.
+ *
+ */
+public final class SpectatorClient {
+
+	/** Modes, by the number sent. */
+	private static final SpectatorServer.Mode[] MODES = SpectatorServer.Mode
+			.values();
+
+	/** Managers of the level screens, nothing is read from them. */
+	private final GameContext context;
+	/** Buffers of the connection and the updates. */
+	private final BufferPool pool;
+
+	/** Connection to the server, null before connecting. */
+	private NetConnection connection;
+	/** What the server sends, null before the first keyframe. */
+	private SpectatorServer.Mode mode;
+	/** If the server ended the stream. */
+	private boolean over;
+
+	/** Update of the last keyframe. */
+	private ByteBuffer base;
+	/** Length of the update of the last keyframe, 0 if none. */
+	private int baseLength;
+	/** Number of the last keyframe, 0 if none. */
+	private int keyframe;
+	/** Last update applied. */
+	private ByteBuffer state;
+	/** Length of the last update. */
+	private int stateLength;
+	/** Number of the last update, from 1. */
+	private int serial;
+
+	/** Simulated clock of the level, at the server's time. */
+	private GameClock clock;
+	/** Screen of the level in STATE mode, null before the first one. */
+	private GameScreen gameScreen;
+	/** Screen drawn by the server in FRAME mode, null before the first. */
+	private BufferedImage image;
+
+	/** Updates applied. */
+	private long updates;
+	/** Keyframes applied. */
+	private long keyframes;
+	/** Updates the server didn't send, between those applied. */
+	private long skipped;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param drawManager
+	 *            Draws the game in STATE mode, may be null if it isn't
+	 *            shown.
+	 */
+	public SpectatorClient(final DrawManager drawManager) {
+		this.context = GameContext.headless(drawManager);
+		this.pool = new BufferPool(NetProtocol.MAX_SPECTATOR_MESSAGE_SIZE);
+	}
+
+	/**
+	 * Connects to a server, waiting until connected.
+	 *
+	 * @param host
+	 *            Name or address of the server.
+	 * @param port
+	 *            Port the server listens on.
+	 * @throws IOException
+	 *             If the server can't be reached.
+	 */
+	public void connect(final String host, final int port)
+			throws IOException {
+		SocketChannel channel = SocketChannel.open(new InetSocketAddress(
+				host, port));
+		this.connection = new NetConnection(channel, this.pool);
+		this.base = this.pool.getBuffer();
+		this.state = this.pool.getBuffer();
+	}
+
+	/**
+	 * Applies the updates the server has sent since the last call.
+	 *
+	 * @return False once the stream is over.
+	 * @throws IOException
+	 *             If the connection is broken or a message is wrong.
+	 */
+	public boolean update() throws IOException {
+		if (this.over)
+			return false;
+		ByteBuffer message;
+		while ((message = this.connection.receive()) != null) {
+			byte type = message.get();
+			switch (type) {
+			case NetProtocol.KEYFRAME:
+				applyKeyframe(message);
+				break;
+			case NetProtocol.FRAME:
+				applyFrame(message);
+				break;
+			case NetProtocol.GAME_OVER:
+				this.over = true;
+				return false;
+			default:
+				throw new IOException("Unexpected message: " + type);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Applies a keyframe, building the level or image it needs first.
+	 *
+	 * @param message
+	 *            Message, after its type.
+	 * @throws IOException
+	 *             If the mode is unknown.
+	 */
+	private void applyKeyframe(final ByteBuffer message) throws IOException {
+		int modeCode = message.get();
+		if (modeCode < 0 || modeCode >= MODES.length)
+			throw new IOException("Unknown mode: " + modeCode);
+		this.mode = MODES[modeCode];
+		boolean newLevel = message.get() == 1;
+		int keyframeSerial = message.getInt();
+		long time = message.getLong();
+		if (this.mode == SpectatorServer.Mode.STATE) {
+			GameState gameState = NetProtocol.readLevelState(message);
+			boolean bonusLife = message.get() == 1;
+			GameSettings settings = NetProtocol.readLevelSettings(message);
+			if (newLevel || this.gameScreen == null) {
+				this.clock = GameClock.simulate(time);
+				this.gameScreen = new GameScreen(gameState, settings,
+						bonusLife, GameServer.WIDTH, GameServer.HEIGHT,
+						GameServer.FPS, this.context);
+				this.gameScreen.initialize();
+				this.gameScreen.isRunning = true;
+			}
+		} else {
+			int width = message.getInt();
+			int height = message.getInt();
+			if (this.image == null || this.image.getWidth() != width
+					|| this.image.getHeight() != height)
+				this.image = new BufferedImage(width, height,
+						BufferedImage.TYPE_INT_RGB);
+		}
+
+		this.base.clear();
+		this.baseLength = DeltaCodec.decode(this.base, 0, message,
+				this.base);
+		this.keyframe = keyframeSerial;
+		this.keyframes++;
+		apply(keyframeSerial, time, this.base, this.baseLength);
+	}
+
+	/**
+	 * Applies a frame to the last keyframe.
+	 *
+	 * @param message
+	 *            Message, after its type.
+	 * @throws IOException
+	 *             If the frame isn't from the last keyframe.
+	 */
+	private void applyFrame(final ByteBuffer message) throws IOException {
+		int keyframeSerial = message.getInt();
+		int frameSerial = message.getInt();
+		long time = message.getLong();
+		if (keyframeSerial != this.keyframe)
+			throw new IOException("Frame " + frameSerial + " of keyframe "
+					+ keyframeSerial + " without it.");
+		this.state.clear();
+		this.stateLength = DeltaCodec.decode(this.base, this.baseLength,
+				message, this.state);
+		apply(frameSerial, time, this.state, this.stateLength);
+	}
+
+	/**
+	 * Brings the screen or image to an update decoded.
+	 *
+	 * @param updateSerial
+	 *            Number of the update.
+	 * @param time
+	 *            Game time of the update, in milliseconds.
+	 * @param decoded
+	 *            Update decoded, from 0.
+	 * @param length
+	 *            Length of the update.
+	 */
+	private void apply(final int updateSerial, final long time,
+			final ByteBuffer decoded, final int length) {
+		if (this.serial > 0)
+			this.skipped += Math.max(0, updateSerial - this.serial - 1);
+		this.serial = updateSerial;
+		this.updates++;
+		if (decoded != this.state) {
+			this.state.clear();
+			for (int i = 0; i < length; i++)
+				this.state.put(i, decoded.get(i));
+			this.stateLength = length;
+		}
+
+		if (this.mode == SpectatorServer.Mode.STATE) {
+			this.clock.use();
+			this.clock.setTime(time);
+			this.state.clear();
+			this.state.limit(length);
+			this.gameScreen.readState(this.state);
+		} else {
+			int[] pixels = ((DataBufferInt) this.image.getRaster()
+					.getDataBuffer()).getData();
+			int count = Math.min(pixels.length, length / 4);
+			for (int i = 0; i < count; i++)
+				pixels[i] = this.state.getInt(i * 4);
+		}
+	}
+
+	/**
+	 * Draws the level as of the last update, in STATE mode once a level
+	 * has started.
+	 */
+	public void draw() {
+		if (this.gameScreen == null)
+			return;
+		this.clock.use();
+		this.gameScreen.draw();
+	}
+
+	/**
+	 * Closes the connection.
+	 */
+	public void close() {
+		if (this.connection != null)
+			this.connection.close();
+		GameClock.useSystemClock();
+	}
+
+	/**
+	 * Getter for what the server sends.
+	 *
+	 * @return Mode of the stream, null before the first keyframe.
+	 */
+	public SpectatorServer.Mode getMode() {
+		return this.mode;
+	}
+
+	/**
+	 * Getter for the screen of the level, in STATE mode.
+	 *
+	 * @return Game screen, null before the first level.
+	 */
+	public GameScreen getGameScreen() {
+		return this.gameScreen;
+	}
+
+	/**
+	 * Getter for the screen drawn by the server, in FRAME mode.
+	 *
+	 * @return Image of the last update, null before the first.
+	 */
+	public BufferedImage getImage() {
+		return this.image;
+	}
+
+	/**
+	 * Getter for the last update applied.
+	 *
+	 * @return Game state or pixels, from 0 to its limit. Valid until the
+	 *         next update.
+	 */
+	ByteBuffer getState() {
+		this.state.clear();
+		this.state.limit(this.stateLength);
+		return this.state;
+	}
+
+	/**
+	 * Getter for the number of the last update applied.
+	 *
+	 * @return Update, counted by the server from 1.
+	 */
+	public int getSerial() {
+		return this.serial;
+	}
+
+	/**
+	 * Getter for the number of updates applied.
+	 *
+	 * @return Updates applied, keyframes included.
+	 */
+	public long getUpdates() {
+		return this.updates;
+	}
+
+	/**
+	 * Getter for the number of keyframes applied.
+	 *
+	 * @return Keyframes applied.
+	 */
+	public long getKeyframes() {
+		return this.keyframes;
+	}
+
+	/**
+	 * Getter for the number of updates skipped by the server.
+	 *
+	 * @return Updates never received.
+	 */
+	public long getSkipped() {
+		return this.skipped;
+	}
+
+	/**
+	 * Getter for the bytes received.
+	 *
+	 * @return Bytes read from the socket.
+	 */
+	public long getBytesReceived() {
+		return this.connection == null ? 0 : this.connection
+				.getBytesReceived();
+	}
+}
@@ -0,0 +1,111 @@
+package screen;
+
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.util.logging.Level;
+
+/**
+ * Watches a streamed game in the window: the last update the server sent
+ * is drawn, as a level in STATE mode or as the image it drew in FRAME
+ * mode. Escape leaves.
+ *
+ */
+public class SpectatorScreen extends Screen {
+
+	/** Name or address of the server. */
+	private final String host;
+	/** Port the server listens on. */
+	private final int port;
+	/** Client of the stream. */
+	private final SpectatorClient client;
+
+	/**
+	 * Constructor, establishes the properties of the screen.
+	 *
+	 * @param host
+	 *            Name or address of the server.
+	 * @param port
+	 *            Port the server listens on.
+	 * @param width
+	 *            Screen width.
+	 * @param height
+	 *            Screen height.
+	 * @param fps
+	 *            Frames per second, frame rate at which the game is run.
+	 */
+	public SpectatorScreen(final String host, final int port,
+			final int width, final int height, final int fps) {
+		super(width, height, fps);
+		this.host = host;
+		this.port = port;
+		this.client = new SpectatorClient(this.drawManager);
+	}
+
+	/**
+	 * Connects to the server and watches until the game is over.
+	 *
+	 * @return Next screen code.
+	 */
+	public final int run() {
+		try {
+			this.client.connect(this.host, this.port);
+		} catch (IOException e) {
+			this.logger.log(Level.WARNING, "Couldn't connect to "
+					+ this.host + ":" + this.port + ".", e);
+			return this.returnCode;
+		}
+		this.logger.info("Watching " + this.host + ":" + this.port + ".");
+		super.run();
+		this.client.close();
+		this.logger.info("Received " + this.client.getUpdates()
+				+ " updates, " + this.client.getSkipped() + " skipped, "
+				+ this.client.getBytesReceived() + " bytes.");
+
+		return this.returnCode;
+	}
+
+	/**
+	 * Applies what the server sent and draws it.
+	 */
+	protected final void update() {
+		super.update();
+
+		if (this.inputManager.isKeyDown(KeyEvent.VK_ESCAPE)) {
+			this.isRunning = false;
+			return;
+		}
+		try {
+			if (!this.client.update()) {
+				this.isRunning = false;
+				return;
+			}
+		} catch (IOException e) {
+			this.logger.log(Level.WARNING, "Lost the connection to the "
+					+ "server.", e);
+			this.isRunning = false;
+			return;
+		}
+
+		if (this.client.getGameScreen() != null) {
+			this.client.draw();
+		} else {
+			this.drawManager.initDrawing(this);
+			if (this.client.getImage() != null)
+				this.drawManager.drawImage(this.client.getImage());
+			else
+				this.drawManager.drawPausedMessage(this, "Waiting for the "
+						+ "game");
+			this.drawManager.completeDrawing(this);
+		}
+	}
+
+	/**
+	 * Returns the code of the screen in event recordings.
+	 *
+	 * @return Code of the spectator screen.
+	 */
+	@Override
+	public int getCode() {
+		return CODE_SPECTATOR;
+	}
+}
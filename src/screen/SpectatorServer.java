@@ -0,0 +1,791 @@
+package screen;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import engine.DeltaCodec;
+import engine.GameClock;
+import engine.LatencyHistogram;
+import engine.NetConnection;
+import engine.ReplayRecorder;
+
+/**
+ * Streams a live game to spectators. The thread playing the game publishes
+ * every update, which is encoded once, and a thread of the server sends it
+ * to every spectator through non blocking sockets around a selector.
+ *
+ * An update is the game state, or in FRAME mode the pixels of the screen
+ * drawn offscreen, XORed with the last keyframe and run length encoded.
+ * A keyframe, the whole update, starts each level and is sent again every
+ * second. As an update only needs its keyframe, a spectator too slow for
+ * every one skips to the latest once it has taken the one it is on, so it
+ * holds up neither the game nor the others. If it doesn't have the
+ * keyframe of the latest yet, both go out in one gathering write.
+ *
+ * Published updates are shared by every spectator and never written again
+ * while one may still send them. They are direct buffers, written to the
+ * sockets without a copy, taken from a small pool by size: after each pass
+ * over the spectators the server thread gives back the buffers of the
+ * updates older than the latest that no spectator is sending, has sent
+ * last or has as its keyframe, and that the latest doesn't need.
+ *
+ */
+public final class SpectatorServer {
+
+	/** What the spectators are sent. */
+	public static enum Mode {
+		/** The game state, for spectators that play it on their screen. */
+		STATE,
+		/** The screen drawn, for spectators that only show it. */
+		FRAME
+	}
+
+	/** Port the server listens on by default. */
+	public static final int DEFAULT_PORT = 7461;
+
+	/** Updates between keyframes, one per second. */
+	private static final int KEYFRAME_INTERVAL = GameServer.FPS;
+	/** Longest wait for the last update to be sent, in milliseconds. */
+	private static final long CLOSE_TIMEOUT = 1000;
+	/** Spectators waiting to be accepted at most. */
+	private static final int BACKLOG = 1024;
+	/** Bytes read from a spectator at once, they are thrown away. */
+	private static final int READ_BUFFER_SIZE = 256;
+	/** Size class of the smallest message buffers, 256 bytes. */
+	private static final int MIN_SIZE_CLASS = 8;
+
+	/** Port to listen on, 0 for any. */
+	private final int port;
+	/** What the spectators are sent. */
+	private final Mode mode;
+	/** Logger of the server. */
+	private final Logger logger;
+	/** Last update published, null before the first. */
+	private final AtomicReference<Broadcast> latest;
+	/** Updates published, for the server thread to recycle. */
+	private final Queue<Broadcast> handed;
+	/** Free message buffers, by size class: class n holds 2^n bytes. */
+	private final List<Queue<ByteBuffer>> free;
+
+	/** Accepts the spectators. */
+	private ServerSocketChannel server;
+	/** Waits on the sockets. */
+	private Selector selector;
+	/** Sends the updates. */
+	private Thread thread;
+	/** Set once the last update is published. */
+	private volatile boolean closing;
+
+	/** Spectators connected, on the server thread only. */
+	private final List<Viewer> viewers;
+	/** Takes what the spectators send, on the server thread only. */
+	private final ByteBuffer discarded;
+	/** Updates whose buffers may be in use, on the server thread only. */
+	private final ArrayDeque<Broadcast> inUse;
+	/** Passes made to find the buffers in use. */
+	private int sweeps;
+
+	/** Update being encoded, on the publishing thread only. */
+	private ByteBuffer current;
+	/** Update of the last keyframe, that frames are encoded from. */
+	private ByteBuffer base;
+	/** Length of the update of the last keyframe. */
+	private int baseLength;
+	/** Message being encoded. */
+	private ByteBuffer message;
+	/** Screen of the last update published. */
+	private GameScreen lastScreen;
+	/** Last keyframe published. */
+	private Broadcast keyframe;
+	/** Updates published since the last keyframe. */
+	private int sinceKeyframe;
+
+	/** Updates published. */
+	private int published;
+	/** Keyframes published. */
+	private long keyframes;
+	/** Bytes of the messages published. */
+	private long publishedBytes;
+	/** Message buffers allocated, in the pool or in use. */
+	private int buffersAllocated;
+	/** Time taken to encode an update. */
+	private final LatencyHistogram encodeTimes;
+
+	/** Updates sent whole to a spectator, over every spectator. */
+	private volatile long updatesSent;
+	/** Updates a spectator skipped, over every spectator. */
+	private volatile long updatesSkipped;
+	/** Keyframes sent again with a later update. */
+	private volatile long keyframesResent;
+	/** Bytes written to the spectators. */
+	private volatile long bytesSent;
+	/** Spectators accepted. */
+	private volatile int accepted;
+
+	/**
+	 * Constructor, the server must be bound before updates are published.
+	 *
+	 * @param port
+	 *            Port to listen on, 0 for any free one.
+	 * @param mode
+	 *            What the spectators are sent.
+	 * @param logger
+	 *            Logger of the server.
+	 */
+	public SpectatorServer(final int port, final Mode mode,
+			final Logger logger) {
+		this.port = port;
+		this.mode = mode;
+		this.logger = logger;
+		this.latest = new AtomicReference<Broadcast>();
+		this.handed = new ConcurrentLinkedQueue<Broadcast>();
+		this.viewers = new ArrayList<Viewer>();
+		this.discarded = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+		this.inUse = new ArrayDeque<Broadcast>();
+		int size = mode == Mode.STATE ? ReplayRecorder.MAX_STATE_SIZE
+				: NetProtocol.MAX_FRAME_SIZE;
+		this.current = ByteBuffer.allocate(size);
+		this.base = ByteBuffer.allocate(size);
+		this.message = ByteBuffer.allocate(NetConnection.HEADER_SIZE
+				+ NetProtocol.KEYFRAME_HEADER
+				+ DeltaCodec.maxEncodedLength(size));
+		this.free = new ArrayList<Queue<ByteBuffer>>();
+		for (int i = 0; i <= sizeClass(this.message.capacity()); i++)
+			this.free.add(new ConcurrentLinkedQueue<ByteBuffer>());
+		this.encodeTimes = new LatencyHistogram();
+	}
+
+	/**
+	 * Starts listening for spectators, and sending them the updates on a
+	 * thread of the server.
+	 *
+	 * @return Port listened on.
+	 * @throws IOException
+	 *             If the port can't be listened on.
+	 */
+	public int bind() throws IOException {
+		this.selector = Selector.open();
+		this.server = ServerSocketChannel.open();
+		this.server.configureBlocking(false);
+		this.server.socket().bind(new InetSocketAddress(this.port),
+				BACKLOG);
+		this.server.register(this.selector, SelectionKey.OP_ACCEPT);
+		int localPort = this.server.socket().getLocalPort();
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					serve();
+				} catch (IOException e) {
+					logger.log(Level.SEVERE, "Spectator server failed.", e);
+				}
+			}
+		}, "SpectatorServer");
+		this.thread.setDaemon(true);
+		this.thread.start();
+		this.logger.info("Streaming the game to spectators on port "
+				+ localPort + ".");
+		return localPort;
+	}
+
+	/**
+	 * Encodes the update just played and hands it to the server thread.
+	 * Called by the thread playing the game, after every update, with its
+	 * clock in use. In FRAME mode the screen is drawn first, it must draw
+	 * offscreen.
+	 *
+	 * @param gameScreen
+	 *            Screen of the level played. A new one starts a level.
+	 */
+	public void publish(final GameScreen gameScreen) {
+		long start = System.nanoTime();
+		this.current.clear();
+		if (this.mode == Mode.STATE) {
+			gameScreen.writeState(this.current);
+		} else {
+			gameScreen.draw();
+			capture(gameScreen.drawManager.getOffscreenImage());
+		}
+		int length = this.current.position();
+
+		this.published++;
+		this.message.clear();
+		this.message.position(NetConnection.HEADER_SIZE - 1);
+		boolean key = gameScreen != this.lastScreen
+				|| this.sinceKeyframe >= KEYFRAME_INTERVAL;
+		if (key) {
+			this.message.put(NetProtocol.KEYFRAME);
+			this.message.put((byte) this.mode.ordinal());
+			this.message.put((byte) (gameScreen != this.lastScreen ? 1 : 0));
+			this.message.putInt(this.published);
+			if (this.mode == Mode.STATE) {
+				NetProtocol.writeLevel(this.message,
+						gameScreen.getGameState(),
+						gameScreen.getGameSettings(),
+						gameScreen.hasBonusLife(),
+						GameClock.currentTimeMillis());
+			} else {
+				this.message.putLong(GameClock.currentTimeMillis());
+				this.message.putInt(gameScreen.getWidth());
+				this.message.putInt(gameScreen.getHeight());
+			}
+			DeltaCodec.encode(this.base, 0, this.current, length,
+					this.message);
+			ByteBuffer keyState = this.current;
+			this.current = this.base;
+			this.base = keyState;
+			this.baseLength = length;
+			this.lastScreen = gameScreen;
+			this.sinceKeyframe = 0;
+			this.keyframes++;
+		} else {
+			this.message.put(NetProtocol.FRAME);
+			this.message.putInt(this.keyframe.serial);
+			this.message.putInt(this.published);
+			this.message.putLong(GameClock.currentTimeMillis());
+			DeltaCodec.encode(this.base, this.baseLength, this.current,
+					length, this.message);
+			this.sinceKeyframe++;
+		}
+
+		Broadcast broadcast = new Broadcast(share(this.message),
+				this.published, key ? null : this.keyframe);
+		if (key)
+			this.keyframe = broadcast;
+		this.encodeTimes.record(System.nanoTime() - start);
+		offer(broadcast);
+	}
+
+	/**
+	 * Copies the pixels of a screen drawn into the update being encoded,
+	 * without their unused top byte.
+	 *
+	 * @param image
+	 *            Image the screen was drawn on.
+	 */
+	private void capture(final BufferedImage image) {
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer())
+				.getData();
+		if (pixels.length * 4 > this.current.capacity())
+			throw new IllegalStateException("Screen too large to stream.");
+		IntBuffer out = this.current.asIntBuffer();
+		for (int i = 0; i < pixels.length; i++)
+			out.put(i, pixels[i] & 0xFFFFFF);
+		this.current.position(pixels.length * 4);
+	}
+
+	/**
+	 * Frames a message encoded into a buffer of its own, to share.
+	 *
+	 * @param encoded
+	 *            Message, from the header it leaves room for up to its
+	 *            position.
+	 * @return Pooled direct buffer holding the message, from 0 to its
+	 *         limit, ready to be written.
+	 */
+	private ByteBuffer share(final ByteBuffer encoded) {
+		encoded.putInt(0, encoded.position()
+				- (NetConnection.HEADER_SIZE - 1));
+		encoded.flip();
+		int sizeClass = sizeClass(encoded.remaining());
+		ByteBuffer shared = this.free.get(sizeClass).poll();
+		if (shared == null) {
+			shared = ByteBuffer.allocateDirect(1 << sizeClass);
+			this.buffersAllocated++;
+		}
+		shared.clear();
+		shared.put(encoded);
+		shared.flip();
+		return shared;
+	}
+
+	/**
+	 * Computes the size class of the buffers a message fits in.
+	 *
+	 * @param length
+	 *            Bytes of the message.
+	 * @return Smallest n, not under MIN_SIZE_CLASS, with 2^n bytes enough.
+	 */
+	private static int sizeClass(final int length) {
+		return Math.max(MIN_SIZE_CLASS,
+				Integer.SIZE - Integer.numberOfLeadingZeros(length - 1));
+	}
+
+	/**
+	 * Makes an update the latest and wakes the server thread up.
+	 *
+	 * @param broadcast
+	 *            Update published.
+	 */
+	private void offer(final Broadcast broadcast) {
+		this.publishedBytes += broadcast.data.limit();
+		// Handed over before it is the latest, so that the server thread
+		// can't take it for one the latest has replaced.
+		this.handed.add(broadcast);
+		this.latest.set(broadcast);
+		this.selector.wakeup();
+	}
+
+	/**
+	 * Ends the stream: sends GAME_OVER, waits a little for every spectator
+	 * to take it and closes the server. Called by the publishing thread.
+	 *
+	 * @throws InterruptedException
+	 *             If interrupted while waiting.
+	 */
+	public void close() throws InterruptedException {
+		if (this.thread == null)
+			return;
+		ByteBuffer gameOver = ByteBuffer.allocate(NetConnection.HEADER_SIZE);
+		gameOver.position(NetConnection.HEADER_SIZE - 1);
+		gameOver.put(NetProtocol.GAME_OVER);
+		offer(new Broadcast(share(gameOver), this.published + 1, null));
+		this.closing = true;
+		this.selector.wakeup();
+		this.thread.join();
+		this.thread = null;
+	}
+
+	/**
+	 * Accepts spectators and sends them the updates, until the server is
+	 * closed.
+	 *
+	 * @throws IOException
+	 *             If the selector fails.
+	 */
+	private void serve() throws IOException {
+		long closeBy = 0;
+		try {
+			while (true) {
+				if (this.closing) {
+					if (closeBy == 0)
+						closeBy = System.currentTimeMillis() + CLOSE_TIMEOUT;
+					if (allSent() || System.currentTimeMillis() >= closeBy)
+						return;
+					this.selector.select(Math.max(1, closeBy
+							- System.currentTimeMillis()));
+				} else {
+					this.selector.select();
+				}
+				handleKeys();
+				Broadcast broadcast = this.latest.get();
+				if (broadcast == null)
+					continue;
+				for (int i = this.viewers.size() - 1; i >= 0; i--) {
+					Viewer viewer = this.viewers.get(i);
+					if (viewer.sending == null
+							&& viewer.last != broadcast)
+						send(viewer, broadcast);
+				}
+				recycle();
+			}
+		} finally {
+			for (Viewer viewer : this.viewers)
+				viewer.close();
+			this.viewers.clear();
+			this.server.close();
+			this.selector.close();
+		}
+	}
+
+	/**
+	 * Handles the sockets selected: accepts spectators, throws away what
+	 * they send and writes what they still have to take.
+	 *
+	 * @throws IOException
+	 *             If a spectator can't be accepted.
+	 */
+	private void handleKeys() throws IOException {
+		Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+		while (keys.hasNext()) {
+			SelectionKey key = keys.next();
+			keys.remove();
+			if (!key.isValid())
+				continue;
+			if (key.isAcceptable()) {
+				accept();
+				continue;
+			}
+			Viewer viewer = (Viewer) key.attachment();
+			try {
+				if (key.isReadable()) {
+					this.discarded.clear();
+					if (viewer.channel.read(this.discarded) < 0) {
+						drop(viewer);
+						continue;
+					}
+				}
+				if (key.isWritable())
+					write(viewer);
+			} catch (IOException e) {
+				drop(viewer);
+			}
+		}
+	}
+
+	/**
+	 * Accepts a spectator, who is sent the latest update.
+	 *
+	 * @throws IOException
+	 *             If the socket can't be set up.
+	 */
+	private void accept() throws IOException {
+		SocketChannel channel = this.server.accept();
+		if (channel == null)
+			return;
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		Viewer viewer = new Viewer(channel);
+		viewer.key = channel.register(this.selector,
+				SelectionKey.OP_READ, viewer);
+		this.viewers.add(viewer);
+		this.accepted++;
+		this.logger.fine("Spectator connected from "
+				+ channel.socket().getRemoteSocketAddress() + ".");
+		Broadcast broadcast = this.latest.get();
+		if (broadcast != null)
+			send(viewer, broadcast);
+	}
+
+	/**
+	 * Starts sending an update to a spectator, after its keyframe if the
+	 * spectator doesn't have it.
+	 *
+	 * @param viewer
+	 *            Spectator done with the update before.
+	 * @param broadcast
+	 *            Update to send.
+	 */
+	private void send(final Viewer viewer, final Broadcast broadcast) {
+		if (viewer.last != null)
+			this.updatesSkipped += broadcast.serial - viewer.last.serial
+					- 1;
+		viewer.first = 0;
+		viewer.count = 0;
+		if (broadcast.keyframe != null
+				&& broadcast.keyframe != viewer.keyframe) {
+			viewer.add(broadcast.keyframe);
+			this.keyframesResent++;
+		}
+		viewer.add(broadcast);
+		viewer.sending = broadcast;
+		viewer.keyframe = broadcast.keyframe == null ? broadcast
+				: broadcast.keyframe;
+		try {
+			write(viewer);
+		} catch (IOException e) {
+			drop(viewer);
+		}
+	}
+
+	/**
+	 * Writes as much of the update being sent as the socket takes, and
+	 * goes on with the latest once it is all written.
+	 *
+	 * @param viewer
+	 *            Spectator sent to.
+	 * @throws IOException
+	 *             If the connection is broken.
+	 */
+	private void write(final Viewer viewer) throws IOException {
+		if (viewer.sending == null)
+			return;
+		this.bytesSent += viewer.write();
+		if (viewer.first < viewer.count) {
+			viewer.key.interestOps(SelectionKey.OP_READ
+					| SelectionKey.OP_WRITE);
+			return;
+		}
+		viewer.key.interestOps(SelectionKey.OP_READ);
+		viewer.last = viewer.sending;
+		viewer.sending = null;
+		this.updatesSent++;
+		Broadcast broadcast = this.latest.get();
+		if (broadcast != viewer.last)
+			send(viewer, broadcast);
+	}
+
+	/**
+	 * Closes the connection of a spectator.
+	 *
+	 * @param viewer
+	 *            Spectator dropped.
+	 */
+	private void drop(final Viewer viewer) {
+		viewer.close();
+		this.viewers.remove(viewer);
+		this.logger.fine("Spectator disconnected.");
+	}
+
+	/**
+	 * Gives back to the pool the buffers of the updates no longer in use:
+	 * older than the latest, not its keyframe, and neither being sent to a
+	 * spectator, the last one sent to it nor its keyframe. The publishing
+	 * thread only keeps the latest and its keyframe, or newer updates.
+	 */
+	private void recycle() {
+		Broadcast newest = this.latest.get();
+		Broadcast handedOver;
+		while ((handedOver = this.handed.poll()) != null)
+			this.inUse.add(handedOver);
+		int sweep = ++this.sweeps;
+		newest.mark = sweep;
+		if (newest.keyframe != null)
+			newest.keyframe.mark = sweep;
+		for (Viewer viewer : this.viewers) {
+			if (viewer.sending != null)
+				viewer.sending.mark = sweep;
+			if (viewer.last != null)
+				viewer.last.mark = sweep;
+			if (viewer.keyframe != null)
+				viewer.keyframe.mark = sweep;
+		}
+		Iterator<Broadcast> updates = this.inUse.iterator();
+		while (updates.hasNext()) {
+			Broadcast broadcast = updates.next();
+			if (broadcast.mark == sweep || broadcast.serial > newest.serial)
+				continue;
+			updates.remove();
+			this.free.get(sizeClass(broadcast.data.capacity()))
+					.add(broadcast.data);
+		}
+	}
+
+	/**
+	 * Checks if every spectator has taken the last update.
+	 *
+	 * @return True if there is nothing left to write.
+	 */
+	private boolean allSent() {
+		Broadcast broadcast = this.latest.get();
+		for (Viewer viewer : this.viewers)
+			if (viewer.last != broadcast)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Getter for the number of updates published.
+	 *
+	 * @return Updates encoded.
+	 */
+	public int getPublished() {
+		return this.published;
+	}
+
+	/**
+	 * Getter for the number of keyframes published.
+	 *
+	 * @return Keyframes encoded.
+	 */
+	public long getKeyframes() {
+		return this.keyframes;
+	}
+
+	/**
+	 * Getter for the average size of the messages published.
+	 *
+	 * @return Bytes of an update, keyframes included, on average.
+	 */
+	public double getAverageUpdateSize() {
+		return this.published == 0 ? 0
+				: (double) this.publishedBytes / this.published;
+	}
+
+	/**
+	 * Getter for the number of message buffers allocated.
+	 *
+	 * @return Direct buffers allocated, in the pool or in use.
+	 */
+	public int getBuffersAllocated() {
+		return this.buffersAllocated;
+	}
+
+	/**
+	 * Getter for the time taken to encode an update.
+	 *
+	 * @return Encoding times, drawing included in FRAME mode.
+	 */
+	public LatencyHistogram getEncodeTimes() {
+		return this.encodeTimes;
+	}
+
+	/**
+	 * Getter for the number of spectators accepted.
+	 *
+	 * @return Spectators that connected, including those gone.
+	 */
+	public int getAccepted() {
+		return this.accepted;
+	}
+
+	/**
+	 * Getter for the number of updates sent whole, over every spectator.
+	 *
+	 * @return Updates sent.
+	 */
+	public long getUpdatesSent() {
+		return this.updatesSent;
+	}
+
+	/**
+	 * Getter for the number of updates skipped, over every spectator.
+	 *
+	 * @return Updates a spectator never got, as it was busy.
+	 */
+	public long getUpdatesSkipped() {
+		return this.updatesSkipped;
+	}
+
+	/**
+	 * Getter for the number of keyframes sent again with a later update.
+	 *
+	 * @return Keyframes a spectator got late.
+	 */
+	public long getKeyframesResent() {
+		return this.keyframesResent;
+	}
+
+	/**
+	 * Getter for the bytes written to the spectators.
+	 *
+	 * @return Bytes sent, headers included.
+	 */
+	public long getBytesSent() {
+		return this.bytesSent;
+	}
+
+	/**
+	 * An update published, the same message for every spectator.
+	 */
+	private static final class Broadcast {
+
+		/** Message, from 0 to its limit. */
+		private final ByteBuffer data;
+		/** Number of the update, from 1. */
+		private final int serial;
+		/** Keyframe the update needs, null for keyframes. */
+		private final Broadcast keyframe;
+		/** Last pass that found it in use, on the server thread only. */
+		private int mark;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param data
+		 *            Message, from 0 to its limit.
+		 * @param serial
+		 *            Number of the update.
+		 * @param keyframe
+		 *            Keyframe the update needs, null if none.
+		 */
+		Broadcast(final ByteBuffer data, final int serial,
+				final Broadcast keyframe) {
+			this.data = data;
+			this.serial = serial;
+			this.keyframe = keyframe;
+		}
+	}
+
+	/**
+	 * A spectator connected, on the server thread only.
+	 */
+	private static final class Viewer {
+
+		/** Socket of the spectator. */
+		private final SocketChannel channel;
+		/** Messages being written, shared with the other spectators. */
+		private final ByteBuffer[] buffers;
+		/** How far each message has been written. */
+		private final int[] offsets;
+		/** Registration in the selector. */
+		private SelectionKey key;
+		/** First message not written whole. */
+		private int first;
+		/** Messages being written. */
+		private int count;
+		/** Update being sent, null if none. */
+		private Broadcast sending;
+		/** Last update sent whole, null before the first. */
+		private Broadcast last;
+		/** Keyframe of the last update sent. */
+		private Broadcast keyframe;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param channel
+		 *            Socket of the spectator, non blocking.
+		 */
+		Viewer(final SocketChannel channel) {
+			this.channel = channel;
+			this.buffers = new ByteBuffer[2];
+			this.offsets = new int[2];
+		}
+
+		/**
+		 * Adds a message to write.
+		 *
+		 * @param broadcast
+		 *            Update whose message is added.
+		 */
+		void add(final Broadcast broadcast) {
+			this.buffers[this.count] = broadcast.data;
+			this.offsets[this.count] = 0;
+			this.count++;
+		}
+
+		/**
+		 * Writes as much of the messages as the socket takes, in one
+		 * gathering write. The shared buffers are positioned where this
+		 * spectator is in them first; only this thread moves them, and
+		 * their limits are left as published.
+		 *
+		 * @return Bytes written.
+		 * @throws IOException
+		 *             If the connection is broken.
+		 */
+		long write() throws IOException {
+			for (int i = this.first; i < this.count; i++)
+				this.buffers[i].position(this.offsets[i]);
+			long written = this.channel.write(this.buffers, this.first,
+					this.count - this.first);
+			for (int i = this.first; i < this.count; i++)
+				this.offsets[i] = this.buffers[i].position();
+			while (this.first < this.count && this.offsets[this.first]
+					== this.buffers[this.first].limit()) {
+				this.buffers[this.first] = null;
+				this.first++;
+			}
+			return written;
+		}
+
+		/**
+		 * Closes the socket.
+		 */
+		void close() {
+			try {
+				this.channel.close();
+			} catch (IOException e) {
+				// Nothing left to do with it.
+			}
+		}
+	}
+}
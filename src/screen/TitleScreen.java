@@ -108,4 +108,14 @@ public class TitleScreen extends Screen {
 
 		drawManager.completeDrawing(this);
 	}
+
+	/**
+	 * Returns the code of the screen in event recordings.
+	 * 
+	 * @return Code of the title screen.
+	 */
+	@Override
+	public int getCode() {
+		return CODE_TITLE;
+	}
 }
@@ -0,0 +1,154 @@
+package screen;
+
+import java.awt.event.KeyEvent;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import engine.Core;
+import engine.FrameTimeStats;
+import engine.GameContext;
+import engine.GameSettings;
+import engine.GameState;
+import engine.InputManager;
+import entity.Pair;
+
+/**
+ * Plays a discarded game in the background so that the game loop is
+ * compiled before the first level starts. The game is drawn offscreen and
+ * driven by simulated input.
+ *
+ */
+public final class WarmUp implements Runnable {
+
+	/** Number of game updates simulated. */
+	private static final int TICKS = 5000;
+	/** Updates the simulated players keep moving in the same direction. */
+	private static final int MOVE_TICKS = 40;
+	/** Updates compared at the start and the end of the warm-up. */
+	private static final int SAMPLE_TICKS = 500;
+	/** Lives of the simulated players, so games last. */
+	private static final int LIVES = 99;
+	/** Milliseconds to wait for the warm-up to stop. */
+	private static final int STOP_TIMEOUT = 1000;
+
+	/** Settings of the simulated game. */
+	private final GameSettings gameSettings;
+	/** Width of the simulated screen. */
+	private final int width;
+	/** Height of the simulated screen. */
+	private final int height;
+	/** Frames per second of the simulated screen. */
+	private final int fps;
+	/** Application logger, reports the warm-up results. */
+	private final Logger logger;
+	/** Thread running the warm-up. */
+	private Thread thread;
+	/** If the warm-up has been asked to stop. */
+	private volatile boolean stopped;
+
+	/**
+	 * Constructor, establishes the simulated game.
+	 *
+	 * @param gameSettings
+	 *            Settings of the simulated game, a representative level.
+	 * @param width
+	 *            Screen width.
+	 * @param height
+	 *            Screen height.
+	 * @param fps
+	 *            Frames per second, frame rate at which the game is run.
+	 */
+	public WarmUp(final GameSettings gameSettings, final int width,
+			final int height, final int fps) {
+		this.gameSettings = gameSettings;
+		this.width = width;
+		this.height = height;
+		this.fps = fps;
+		this.logger = Core.getLogger();
+	}
+
+	/**
+	 * Starts the warm-up on a low priority background thread.
+	 */
+	public void start() {
+		this.thread = new Thread(this, "WarmUp");
+		this.thread.setDaemon(true);
+		this.thread.setPriority(Thread.MIN_PRIORITY);
+		this.thread.start();
+	}
+
+	/**
+	 * Stops the warm-up and waits for it to finish, game objects share state
+	 * with the real game.
+	 */
+	public void stop() {
+		this.stopped = true;
+		if (this.thread == null)
+			return;
+		try {
+			this.thread.join(STOP_TIMEOUT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (this.thread.isAlive())
+			this.logger.warning("Warm-up didn't stop in time.");
+	}
+
+	/**
+	 * Plays the simulated game until enough updates have run or it is
+	 * stopped.
+	 */
+	@Override
+	public void run() {
+		// The simulated game logs nothing, doesn't count in the game
+		// metrics, show in crash dumps nor get recorded.
+		GameContext context = GameContext.headless(
+				Core.getOffscreenDrawManager(this.width, this.height));
+		InputManager inputManager = context.getInputManager();
+		FrameTimeStats tickTimes = new FrameTimeStats();
+		long start = System.currentTimeMillis();
+
+		try {
+			GameScreen gameScreen = null;
+			for (int tick = 0; tick < TICKS && !this.stopped; tick++) {
+				if (gameScreen == null || !gameScreen.isRunning) {
+					GameState gameState = new GameState(1, new Pair(0, 0),
+							new Pair(LIVES, LIVES), new Pair(0, 0),
+							new Pair(0, 0), 2, 2, tick);
+					gameScreen = new GameScreen(gameState, this.gameSettings,
+							false, this.width, this.height, this.fps,
+							context);
+					gameScreen.initialize();
+					// Skips the countdown.
+					gameScreen.inputDelay = Core.getCooldown(0);
+					gameScreen.isRunning = true;
+				}
+
+				boolean movingRight = (tick / MOVE_TICKS) % 2 == 0;
+				inputManager.setKeyDown(KeyEvent.VK_D, movingRight);
+				inputManager.setKeyDown(KeyEvent.VK_A, !movingRight);
+				inputManager.setKeyDown(KeyEvent.VK_RIGHT, !movingRight);
+				inputManager.setKeyDown(KeyEvent.VK_LEFT, movingRight);
+				inputManager.setKeyDown(KeyEvent.VK_SPACE, true);
+				inputManager.setKeyDown(KeyEvent.VK_ENTER, true);
+
+				long tickStart = System.nanoTime();
+				gameScreen.update();
+				tickTimes.record(System.nanoTime() - tickStart);
+			}
+		} catch (RuntimeException e) {
+			this.logger.log(Level.WARNING, "Warm-up failed.", e);
+			return;
+		}
+
+		int ticks = tickTimes.getCount();
+		this.logger.info("Warm-up ran " + ticks + " updates in "
+				+ (System.currentTimeMillis() - start) + " ms.");
+		if (ticks >= 2 * SAMPLE_TICKS) {
+			this.logger.info("Warm-up first " + SAMPLE_TICKS + " updates: "
+					+ tickTimes.summary(0, SAMPLE_TICKS));
+			this.logger.info("Warm-up last " + SAMPLE_TICKS + " updates: "
+					+ tickTimes.summary(ticks - SAMPLE_TICKS, ticks));
+		}
+	}
+}